@@ -0,0 +1,84 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.HttpTransport;
+import ru.biosoft.biostoreapi.impl.HttpTransports;
+import ru.biosoft.biostoreapi.impl.UrlConnectionTransport;
+
+/**
+ * End-to-end cost of {@link BiostoreConnectorImpl#askServer} against the local stub server,
+ * for both transports and with or without TLS
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AskServerBenchmark
+{
+    /**
+     * "default" is the transport chosen by the multi-release jar (HttpClient on Java 11+)
+     */
+    @Param({"urlconnection", "default"})
+    public String transport;
+
+    @Param({"false", "true"})
+    public boolean tls;
+
+    @Param({"100"})
+    public int projects;
+
+    private StubBiostoreServer server;
+    private BiostoreConnectorImpl connector;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        server = new StubBiostoreServer( projects, projects, tls );
+        connector = new BiostoreConnectorImpl( server.getServerLink(), "benchmark", createTransport() );
+    }
+
+    private HttpTransport createTransport()
+    {
+        if( "urlconnection".equals( transport ) )
+            return tls ? new UrlConnectionTransport( server.getSslContext().getSocketFactory() ) : new UrlConnectionTransport();
+        return tls ? HttpTransports.create( server.getSslContext() ) : HttpTransports.createDefault();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        server.close();
+    }
+
+    @Benchmark
+    public JSONObject getProjectList()
+    {
+        return connector.askServer( "test", "getProjectList", Collections.singletonMap( "jwtoken", "token" ) );
+    }
+
+    @Benchmark
+    public JSONObject logout()
+    {
+        return connector.askServer( "test", "logout", Collections.singletonMap( "jwtoken", "token" ) );
+    }
+}
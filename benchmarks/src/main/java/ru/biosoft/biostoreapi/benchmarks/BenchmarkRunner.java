@@ -0,0 +1,24 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link ProviderBenchmark} with 1, 8 and 64 threads and GC profiler:
+ * java -cp target/benchmarks.jar ru.biosoft.biostoreapi.benchmarks.BenchmarkRunner [method regexp]
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        String include = ProviderBenchmark.class.getSimpleName() + ( args.length > 0 ? "." + args[0] : "" );
+        for( int threads : new int[] {1, 8, 64} )
+        {
+            Options options = new OptionsBuilder().include( include ).threads( threads ).addProfiler( GCProfiler.class ).build();
+            new Runner( options ).run();
+        }
+    }
+}
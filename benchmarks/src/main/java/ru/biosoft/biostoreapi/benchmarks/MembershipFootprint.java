@@ -0,0 +1,45 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import ru.biosoft.biostoreapi.CompactProjectUserList;
+import ru.biosoft.biostoreapi.ProjectUser;
+
+/**
+ * Retained heap of cached project member lists: sorted ArrayList of ProjectUser versus CompactProjectUserList.
+ * Strings are created per project, as they are when parsed from separate responses:
+ * java -cp target/benchmarks.jar ru.biosoft.biostoreapi.benchmarks.MembershipFootprint [projects] [members]
+ */
+public class MembershipFootprint
+{
+    private static final String[] ROLES = {"Administrator", "Moderator", "User"};
+
+    public static void main(String[] args)
+    {
+        int projects = args.length > 0 ? Integer.parseInt( args[0] ) : 1000;
+        int members = args.length > 1 ? Integer.parseInt( args[1] ) : 100;
+
+        List<List<ProjectUser>> plain = new ArrayList<>();
+        List<List<ProjectUser>> compact = new ArrayList<>();
+        for( int p = 0; p < projects; p++ )
+        {
+            List<ProjectUser> users = new ArrayList<>();
+            for( int m = 0; m < members; m++ )
+                users.add( new ProjectUser( "user" + ( ( p * 31 + m ) % 100000 ) + "@example.org", new String( ROLES[m % ROLES.length] ) ) );
+            Collections.sort( users );
+            plain.add( users );
+            compact.add( CompactProjectUserList.of( users ) );
+        }
+
+        long plainBytes = GraphLayout.parseInstance( plain ).totalSize();
+        long compactBytes = GraphLayout.parseInstance( compact ).totalSize();
+        System.out.printf( "%d projects x %d members%n", projects, members );
+        System.out.printf( "ArrayList<ProjectUser>:  %,d bytes (%.1f per member)%n", plainBytes, (double)plainBytes / projects / members );
+        System.out.printf( "CompactProjectUserList:  %,d bytes (%.1f per member)%n", compactBytes, (double)compactBytes / projects / members );
+        System.out.printf( "Saved: %.1f%%%n", 100.0 * ( plainBytes - compactBytes ) / plainBytes );
+    }
+}
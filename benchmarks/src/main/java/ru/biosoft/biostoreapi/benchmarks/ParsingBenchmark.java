@@ -0,0 +1,84 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.biosoft.biostoreapi.Project;
+import ru.biosoft.biostoreapi.ProjectUser;
+import ru.biosoft.biostoreapi.impl.JsonArraySpliterator;
+
+/**
+ * Parsing cost of project and member lists of different sizes: full JSON tree versus streaming
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark
+{
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private String projectListJson;
+    private String projectUsersJson;
+
+    @Setup
+    public void setUp()
+    {
+        projectListJson = StubBiostoreServer.projectList( size ).toString();
+        projectUsersJson = StubBiostoreServer.projectUsers( size ).toString();
+    }
+
+    @Benchmark
+    public List<Project> projectListTree()
+    {
+        JSONArray array = new JSONObject( projectListJson ).getJSONArray( "projectList" );
+        return IntStream.range( 0, array.length() ).mapToObj( array::getJSONObject ).map( Project::createFromJSON )
+                .filter( Objects::nonNull ).collect( Collectors.toList() );
+    }
+
+    @Benchmark
+    public List<Project> projectListStreaming()
+    {
+        return StreamSupport.stream( new JsonArraySpliterator<>( new JSONTokener( projectListJson ), "projectList",
+                Project::createFromJSON, envelope -> {
+                } ), false ).collect( Collectors.toList() );
+    }
+
+    @Benchmark
+    public List<ProjectUser> projectUsersTree()
+    {
+        JSONArray array = new JSONObject( projectUsersJson ).getJSONArray( "projectUsers" );
+        return IntStream.range( 0, array.length() ).mapToObj( array::getJSONObject ).map( ProjectUser::createFromJSON )
+                .filter( Objects::nonNull ).sorted().collect( Collectors.toList() );
+    }
+
+    @Benchmark
+    public List<ProjectUser> projectUsersStreaming()
+    {
+        return StreamSupport.stream( new JsonArraySpliterator<>( new JSONTokener( projectUsersJson ), "projectUsers",
+                ProjectUser::createFromJSON, envelope -> {
+                } ), false ).collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,230 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.biosoft.biostoreapi.BulkResult;
+import ru.biosoft.biostoreapi.CompactProjectUserList;
+import ru.biosoft.biostoreapi.DefaultConnectionProvider;
+import ru.biosoft.biostoreapi.JWToken;
+import ru.biosoft.biostoreapi.Project;
+import ru.biosoft.biostoreapi.ProjectUser;
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+
+/**
+ * Throughput of every {@link DefaultConnectionProvider} method against the local stub server:
+ * synchronous, *Async (waited for, so threads measure latency of the executor path), bulk and streaming ones.
+ * Paged publishers are not covered, the stub server ignores offset and limit.
+ * Run with -t 1, -t 8 and -t 64 (or {@link BenchmarkRunner}) and -prof gc for allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProviderBenchmark
+{
+    /** Number of items in one bulk call */
+    private static final int BULK_SIZE = 10;
+
+    @Param({"100"})
+    public int size;
+
+    private StubBiostoreServer server;
+    private ExecutorService executor;
+    private DefaultConnectionProvider provider;
+    private JWToken token;
+    private List<String> bulkUsers;
+    private Map<String, String> bulkRoles;
+    private Map<String, Integer> bulkProjects;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        server = new StubBiostoreServer( size, size, false );
+        executor = Executors.newCachedThreadPool();
+        provider = new DefaultConnectionProvider( new BiostoreConnectorImpl( server.getServerLink(), "benchmark" ), executor );
+        token = provider.getJWToken( "test", "test" );
+        bulkUsers = new ArrayList<>();
+        bulkRoles = new LinkedHashMap<>();
+        bulkProjects = new LinkedHashMap<>();
+        for( int i = 0; i < BULK_SIZE; i++ )
+        {
+            bulkUsers.add( "user" + i );
+            bulkRoles.put( "user" + i, "User" );
+            bulkProjects.put( "Project" + i, Project.PERMISSION_ALL );
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        executor.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public List<Project> getProjectList()
+    {
+        return provider.getProjectList( token );
+    }
+
+    @Benchmark
+    public List<ProjectUser> getProjectUsers()
+    {
+        return provider.getProjectUsers( token, "Demo" );
+    }
+
+    @Benchmark
+    public JWToken getJWToken()
+    {
+        return provider.getJWToken( "test", "test" );
+    }
+
+    @Benchmark
+    public JWToken refreshJWToken()
+    {
+        return provider.refreshJWToken( token );
+    }
+
+    @Benchmark
+    public void createProjectWithPermissions()
+    {
+        provider.createProjectWithPermissions( token, "Demo", Project.PERMISSION_ALL );
+    }
+
+    @Benchmark
+    public void addUserToProject()
+    {
+        provider.addUserToProject( token, "user", "Demo" );
+    }
+
+    @Benchmark
+    public void changeUserRoleInProject()
+    {
+        provider.changeUserRoleInProject( token, "Demo", "user", "User" );
+    }
+
+    @Benchmark
+    public void logout()
+    {
+        provider.logout( token );
+    }
+
+    @Benchmark
+    public CompactProjectUserList getProjectUsersCompact()
+    {
+        return provider.getProjectUsersCompact( token, "Demo" );
+    }
+
+    @Benchmark
+    public Map<Project, List<ProjectUser>> getProjectsWithUsers()
+    {
+        return provider.getProjectsWithUsers( token );
+    }
+
+    @Benchmark
+    public List<Project> getProjectListAsync()
+    {
+        return provider.getProjectListAsync( token ).join();
+    }
+
+    @Benchmark
+    public List<ProjectUser> getProjectUsersAsync()
+    {
+        return provider.getProjectUsersAsync( token, "Demo" ).join();
+    }
+
+    @Benchmark
+    public JWToken getJWTokenAsync()
+    {
+        return provider.getJWTokenAsync( "test", "test" ).join();
+    }
+
+    @Benchmark
+    public JWToken refreshJWTokenAsync()
+    {
+        return provider.refreshJWTokenAsync( token ).join();
+    }
+
+    @Benchmark
+    public void createProjectWithPermissionsAsync()
+    {
+        provider.createProjectWithPermissionsAsync( token, "Demo", Project.PERMISSION_ALL ).join();
+    }
+
+    @Benchmark
+    public void addUserToProjectAsync()
+    {
+        provider.addUserToProjectAsync( token, "user", "Demo" ).join();
+    }
+
+    @Benchmark
+    public void changeUserRoleInProjectAsync()
+    {
+        provider.changeUserRoleInProjectAsync( token, "Demo", "user", "User" ).join();
+    }
+
+    @Benchmark
+    public void logoutAsync()
+    {
+        provider.logoutAsync( token ).join();
+    }
+
+    @Benchmark
+    public BulkResult<String> addUsersToProject()
+    {
+        return provider.addUsersToProject( token, "Demo", bulkUsers );
+    }
+
+    @Benchmark
+    public BulkResult<String> changeRoles()
+    {
+        return provider.changeRoles( token, "Demo", bulkRoles );
+    }
+
+    @Benchmark
+    public BulkResult<String> createProjects()
+    {
+        return provider.createProjects( token, bulkProjects );
+    }
+
+    @Benchmark
+    public long streamProjectList()
+    {
+        try( Stream<Project> projects = provider.streamProjectList( token ) )
+        {
+            return projects.count();
+        }
+    }
+
+    @Benchmark
+    public long streamProjectUsers()
+    {
+        try( Stream<ProjectUser> users = provider.streamProjectUsers( token, "Demo" ) )
+        {
+            return users.count();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.biosoft.biostoreapi.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * Local stand-in for biostore permission servlet with canned responses of configurable size
+ */
+public class StubBiostoreServer implements AutoCloseable
+{
+    static
+    {
+        // headers and body are written separately, without TCP_NODELAY every response waits for delayed ACK
+        System.setProperty( "sun.net.httpserver.nodelay", "true" );
+    }
+
+    private static final String KEYSTORE = "stub-keystore.p12";
+    private static final char[] KEYSTORE_PASSWORD = "biostore".toCharArray();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool( r -> {
+        Thread thread = new Thread( r, "stub-biostore" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+    private final SSLContext sslContext;
+
+    private final byte[] okResponse = new JSONObject().put( "type", "ok" ).toString().getBytes( StandardCharsets.UTF_8 );
+    private final byte[] tokenResponse;
+    private final byte[] projectListResponse;
+    private final byte[] projectUsersResponse;
+
+    /**
+     * @param projects number of projects returned by getProjectList
+     * @param users number of members returned by projectUsers
+     * @param tls whether to serve HTTPS with the bundled self-signed certificate
+     */
+    public StubBiostoreServer(int projects, int users, boolean tls) throws Exception
+    {
+        tokenResponse = new JSONObject().put( "type", "ok" ).put( "jwtoken", "header.eyJzdWIiOiJ0ZXN0In0.signature" ).toString()
+                .getBytes( StandardCharsets.UTF_8 );
+        projectListResponse = projectList( projects ).toString().getBytes( StandardCharsets.UTF_8 );
+        projectUsersResponse = projectUsers( users ).toString().getBytes( StandardCharsets.UTF_8 );
+
+        InetSocketAddress address = new InetSocketAddress( "localhost", 0 );
+        if( tls )
+        {
+            sslContext = createSslContext();
+            HttpsServer httpsServer = HttpsServer.create( address, 1024 );
+            httpsServer.setHttpsConfigurator( new HttpsConfigurator( sslContext ) );
+            server = httpsServer;
+        }
+        else
+        {
+            sslContext = null;
+            server = HttpServer.create( address, 1024 );
+        }
+        server.createContext( "/biostore/permission", this::handle );
+        server.setExecutor( executor );
+        server.start();
+    }
+
+    public String getServerLink()
+    {
+        return ( sslContext == null ? "http" : "https" ) + "://localhost:" + server.getAddress().getPort() + "/biostore/permission";
+    }
+
+    /**
+     * @return context trusting the server certificate, null for plain HTTP server
+     */
+    public SSLContext getSslContext()
+    {
+        return sslContext;
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    public static JSONObject projectList(int size)
+    {
+        JSONArray array = new JSONArray();
+        for( int i = 0; i < size; i++ )
+            array.put( new JSONObject().put( "name", "Project_" + i ).put( "permissions", i % 32 ) );
+        return new JSONObject().put( "type", "ok" ).put( "projectList", array );
+    }
+
+    public static JSONObject projectUsers(int size)
+    {
+        JSONArray array = new JSONArray();
+        for( int i = 0; i < size; i++ )
+            array.put( new JSONObject().put( "user", "user" + ( size - i ) + "@example.org" ).put( "role", i % 10 == 0 ? "Administrator" : "User" ) );
+        return new JSONObject().put( "type", "ok" ).put( "projectUsers", array );
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> params = parseForm( readBody( exchange.getRequestBody() ) );
+        byte[] response;
+        switch( params.getOrDefault( "action", "" ) )
+        {
+            case "login":
+            case "refreshJWToken":
+                exchange.getResponseHeaders().add( "Set-Cookie", "JSESSIONID=stub; Path=/" );
+                response = tokenResponse;
+                break;
+            case "getProjectList":
+                response = projectListResponse;
+                break;
+            case "projectUsers":
+                response = projectUsersResponse;
+                break;
+            default:
+                response = okResponse;
+        }
+        exchange.getResponseHeaders().add( "Content-Type", "application/json" );
+        exchange.sendResponseHeaders( 200, response.length );
+        try( OutputStream os = exchange.getResponseBody() )
+        {
+            os.write( response );
+        }
+    }
+
+    private static String readBody(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while( ( len = is.read( buffer ) ) != -1 )
+            baos.write( buffer, 0, len );
+        return new String( baos.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+    private static Map<String, String> parseForm(String body) throws UnsupportedEncodingException
+    {
+        Map<String, String> result = new HashMap<>();
+        for( String pair : body.split( "&" ) )
+        {
+            int pos = pair.indexOf( '=' );
+            if( pos > 0 )
+                result.put( pair.substring( 0, pos ), URLDecoder.decode( pair.substring( pos + 1 ), "UTF-8" ) );
+        }
+        return result;
+    }
+
+    private static SSLContext createSslContext() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
+        try( InputStream is = StubBiostoreServer.class.getResourceAsStream( KEYSTORE ) )
+        {
+            keyStore.load( is, KEYSTORE_PASSWORD );
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( keyStore, KEYSTORE_PASSWORD );
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        tmf.init( keyStore );
+        SSLContext context = SSLContext.getInstance( "TLS" );
+        context.init( kmf.getKeyManagers(), tmf.getTrustManagers(), null );
+        return context;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Request was rejected without contacting the server because the queue of its priority is full
+ */
+public class AdmissionRejectedException extends BiostoreTransportException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final Priority priority;
+
+    public AdmissionRejectedException(String message, Priority priority)
+    {
+        super( message );
+        this.priority = priority;
+    }
+
+    public Priority getPriority()
+    {
+        return priority;
+    }
+}
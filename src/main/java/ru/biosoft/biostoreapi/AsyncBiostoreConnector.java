@@ -0,0 +1,21 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONObject;
+
+/**
+ * Non-blocking counterpart of {@link BiostoreConnector}
+ */
+public interface AsyncBiostoreConnector
+{
+    /**
+     * Sends request to biostore server without blocking the caller thread
+     * @param username current user name
+     * @param action name of biostore action
+     * @param parameters action parameters
+     * @return future completed with request result as JSON object or exceptionally if request failed
+     */
+    CompletableFuture<JSONObject> askServerAsync(String username, String action, Map<String, String> parameters);
+}
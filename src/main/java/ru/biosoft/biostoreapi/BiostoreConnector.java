@@ -7,4 +7,13 @@ import java.util.Map;
 public interface BiostoreConnector
 {
     JSONObject askServer(String username, String action, Map<String, String> parameters);
+
+    /**
+     * @return true if repeated requests of the action may return the very same response object,
+     * e.g. when server confirms with 304 status that data was not modified. Such responses must not be modified.
+     */
+    default boolean reusesResponses(String action)
+    {
+        return false;
+    }
 }
@@ -0,0 +1,19 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Request did not produce a server response: connection failed, timed out, returned HTTP error or unparseable body
+ */
+public class BiostoreTransportException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public BiostoreTransportException(String message)
+    {
+        super( message );
+    }
+
+    public BiostoreTransportException(String message, Throwable cause)
+    {
+        super( message, cause );
+    }
+}
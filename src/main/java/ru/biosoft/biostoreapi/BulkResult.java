@@ -0,0 +1,85 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Per-item report of a bulk operation
+ * @param <T> type of item identifying each call, e.g. user or project name
+ */
+public class BulkResult<T>
+{
+    private final List<Item<T>> items;
+
+    public BulkResult(List<Item<T>> items)
+    {
+        this.items = Collections.unmodifiableList( items );
+    }
+
+    /**
+     * @return results in the order of the input items
+     */
+    public List<Item<T>> getItems()
+    {
+        return items;
+    }
+
+    public List<T> getSucceeded()
+    {
+        return items.stream().filter( Item::isSuccess ).map( Item::getItem ).collect( Collectors.toList() );
+    }
+
+    public List<Item<T>> getFailed()
+    {
+        return items.stream().filter( item -> !item.isSuccess() ).collect( Collectors.toList() );
+    }
+
+    public boolean isAllSucceeded()
+    {
+        return items.stream().allMatch( Item::isSuccess );
+    }
+
+    @Override
+    public String toString()
+    {
+        long failed = items.stream().filter( item -> !item.isSuccess() ).count();
+        return ( items.size() - failed ) + " succeeded, " + failed + " failed";
+    }
+
+    public static class Item<T>
+    {
+        private final T item;
+        private final RuntimeException error;
+
+        public Item(T item, RuntimeException error)
+        {
+            this.item = item;
+            this.error = error;
+        }
+
+        public T getItem()
+        {
+            return item;
+        }
+
+        /**
+         * @return exception thrown by the call, null if it succeeded
+         */
+        public RuntimeException getError()
+        {
+            return error;
+        }
+
+        public boolean isSuccess()
+        {
+            return error == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return item + ( error == null ? ": ok" : ": " + error.getMessage() );
+        }
+    }
+}
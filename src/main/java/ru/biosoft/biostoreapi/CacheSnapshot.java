@@ -0,0 +1,395 @@
+package ru.biosoft.biostoreapi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time copy of {@link CachingConnectionProvider} caches and session tokens, which can be saved to disk
+ * and restored after restart, so the process does not have to log in and fetch all project data again.
+ * Expiration times are stored as absolute wall-clock times; entries are checked against them and against
+ * expiration of their token when accessed, not when the snapshot is read.
+ * <p>
+ * The file contains valid tokens, so it is created readable by its owner only where the file system supports it.
+ * @see CachingConnectionProvider#createSnapshot(java.util.Collection)
+ * @see CachingConnectionProvider#restore(CacheSnapshot)
+ */
+public final class CacheSnapshot
+{
+    private static final int MAGIC = 0x42534353; // "BSCS"
+    private static final int VERSION = 1;
+
+    /** Expiration time of entries which never expire */
+    static final long NEVER = Long.MAX_VALUE;
+
+    private final long createdAt;
+    private final List<JWToken> tokens;
+    private final List<ProjectListEntry> projectLists;
+    private final List<ProjectUsersEntry> projectUsers;
+
+    CacheSnapshot(long createdAt, List<JWToken> tokens, List<ProjectListEntry> projectLists, List<ProjectUsersEntry> projectUsers)
+    {
+        this.createdAt = createdAt;
+        this.tokens = tokens;
+        this.projectLists = projectLists;
+        this.projectUsers = projectUsers;
+    }
+
+    /**
+     * @return creation time in milliseconds since epoch
+     */
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    /**
+     * @return tokens which were not expired at the moment of the call
+     */
+    public List<JWToken> getTokens()
+    {
+        List<JWToken> result = new ArrayList<>();
+        for( JWToken token : tokens )
+        {
+            if( !token.isExpired() )
+                result.add( token );
+        }
+        return result;
+    }
+
+    /**
+     * @return the latest issued valid token of the user, or null if there is none
+     */
+    public JWToken getToken(String username)
+    {
+        JWToken result = null;
+        for( JWToken token : tokens )
+        {
+            if( username.equals( token.getUsername() ) && !token.isExpired()
+                    && ( result == null || isIssuedLater( token, result ) ) )
+                result = token;
+        }
+        return result;
+    }
+
+    private static boolean isIssuedLater(JWToken token, JWToken other)
+    {
+        return token.getIssuedAt() != null && ( other.getIssuedAt() == null || token.getIssuedAt().isAfter( other.getIssuedAt() ) );
+    }
+
+    /**
+     * @return number of cached project lists and project member lists in the snapshot
+     */
+    public int getEntryCount()
+    {
+        return projectLists.size() + projectUsers.size();
+    }
+
+    List<JWToken> getAllTokens()
+    {
+        return tokens;
+    }
+
+    List<ProjectListEntry> getProjectLists()
+    {
+        return projectLists;
+    }
+
+    List<ProjectUsersEntry> getProjectUsers()
+    {
+        return projectUsers;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and moves it over the target, so readers never see a partial file
+     */
+    public void write(Path file) throws IOException
+    {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile( dir, file.getFileName().toString(), ".tmp" );
+        try
+        {
+            try
+            {
+                Files.setPosixFilePermissions( temp, PosixFilePermissions.fromString( "rw-------" ) );
+            }
+            catch( UnsupportedOperationException e )
+            {
+                // not a POSIX file system
+            }
+            CRC32 crc = new CRC32();
+            try (OutputStream fileOut = Files.newOutputStream( temp ))
+            {
+                DataOutputStream checked = new DataOutputStream( new BufferedOutputStream( new CheckedOutputStream( fileOut, crc ), 1 << 16 ) );
+                writeBody( checked );
+                checked.flush();
+                DataOutputStream trailer = new DataOutputStream( fileOut );
+                trailer.writeLong( crc.getValue() );
+                trailer.flush();
+            }
+            try
+            {
+                Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException e )
+            {
+                Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    private void writeBody(DataOutputStream out) throws IOException
+    {
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        out.writeLong( createdAt );
+
+        out.writeInt( tokens.size() );
+        for( JWToken token : tokens )
+        {
+            writeString( out, token.getUsername() );
+            writeString( out, token.getTokenValue() );
+        }
+
+        out.writeInt( projectLists.size() );
+        for( ProjectListEntry entry : projectLists )
+        {
+            out.writeInt( entry.token );
+            out.writeLong( entry.expiresAt );
+            out.writeInt( entry.projects.size() );
+            for( Project project : entry.projects )
+            {
+                writeString( out, project.getProjectName() );
+                out.writeInt( project.getPermissions() );
+            }
+        }
+
+        // roles repeat in almost every entry, so they are written once and referenced by index
+        Map<String, Integer> roles = new LinkedHashMap<>();
+        for( ProjectUsersEntry entry : projectUsers )
+        {
+            for( ProjectUser user : entry.users )
+                roles.putIfAbsent( user.getRole(), roles.size() );
+        }
+        out.writeInt( roles.size() );
+        for( String role : roles.keySet() )
+            writeString( out, role );
+
+        out.writeInt( projectUsers.size() );
+        for( ProjectUsersEntry entry : projectUsers )
+        {
+            out.writeInt( entry.token );
+            writeString( out, entry.projectName );
+            out.writeLong( entry.expiresAt );
+            out.writeInt( entry.users.size() );
+            for( ProjectUser user : entry.users )
+            {
+                writeString( out, user.getUser() );
+                out.writeInt( roles.get( user.getRole() ) );
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException
+    {
+        if( str == null )
+        {
+            out.writeInt( -1 );
+            return;
+        }
+        byte[] bytes = str.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+    /**
+     * Reads snapshot through a memory-mapped buffer
+     * @throws IOException if file cannot be read, is truncated or corrupted
+     */
+    public static CacheSnapshot read(Path file) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+        {
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        if( buffer.limit() < 8 )
+            throw new IOException( "Snapshot file is truncated: " + file );
+        int bodyLength = buffer.limit() - 8;
+        ByteBuffer body = buffer.duplicate();
+        body.limit( bodyLength );
+        CRC32 crc = new CRC32();
+        crc.update( body );
+        if( crc.getValue() != buffer.getLong( bodyLength ) )
+            throw new IOException( "Snapshot file is corrupted: " + file );
+        body.position( 0 );
+        try
+        {
+            return readBody( body );
+        }
+        catch( BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e )
+        {
+            throw new IOException( "Invalid snapshot file: " + file, e );
+        }
+    }
+
+    private static CacheSnapshot readBody(ByteBuffer in) throws IOException
+    {
+        if( in.getInt() != MAGIC )
+            throw new IOException( "Not a snapshot file" );
+        int version = in.getInt();
+        if( version != VERSION )
+            throw new IOException( "Unsupported snapshot version: " + version );
+        long createdAt = in.getLong();
+
+        int tokenCount = in.getInt();
+        List<JWToken> tokens = new ArrayList<>( tokenCount );
+        for( int i = 0; i < tokenCount; i++ )
+        {
+            String username = readString( in );
+            tokens.add( new JWToken( username, readString( in ) ) );
+        }
+
+        int listCount = in.getInt();
+        List<ProjectListEntry> projectLists = new ArrayList<>( listCount );
+        for( int i = 0; i < listCount; i++ )
+        {
+            int token = checkToken( in.getInt(), tokenCount );
+            long expiresAt = in.getLong();
+            int size = in.getInt();
+            List<Project> projects = new ArrayList<>( size );
+            for( int j = 0; j < size; j++ )
+            {
+                String name = readString( in );
+                projects.add( new Project( name, in.getInt() ) );
+            }
+            projectLists.add( new ProjectListEntry( token, expiresAt, projects ) );
+        }
+
+        int roleCount = in.getInt();
+        String[] roles = new String[roleCount];
+        for( int i = 0; i < roleCount; i++ )
+            roles[i] = readString( in ).intern();
+
+        int usersCount = in.getInt();
+        List<ProjectUsersEntry> projectUsers = new ArrayList<>( usersCount );
+        for( int i = 0; i < usersCount; i++ )
+        {
+            int token = checkToken( in.getInt(), tokenCount );
+            String projectName = readString( in );
+            long expiresAt = in.getLong();
+            int size = in.getInt();
+            List<ProjectUser> users = new ArrayList<>( size );
+            for( int j = 0; j < size; j++ )
+            {
+                String user = readString( in );
+                users.add( new ProjectUser( user, roles[in.getInt()] ) );
+            }
+            projectUsers.add( new ProjectUsersEntry( token, projectName, expiresAt, users ) );
+        }
+        return new CacheSnapshot( createdAt, tokens, projectLists, projectUsers );
+    }
+
+    private static int checkToken(int index, int tokenCount) throws IOException
+    {
+        if( index < 0 || index >= tokenCount )
+            throw new IOException( "Invalid token reference: " + index );
+        return index;
+    }
+
+    private static String readString(ByteBuffer in)
+    {
+        int length = in.getInt();
+        if( length < 0 )
+            return null;
+        byte[] bytes = new byte[length];
+        in.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    static class ProjectListEntry
+    {
+        final int token;
+        final long expiresAt;
+        final List<Project> projects;
+
+        ProjectListEntry(int token, long expiresAt, List<Project> projects)
+        {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.projects = projects;
+        }
+    }
+
+    static class ProjectUsersEntry
+    {
+        final int token;
+        final String projectName;
+        final long expiresAt;
+        final List<ProjectUser> users;
+
+        ProjectUsersEntry(int token, String projectName, long expiresAt, List<ProjectUser> users)
+        {
+            this.token = token;
+            this.projectName = projectName;
+            this.expiresAt = expiresAt;
+            this.users = users;
+        }
+    }
+
+    /**
+     * Collects entries of a new snapshot, tokens are deduplicated and referenced by index
+     */
+    static class Builder
+    {
+        private final Map<JWToken, Integer> tokens = new LinkedHashMap<>();
+        private final List<ProjectListEntry> projectLists = new ArrayList<>();
+        private final List<ProjectUsersEntry> projectUsers = new ArrayList<>();
+
+        void addToken(JWToken token)
+        {
+            tokens.putIfAbsent( token, tokens.size() );
+        }
+
+        void addProjectList(JWToken token, long expiresAt, List<Project> projects)
+        {
+            addToken( token );
+            projectLists.add( new ProjectListEntry( tokens.get( token ), expiresAt, projects ) );
+        }
+
+        void addProjectUsers(JWToken token, String projectName, long expiresAt, List<ProjectUser> users)
+        {
+            addToken( token );
+            projectUsers.add( new ProjectUsersEntry( tokens.get( token ), projectName, expiresAt, users ) );
+        }
+
+        CacheSnapshot build(long createdAt)
+        {
+            return new CacheSnapshot( createdAt, Collections.unmodifiableList( new ArrayList<>( tokens.keySet() ) ), projectLists,
+                    projectUsers );
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package ru.biosoft.biostoreapi;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.biosoft.biostoreapi.impl.LruCache;
+
+/**
+ * {@link DefaultConnectionProvider} which caches project lists and project members.
+ * Cached entries are keyed by the effective user, so they survive token refresh and new logins of the user.
+ * A cached entry is returned only for a token known to be valid: one issued by the server through this provider
+ * or one the server has already accepted for a request of the user. Other tokens are checked by sending the request,
+ * and logout through this provider makes the token unknown again.
+ * Successful createProjectWithPermissions, addUserToProject and changeUserRoleInProject calls made through
+ * this provider update the affected entries in place, or invalidate them when the resulting role or permissions
+ * are unknown (see {@link #setDefaultRole(String)} and {@link #setRolePermissions(String, int)}).
+ * Returned lists are unmodifiable.
+ */
+public class CachingConnectionProvider extends DefaultConnectionProvider
+{
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final LruCache<CacheKey, List<Project>> projectLists;
+    private final LruCache<CacheKey, List<ProjectUser>> projectUsers;
+
+    /**
+     * Tokens known to be valid by token value
+     */
+    private final LruCache<String, JWToken> sessions;
+
+    /**
+     * Incremented on every invalidation, so results of requests started before it are not put into cache
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public CachingConnectionProvider(String serverName, long ttl, TimeUnit unit)
+    {
+        super( serverName );
+        projectLists = new LruCache<>( DEFAULT_MAX_SIZE, ttl, unit, false );
+        projectUsers = new LruCache<>( DEFAULT_MAX_SIZE, ttl, unit, false );
+        sessions = new LruCache<>( DEFAULT_MAX_SIZE, ttl, unit, false );
+    }
+
+    /**
+     * @param biostoreConnector connector to send requests through
+     * @param ttl time to live of cached entry
+     * @param unit time unit of ttl
+     * @param maxSize maximal number of cached project lists and, separately, of cached project member lists
+     */
+    public CachingConnectionProvider(BiostoreConnector biostoreConnector, long ttl, TimeUnit unit, int maxSize)
+    {
+        super( biostoreConnector );
+        projectLists = new LruCache<>( maxSize, ttl, unit, false );
+        projectUsers = new LruCache<>( maxSize, ttl, unit, false );
+        sessions = new LruCache<>( maxSize, ttl, unit, false );
+    }
+
+    public CachingConnectionProvider(BiostoreConnector biostoreConnector, Executor executor, long ttl, TimeUnit unit, int maxSize)
+    {
+        super( biostoreConnector, executor );
+        projectLists = new LruCache<>( maxSize, ttl, unit, false );
+        projectUsers = new LruCache<>( maxSize, ttl, unit, false );
+        sessions = new LruCache<>( maxSize, ttl, unit, false );
+    }
+
+    @Override
+    public List<Project> getProjectList(JWToken jwToken)
+    {
+        CacheKey key = new CacheKey( jwToken, null );
+        List<Project> result = projectLists.get( key );
+        if( result == null || !isValid( jwToken ) )
+        {
+            long gen = generation.get();
+            result = Collections.unmodifiableList( super.getProjectList( jwToken ) );
+            accepted( jwToken );
+            putIfActual( projectLists, key, result, gen );
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<List<Project>> getProjectListAsync(JWToken jwToken)
+    {
+        CacheKey key = new CacheKey( jwToken, null );
+        List<Project> result = projectLists.get( key );
+        if( result != null && isValid( jwToken ) )
+            return CompletableFuture.completedFuture( result );
+        long gen = generation.get();
+        return withDeadline( () -> super.getProjectListAsync( jwToken ).thenApply( list -> {
+            List<Project> unmodifiable = Collections.unmodifiableList( list );
+            accepted( jwToken );
+            putIfActual( projectLists, key, unmodifiable, gen );
+            return unmodifiable;
+        } ) );
+    }
+
+    @Override
+    public List<ProjectUser> getProjectUsers(JWToken jwToken, String projectName)
+    {
+        CacheKey key = new CacheKey( jwToken, projectName );
+        List<ProjectUser> result = projectUsers.get( key );
+        if( result == null || !isValid( jwToken ) )
+        {
+            long gen = generation.get();
+            result = readOnly( super.getProjectUsers( jwToken, projectName ) );
+            accepted( jwToken );
+            putIfActual( projectUsers, key, result, gen );
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<List<ProjectUser>> getProjectUsersAsync(JWToken jwToken, String projectName)
+    {
+        CacheKey key = new CacheKey( jwToken, projectName );
+        List<ProjectUser> result = projectUsers.get( key );
+        if( result != null && isValid( jwToken ) )
+            return CompletableFuture.completedFuture( result );
+        long gen = generation.get();
+        return withDeadline( () -> super.getProjectUsersAsync( jwToken, projectName ).thenApply( list -> {
+            List<ProjectUser> unmodifiable = readOnly( list );
+            accepted( jwToken );
+            putIfActual( projectUsers, key, unmodifiable, gen );
+            return unmodifiable;
+        } ) );
+    }
+
+    /**
+     * @return true if the token is not expired and is known to be accepted by the server
+     */
+    private boolean isValid(JWToken jwToken)
+    {
+        JWToken session = sessions.get( jwToken.getTokenValue() );
+        return session != null && Objects.equals( session.getUsername(), jwToken.getUsername() ) && !jwToken.isExpired();
+    }
+
+    private void accepted(JWToken jwToken)
+    {
+        if( jwToken.getTokenValue() != null )
+            sessions.put( jwToken.getTokenValue(), jwToken );
+    }
+
+    @Override
+    protected void onTokenIssued(JWToken jwToken)
+    {
+        accepted( jwToken );
+        super.onTokenIssued( jwToken );
+    }
+
+    @Override
+    protected void onLoggedOut(JWToken jwToken)
+    {
+        if( jwToken.getTokenValue() != null )
+            sessions.remove( jwToken.getTokenValue() );
+        super.onLoggedOut( jwToken );
+    }
+
+    private static List<ProjectUser> readOnly(List<ProjectUser> list)
+    {
+        return list instanceof CompactProjectUserList ? list : Collections.unmodifiableList( list );
+    }
+
+    /**
+     * Removes cached project lists of the user
+     */
+    public void invalidateUser(String user)
+    {
+        generation.incrementAndGet();
+        projectLists.removeIf( (key, value) -> key.isOfUser( user ) );
+    }
+
+    /**
+     * Removes cached member lists of the project
+     */
+    public void invalidateProject(String projectName)
+    {
+        generation.incrementAndGet();
+        projectUsers.removeIf( (key, value) -> projectName.equals( key.projectName ) );
+    }
+
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        projectLists.clear();
+        projectUsers.clear();
+        sessions.clear();
+    }
+
+    /**
+     * Copies cached entries and the given session tokens, so they can be {@link CacheSnapshot#write(java.nio.file.Path) saved}
+     * and restored by another process. Each entry is saved with a valid token of its user,
+     * entries whose user has no such token are skipped.
+     * @param sessions tokens to include in addition to those of cached entries, may be empty
+     */
+    public CacheSnapshot createSnapshot(Collection<JWToken> sessions)
+    {
+        long now = System.currentTimeMillis();
+        CacheSnapshot.Builder builder = new CacheSnapshot.Builder();
+        for( JWToken token : sessions )
+        {
+            if( !token.isExpired() )
+                builder.addToken( token );
+        }
+        // the most recently used token of each user
+        Map<String, JWToken> userTokens = new HashMap<>();
+        this.sessions.forEach( (value, token, remainingNanos) -> {
+            if( !token.isExpired() )
+                userTokens.put( effectiveUser( token.getUsername() ), token );
+        } );
+        projectLists.forEach( (key, value, remainingNanos) -> {
+            JWToken token = userTokens.get( key.user );
+            if( token != null )
+                builder.addProjectList( token, toExpiresAt( now, remainingNanos ), value );
+        } );
+        projectUsers.forEach( (key, value, remainingNanos) -> {
+            JWToken token = userTokens.get( key.user );
+            if( token != null )
+                builder.addProjectUsers( token, key.projectName, toExpiresAt( now, remainingNanos ), value );
+        } );
+        return builder.build( now );
+    }
+
+    /**
+     * Puts entries of the snapshot into the caches, each one expires at its original time or when its token expires,
+     * whichever is earlier. Entries already expired are skipped. Tokens of the snapshot are considered valid.
+     * @return number of restored entries
+     */
+    public int restore(CacheSnapshot snapshot)
+    {
+        long now = System.currentTimeMillis();
+        List<JWToken> tokens = snapshot.getAllTokens();
+        for( JWToken token : tokens )
+        {
+            if( !token.isExpired() )
+                accepted( token );
+        }
+        int restored = 0;
+        for( CacheSnapshot.ProjectListEntry entry : snapshot.getProjectLists() )
+        {
+            JWToken token = tokens.get( entry.token );
+            long ttl = remainingMillis( now, entry.expiresAt, token );
+            if( ttl < 0 )
+                continue;
+            projectLists.put( new CacheKey( token, null ), Collections.unmodifiableList( entry.projects ), ttl, TimeUnit.MILLISECONDS );
+            restored++;
+        }
+        for( CacheSnapshot.ProjectUsersEntry entry : snapshot.getProjectUsers() )
+        {
+            JWToken token = tokens.get( entry.token );
+            long ttl = remainingMillis( now, entry.expiresAt, token );
+            if( ttl < 0 )
+                continue;
+            List<ProjectUser> users = compactMembership ? CompactProjectUserList.of( entry.users ) : entry.users;
+            projectUsers.put( new CacheKey( token, entry.projectName ), readOnly( users ), ttl, TimeUnit.MILLISECONDS );
+            restored++;
+        }
+        return restored;
+    }
+
+    private static long toExpiresAt(long now, long remainingNanos)
+    {
+        return remainingNanos == Long.MAX_VALUE ? CacheSnapshot.NEVER : now + TimeUnit.NANOSECONDS.toMillis( remainingNanos );
+    }
+
+    /**
+     * @return time to live of restored entry, negative if it is expired, zero if it never expires
+     */
+    private static long remainingMillis(long now, long expiresAt, JWToken token)
+    {
+        Instant tokenExpiresAt = token.getExpiresAt();
+        if( tokenExpiresAt != null )
+            expiresAt = Math.min( expiresAt, tokenExpiresAt.toEpochMilli() );
+        if( expiresAt == CacheSnapshot.NEVER )
+            return 0;
+        return expiresAt > now ? expiresAt - now : -1;
+    }
+
+    public LruCache.Stats getProjectListStats()
+    {
+        return projectLists.getStats();
+    }
+
+    public LruCache.Stats getProjectUsersStats()
+    {
+        return projectUsers.getStats();
+    }
+
+    /**
+     * Adds the project to cached project lists of the owner
+     */
+    @Override
+    protected void onProjectCreated(String projectName, String owner, int permissions)
+    {
+        generation.incrementAndGet();
+        projectLists.replaceAll( (key, list) -> key.isOfUser( owner ) ? withProject( list, projectName, permissions ) : list );
+        projectUsers.removeIf( (key, value) -> projectName.equals( key.projectName ) );
+        super.onProjectCreated( projectName, owner, permissions );
+    }
+
+    /**
+     * Inserts the user into cached member lists of the project and the project into cached lists of the user.
+     * Entries are removed instead if {@link #setDefaultRole(String) default role} or its permissions are unknown.
+     */
+    @Override
+    protected void onUserAdded(String projectName, String user)
+    {
+        String role = getDefaultRole();
+        int permissions = getRolePermissions( role );
+        generation.incrementAndGet();
+        projectUsers.replaceAll( (key, list) -> {
+            if( !projectName.equals( key.projectName ) )
+                return list;
+            return role == null ? null : withMember( list, user, role, false );
+        } );
+        projectLists.replaceAll( (key, list) -> {
+            if( !key.isOfUser( user ) )
+                return list;
+            if( permissions == MembershipListener.UNKNOWN_PERMISSIONS )
+                return null;
+            // server keeps role of an existing member
+            return indexOfProject( list, projectName ) >= 0 ? list : withProject( list, projectName, permissions );
+        } );
+        super.onUserAdded( projectName, user );
+    }
+
+    /**
+     * Updates role of the user in cached member lists of the project and permissions in cached lists of the user,
+     * the latter are removed if permissions of the role are unknown
+     */
+    @Override
+    protected void onRoleChanged(String projectName, String user, String newRole)
+    {
+        int permissions = getRolePermissions( newRole );
+        generation.incrementAndGet();
+        projectUsers.replaceAll( (key, list) -> projectName.equals( key.projectName ) ? withMember( list, user, newRole, true ) : list );
+        projectLists.replaceAll( (key, list) -> {
+            if( !key.isOfUser( user ) )
+                return list;
+            return permissions == MembershipListener.UNKNOWN_PERMISSIONS ? null : withProject( list, projectName, permissions );
+        } );
+        super.onRoleChanged( projectName, user, newRole );
+    }
+
+    /**
+     * @return copy of the sorted list with the member inserted at its place or with the role replaced
+     */
+    private List<ProjectUser> withMember(List<ProjectUser> list, String user, String role, boolean replace)
+    {
+        int index = indexOfUser( list, user );
+        if( index >= 0 && ( !replace || list.get( index ).getRole().equals( role ) ) )
+            return list;
+        List<ProjectUser> result = new ArrayList<>( list.size() + 1 );
+        result.addAll( list );
+        if( index >= 0 )
+            result.set( index, new ProjectUser( user, role ) );
+        else
+            result.add( -index - 1, new ProjectUser( user, role ) );
+        return readOnly( compactMembership ? CompactProjectUserList.of( result ) : result );
+    }
+
+    /**
+     * Binary search by user name, lists are sorted by user first
+     * @return index of the user or -(insertion point)-1 if it is absent
+     */
+    private static int indexOfUser(List<ProjectUser> list, String user)
+    {
+        if( list instanceof CompactProjectUserList )
+            return ( (CompactProjectUserList)list ).indexOfUser( user );
+        int low = 0;
+        int high = list.size() - 1;
+        while( low <= high )
+        {
+            int mid = ( low + high ) >>> 1;
+            int cmp = list.get( mid ).getUser().compareTo( user );
+            if( cmp < 0 )
+                low = mid + 1;
+            else if( cmp > 0 )
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -( low + 1 );
+    }
+
+    /**
+     * @return copy of the list with permissions of the project replaced or the project appended
+     */
+    private static List<Project> withProject(List<Project> list, String projectName, int permissions)
+    {
+        int index = indexOfProject( list, projectName );
+        if( index >= 0 && list.get( index ).getPermissions() == permissions )
+            return list;
+        List<Project> result = new ArrayList<>( list );
+        if( index >= 0 )
+            result.set( index, new Project( projectName, permissions ) );
+        else
+            result.add( new Project( projectName, permissions ) );
+        return Collections.unmodifiableList( result );
+    }
+
+    private static int indexOfProject(List<Project> list, String projectName)
+    {
+        for( int i = 0; i < list.size(); i++ )
+        {
+            if( list.get( i ).getProjectName().equals( projectName ) )
+                return i;
+        }
+        return -1;
+    }
+
+    private <T> void putIfActual(LruCache<CacheKey, T> cache, CacheKey key, T value, long gen)
+    {
+        if( generation.get() != gen )
+            return;
+        cache.put( key, value );
+        // invalidation may have run between the check and the put, it would not see the entry
+        if( generation.get() != gen )
+            cache.remove( key );
+    }
+
+    /**
+     * Entries of a user are shared by all tokens of the user, including those of administrators logged in as the user
+     */
+    private static class CacheKey
+    {
+        final String user;
+        final String projectName;
+
+        CacheKey(JWToken jwToken, String projectName)
+        {
+            this.user = effectiveUser( jwToken.getUsername() );
+            this.projectName = projectName;
+        }
+
+        boolean isOfUser(String user)
+        {
+            return this.user != null && this.user.equals( user );
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if( this == o )
+                return true;
+            if( o == null || getClass() != o.getClass() )
+                return false;
+            CacheKey other = (CacheKey)o;
+            return Objects.equals( user, other.user ) && Objects.equals( projectName, other.projectName );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( user, projectName );
+        }
+    }
+}
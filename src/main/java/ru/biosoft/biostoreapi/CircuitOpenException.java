@@ -0,0 +1,27 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request was rejected without contacting the server because the circuit breaker is open
+ */
+public class CircuitOpenException extends BiostoreTransportException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterNanos;
+
+    public CircuitOpenException(String circuitName, long retryAfterNanos)
+    {
+        super( "Circuit '" + circuitName + "' is open, retry after " + TimeUnit.NANOSECONDS.toMillis( retryAfterNanos ) + " ms" );
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * @return time left until the breaker lets a probe request through, 0 if a probe is already running
+     */
+    public long getRetryAfterNanos()
+    {
+        return retryAfterNanos;
+    }
+}
@@ -0,0 +1,175 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only sorted list of project members stored column-wise: an array of user names and an array of small role codes
+ * referring to the table of roles, which are shared between all lists. Elements are light {@link ProjectUser} views
+ * created on access, so lists of many projects can be kept in memory without an object per member.
+ * Lookups by user name use binary search.
+ */
+public final class CompactProjectUserList extends AbstractList<ProjectUser> implements RandomAccess
+{
+    /** Roles are few, but the interning table must not grow without bound if server sends arbitrary strings */
+    private static final int MAX_INTERNED_ROLES = 1024;
+    private static final ConcurrentHashMap<String, String> internedRoles = new ConcurrentHashMap<>();
+
+    private static final CompactProjectUserList EMPTY = new CompactProjectUserList( new String[0], new byte[0], new String[0] );
+
+    private final String[] users;
+    private final byte[] roleCodes;
+    private final String[] roles;
+
+    private CompactProjectUserList(String[] users, byte[] roleCodes, String[] roles)
+    {
+        this.users = users;
+        this.roleCodes = roleCodes;
+        this.roles = roles;
+    }
+
+    /**
+     * @return compact sorted copy of the given members
+     */
+    public static CompactProjectUserList of(Collection<ProjectUser> projectUsers)
+    {
+        if( projectUsers instanceof CompactProjectUserList )
+            return (CompactProjectUserList)projectUsers;
+        if( projectUsers.isEmpty() )
+            return EMPTY;
+        ProjectUser[] sorted = projectUsers.toArray( new ProjectUser[0] );
+        Arrays.sort( sorted );
+        String[] users = new String[sorted.length];
+        byte[] roleCodes = new byte[sorted.length];
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> roles = new ArrayList<>();
+        for( int i = 0; i < sorted.length; i++ )
+        {
+            users[i] = sorted[i].getUser();
+            Integer code = codes.get( sorted[i].getRole() );
+            if( code == null )
+            {
+                code = roles.size();
+                if( code > 0xFF )
+                    throw new IllegalArgumentException( "Too many distinct roles: " + code );
+                codes.put( sorted[i].getRole(), code );
+                roles.add( intern( sorted[i].getRole() ) );
+            }
+            roleCodes[i] = (byte)code.intValue();
+        }
+        return new CompactProjectUserList( users, roleCodes, roles.toArray( new String[0] ) );
+    }
+
+    private static String intern(String role)
+    {
+        String interned = internedRoles.get( role );
+        if( interned != null )
+            return interned;
+        if( internedRoles.size() >= MAX_INTERNED_ROLES )
+            return role;
+        interned = internedRoles.putIfAbsent( role, role );
+        return interned == null ? role : interned;
+    }
+
+    @Override
+    public ProjectUser get(int index)
+    {
+        return new ProjectUser( users[index], getRole( index ) );
+    }
+
+    @Override
+    public int size()
+    {
+        return users.length;
+    }
+
+    public String getUser(int index)
+    {
+        return users[index];
+    }
+
+    public String getRole(int index)
+    {
+        return roles[roleCodes[index] & 0xFF];
+    }
+
+    /**
+     * @return index of the first member with the given name, or (-(insertion point) - 1) if there is none
+     */
+    public int indexOfUser(String user)
+    {
+        int low = 0;
+        int high = users.length;
+        while( low < high )
+        {
+            int mid = ( low + high ) >>> 1;
+            if( users[mid].compareTo( user ) < 0 )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < users.length && users[low].equals( user ) ? low : -low - 1;
+    }
+
+    /**
+     * @return role of the user in the project, the first one in sort order if user has several, null if user is not a member
+     */
+    public String getRoleOf(String user)
+    {
+        int index = indexOfUser( user );
+        return index < 0 ? null : getRole( index );
+    }
+
+    public boolean containsUser(String user)
+    {
+        return indexOfUser( user ) >= 0;
+    }
+
+    /**
+     * @return distinct roles of the members
+     */
+    public List<String> getRoles()
+    {
+        return Collections.unmodifiableList( Arrays.asList( roles ) );
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        if( ! ( o instanceof ProjectUser ) )
+            return -1;
+        ProjectUser pu = (ProjectUser)o;
+        int index = indexOfUser( pu.getUser() );
+        for( int i = index; i >= 0 && i < users.length && users[i].equals( pu.getUser() ); i++ )
+        {
+            if( getRole( i ).equals( pu.getRole() ) )
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o)
+    {
+        int index = indexOf( o );
+        if( index < 0 )
+            return index;
+        while( index + 1 < users.length && users[index + 1].equals( users[index] ) && roleCodes[index + 1] == roleCodes[index] )
+            index++;
+        return index;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf( o ) >= 0;
+    }
+}
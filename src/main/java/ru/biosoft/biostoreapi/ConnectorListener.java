@@ -0,0 +1,25 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Instrumentation hook of biostore calls. Methods are called on the request thread, so implementations must be fast and thread-safe.
+ * @see ru.biosoft.biostoreapi.impl.InMemoryMetricsRecorder
+ */
+public interface ConnectorListener
+{
+    /**
+     * Called by {@link ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl} after each HTTP exchange
+     */
+    default void requestCompleted(RequestMetrics metrics)
+    {
+    }
+
+    /**
+     * Called by {@link DefaultConnectionProvider} after each request made through its connector
+     * @param action name of biostore action
+     * @param outcome result category
+     * @param durationNanos time spent in the connector including all decorators
+     */
+    default void callCompleted(String action, RequestOutcome outcome, long durationNanos)
+    {
+    }
+}
@@ -0,0 +1,243 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.biosoft.biostoreapi.impl.HashedWheelTimer;
+
+/**
+ * Time budget of a call, which can also be cancelled explicitly.
+ * Deadline entered on a thread applies to all biostore requests made in its scope, including requests of
+ * {@link DefaultConnectionProvider} *Async and bulk methods started there. Requests in flight are aborted
+ * with {@link DeadlineExceededException} as soon as the deadline expires or is cancelled.
+ * <pre>
+ * try( Deadline.Scope scope = Deadline.after( 5, TimeUnit.SECONDS ).enter() )
+ * {
+ *     provider.getProjectList( jwToken );
+ * }
+ * </pre>
+ */
+public final class Deadline
+{
+    private static final Logger log = Logger.getLogger( Deadline.class.getName() );
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final boolean bounded;
+    private final long expiresAt;
+    private volatile boolean cancelled;
+
+    // guarded by this
+    private final List<Runnable> listeners = new ArrayList<>();
+    private boolean fired;
+    private HashedWheelTimer.Timeout timeout;
+
+    private Deadline(boolean bounded, long expiresAt)
+    {
+        this.bounded = bounded;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return deadline expiring after the given duration from now
+     */
+    public static Deadline after(long duration, TimeUnit unit)
+    {
+        long nanos = unit.toNanos( duration );
+        long now = System.nanoTime();
+        // saturate instead of overflowing for huge durations
+        return nanos > Long.MAX_VALUE / 2 ? none() : new Deadline( true, now + nanos );
+    }
+
+    /**
+     * @return deadline which never expires but can be cancelled
+     */
+    public static Deadline none()
+    {
+        return new Deadline( false, 0 );
+    }
+
+    /**
+     * @return deadline entered on the current thread, null if there is none
+     */
+    public static Deadline current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this deadline current for the thread until returned scope is closed
+     */
+    public Scope enter()
+    {
+        Scope scope = new Scope( CURRENT.get() );
+        CURRENT.set( this );
+        return scope;
+    }
+
+    /**
+     * @return deadline expiring together with this one, which is cancelled when this one is cancelled but can be cancelled separately
+     */
+    public Deadline newChild()
+    {
+        return linkChild( new Deadline( bounded, expiresAt ) );
+    }
+
+    /**
+     * @return child deadline as {@link #newChild()}, which also expires after the given duration if that comes first
+     */
+    public Deadline newChild(long duration, TimeUnit unit)
+    {
+        Deadline limit = after( duration, unit );
+        if( !limit.bounded || bounded && expiresAt - limit.expiresAt <= 0 )
+            return newChild();
+        return linkChild( limit );
+    }
+
+    private Deadline linkChild(Deadline child)
+    {
+        child.whenExpired( whenExpired( child::cancel ) );
+        return child;
+    }
+
+    public boolean isBounded()
+    {
+        return bounded;
+    }
+
+    /**
+     * @return time left, 0 if deadline is expired or cancelled, {@link Long#MAX_VALUE} if deadline is not bounded
+     */
+    public long remaining(TimeUnit unit)
+    {
+        if( cancelled )
+            return 0;
+        if( !bounded )
+            return Long.MAX_VALUE;
+        return unit.convert( Math.max( 0, expiresAt - System.nanoTime() ), TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * @return true if deadline was cancelled or its time is over
+     */
+    public boolean isExpired()
+    {
+        return cancelled || bounded && System.nanoTime() - expiresAt >= 0;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Expires deadline immediately, aborting requests made under it
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        fire();
+    }
+
+    /**
+     * @throws DeadlineExceededException if deadline is expired
+     */
+    public void check(String action)
+    {
+        if( isExpired() )
+            throw new DeadlineExceededException( ( cancelled ? "Deadline was cancelled" : "Deadline exceeded" ) + " before '" + action
+                    + "' request" );
+    }
+
+    /**
+     * Registers callback invoked once when deadline expires or is cancelled, immediately if it already did.
+     * Callback may be executed on the timer thread, so it must be short and non-blocking.
+     * @return action which unregisters the callback
+     */
+    public Runnable whenExpired(Runnable listener)
+    {
+        synchronized( this )
+        {
+            if( !fired && !isExpired() )
+            {
+                listeners.add( listener );
+                if( bounded && timeout == null )
+                    timeout = Timer.INSTANCE.schedule( this::fire, expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS );
+                return () -> unregister( listener );
+            }
+        }
+        fire();
+        listener.run();
+        return () -> {
+        };
+    }
+
+    private synchronized void unregister(Runnable listener)
+    {
+        listeners.remove( listener );
+    }
+
+    private void fire()
+    {
+        List<Runnable> toRun;
+        synchronized( this )
+        {
+            if( fired )
+                return;
+            fired = true;
+            toRun = new ArrayList<>( listeners );
+            listeners.clear();
+            if( timeout != null )
+                timeout.cancel();
+        }
+        for( Runnable listener : toRun )
+        {
+            try
+            {
+                listener.run();
+            }
+            catch( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Deadline listener failed", e );
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        if( cancelled )
+            return "Deadline[cancelled]";
+        return bounded ? "Deadline[" + remaining( TimeUnit.MILLISECONDS ) + " ms left]" : "Deadline[unbounded]";
+    }
+
+    /**
+     * Restores previous deadline of the thread when closed
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final Deadline previous;
+
+        private Scope(Deadline previous)
+        {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close()
+        {
+            if( previous == null )
+                CURRENT.remove();
+            else
+                CURRENT.set( previous );
+        }
+    }
+
+    private static class Timer
+    {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer( 10, TimeUnit.MILLISECONDS, 512, "biostore-deadline-timer" );
+    }
+}
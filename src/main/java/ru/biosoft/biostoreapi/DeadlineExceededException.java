@@ -0,0 +1,19 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Request was not sent or was aborted because its {@link Deadline} expired or was cancelled
+ */
+public class DeadlineExceededException extends BiostoreTransportException
+{
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message)
+    {
+        super( message );
+    }
+
+    public DeadlineExceededException(String message, Throwable cause)
+    {
+        super( message, cause );
+    }
+}
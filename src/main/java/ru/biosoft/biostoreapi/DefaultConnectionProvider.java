@@ -1,17 +1,49 @@
 package ru.biosoft.biostoreapi;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
+import ru.biosoft.biostoreapi.impl.AsyncBiostoreConnectorImpl;
 import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.CoalescingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.JsonArraySpliterator;
+import ru.biosoft.biostoreapi.impl.LoadBalancingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.ResilientBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.SchedulingBiostoreConnector;
 
 public class DefaultConnectionProvider
 {
@@ -43,77 +75,1142 @@ public class DefaultConnectionProvider
     public static final String ATTR_TYPE = "type";
     public static final String ATTR_MESSAGE = "message";
     public static final String ATTR_PERMISSION = "permission";
+    public static final String ATTR_OFFSET = "offset";
+    public static final String ATTR_LIMIT = "limit";
+    public static final String ATTR_TOTAL = "total";
 
     protected BiostoreConnector biostoreConnector;
 
+    /**
+     * Connector used by *Async methods, null if neither executor nor asynchronous connector were supplied
+     */
+    protected AsyncBiostoreConnector asyncConnector;
+
+    /**
+     * Executor for *Async methods and bulk operations, null if it was not supplied
+     */
+    protected Executor executor;
+
+    protected volatile ConnectorListener listener;
+
+    protected volatile Tracer tracer;
+
+    protected volatile boolean compactMembership;
+
+    protected volatile SudoTokenCache sudoTokenCache;
+
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> rolePermissions = new ConcurrentHashMap<>();
+    private volatile String defaultRole;
+
+    /**
+     * Lists parsed from responses which connector may return again, by response identity
+     */
+    private final Map<JSONObject, List<?>> parsedResponses = Collections.synchronizedMap( new WeakHashMap<>() );
+
+    public static final int DEFAULT_BULK_PARALLELISM = 8;
+
+    private volatile int bulkParallelism = DEFAULT_BULK_PARALLELISM;
+
+    /** Number of requests sent to each server by {@link #warmUp(Map, boolean)} after the connection is established */
+    public static final int DEFAULT_WARM_UP_REQUESTS = 3;
+
     private static final String BIOSTORE_DEFAULT_URL = "https://bio-store.org/biostore";
 
     public DefaultConnectionProvider(String serverName)
     {
-        biostoreConnector = new BiostoreConnectorImpl( BIOSTORE_DEFAULT_URL + "/permission", serverName );
+        this( new BiostoreConnectorImpl( BIOSTORE_DEFAULT_URL + "/permission", serverName ) );
+    }
+
+    /**
+     * @param serverName name of the server registered in biostore
+     * @param executor executor to run requests of *Async methods on
+     */
+    public DefaultConnectionProvider(String serverName, Executor executor)
+    {
+        this( new BiostoreConnectorImpl( BIOSTORE_DEFAULT_URL + "/permission", serverName ), executor );
+    }
+
+    /**
+     * @param serverLinks URLs of the biostore permission service on mirrors, each request goes to the fastest healthy one
+     * @param serverName name of the server registered in biostore
+     * @see LoadBalancingBiostoreConnector
+     */
+    public DefaultConnectionProvider(List<String> serverLinks, String serverName)
+    {
+        this( balancedConnector( serverLinks, serverName, null ) );
+    }
+
+    /**
+     * Same as {@link #DefaultConnectionProvider(List, String)}, but read requests are also hedged to another mirror
+     * when the first one is slow
+     * @param executor executor to run requests of *Async methods and hedged requests on
+     */
+    public DefaultConnectionProvider(List<String> serverLinks, String serverName, Executor executor)
+    {
+        this( balancedConnector( serverLinks, serverName, executor ), executor );
+    }
+
+    private static BiostoreConnector balancedConnector(List<String> serverLinks, String serverName, Executor executor)
+    {
+        if( serverLinks.size() == 1 )
+            return new BiostoreConnectorImpl( serverLinks.get( 0 ), serverName );
+        LoadBalancingBiostoreConnector connector = LoadBalancingBiostoreConnector.create( serverLinks, serverName );
+        if( executor != null )
+            connector.setHedging( executor, LoadBalancingBiostoreConnector.DEFAULT_HEDGED_ACTIONS );
+        return connector;
     }
 
     public DefaultConnectionProvider(BiostoreConnector biostoreConnector)
     {
         this.biostoreConnector = biostoreConnector;
+        if( biostoreConnector instanceof AsyncBiostoreConnector )
+            this.asyncConnector = (AsyncBiostoreConnector)biostoreConnector;
+    }
+
+    /**
+     * @param biostoreConnector connector to send requests through
+     * @param executor executor to run requests of *Async methods on
+     */
+    public DefaultConnectionProvider(BiostoreConnector biostoreConnector, Executor executor)
+    {
+        this.biostoreConnector = biostoreConnector;
+        this.asyncConnector = new AsyncBiostoreConnectorImpl( biostoreConnector, executor );
+        this.executor = executor;
+    }
+
+    public int getBulkParallelism()
+    {
+        return bulkParallelism;
+    }
+
+    public boolean isCompactMembership()
+    {
+        return compactMembership;
+    }
+
+    /**
+     * @param compactMembership if true, project members are returned as {@link CompactProjectUserList},
+     * which takes several times less memory when lists are kept, e.g. in a cache
+     */
+    public void setCompactMembership(boolean compactMembership)
+    {
+        this.compactMembership = compactMembership;
+    }
+
+    private List<ProjectUser> toMembership(List<ProjectUser> projectUsers)
+    {
+        return compactMembership ? CompactProjectUserList.of( projectUsers ) : projectUsers;
+    }
+
+    /**
+     * If connector returns the same response object again (e.g. server replied 304 Not Modified),
+     * returns the list parsed from it before. Such lists are unmodifiable.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> parseOnce(String action, JSONObject response, Function<JSONObject, List<T>> parser)
+    {
+        if( !biostoreConnector.reusesResponses( action ) )
+            return parser.apply( response );
+        List<T> parsed = (List<T>)parsedResponses.get( response );
+        if( parsed == null )
+        {
+            parsed = parser.apply( response );
+            if( !( parsed instanceof CompactProjectUserList ) )
+                parsed = Collections.unmodifiableList( parsed );
+            parsedResponses.put( response, parsed );
+        }
+        return parsed;
+    }
+
+    public SudoTokenCache getSudoTokenCache()
+    {
+        return sudoTokenCache;
+    }
+
+    /**
+     * @param sudoTokenCache cache of tokens for sudo logins made by {@link #getJWToken(String, String)}
+     * and {@link #getJWTokenAsync(String, String)}, null to disable
+     */
+    public void setSudoTokenCache(SudoTokenCache sudoTokenCache)
+    {
+        this.sudoTokenCache = sudoTokenCache;
+    }
+
+    public void addMembershipListener(MembershipListener listener)
+    {
+        membershipListeners.add( listener );
+    }
+
+    public void removeMembershipListener(MembershipListener listener)
+    {
+        membershipListeners.remove( listener );
+    }
+
+    /**
+     * @param defaultRole role which server gives to users added to a project, null if it is unknown
+     */
+    public void setDefaultRole(String defaultRole)
+    {
+        this.defaultRole = defaultRole;
+    }
+
+    public String getDefaultRole()
+    {
+        return defaultRole;
+    }
+
+    /**
+     * Declares permissions the server grants to members with the role, so membership events carry them
+     * @param permissions Project.PERMISSION_* flags, negative value removes the role
+     */
+    public void setRolePermissions(String role, int permissions)
+    {
+        if( permissions < 0 )
+            rolePermissions.remove( role );
+        else
+            rolePermissions.put( role, permissions );
+    }
+
+    /**
+     * @return permissions of the role or {@link MembershipListener#UNKNOWN_PERMISSIONS} if they were not declared
+     */
+    public int getRolePermissions(String role)
+    {
+        Integer permissions = role == null ? null : rolePermissions.get( role );
+        return permissions == null ? MembershipListener.UNKNOWN_PERMISSIONS : permissions;
+    }
+
+    protected void onProjectCreated(String projectName, String owner, int permissions)
+    {
+        for( MembershipListener l : membershipListeners )
+        {
+            try
+            {
+                l.projectCreated( projectName, owner, permissions );
+            }
+            catch( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Membership listener failed", e );
+            }
+        }
+    }
+
+    protected void onUserAdded(String projectName, String user)
+    {
+        String role = defaultRole;
+        int permissions = getRolePermissions( role );
+        for( MembershipListener l : membershipListeners )
+        {
+            try
+            {
+                l.userAdded( projectName, user, role, permissions );
+            }
+            catch( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Membership listener failed", e );
+            }
+        }
+    }
+
+    protected void onRoleChanged(String projectName, String user, String newRole)
+    {
+        int permissions = getRolePermissions( newRole );
+        for( MembershipListener l : membershipListeners )
+        {
+            try
+            {
+                l.roleChanged( projectName, user, newRole, permissions );
+            }
+            catch( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Membership listener failed", e );
+            }
+        }
+    }
+
+    /**
+     * @return impersonated user for sudo user names ({@code admin$target}), otherwise the user name itself
+     */
+    static String effectiveUser(String username)
+    {
+        int pos = username == null ? -1 : username.indexOf( '$' );
+        return pos < 0 ? username : username.substring( pos + 1 );
+    }
+
+    public ConnectorListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * @param listener receives outcome and duration of every call made through the connector, null to disable
+     */
+    public void setListener(ConnectorListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public Tracer getTracer()
+    {
+        return tracer;
+    }
+
+    /**
+     * Enables tracing: every public method and every request made through the connector is recorded as a span
+     * tagged with the user, the action and the outcome. Spans are children of the {@link SpanContext#current() current context}
+     * of the calling thread, which is also sent to the server in the {@value SpanContext#TRACEPARENT_HEADER} header.
+     * Streams and publishers are not traced as a whole, but their requests are.
+     * @param tracer tracer to start spans with, null to disable tracing
+     */
+    public void setTracer(Tracer tracer)
+    {
+        this.tracer = tracer;
+    }
+
+    /**
+     * @param bulkParallelism maximal number of requests in flight during a bulk operation
+     */
+    public void setBulkParallelism(int bulkParallelism)
+    {
+        if( bulkParallelism <= 0 )
+            throw new IllegalArgumentException( "Parallelism must be positive: " + bulkParallelism );
+        this.bulkParallelism = bulkParallelism;
     }
 
     public List<Project> getProjectList(JWToken jwToken)
     {
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
-        String username = jwToken.getUsername();
+        return traced( "getProjectList", jwToken.getUsername(), () -> {
+            JSONObject response = askServer( jwToken.getUsername(), ACTION_GET_PROJECT_LIST, tokenParameters( jwToken ) );
+            return parseOnce( ACTION_GET_PROJECT_LIST, response, r -> parseProjectList( jwToken, r ) );
+        } );
+    }
 
-        JSONObject response = biostoreConnector.askServer( username, ACTION_GET_PROJECT_LIST, parameters );
-        checkResponse( "During list of projects request for '" + username + "'", response );
+    public CompletableFuture<List<Project>> getProjectListAsync(JWToken jwToken)
+    {
+        return tracedAsync( "getProjectListAsync", jwToken.getUsername(),
+                () -> askServerAsync( jwToken.getUsername(), ACTION_GET_PROJECT_LIST, tokenParameters( jwToken ) )
+                        .thenApply( response -> parseOnce( ACTION_GET_PROJECT_LIST, response, r -> parseProjectList( jwToken, r ) ) ) );
+    }
 
-        return arrayOfObjects( response.getJSONArray( "projectList" ) )
-                .map( Project::createFromJSON )
-                .filter( Objects::nonNull )
-                .collect( Collectors.toList() );
+    /**
+     * Streams projects available to the user, parsing them from the response one by one.
+     * The stream holds the connection and must be closed, e.g. with try-with-resources.
+     * @throws SecurityException when stream is consumed, if server returned an error
+     */
+    public Stream<Project> streamProjectList(JWToken jwToken)
+    {
+        String errorPrefix = "During list of projects request for '" + jwToken.getUsername() + "'";
+        return streamArray( jwToken.getUsername(), ACTION_GET_PROJECT_LIST, tokenParameters( jwToken ), "projectList",
+                Project::createFromJSON, response -> checkResponse( errorPrefix, response ),
+                () -> getProjectList( jwToken ).stream() );
+    }
+
+    /**
+     * Publishes projects available to the user, requesting them from the server page by page with 'offset' and 'limit' parameters.
+     * Projects are emitted in server order.
+     * @param pageSize number of projects requested at once
+     * @param prefetch number of pages requested ahead of the page being emitted
+     */
+    public PagedPublisher<Project> publishProjectList(JWToken jwToken, int pageSize, int prefetch)
+    {
+        String errorPrefix = "During list of projects request for '" + jwToken.getUsername() + "'";
+        return new PagedPublisher<>( (offset, limit) -> askServerForPage( jwToken.getUsername(), ACTION_GET_PROJECT_LIST,
+                pageParameters( tokenParameters( jwToken ), offset, limit ) )
+                        .thenApply( response -> parsePage( errorPrefix, response, "projectList", Project::createFromJSON ) ),
+                pageSize, prefetch );
     }
 
     public void createProjectWithPermissions(JWToken jwToken, String projectName, int permission)
     {
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
-        parameters.put( ATTR_PROJECT_NAME, projectName );
-        parameters.put( ATTR_PERMISSION, String.valueOf( permission ) );
+        traced( "createProjectWithPermissions", jwToken.getUsername(), () -> {
+            JSONObject jsonResponse = askServer( jwToken.getUsername(), ACTION_CREATE_PROJECT,
+                    createProjectParameters( jwToken, projectName, permission ) );
+            checkResponse( "During creating of new project ('" + projectName + "')", jsonResponse );
+            onProjectCreated( projectName, effectiveUser( jwToken.getUsername() ), permission );
+        } );
+    }
 
-        JSONObject jsonResponse = biostoreConnector.askServer( jwToken.getUsername(), ACTION_CREATE_PROJECT, parameters );
-        checkResponse( "During creating of new project ('" + projectName + "')", jsonResponse );
+    public CompletableFuture<Void> createProjectWithPermissionsAsync(JWToken jwToken, String projectName, int permission)
+    {
+        return tracedAsync( "createProjectWithPermissionsAsync", jwToken.getUsername(), () -> askServerAsync( jwToken.getUsername(),
+                ACTION_CREATE_PROJECT, createProjectParameters( jwToken, projectName, permission ) )
+                        .thenAccept( response -> {
+                            checkResponse( "During creating of new project ('" + projectName + "')", response );
+                            onProjectCreated( projectName, effectiveUser( jwToken.getUsername() ), permission );
+                        } ) );
     }
 
     public void addUserToProject(JWToken jwToken, String userToAdd, String projectName)
+    {
+        traced( "addUserToProject", jwToken.getUsername(), () -> {
+            JSONObject jsonResponse = askServer( jwToken.getUsername(), ACTION_ADD_TO_PROJECT,
+                    addUserParameters( jwToken, userToAdd, projectName ) );
+            checkResponse( "During adding '" + userToAdd + "' to project '" + projectName + "'", jsonResponse );
+            onUserAdded( projectName, userToAdd );
+        } );
+    }
+
+    public CompletableFuture<Void> addUserToProjectAsync(JWToken jwToken, String userToAdd, String projectName)
+    {
+        return tracedAsync( "addUserToProjectAsync", jwToken.getUsername(), () -> askServerAsync( jwToken.getUsername(),
+                ACTION_ADD_TO_PROJECT, addUserParameters( jwToken, userToAdd, projectName ) ).thenAccept( response -> {
+                    checkResponse( "During adding '" + userToAdd + "' to project '" + projectName + "'", response );
+                    onUserAdded( projectName, userToAdd );
+                } ) );
+    }
+
+    public void changeUserRoleInProject(JWToken jwToken, String projectName, String userToChange, String newRole)
+    {
+        traced( "changeUserRoleInProject", jwToken.getUsername(), () -> {
+            JSONObject jsonResponse = askServer( jwToken.getUsername(), ACTION_CHANGE_ROLE_IN_PROJECT,
+                    changeRoleParameters( jwToken, projectName, userToChange, newRole ) );
+            checkResponse( "During changing role of '" + userToChange + "' in project '" + projectName + "'", jsonResponse );
+            onRoleChanged( projectName, userToChange, newRole );
+        } );
+    }
+
+    public CompletableFuture<Void> changeUserRoleInProjectAsync(JWToken jwToken, String projectName, String userToChange, String newRole)
+    {
+        return tracedAsync( "changeUserRoleInProjectAsync", jwToken.getUsername(), () -> askServerAsync( jwToken.getUsername(),
+                ACTION_CHANGE_ROLE_IN_PROJECT, changeRoleParameters( jwToken, projectName, userToChange, newRole ) ).thenAccept( response -> {
+                    checkResponse( "During changing role of '" + userToChange + "' in project '" + projectName + "'", response );
+                    onRoleChanged( projectName, userToChange, newRole );
+                } ) );
+    }
+
+    public List<ProjectUser> getProjectUsers(JWToken jwToken, String projectName)
+    {
+        return traced( "getProjectUsers", jwToken.getUsername(), () -> {
+            JSONObject jsonResponse = askServer( jwToken.getUsername(), ACTION_PROJECT_USERS,
+                    projectUsersParameters( jwToken, projectName ) );
+            return parseOnce( ACTION_PROJECT_USERS, jsonResponse, r -> toMembership( parseProjectUsers( projectName, r ) ) );
+        } );
+    }
+
+    /**
+     * Same as {@link #getProjectUsers(JWToken, String)}, but always returns memory-compact list regardless of
+     * {@link #setCompactMembership(boolean)}
+     */
+    public CompactProjectUserList getProjectUsersCompact(JWToken jwToken, String projectName)
+    {
+        return CompactProjectUserList.of( getProjectUsers( jwToken, projectName ) );
+    }
+
+    /**
+     * Streams members of the project, parsing them from the response one by one.
+     * Unlike {@link #getProjectUsers(JWToken, String)} members are returned in server order, not sorted.
+     * The stream holds the connection and must be closed, e.g. with try-with-resources.
+     * @throws SecurityException when stream is consumed, if server returned an error
+     */
+    public Stream<ProjectUser> streamProjectUsers(JWToken jwToken, String projectName)
+    {
+        String errorPrefix = "During list of users request for project '" + projectName + "'";
+        return streamArray( jwToken.getUsername(), ACTION_PROJECT_USERS, projectUsersParameters( jwToken, projectName ), "projectUsers",
+                ProjectUser::createFromJSON, response -> checkResponse( errorPrefix, response ),
+                () -> getProjectUsers( jwToken, projectName ).stream() );
+    }
+
+    /**
+     * Publishes members of the project, requesting them from the server page by page with 'offset' and 'limit' parameters,
+     * so the first members are available before the whole list is transferred.
+     * Unlike {@link #getProjectUsers(JWToken, String)} members are emitted in server order, not sorted.
+     * @param pageSize number of members requested at once
+     * @param prefetch number of pages requested ahead of the page being emitted
+     */
+    public PagedPublisher<ProjectUser> publishProjectUsers(JWToken jwToken, String projectName, int pageSize, int prefetch)
+    {
+        String errorPrefix = "During list of users request for project '" + projectName + "'";
+        return new PagedPublisher<>( (offset, limit) -> askServerForPage( jwToken.getUsername(), ACTION_PROJECT_USERS,
+                pageParameters( projectUsersParameters( jwToken, projectName ), offset, limit ) )
+                        .thenApply( response -> parsePage( errorPrefix, response, "projectUsers", ProjectUser::createFromJSON ) ),
+                pageSize, prefetch );
+    }
+
+    public CompletableFuture<List<ProjectUser>> getProjectUsersAsync(JWToken jwToken, String projectName)
+    {
+        return tracedAsync( "getProjectUsersAsync", jwToken.getUsername(), () -> askServerAsync( jwToken.getUsername(),
+                ACTION_PROJECT_USERS, projectUsersParameters( jwToken, projectName ) ).thenApply(
+                        response -> parseOnce( ACTION_PROJECT_USERS, response, r -> toMembership( parseProjectUsers( projectName, r ) ) ) ) );
+    }
+
+    /**
+     * Logs in. Tokens of sudo logins ({@code admin$target} user names) are taken from the
+     * {@link #setSudoTokenCache(SudoTokenCache) sudo token cache} if it is set.
+     */
+    public JWToken getJWToken(String username, String password)
+    {
+        return traced( "getJWToken", username, () -> {
+            SudoTokenCache cache = sudoTokenCache;
+            if( cache != null && username.indexOf( '$' ) > 0 )
+                return cache.getToken( this, username, password );
+            return login( username, password );
+        } );
+    }
+
+    /**
+     * Logs in bypassing the sudo token cache
+     */
+    JWToken login(String username, String password)
+    {
+        JSONObject response = askServer( username, ACTION_LOGIN, loginParameters( username, password ) );
+        return issued( parseLogin( username, response ) );
+    }
+
+    /**
+     * Logs in asynchronously. Sudo logins use the {@link #setSudoTokenCache(SudoTokenCache) sudo token cache}
+     * on the executor supplied in constructor, without it they bypass the cache.
+     */
+    public CompletableFuture<JWToken> getJWTokenAsync(String username, String password)
+    {
+        SudoTokenCache cache = sudoTokenCache;
+        if( cache != null && executor != null && username.indexOf( '$' ) > 0 )
+            return tracedAsync( "getJWTokenAsync", username,
+                    () -> AsyncBiostoreConnectorImpl.supplyAsync( () -> cache.getToken( this, username, password ), executor ) );
+        return tracedAsync( "getJWTokenAsync", username,
+                () -> askServerAsync( username, ACTION_LOGIN, loginParameters( username, password ) )
+                        .thenApply( response -> issued( parseLogin( username, response ) ) ) );
+    }
+
+    public JWToken refreshJWToken(JWToken jwToken)
+    {
+        return traced( "refreshJWToken", jwToken.getUsername(), () -> {
+            JSONObject response = askServer( jwToken.getUsername(), ACTION_REFRESH_J_W_TOKEN, tokenParameters( jwToken ) );
+            return issued( parseRefresh( jwToken, response ) );
+        } );
+    }
+
+    public CompletableFuture<JWToken> refreshJWTokenAsync(JWToken jwToken)
+    {
+        return tracedAsync( "refreshJWTokenAsync", jwToken.getUsername(),
+                () -> askServerAsync( jwToken.getUsername(), ACTION_REFRESH_J_W_TOKEN, tokenParameters( jwToken ) )
+                        .thenApply( response -> issued( parseRefresh( jwToken, response ) ) ) );
+    }
+
+    public void logout(JWToken jwToken)
+    {
+        traced( "logout", jwToken.getUsername(), () -> {
+            // cached tokens are dropped even if the request fails, they may be revoked already
+            onLoggedOut( jwToken );
+            JSONObject jsonResponse = askServer( jwToken.getUsername(), ACTION_LOGOUT, tokenParameters( jwToken ) );
+            checkResponse( "During logout", jsonResponse );
+        } );
+    }
+
+    public CompletableFuture<Void> logoutAsync(JWToken jwToken)
+    {
+        onLoggedOut( jwToken );
+        return tracedAsync( "logoutAsync", jwToken.getUsername(),
+                () -> askServerAsync( jwToken.getUsername(), ACTION_LOGOUT, tokenParameters( jwToken ) )
+                        .thenAccept( response -> checkResponse( "During logout", response ) ) );
+    }
+
+    private JWToken issued(JWToken jwToken)
+    {
+        onTokenIssued( jwToken );
+        return jwToken;
+    }
+
+    /**
+     * Called for every token the server issued on login or refresh
+     */
+    protected void onTokenIssued(JWToken jwToken)
+    {
+    }
+
+    /**
+     * Called before logout request is sent, drops the token from the sudo token cache
+     */
+    protected void onLoggedOut(JWToken jwToken)
+    {
+        SudoTokenCache cache = sudoTokenCache;
+        if( cache != null )
+            cache.loggedOut( jwToken );
+    }
+
+    /**
+     * Adds users to the project in parallel
+     * @return per-user results, failed calls do not stop the others
+     */
+    public BulkResult<String> addUsersToProject(JWToken jwToken, String projectName, Collection<String> users)
+    {
+        return traced( "addUsersToProject", jwToken.getUsername(),
+                () -> runBulk( users, user -> addUserToProject( jwToken, user, projectName ) ) );
+    }
+
+    /**
+     * Changes roles of users in the project in parallel
+     * @param userRoles new role for each user
+     * @return per-user results, failed calls do not stop the others
+     */
+    public BulkResult<String> changeRoles(JWToken jwToken, String projectName, Map<String, String> userRoles)
+    {
+        return traced( "changeRoles", jwToken.getUsername(),
+                () -> runBulk( userRoles.keySet(), user -> changeUserRoleInProject( jwToken, projectName, user, userRoles.get( user ) ) ) );
+    }
+
+    /**
+     * Creates projects in parallel
+     * @param projectPermissions permissions for each new project
+     * @return per-project results, failed calls do not stop the others
+     */
+    public BulkResult<String> createProjects(JWToken jwToken, Map<String, Integer> projectPermissions)
+    {
+        return traced( "createProjects", jwToken.getUsername(), () -> runBulk( projectPermissions.keySet(),
+                projectName -> createProjectWithPermissions( jwToken, projectName, projectPermissions.get( projectName ) ) ) );
+    }
+
+    /**
+     * Same as {@link #getProjectsWithUsers(JWToken, long, TimeUnit)} without own time budget
+     */
+    public Map<Project, List<ProjectUser>> getProjectsWithUsers(JWToken jwToken)
+    {
+        return getProjectsWithUsers( jwToken, Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Loads projects of the user together with their members. Members of different projects are requested in parallel,
+     * at most {@link #getBulkParallelism()} at once, with {@link Priority#INTERACTIVE} priority unless the caller set another one.
+     * <p>
+     * Failure to load members of a project does not fail the call: the project is mapped to null and the error is logged.
+     * The same happens to projects whose members were not loaded within the time budget.
+     * @param budget time budget of the whole call including the list of projects, applies together with the
+     *        {@link Deadline#current() current deadline} if there is one
+     * @return members of each project in the order of the project list, null for projects whose members could not be loaded
+     */
+    @SuppressWarnings("try")
+    public Map<Project, List<ProjectUser>> getProjectsWithUsers(JWToken jwToken, long budget, TimeUnit unit)
+    {
+        return traced( "getProjectsWithUsers", jwToken.getUsername(), () -> {
+            Deadline current = Deadline.current();
+            // child of the current deadline, so that its cancellation stops the fan-out too
+            Deadline deadline = current == null ? Deadline.after( budget, unit ) : current.newChild( budget, unit );
+            try( Deadline.Scope scope = deadline.enter();
+                    Priority.Scope priorityScope = Priority.current() == null ? Priority.INTERACTIVE.enter() : null )
+            {
+                List<Project> projects = getProjectList( jwToken );
+                Map<Project, List<ProjectUser>> result = new ConcurrentHashMap<>();
+                BulkResult<Project> bulkResult = runBulk( projects,
+                        project -> {
+                            // requests not started before the budget is spent are skipped, those in flight are aborted by the connector
+                            deadline.check( ACTION_PROJECT_USERS );
+                            result.put( project, getProjectUsers( jwToken, project.getProjectName() ) );
+                        } );
+
+                Map<Project, List<ProjectUser>> ordered = new LinkedHashMap<>();
+                for( BulkResult.Item<Project> item : bulkResult.getItems() )
+                {
+                    if( !item.isSuccess() )
+                        log.log( Level.WARNING, "Cannot load members of project '" + item.getItem().getProjectName() + "'",
+                                item.getError() );
+                    ordered.put( item.getItem(), result.get( item.getItem() ) );
+                }
+                return ordered;
+            }
+            finally
+            {
+                // releases the registration in the current deadline
+                deadline.cancel();
+            }
+        } );
+    }
+
+    /**
+     * Same as {@link #warmUp(Map, boolean)} without service accounts
+     */
+    public WarmUpReport warmUp()
+    {
+        return warmUp( Collections.emptyMap(), false );
+    }
+
+    /**
+     * Prepares the provider for the first user requests, which otherwise pay for DNS resolution, TCP and TLS handshakes,
+     * class loading and logins. First connections to the server (to every mirror if there are several) are established
+     * and the request path is exercised, see {@link BiostoreConnectorImpl#warmUp(int)}. Then service accounts log in in parallel,
+     * at most {@link #getBulkParallelism()} at once, and optionally fetch their project lists.
+     * <p>
+     * Warm-up does not throw if the server is unavailable or a login fails: failed steps are reported with their errors.
+     * @param serviceAccounts passwords of service accounts by user name
+     * @param prefetchProjectLists whether service accounts fetch their project lists after login
+     * @return timing of every step and tokens of service accounts which logged in
+     */
+    public WarmUpReport warmUp(Map<String, String> serviceAccounts, boolean prefetchProjectLists)
+    {
+        return traced( "warmUp", null, () -> {
+            long start = System.nanoTime();
+            List<WarmUpReport.Step> steps = warmUpConnections();
+            Map<String, JWToken> tokens = new ConcurrentHashMap<>();
+            Map<String, List<WarmUpReport.Step>> accountSteps = new ConcurrentHashMap<>();
+            List<String> usernames = new ArrayList<>( serviceAccounts.keySet() );
+            Collections.sort( usernames );
+            runBulk( usernames, username -> {
+                List<WarmUpReport.Step> list = new ArrayList<>();
+                JWToken jwToken = timeStep( list, WarmUpReport.STEP_LOGIN, username,
+                        () -> getJWToken( username, serviceAccounts.get( username ) ) );
+                if( jwToken != null )
+                {
+                    tokens.put( username, jwToken );
+                    if( prefetchProjectLists )
+                        timeStep( list, WarmUpReport.STEP_PROJECT_LIST, username, () -> getProjectList( jwToken ) );
+                }
+                accountSteps.put( username, list );
+            } );
+            for( String username : usernames )
+                steps.addAll( accountSteps.getOrDefault( username, Collections.emptyList() ) );
+
+            WarmUpReport report = new WarmUpReport( steps, tokens );
+            log.log( report.isAllSucceeded() ? Level.INFO : Level.WARNING,
+                    "Warm-up completed in " + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) + " ms: " + report );
+            return report;
+        } );
+    }
+
+    /**
+     * Warms up every {@link BiostoreConnectorImpl} the requests go through, in parallel.
+     * Other connectors are warmed up by a single anonymous request.
+     */
+    protected List<WarmUpReport.Step> warmUpConnections()
+    {
+        List<BiostoreConnectorImpl> servers = new ArrayList<>();
+        collectServers( biostoreConnector, servers );
+
+        List<WarmUpReport.Step> steps = new ArrayList<>();
+        if( servers.isEmpty() )
+        {
+            timeStep( steps, WarmUpReport.STEP_CONNECT, null, () -> askServer( null, ACTION_GET_PROJECT_LIST, Collections.emptyMap() ) );
+            return steps;
+        }
+        Map<BiostoreConnectorImpl, WarmUpReport> reports = new ConcurrentHashMap<>();
+        runBulk( servers, server -> reports.put( server, server.warmUp( DEFAULT_WARM_UP_REQUESTS ) ) );
+        for( BiostoreConnectorImpl server : servers )
+            steps.addAll( reports.get( server ).getSteps() );
+        return steps;
+    }
+
+    /**
+     * Finds servers behind load balancer and decorators
+     */
+    private static void collectServers(BiostoreConnector connector, List<BiostoreConnectorImpl> servers)
+    {
+        if( connector instanceof BiostoreConnectorImpl )
+            servers.add( (BiostoreConnectorImpl)connector );
+        else if( connector instanceof LoadBalancingBiostoreConnector )
+        {
+            LoadBalancingBiostoreConnector balancer = (LoadBalancingBiostoreConnector)connector;
+            for( int i = 0; i < balancer.getEndpointCount(); i++ )
+                collectServers( balancer.getEndpoint( i ), servers );
+        }
+        else if( connector instanceof ResilientBiostoreConnector )
+            collectServers( ( (ResilientBiostoreConnector)connector ).getDelegate(), servers );
+        else if( connector instanceof CoalescingBiostoreConnector )
+            collectServers( ( (CoalescingBiostoreConnector)connector ).getDelegate(), servers );
+        else if( connector instanceof SchedulingBiostoreConnector )
+            collectServers( ( (SchedulingBiostoreConnector)connector ).getDelegate(), servers );
+        else if( connector instanceof AsyncBiostoreConnectorImpl )
+            collectServers( ( (AsyncBiostoreConnectorImpl)connector ).getDelegate(), servers );
+    }
+
+    private static <T> T timeStep(List<WarmUpReport.Step> steps, String name, String target, Supplier<T> step)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            T result = step.get();
+            steps.add( new WarmUpReport.Step( name, target, System.nanoTime() - start, null ) );
+            return result;
+        }
+        catch( RuntimeException e )
+        {
+            steps.add( new WarmUpReport.Step( name, target, System.nanoTime() - start, e ) );
+            return null;
+        }
+    }
+
+    /**
+     * Calls the action for every item keeping at most {@link #getBulkParallelism()} calls in flight.
+     * Uses the executor supplied in constructor or a temporary thread pool if there is none.
+     * Calls run with the current {@link Priority} of the caller, {@link Priority#BULK} if it is not set,
+     * and with its {@link Deadline} and {@link SpanContext}.
+     */
+    @SuppressWarnings("try")
+    protected <T> BulkResult<T> runBulk(Collection<T> items, Consumer<T> action)
+    {
+        List<T> itemList = new ArrayList<>( items );
+        RuntimeException[] errors = new RuntimeException[itemList.size()];
+        int parallelism = Math.min( bulkParallelism, Math.max( 1, itemList.size() ) );
+        ExecutorService ownExecutor = executor == null ? Executors.newFixedThreadPool( parallelism ) : null;
+        Executor bulkExecutor = executor == null ? ownExecutor : executor;
+        Semaphore permits = new Semaphore( parallelism );
+        CountDownLatch done = new CountDownLatch( itemList.size() );
+        Deadline deadline = Deadline.current();
+        Priority priority = Priority.current() == null ? Priority.BULK : Priority.current();
+        SpanContext spanContext = SpanContext.current();
+        try
+        {
+            for( int i = 0; i < itemList.size(); i++ )
+            {
+                int index = i;
+                permits.acquire();
+                Runnable task = () -> {
+                    try( Deadline.Scope scope = deadline == null ? null : deadline.enter();
+                            Priority.Scope priorityScope = priority.enter();
+                            SpanContext.Scope spanScope = spanContext == null ? null : spanContext.enter() )
+                    {
+                        action.accept( itemList.get( index ) );
+                    }
+                    catch( RuntimeException e )
+                    {
+                        errors[index] = e;
+                    }
+                    finally
+                    {
+                        permits.release();
+                        done.countDown();
+                    }
+                };
+                try
+                {
+                    bulkExecutor.execute( task );
+                }
+                catch( RejectedExecutionException e )
+                {
+                    errors[index] = e;
+                    permits.release();
+                    done.countDown();
+                }
+            }
+            done.await();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Bulk operation was interrupted", e );
+        }
+        finally
+        {
+            if( ownExecutor != null )
+                ownExecutor.shutdown();
+        }
+
+        List<BulkResult.Item<T>> result = new ArrayList<>( itemList.size() );
+        for( int i = 0; i < itemList.size(); i++ )
+            result.add( new BulkResult.Item<>( itemList.get( i ), errors[i] ) );
+        return new BulkResult<>( result );
+    }
+
+    /**
+     * Streams elements of the array member of the response if connector supports streaming.
+     * The {@link ConnectorListener listener} is notified when the stream is closed, with the outcome taken from
+     * the response type if it was read by then, otherwise {@link RequestOutcome#OTHER}.
+     * @param fallback used if connector cannot stream responses
+     */
+    private <T> Stream<T> streamArray(String username, String action, Map<String, String> parameters, String arrayKey,
+            Function<JSONObject, T> mapper, Consumer<JSONObject> envelopeCheck, Supplier<Stream<T>> fallback)
+    {
+        if( !( biostoreConnector instanceof StreamingBiostoreConnector ) )
+            return fallback.get();
+        ConnectorListener l = listener;
+        long start = System.nanoTime();
+        Reader reader;
+        try
+        {
+            reader = traced( "openResponse " + action, username,
+                    () -> ( (StreamingBiostoreConnector)biostoreConnector ).openResponse( username, action, parameters ) );
+        }
+        catch( RuntimeException e )
+        {
+            if( l != null )
+                l.callCompleted( action, RequestOutcome.TRANSPORT_FAILURE, System.nanoTime() - start );
+            throw e;
+        }
+        AtomicReference<RequestOutcome> outcome = new AtomicReference<>( RequestOutcome.OTHER );
+        JsonArraySpliterator<T> spliterator = new JsonArraySpliterator<>( new JSONTokener( reader ), arrayKey, mapper, envelope -> {
+            outcome.set( RequestOutcome.of( envelope ) );
+            envelopeCheck.accept( envelope );
+        } );
+        return StreamSupport.stream( spliterator, false ).onClose( () -> {
+            try
+            {
+                reader.close();
+            }
+            catch( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+            finally
+            {
+                if( l != null )
+                    l.callCompleted( action, outcome.get(), System.nanoTime() - start );
+            }
+        } );
+    }
+
+    /**
+     * Runs the call in a span of the {@link #setTracer(Tracer) tracer} if tracing is enabled
+     * @param method name of the span
+     * @param username user the call is made for, may be null
+     */
+    @SuppressWarnings("try")
+    protected <T> T traced(String method, String username, Supplier<T> call)
+    {
+        Tracer t = tracer;
+        if( t == null )
+            return call.get();
+        Span span = t.startSpan( method ).setAttribute( Span.ATTR_USER, username );
+        try( SpanContext.Scope scope = span.enter() )
+        {
+            return call.get();
+        }
+        catch( RuntimeException e )
+        {
+            span.setError( e );
+            throw e;
+        }
+        finally
+        {
+            span.end();
+        }
+    }
+
+    protected void traced(String method, String username, Runnable call)
+    {
+        traced( method, username, () -> {
+            call.run();
+            return null;
+        } );
+    }
+
+    /**
+     * Same as {@link #withDeadline(Supplier)}, in a span which ends when the returned future completes if tracing is enabled
+     */
+    @SuppressWarnings("try")
+    protected <T> CompletableFuture<T> tracedAsync(String method, String username, Supplier<CompletableFuture<T>> call)
+    {
+        Tracer t = tracer;
+        if( t == null )
+            return withDeadline( call );
+        Span span = t.startSpan( method ).setAttribute( Span.ATTR_USER, username );
+        CompletableFuture<T> result;
+        try( SpanContext.Scope scope = span.enter() )
+        {
+            result = withDeadline( call );
+        }
+        catch( RuntimeException e )
+        {
+            span.setError( e );
+            span.end();
+            throw e;
+        }
+        result.whenComplete( (value, error) -> {
+            if( error != null )
+                span.setError( error instanceof CompletionException && error.getCause() != null ? error.getCause() : error );
+            span.end();
+        } );
+        return result;
+    }
+
+    private static Span startCallSpan(Tracer tracer, String username, String action)
+    {
+        return tracer.startSpan( "askServer " + action ).setAttribute( Span.ATTR_ACTION, action ).setAttribute( Span.ATTR_USER, username );
+    }
+
+    private static void callFailed(Span span, Throwable error)
+    {
+        span.setAttribute( Span.ATTR_OUTCOME, RequestOutcome.TRANSPORT_FAILURE.name() ).setError( error );
+    }
+
+    /**
+     * Starts asynchronous call under a child of the {@link Deadline#current() current deadline},
+     * so that cancellation of the returned future aborts the request in flight
+     */
+    @SuppressWarnings("try")
+    protected <T> CompletableFuture<T> withDeadline(Supplier<CompletableFuture<T>> call)
+    {
+        Deadline parent = Deadline.current();
+        Deadline deadline = parent == null ? Deadline.none() : parent.newChild();
+        CompletableFuture<T> result;
+        try( Deadline.Scope scope = deadline.enter() )
+        {
+            result = call.get();
+        }
+        // also releases the registration in the parent deadline
+        result.whenComplete( (value, error) -> deadline.cancel() );
+        return result;
+    }
+
+    @SuppressWarnings("try")
+    protected CompletableFuture<JSONObject> askServerAsync(String username, String action, Map<String, String> parameters)
+    {
+        Tracer t = tracer;
+        if( t == null )
+            return callConnectorAsync( username, action, parameters );
+        Span span = startCallSpan( t, username, action );
+        CompletableFuture<JSONObject> result;
+        try( SpanContext.Scope scope = span.enter() )
+        {
+            result = callConnectorAsync( username, action, parameters );
+        }
+        result.whenComplete( (response, error) -> {
+            if( error != null )
+                callFailed( span, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error );
+            else
+                span.setAttribute( Span.ATTR_OUTCOME, RequestOutcome.of( response ).name() );
+            span.end();
+        } );
+        return result;
+    }
+
+    private CompletableFuture<JSONObject> callConnectorAsync(String username, String action, Map<String, String> parameters)
+    {
+        if( asyncConnector == null )
+        {
+            CompletableFuture<JSONObject> result = new CompletableFuture<>();
+            result.completeExceptionally( new IllegalStateException( "No executor is configured for asynchronous requests" ) );
+            return result;
+        }
+        ConnectorListener l = listener;
+        if( l == null )
+            return asyncConnector.askServerAsync( username, action, parameters );
+        long start = System.nanoTime();
+        return asyncConnector.askServerAsync( username, action, parameters ).whenComplete( (response, error) -> l.callCompleted( action,
+                error == null ? RequestOutcome.of( response ) : RequestOutcome.TRANSPORT_FAILURE, System.nanoTime() - start ) );
+    }
+
+    /**
+     * Asks asynchronously if there is an executor, otherwise makes synchronous request in the calling thread
+     */
+    private CompletableFuture<JSONObject> askServerForPage(String username, String action, Map<String, String> parameters)
+    {
+        if( asyncConnector != null )
+            return askServerAsync( username, action, parameters );
+        CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        try
+        {
+            result.complete( askServer( username, action, parameters ) );
+        }
+        catch( RuntimeException e )
+        {
+            result.completeExceptionally( e );
+        }
+        return result;
+    }
+
+    /**
+     * All synchronous requests go through this method
+     */
+    @SuppressWarnings("try")
+    protected JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        Tracer t = tracer;
+        if( t == null )
+            return callConnector( username, action, parameters );
+        Span span = startCallSpan( t, username, action );
+        try( SpanContext.Scope scope = span.enter() )
+        {
+            JSONObject response = callConnector( username, action, parameters );
+            span.setAttribute( Span.ATTR_OUTCOME, RequestOutcome.of( response ).name() );
+            return response;
+        }
+        catch( RuntimeException e )
+        {
+            callFailed( span, e );
+            throw e;
+        }
+        finally
+        {
+            span.end();
+        }
+    }
+
+    private JSONObject callConnector(String username, String action, Map<String, String> parameters)
+    {
+        ConnectorListener l = listener;
+        if( l == null )
+            return biostoreConnector.askServer( username, action, parameters );
+        long start = System.nanoTime();
+        JSONObject response;
+        try
+        {
+            response = biostoreConnector.askServer( username, action, parameters );
+        }
+        catch( RuntimeException e )
+        {
+            l.callCompleted( action, RequestOutcome.TRANSPORT_FAILURE, System.nanoTime() - start );
+            throw e;
+        }
+        l.callCompleted( action, RequestOutcome.of( response ), System.nanoTime() - start );
+        return response;
+    }
+
+    private static Map<String, String> tokenParameters(JWToken jwToken)
     {
         Map<String, String> parameters = new HashMap<>();
         parameters.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
+        return parameters;
+    }
+
+    private static Map<String, String> createProjectParameters(JWToken jwToken, String projectName, int permission)
+    {
+        Map<String, String> parameters = tokenParameters( jwToken );
         parameters.put( ATTR_PROJECT_NAME, projectName );
-        parameters.put( ATTR_GROUP_USER, userToAdd );
+        parameters.put( ATTR_PERMISSION, String.valueOf( permission ) );
+        return parameters;
+    }
 
-        JSONObject jsonResponse = biostoreConnector.askServer( jwToken.getUsername(), ACTION_ADD_TO_PROJECT, parameters );
-        checkResponse( "During adding '" + userToAdd + "' to project '" + projectName + "'", jsonResponse );
+    private static Map<String, String> addUserParameters(JWToken jwToken, String userToAdd, String projectName)
+    {
+        Map<String, String> parameters = tokenParameters( jwToken );
+        parameters.put( ATTR_PROJECT_NAME, projectName );
+        parameters.put( ATTR_GROUP_USER, userToAdd );
+        return parameters;
     }
 
-    public void changeUserRoleInProject(JWToken jwToken, String projectName, String userToChange, String newRole)
+    private static Map<String, String> changeRoleParameters(JWToken jwToken, String projectName, String userToChange, String newRole)
     {
-        Map<String, String> params = new HashMap<>();
-        params.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
+        Map<String, String> params = tokenParameters( jwToken );
         params.put( ATTR_GROUP_USER, userToChange );
         params.put( ATTR_PROJECT_NAME, projectName );
         params.put( ATTR_GROUP_ROLE, newRole );
-
-        JSONObject jsonResponse = biostoreConnector.askServer( jwToken.getUsername(), ACTION_CHANGE_ROLE_IN_PROJECT, params );
-        checkResponse( "During changing role of '" + userToChange + "' in project '" + projectName + "'", jsonResponse );
+        return params;
     }
 
-    public List<ProjectUser> getProjectUsers(JWToken jwToken, String projectName)
+    private static Map<String, String> projectUsersParameters(JWToken jwToken, String projectName)
     {
-        Map<String, String> params = new HashMap<>();
-        params.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
+        Map<String, String> params = tokenParameters( jwToken );
         params.put( ATTR_PROJECT_NAME, projectName );
+        return params;
+    }
+
+    private static Map<String, String> pageParameters(Map<String, String> params, int offset, int limit)
+    {
+        params.put( ATTR_OFFSET, String.valueOf( offset ) );
+        params.put( ATTR_LIMIT, String.valueOf( limit ) );
+        return params;
+    }
 
-        JSONObject jsonResponse = biostoreConnector.askServer( jwToken.getUsername(), ACTION_PROJECT_USERS, params );
+    private static Map<String, String> loginParameters(String username, String password)
+    {
+        Map<String, String> parameters = new HashMap<>();
+        String[] fields = username.split( "\\$" );
+        parameters.put( ATTR_USERNAME, fields[0] );
+        parameters.put( ATTR_PASSWORD, password );
+        if( fields.length > 1 )
+            parameters.put( ATTR_SUDO, fields[1] );
+        return parameters;
+    }
+
+    private static List<Project> parseProjectList(JWToken jwToken, JSONObject response)
+    {
+        checkResponse( "During list of projects request for '" + jwToken.getUsername() + "'", response );
+
+        return arrayOfObjects( response.getJSONArray( "projectList" ) )
+                .map( Project::createFromJSON )
+                .filter( Objects::nonNull )
+                .collect( Collectors.toList() );
+    }
+
+    private static List<ProjectUser> parseProjectUsers(String projectName, JSONObject jsonResponse)
+    {
         checkResponse( "During list of users request for project '" + projectName + "'", jsonResponse );
 
         return arrayOfObjects( jsonResponse.getJSONArray( "projectUsers" ) )
@@ -123,16 +1220,18 @@ public class DefaultConnectionProvider
                 .collect( Collectors.toList() );
     }
 
-    public JWToken getJWToken(String username, String password)
+    private static <T> PagedPublisher.Page<T> parsePage(String errorPrefix, JSONObject response, String arrayName,
+            Function<JSONObject, T> parser)
     {
-        Map<String, String> parameters = new HashMap<>();
-        String[] fields = username.split( "\\$" );
-        parameters.put( ATTR_USERNAME, fields[0] );
-        parameters.put( ATTR_PASSWORD, password );
-        if( fields.length > 1 )
-            parameters.put( ATTR_SUDO, fields[1] );
+        checkResponse( errorPrefix, response );
 
-        JSONObject response = biostoreConnector.askServer( username, ACTION_LOGIN, parameters );
+        JSONArray array = response.getJSONArray( arrayName );
+        List<T> items = arrayOfObjects( array ).map( parser ).filter( Objects::nonNull ).collect( Collectors.toList() );
+        return new PagedPublisher.Page<>( items, array.length(), response.optInt( ATTR_TOTAL, PagedPublisher.Page.UNKNOWN_TOTAL ) );
+    }
+
+    private static JWToken parseLogin(String username, JSONObject response)
+    {
         checkResponse( "During authorizing '" + username + "'", response );
 
         String jwToken = response.optString( ATTR_JWTOKEN, null );
@@ -141,12 +1240,8 @@ public class DefaultConnectionProvider
         return new JWToken( username, jwToken );
     }
 
-    public JWToken refreshJWToken(JWToken jwToken)
+    private static JWToken parseRefresh(JWToken jwToken, JSONObject response)
     {
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
-
-        JSONObject response = biostoreConnector.askServer( jwToken.getUsername(), ACTION_REFRESH_J_W_TOKEN, parameters );
         checkResponse( "During refreshing token for '" + jwToken.getUsername() + "'", response );
 
         String jwTokenStr = response.optString( ATTR_JWTOKEN, null );
@@ -155,15 +1250,6 @@ public class DefaultConnectionProvider
         return new JWToken( jwToken.getUsername(), jwTokenStr );
     }
 
-    public void logout(JWToken jwToken)
-    {
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put( ATTR_JWTOKEN, jwToken.getTokenValue() );
-
-        JSONObject jsonResponse = biostoreConnector.askServer( jwToken.getUsername(), ACTION_LOGOUT, parameters );
-        checkResponse( "During logout", jsonResponse );
-    }
-
     private static void checkResponse(String errorMessagePrefix, JSONObject response)
     {
         if( !TYPE_OK.equals( response.optString( ATTR_TYPE ) ) )
@@ -176,11 +1262,6 @@ public class DefaultConnectionProvider
 
     private static Stream<JSONObject> arrayOfObjects(JSONArray value)
     {
-        List<JSONObject> arr = new ArrayList<>();
-        for( int i = 0; i < value.length(); i++ )
-        {
-            arr.add( value.getJSONObject( i ) );
-        }
-        return arr.stream();
+        return IntStream.range( 0, value.length() ).mapToObj( value::getJSONObject );
     }
 }
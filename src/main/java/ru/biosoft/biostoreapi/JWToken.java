@@ -1,14 +1,32 @@
 package ru.biosoft.biostoreapi;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.json.JSONObject;
+
 public class JWToken
 {
     private final String username;
     private final String jwToken;
 
+    /**
+     * Claims decoded from the token payload, null if token is not a JWT or claim is absent
+     */
+    private final Instant expiresAt;
+    private final Instant issuedAt;
+    private final String subject;
+
     public JWToken(String username, String jwToken)
     {
         this.username = username;
         this.jwToken = jwToken;
+
+        JSONObject claims = decodeClaims( jwToken );
+        this.expiresAt = claims != null && claims.has( "exp" ) ? Instant.ofEpochSecond( claims.optLong( "exp" ) ) : null;
+        this.issuedAt = claims != null && claims.has( "iat" ) ? Instant.ofEpochSecond( claims.optLong( "iat" ) ) : null;
+        this.subject = claims != null ? claims.optString( "sub", null ) : null;
     }
 
     public String getUsername()
@@ -21,6 +39,61 @@ public class JWToken
         return jwToken;
     }
 
+    /**
+     * @return value of 'exp' claim or null if it is unknown
+     */
+    public Instant getExpiresAt()
+    {
+        return expiresAt;
+    }
+
+    /**
+     * @return value of 'iat' claim or null if it is unknown
+     */
+    public Instant getIssuedAt()
+    {
+        return issuedAt;
+    }
+
+    /**
+     * @return value of 'sub' claim or null if it is unknown
+     */
+    public String getSubject()
+    {
+        return subject;
+    }
+
+    /**
+     * @return true if token has expiration time and it has passed, tokens without 'exp' claim are never considered expired
+     */
+    public boolean isExpired()
+    {
+        return expiresAt != null && !Instant.now().isBefore( expiresAt );
+    }
+
+    /**
+     * Decodes payload of the token without signature verification
+     * @return claims or null if value is not a JSON web token
+     */
+    private static JSONObject decodeClaims(String jwToken)
+    {
+        if( jwToken == null )
+            return null;
+        int start = jwToken.indexOf( '.' );
+        int end = start < 0 ? -1 : jwToken.indexOf( '.', start + 1 );
+        if( end < 0 )
+            return null;
+        try
+        {
+            byte[] payload = Base64.getUrlDecoder().decode( jwToken.substring( start + 1, end ) );
+            return new JSONObject( new String( payload, StandardCharsets.UTF_8 ) );
+        }
+        catch( RuntimeException e )
+        {
+            return null;
+        }
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -0,0 +1,211 @@
+package ru.biosoft.biostoreapi;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.biosoft.biostoreapi.impl.HashedWheelTimer;
+
+/**
+ * Keeps registered tokens fresh: each token is refreshed shortly before its 'exp' claim.
+ * Refresh deadlines are kept in a hashed timing wheel, so the number of live sessions does not
+ * affect scheduling cost, and due refreshes are dispatched to the executor with bounded concurrency.
+ */
+public class JWTokenManager implements AutoCloseable
+{
+    private static final Logger log = Logger.getLogger( JWTokenManager.class.getName() );
+
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private final DefaultConnectionProvider provider;
+    private final Executor executor;
+    private final long refreshAheadMillis;
+    private final int maxConcurrentRefreshes;
+    private final HashedWheelTimer timer;
+
+    private final Queue<ManagedToken> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param provider provider to refresh tokens through
+     * @param executor executor to run refresh requests on
+     * @param refreshAhead how long before expiration a token should be refreshed
+     * @param maxConcurrentRefreshes maximal number of refresh requests in flight
+     */
+    public JWTokenManager(DefaultConnectionProvider provider, Executor executor, Duration refreshAhead, int maxConcurrentRefreshes)
+    {
+        this( provider, executor, refreshAhead, maxConcurrentRefreshes, 1, TimeUnit.SECONDS );
+    }
+
+    /**
+     * @param tickDuration precision of refresh scheduling
+     * @param unit time unit of tickDuration
+     */
+    public JWTokenManager(DefaultConnectionProvider provider, Executor executor, Duration refreshAhead, int maxConcurrentRefreshes,
+            long tickDuration, TimeUnit unit)
+    {
+        if( maxConcurrentRefreshes <= 0 )
+            throw new IllegalArgumentException( "Concurrency limit must be positive: " + maxConcurrentRefreshes );
+        this.provider = provider;
+        this.executor = executor;
+        this.refreshAheadMillis = refreshAhead.toMillis();
+        this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+        this.timer = new HashedWheelTimer( tickDuration, unit, 512, "JWTokenManager timer" );
+    }
+
+    /**
+     * Starts managing the token. Tokens without 'exp' claim are returned as is and never refreshed.
+     * @param jwToken token to keep fresh
+     * @param onRefresh called with the new token after each successful refresh, may be null
+     * @return handle providing the current token
+     */
+    public ManagedToken register(JWToken jwToken, Consumer<JWToken> onRefresh)
+    {
+        ManagedToken managed = new ManagedToken( jwToken, onRefresh );
+        schedule( managed );
+        return managed;
+    }
+
+    public ManagedToken register(JWToken jwToken)
+    {
+        return register( jwToken, null );
+    }
+
+    /**
+     * @return number of refresh requests currently in flight
+     */
+    public int getRefreshesInFlight()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * Stops scheduling refreshes, tokens keep their last values
+     */
+    @Override
+    public void close()
+    {
+        timer.close();
+    }
+
+    private void schedule(ManagedToken managed)
+    {
+        Instant expiresAt = managed.token.getExpiresAt();
+        if( expiresAt == null || managed.closed )
+            return;
+        long delay = expiresAt.toEpochMilli() - refreshAheadMillis - System.currentTimeMillis();
+        managed.timeout = timer.schedule( () -> enqueue( managed ), delay, TimeUnit.MILLISECONDS );
+    }
+
+    private void scheduleRetry(ManagedToken managed)
+    {
+        if( managed.token.isExpired() || managed.closed )
+        {
+            log.warning( "Token of '" + managed.token.getUsername() + "' expired and cannot be refreshed" );
+            return;
+        }
+        managed.timeout = timer.schedule( () -> enqueue( managed ), RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    private void enqueue(ManagedToken managed)
+    {
+        pending.add( managed );
+        dispatch();
+    }
+
+    private void dispatch()
+    {
+        while( !pending.isEmpty() )
+        {
+            int current = inFlight.get();
+            if( current >= maxConcurrentRefreshes )
+                return;
+            if( !inFlight.compareAndSet( current, current + 1 ) )
+                continue;
+            ManagedToken managed = pending.poll();
+            if( managed == null )
+            {
+                inFlight.decrementAndGet();
+                return;
+            }
+            try
+            {
+                executor.execute( () -> refresh( managed ) );
+            }
+            catch( RuntimeException e )
+            {
+                inFlight.decrementAndGet();
+                log.log( Level.WARNING, "Cannot dispatch token refresh", e );
+                scheduleRetry( managed );
+            }
+        }
+    }
+
+    private void refresh(ManagedToken managed)
+    {
+        try
+        {
+            if( managed.closed )
+                return;
+            JWToken newToken = provider.refreshJWToken( managed.token );
+            managed.token = newToken;
+            if( managed.onRefresh != null )
+                managed.onRefresh.accept( newToken );
+            schedule( managed );
+        }
+        catch( RuntimeException e )
+        {
+            log.log( Level.WARNING, "Cannot refresh token of '" + managed.token.getUsername() + "'", e );
+            scheduleRetry( managed );
+        }
+        finally
+        {
+            inFlight.decrementAndGet();
+            dispatch();
+        }
+    }
+
+    /**
+     * Handle of the token kept fresh by the manager
+     */
+    public static class ManagedToken implements AutoCloseable
+    {
+        private final Consumer<JWToken> onRefresh;
+        private volatile JWToken token;
+        private volatile HashedWheelTimer.Timeout timeout;
+        private volatile boolean closed;
+
+        ManagedToken(JWToken token, Consumer<JWToken> onRefresh)
+        {
+            this.token = token;
+            this.onRefresh = onRefresh;
+        }
+
+        /**
+         * @return the most recent token
+         */
+        public JWToken getToken()
+        {
+            return token;
+        }
+
+        /**
+         * Stops refreshing the token
+         */
+        @Override
+        public void close()
+        {
+            closed = true;
+            HashedWheelTimer.Timeout t = timeout;
+            if( t != null )
+                t.cancel();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Receives changes of project membership made successfully through {@link DefaultConnectionProvider},
+ * so locally kept membership and permission data can be updated without fetching it again.
+ * Events are delivered on the thread which completed the request.
+ * @see DefaultConnectionProvider#addMembershipListener(MembershipListener)
+ */
+public interface MembershipListener
+{
+    /** Permissions of a role which is not {@link DefaultConnectionProvider#setRolePermissions(String, int) configured} */
+    int UNKNOWN_PERMISSIONS = -1;
+
+    /**
+     * @param owner user who created the project, impersonated user for sudo logins
+     * @param permissions permissions of the owner in the new project
+     */
+    default void projectCreated(String projectName, String owner, int permissions)
+    {
+    }
+
+    /**
+     * Called also if the user was a member of the project already, the server keeps their role then
+     * @param role role of the added user, null if it is unknown
+     * @param permissions permissions of the role or {@link #UNKNOWN_PERMISSIONS}
+     */
+    default void userAdded(String projectName, String user, String role, int permissions)
+    {
+    }
+
+    /**
+     * @param permissions permissions of the new role or {@link #UNKNOWN_PERMISSIONS}
+     */
+    default void roleChanged(String projectName, String user, String newRole, int permissions)
+    {
+    }
+}
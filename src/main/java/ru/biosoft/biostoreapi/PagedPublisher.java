@@ -0,0 +1,348 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of items fetched from the server page by page, with back pressure: items are emitted only as requested,
+ * and pages are fetched only a few pages ahead of the one being emitted. First page is emitted as soon as it arrives.
+ * Every subscriber gets its own sequence of requests.
+ * <p>
+ * The contract is that of Reactive Streams: {@link Subscriber} and {@link Subscription} have the same methods and rules
+ * as {@code org.reactivestreams} and {@code java.util.concurrent.Flow} interfaces, so adapting to either is a matter
+ * of delegation (on Java 11 and newer see {@code ru.biosoft.biostoreapi.FlowAdapter}).
+ * <p>
+ * If server ignores paging parameters and returns the whole list in the first page, the list is emitted and the publisher completes.
+ * If server does not report total number of items, pages are requested until the first page which is shorter than requested.
+ * @see DefaultConnectionProvider#publishProjectUsers(JWToken, String, int, int)
+ * @see DefaultConnectionProvider#publishProjectList(JWToken, int, int)
+ */
+public class PagedPublisher<T>
+{
+    private final PageSource<T> source;
+    private final int pageSize;
+    private final int prefetch;
+
+    /**
+     * @param pageSize number of items requested in one page
+     * @param prefetch number of pages fetched ahead of the page being emitted
+     */
+    public PagedPublisher(PageSource<T> source, int pageSize, int prefetch)
+    {
+        if( pageSize <= 0 )
+            throw new IllegalArgumentException( "Page size must be positive: " + pageSize );
+        if( prefetch <= 0 )
+            throw new IllegalArgumentException( "Prefetch must be positive: " + prefetch );
+        this.source = Objects.requireNonNull( source );
+        this.pageSize = pageSize;
+        this.prefetch = prefetch;
+    }
+
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    public int getPrefetch()
+    {
+        return prefetch;
+    }
+
+    public void subscribe(Subscriber<? super T> subscriber)
+    {
+        Objects.requireNonNull( subscriber );
+        PagedSubscription subscription = new PagedSubscription( subscriber );
+        subscriber.onSubscribe( subscription );
+    }
+
+    /**
+     * Fetches one page of items
+     */
+    @FunctionalInterface
+    public interface PageSource<T>
+    {
+        CompletableFuture<Page<T>> fetch(int offset, int limit);
+    }
+
+    public static class Page<T>
+    {
+        /** Total number of items when server does not report it */
+        public static final int UNKNOWN_TOTAL = -1;
+
+        private final List<T> items;
+        private final int size;
+        private final int total;
+
+        /**
+         * @param items parsed items of the page
+         * @param size number of entries in the server response, may exceed number of items if some entries were skipped
+         * @param total number of items in the whole list as reported by server, {@link #UNKNOWN_TOTAL} if server does not report it
+         */
+        public Page(List<T> items, int size, int total)
+        {
+            this.items = items;
+            this.size = size;
+            this.total = total;
+        }
+
+        public List<T> getItems()
+        {
+            return items;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        public int getTotal()
+        {
+            return total;
+        }
+    }
+
+    /**
+     * Receives items, same contract as {@code org.reactivestreams.Subscriber}
+     */
+    public interface Subscriber<T>
+    {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Same contract as {@code org.reactivestreams.Subscription}
+     */
+    public interface Subscription
+    {
+        /**
+         * @param n number of additional items the subscriber is ready to receive, must be positive
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private class PagedSubscription implements Subscription
+    {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+
+        // guarded by lock
+        private final Object lock = new Object();
+        private final Map<Integer, Page<T>> ready = new HashMap<>();
+        private final List<CompletableFuture<Page<T>>> pending = new ArrayList<>();
+        private boolean started;
+        private boolean firstPageArrived;
+        private int nextFetch;
+        private int nextEmit;
+        /** Index past the last page, once known */
+        private int endPage = Integer.MAX_VALUE;
+        private Throwable error;
+
+        // accessed by the draining thread only
+        private List<T> current = Collections.emptyList();
+        private int position;
+        private boolean done;
+
+        PagedSubscription(Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if( n <= 0 )
+            {
+                fail( new IllegalArgumentException( "Number of requested items must be positive: " + n ) );
+                return;
+            }
+            long current;
+            long next;
+            do
+            {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            }
+            while( !requested.compareAndSet( current, next ) );
+            synchronized( lock )
+            {
+                started = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            List<CompletableFuture<Page<T>>> toCancel;
+            synchronized( lock )
+            {
+                ready.clear();
+                toCancel = new ArrayList<>( pending );
+                pending.clear();
+            }
+            for( CompletableFuture<Page<T>> future : toCancel )
+                future.cancel( false );
+        }
+
+        private void fail(Throwable throwable)
+        {
+            synchronized( lock )
+            {
+                if( error == null )
+                    error = throwable;
+            }
+            drain();
+        }
+
+        private void drain()
+        {
+            if( wip.getAndIncrement() != 0 )
+                return;
+            int missed = 1;
+            do
+            {
+                emit();
+                missed = wip.addAndGet( -missed );
+            }
+            while( missed != 0 );
+        }
+
+        private void emit()
+        {
+            if( done )
+                return;
+            long demand = requested.get();
+            long emitted = 0;
+            while( !cancelled )
+            {
+                if( position < current.size() )
+                {
+                    if( emitted == demand )
+                        break;
+                    subscriber.onNext( current.get( position++ ) );
+                    emitted++;
+                    continue;
+                }
+                Page<T> next;
+                Throwable failure;
+                boolean finished;
+                List<Integer> toFetch;
+                synchronized( lock )
+                {
+                    failure = error;
+                    finished = nextEmit >= endPage;
+                    next = finished ? null : ready.remove( nextEmit );
+                    if( next != null )
+                        nextEmit++;
+                    toFetch = pagesToFetch();
+                }
+                if( failure != null || finished )
+                {
+                    done = true;
+                    cancel();
+                    if( failure != null )
+                        subscriber.onError( failure );
+                    else
+                        subscriber.onComplete();
+                    return;
+                }
+                fetch( toFetch );
+                if( next == null )
+                    break;
+                current = next.getItems();
+                position = 0;
+            }
+            if( emitted > 0 && demand != Long.MAX_VALUE )
+                requested.addAndGet( -emitted );
+        }
+
+        // must be called under lock
+        private List<Integer> pagesToFetch()
+        {
+            if( !started || error != null )
+                return Collections.emptyList();
+            // end of the list is not known before the first page, so other pages are not requested in advance
+            int window = firstPageArrived ? prefetch : 1;
+            List<Integer> result = new ArrayList<>();
+            while( nextFetch < endPage && nextFetch < nextEmit + window )
+                result.add( nextFetch++ );
+            return result;
+        }
+
+        private void fetch(List<Integer> pages)
+        {
+            for( int index : pages )
+            {
+                CompletableFuture<Page<T>> future;
+                try
+                {
+                    future = source.fetch( index * pageSize, pageSize );
+                }
+                catch( RuntimeException e )
+                {
+                    fail( e );
+                    return;
+                }
+                synchronized( lock )
+                {
+                    if( !future.isDone() )
+                        pending.add( future );
+                }
+                future.whenComplete( (page, e) -> pageCompleted( index, future, page, e ) );
+            }
+        }
+
+        private void pageCompleted(int index, CompletableFuture<Page<T>> future, Page<T> page, Throwable e)
+        {
+            if( cancelled )
+                return;
+            synchronized( lock )
+            {
+                pending.remove( future );
+                if( e != null )
+                {
+                    // pages past the end are requested in advance when total is unknown, their failures do not matter
+                    if( error == null && index < endPage )
+                        error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                }
+                else
+                {
+                    firstPageArrived = true;
+                    ready.put( index, page );
+                    endPage = Math.min( endPage, endOf( index, page ) );
+                }
+            }
+            drain();
+        }
+
+        private int endOf(int index, Page<T> page)
+        {
+            if( page.getSize() != pageSize )
+                return index + 1;
+            // without total only a short or empty page tells that the list is over
+            if( page.getTotal() == Page.UNKNOWN_TOTAL )
+                return Integer.MAX_VALUE;
+            long pages = ( (long)page.getTotal() + pageSize - 1 ) / pageSize;
+            return (int)Math.max( index + 1, Math.min( Integer.MAX_VALUE, pages ) );
+        }
+    }
+}
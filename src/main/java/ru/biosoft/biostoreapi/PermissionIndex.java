@@ -0,0 +1,355 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of project permissions of many users, answering permission checks in constant time without allocation.
+ * Project names are interned to int ids shared by all users, each user has an immutable snapshot of permission bitmasks
+ * which is replaced atomically when a fresh project list arrives.
+ * Snapshot is either a dense byte array indexed by project id or, for users with few projects,
+ * an open-addressing hash table of primitive arrays, whichever is smaller.
+ * <p>
+ * Registered as a {@link DefaultConnectionProvider#addMembershipListener(MembershipListener) membership listener}, the index
+ * applies membership changes to known users. A user is removed from the index if their new permissions are unknown.
+ */
+public class PermissionIndex implements MembershipListener
+{
+    private final ConcurrentHashMap<String, Integer> projectIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextProjectId = new AtomicInteger();
+    private final ConcurrentHashMap<String, Snapshot> users = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces permissions of the user with the given project list
+     */
+    public void update(String user, Collection<Project> projects)
+    {
+        int size = projects.size();
+        int[] ids = new int[size];
+        byte[] permissions = new byte[size];
+        int count = 0;
+        int maxId = -1;
+        for( Project project : projects )
+        {
+            if( project == null )
+                continue;
+            int id = intern( project.getProjectName() );
+            ids[count] = id;
+            permissions[count] = (byte)project.getPermissions();
+            count++;
+            maxId = Math.max( maxId, id );
+        }
+        users.put( user, createSnapshot( ids, permissions, count, maxId ) );
+    }
+
+    /**
+     * Sets permissions of the user in one project, if the user is known to the index
+     * @param permissions new permissions, 0 removes the project from the user's permissions
+     */
+    public void setPermissions(String user, String projectName, int permissions)
+    {
+        if( !users.containsKey( user ) )
+            return;
+        int id = intern( projectName );
+        users.computeIfPresent( user, (key, snapshot) -> {
+            if( snapshot.get( id ) == permissions )
+                return snapshot;
+            int size = snapshot.size() + 1;
+            int[] ids = new int[size];
+            byte[] values = new byte[size];
+            int[] count = new int[1];
+            int[] maxId = { -1 };
+            snapshot.forEach( (projectId, projectPermissions) -> {
+                if( projectId == id )
+                    return;
+                ids[count[0]] = projectId;
+                values[count[0]++] = (byte)projectPermissions;
+                maxId[0] = Math.max( maxId[0], projectId );
+            } );
+            if( permissions != 0 )
+            {
+                ids[count[0]] = id;
+                values[count[0]++] = (byte)permissions;
+                maxId[0] = Math.max( maxId[0], id );
+            }
+            return createSnapshot( ids, values, count[0], maxId[0] );
+        } );
+    }
+
+    @Override
+    public void projectCreated(String projectName, String owner, int permissions)
+    {
+        setPermissions( owner, projectName, permissions );
+    }
+
+    @Override
+    public void userAdded(String projectName, String user, String role, int permissions)
+    {
+        if( permissions == UNKNOWN_PERMISSIONS )
+            removeUser( user );
+        // server keeps role of an existing member
+        else if( getPermissions( user, projectName ) == 0 )
+            setPermissions( user, projectName, permissions );
+    }
+
+    @Override
+    public void roleChanged(String projectName, String user, String newRole, int permissions)
+    {
+        if( permissions == UNKNOWN_PERMISSIONS )
+            removeUser( user );
+        else
+            setPermissions( user, projectName, permissions );
+    }
+
+    /**
+     * Fetches project list of the token owner and replaces their permissions with it,
+     * for sudo tokens the impersonated user is updated
+     */
+    public void refresh(DefaultConnectionProvider provider, JWToken jwToken)
+    {
+        update( DefaultConnectionProvider.effectiveUser( jwToken.getUsername() ), provider.getProjectList( jwToken ) );
+    }
+
+    /**
+     * @param permission one or several of Project.PERMISSION_* flags
+     * @return true if user has all the given permissions in the project
+     */
+    public boolean hasPermission(String user, String projectName, int permission)
+    {
+        return ( getPermissions( user, projectName ) & permission ) == permission;
+    }
+
+    /**
+     * Faster variant for callers which keep project ids
+     * @see #getProjectId(String)
+     */
+    public boolean hasPermission(String user, int projectId, int permission)
+    {
+        return ( getPermissions( user, projectId ) & permission ) == permission;
+    }
+
+    /**
+     * @return permissions bitmask of the user in the project, 0 if user or project is unknown
+     */
+    public int getPermissions(String user, String projectName)
+    {
+        Integer id = projectIds.get( projectName );
+        return id == null ? 0 : getPermissions( user, id );
+    }
+
+    public int getPermissions(String user, int projectId)
+    {
+        Snapshot snapshot = users.get( user );
+        return snapshot == null || projectId < 0 ? 0 : snapshot.get( projectId );
+    }
+
+    /**
+     * @return id of the project, -1 if no user has access to it
+     */
+    public int getProjectId(String projectName)
+    {
+        Integer id = projectIds.get( projectName );
+        return id == null ? -1 : id;
+    }
+
+    public boolean containsUser(String user)
+    {
+        return users.containsKey( user );
+    }
+
+    public void removeUser(String user)
+    {
+        users.remove( user );
+    }
+
+    public void clear()
+    {
+        users.clear();
+    }
+
+    public int getUserCount()
+    {
+        return users.size();
+    }
+
+    /**
+     * @return number of interned project names, ids are never reused
+     */
+    public int getProjectCount()
+    {
+        return nextProjectId.get();
+    }
+
+    /**
+     * @return approximate heap size of permission snapshots in bytes, without user names and the project table
+     */
+    public long getSnapshotsFootprint()
+    {
+        long total = 0;
+        for( Snapshot snapshot : users.values() )
+            total += snapshot.footprint();
+        return total;
+    }
+
+    private int intern(String projectName)
+    {
+        Integer id = projectIds.get( projectName );
+        if( id == null )
+            id = projectIds.computeIfAbsent( projectName, name -> nextProjectId.getAndIncrement() );
+        return id;
+    }
+
+    private static Snapshot createSnapshot(int[] ids, byte[] permissions, int count, int maxId)
+    {
+        if( count == 0 )
+            return EMPTY;
+        int capacity = Integer.highestOneBit( Math.max( 1, count * 2 - 1 ) ) << 1;
+        // hash table takes 5 bytes per slot, dense array 1 byte per known project
+        if( (long)capacity * 5 >= maxId + 1 )
+        {
+            byte[] dense = new byte[maxId + 1];
+            for( int i = 0; i < count; i++ )
+                dense[ids[i]] = permissions[i];
+            return new DenseSnapshot( dense );
+        }
+        return new HashSnapshot( ids, permissions, count, capacity );
+    }
+
+    private static final Snapshot EMPTY = new DenseSnapshot( new byte[0] );
+
+    private interface Snapshot
+    {
+        int get(int projectId);
+
+        /**
+         * @return number of projects with non-zero permissions
+         */
+        int size();
+
+        void forEach(PermissionConsumer consumer);
+
+        long footprint();
+    }
+
+    private interface PermissionConsumer
+    {
+        void accept(int projectId, int permissions);
+    }
+
+    private static class DenseSnapshot implements Snapshot
+    {
+        private final byte[] permissions;
+
+        DenseSnapshot(byte[] permissions)
+        {
+            this.permissions = permissions;
+        }
+
+        @Override
+        public int get(int projectId)
+        {
+            return projectId < permissions.length ? permissions[projectId] : 0;
+        }
+
+        @Override
+        public int size()
+        {
+            int size = 0;
+            for( byte permission : permissions )
+            {
+                if( permission != 0 )
+                    size++;
+            }
+            return size;
+        }
+
+        @Override
+        public void forEach(PermissionConsumer consumer)
+        {
+            for( int i = 0; i < permissions.length; i++ )
+            {
+                if( permissions[i] != 0 )
+                    consumer.accept( i, permissions[i] );
+            }
+        }
+
+        @Override
+        public long footprint()
+        {
+            return 16 + 16 + permissions.length;
+        }
+    }
+
+    private static class HashSnapshot implements Snapshot
+    {
+        private final int[] keys;
+        private final byte[] values;
+        private final int mask;
+
+        HashSnapshot(int[] ids, byte[] permissions, int count, int capacity)
+        {
+            keys = new int[capacity];
+            values = new byte[capacity];
+            mask = capacity - 1;
+            Arrays.fill( keys, -1 );
+            for( int i = 0; i < count; i++ )
+            {
+                int slot = slot( ids[i] );
+                while( keys[slot] != -1 && keys[slot] != ids[i] )
+                    slot = ( slot + 1 ) & mask;
+                keys[slot] = ids[i];
+                values[slot] = permissions[i];
+            }
+        }
+
+        private int slot(int id)
+        {
+            int hash = id * 0x9E3779B9;
+            return ( hash ^ ( hash >>> 16 ) ) & mask;
+        }
+
+        @Override
+        public int get(int projectId)
+        {
+            // load factor is at most 1/2, so probe sequences are short and always end with an empty slot
+            for( int slot = slot( projectId );; slot = ( slot + 1 ) & mask )
+            {
+                int key = keys[slot];
+                if( key == projectId )
+                    return values[slot];
+                if( key == -1 )
+                    return 0;
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            int size = 0;
+            for( int key : keys )
+            {
+                if( key != -1 )
+                    size++;
+            }
+            return size;
+        }
+
+        @Override
+        public void forEach(PermissionConsumer consumer)
+        {
+            for( int i = 0; i < keys.length; i++ )
+            {
+                if( keys[i] != -1 && values[i] != 0 )
+                    consumer.accept( keys[i], values[i] );
+            }
+        }
+
+        @Override
+        public long footprint()
+        {
+            return 24 + 16 + keys.length * 4L + 16 + values.length;
+        }
+    }
+}
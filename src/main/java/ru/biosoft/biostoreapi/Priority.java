@@ -0,0 +1,57 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Priority class of outbound requests, used by {@link ru.biosoft.biostoreapi.impl.SchedulingBiostoreConnector}.
+ * Priority can be set for the calls made by the current thread with {@link #enter()}, otherwise it is chosen by action.
+ */
+public enum Priority
+{
+    /** Requests a user is waiting for */
+    INTERACTIVE,
+    /** Periodic and maintenance requests, e.g. token refreshes of idle sessions */
+    BACKGROUND,
+    /** Mass operations which may wait as long as needed */
+    BULK;
+
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * @return priority of the current thread or null if it is not set
+     */
+    public static Priority current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this priority current for the thread until returned scope is closed
+     */
+    public Scope enter()
+    {
+        Scope scope = new Scope( CURRENT.get() );
+        CURRENT.set( this );
+        return scope;
+    }
+
+    /**
+     * Restores previous priority of the thread when closed
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final Priority previous;
+
+        private Scope(Priority previous)
+        {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close()
+        {
+            if( previous == null )
+                CURRENT.remove();
+            else
+                CURRENT.set( previous );
+        }
+    }
+}
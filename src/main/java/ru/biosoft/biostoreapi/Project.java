@@ -23,33 +23,43 @@ public class Project
         this.permissions = permissions;
     }
 
-    private String permissionsStr;
+    /** Strings of all permission combinations, shared by all projects instead of being built per instance */
+    private static final String[] PERMISSION_STRINGS = new String[PERMISSION_ALL + 1];
+
+    static
+    {
+        for( int i = 0; i <= PERMISSION_ALL; i++ )
+            PERMISSION_STRINGS[i] = permissionsToString( i );
+    }
 
     public String getPermissionsStr()
     {
-        if( permissionsStr == null )
+        if( permissions >= 0 && permissions <= PERMISSION_ALL )
+            return PERMISSION_STRINGS[permissions];
+        return permissionsToString( permissions );
+    }
+
+    private static String permissionsToString(int permissions)
+    {
+        List<String> permStrList = new ArrayList<>();
+        if( permissions == PERMISSION_ALL )
+        {
+            permStrList.add( "All" );
+        }
+        else
         {
-            List<String> permStrList = new ArrayList<>();
-            if( permissions == PERMISSION_ALL )
-            {
-                permStrList.add( "All" );
-            }
-            else
-            {
-                if( ( permissions & PERMISSION_INFO ) != 0 )
-                    permStrList.add( "Info" );
-                if( ( permissions & PERMISSION_READ ) != 0 )
-                    permStrList.add( "Read" );
-                if( ( permissions & PERMISSION_WRITE ) != 0 )
-                    permStrList.add( "Write" );
-                if( ( permissions & PERMISSION_DELETE ) != 0 )
-                    permStrList.add( "Delete" );
-                if( ( permissions & PERMISSION_ADMIN ) != 0 )
-                    permStrList.add( "Admin" );
-            }
-            permissionsStr = permStrList.isEmpty() ? "" : String.join( "/", permStrList );
+            if( ( permissions & PERMISSION_INFO ) != 0 )
+                permStrList.add( "Info" );
+            if( ( permissions & PERMISSION_READ ) != 0 )
+                permStrList.add( "Read" );
+            if( ( permissions & PERMISSION_WRITE ) != 0 )
+                permStrList.add( "Write" );
+            if( ( permissions & PERMISSION_DELETE ) != 0 )
+                permStrList.add( "Delete" );
+            if( ( permissions & PERMISSION_ADMIN ) != 0 )
+                permStrList.add( "Admin" );
         }
-        return permissionsStr;
+        return permStrList.isEmpty() ? "" : String.join( "/", permStrList );
     }
 
     @Override
@@ -68,6 +78,24 @@ public class Project
         return permissions;
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if( this == o )
+            return true;
+        if( o == null || getClass() != o.getClass() )
+            return false;
+
+        Project p = (Project)o;
+        return projectName.equals( p.projectName ) && permissions == p.permissions;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * projectName.hashCode() + permissions;
+    }
+
     public static Project createFromJSON(JSONObject obj)
     {
         String path = obj.optString( "name", "" );
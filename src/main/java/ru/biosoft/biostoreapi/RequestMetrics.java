@@ -0,0 +1,86 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Measurements of a single HTTP exchange with biostore server. Durations are in nanoseconds, -1 if unknown.
+ */
+public class RequestMetrics
+{
+    private final String action;
+    private final RequestOutcome outcome;
+    private final long connectNanos;
+    private final long firstByteNanos;
+    private final long readNanos;
+    private final long totalNanos;
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    /**
+     * @param action name of biostore action
+     * @param outcome result category
+     * @param connectNanos time to establish connection
+     * @param firstByteNanos time from the request start to the response headers
+     * @param readNanos time to read and parse the response body
+     * @param totalNanos whole request time
+     * @param bytesSent size of request body
+     * @param bytesReceived size of response body
+     */
+    public RequestMetrics(String action, RequestOutcome outcome, long connectNanos, long firstByteNanos, long readNanos, long totalNanos,
+            long bytesSent, long bytesReceived)
+    {
+        this.action = action;
+        this.outcome = outcome;
+        this.connectNanos = connectNanos;
+        this.firstByteNanos = firstByteNanos;
+        this.readNanos = readNanos;
+        this.totalNanos = totalNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public String getAction()
+    {
+        return action;
+    }
+
+    public RequestOutcome getOutcome()
+    {
+        return outcome;
+    }
+
+    public long getConnectNanos()
+    {
+        return connectNanos;
+    }
+
+    public long getFirstByteNanos()
+    {
+        return firstByteNanos;
+    }
+
+    public long getReadNanos()
+    {
+        return readNanos;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived;
+    }
+
+    @Override
+    public String toString()
+    {
+        return action + " " + outcome + " in " + totalNanos / 1000 + "us (connect " + connectNanos / 1000 + "us, first byte "
+                + firstByteNanos / 1000 + "us, read " + readNanos / 1000 + "us), sent " + bytesSent + "b, received " + bytesReceived + "b";
+    }
+}
@@ -0,0 +1,42 @@
+package ru.biosoft.biostoreapi;
+
+import org.json.JSONObject;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ATTR_TYPE;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.TYPE_ERROR;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.TYPE_NEED_LOGIN;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.TYPE_OK;
+
+/**
+ * Result category of a request to biostore server
+ */
+public enum RequestOutcome
+{
+    /** Response of {@link DefaultConnectionProvider#TYPE_OK} type */
+    OK,
+    /** Response of {@link DefaultConnectionProvider#TYPE_ERROR} type */
+    ERROR,
+    /** Response of {@link DefaultConnectionProvider#TYPE_NEED_LOGIN} type */
+    NEED_LOGIN,
+    /** Response of unknown type */
+    OTHER,
+    /** No response was received */
+    TRANSPORT_FAILURE;
+
+    public static RequestOutcome of(JSONObject response)
+    {
+        if( response == null )
+            return OTHER;
+        switch( response.optString( ATTR_TYPE ) )
+        {
+            case TYPE_OK:
+                return OK;
+            case TYPE_ERROR:
+                return ERROR;
+            case TYPE_NEED_LOGIN:
+                return NEED_LOGIN;
+            default:
+                return OTHER;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timed operation within a trace, started by {@link Tracer#startSpan(String)}.
+ * Spans which were not sampled are not recording: their attributes are ignored and they are not exported,
+ * but their context is still propagated, so that the server does not sample the trace either.
+ */
+public class Span
+{
+    /** Name of biostore action */
+    public static final String ATTR_ACTION = "biostore.action";
+    /** User the request is made for */
+    public static final String ATTR_USER = "biostore.user";
+    /** Name of {@link RequestOutcome} of the request */
+    public static final String ATTR_OUTCOME = "biostore.outcome";
+
+    private final Tracer tracer;
+    private final String name;
+    private final SpanContext context;
+    private final String parentSpanId;
+    private final long startMillis;
+    private final long startNanos;
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile long durationNanos = -1;
+    private volatile Throwable error;
+
+    // guarded by this
+    private final Map<String, String> attributes;
+
+    /**
+     * @param tracer tracer to export the span to when it ends, null for a span which is not recording
+     * @param context context of the span, for a span which is not recording that of the parent
+     */
+    Span(Tracer tracer, String name, SpanContext context, SpanContext parent)
+    {
+        this.tracer = tracer;
+        this.name = name;
+        this.context = context;
+        this.parentSpanId = parent == null ? null : parent.getSpanId();
+        this.startMillis = tracer == null ? 0 : System.currentTimeMillis();
+        this.startNanos = tracer == null ? 0 : System.nanoTime();
+        this.attributes = tracer == null ? null : new LinkedHashMap<>();
+    }
+
+    public boolean isRecording()
+    {
+        return tracer != null;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return context of the span, for a span which is not recording the parent context or that of a new trace
+     */
+    public SpanContext getContext()
+    {
+        return context;
+    }
+
+    /**
+     * @return id of the parent span, null for the root span of a trace
+     */
+    public String getParentSpanId()
+    {
+        return parentSpanId;
+    }
+
+    /**
+     * @return wall-clock start time in milliseconds since epoch
+     */
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    /**
+     * @return duration in nanoseconds, -1 if the span has not ended yet
+     */
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    public synchronized Map<String, String> getAttributes()
+    {
+        return attributes == null ? new LinkedHashMap<>() : new LinkedHashMap<>( attributes );
+    }
+
+    public synchronized String getAttribute(String key)
+    {
+        return attributes == null ? null : attributes.get( key );
+    }
+
+    /**
+     * @param value attribute value, null values are ignored
+     */
+    public Span setAttribute(String key, String value)
+    {
+        if( attributes != null && value != null )
+        {
+            synchronized( this )
+            {
+                attributes.put( key, value );
+            }
+        }
+        return this;
+    }
+
+    public Span setError(Throwable error)
+    {
+        this.error = error;
+        return this;
+    }
+
+    /**
+     * Makes context of the span current for the thread, so that spans started by the thread become its children
+     * and requests carry its context
+     * @return scope to close
+     */
+    public SpanContext.Scope enter()
+    {
+        return context.enter();
+    }
+
+    /**
+     * Ends the span and exports it if it is recording. Calls after the first one are ignored.
+     */
+    public void end()
+    {
+        if( tracer == null || !ended.compareAndSet( false, true ) )
+            return;
+        durationNanos = System.nanoTime() - startNanos;
+        tracer.export( this );
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " " + context + ( durationNanos < 0 ? "" : " " + durationNanos / 1000 + " us" );
+    }
+}
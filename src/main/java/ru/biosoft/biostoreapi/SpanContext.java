@@ -0,0 +1,211 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identity of a span within a distributed trace, as defined by W3C Trace Context.
+ * Context of the calling thread is the parent of the spans started by {@link Tracer}, and is sent to biostore server
+ * in the {@value #TRACEPARENT_HEADER} header of each request.
+ * <p>
+ * To continue a trace started elsewhere, e.g. by an incoming HTTP request, parse its header and enter the context:
+ * <pre>
+ * SpanContext parent = SpanContext.fromTraceparent( request.getHeader( SpanContext.TRACEPARENT_HEADER ) );
+ * try( SpanContext.Scope scope = parent == null ? null : parent.enter() )
+ * {
+ *     provider.getProjectList( jwToken );
+ * }
+ * </pre>
+ */
+public final class SpanContext
+{
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final String VERSION = "00";
+    private static final ThreadLocal<SpanContext> CURRENT = new ThreadLocal<>();
+
+    private final String traceId;
+    private final String spanId;
+    private final boolean sampled;
+
+    /**
+     * @param traceId 32 lowercase hex digits, not all zero
+     * @param spanId 16 lowercase hex digits, not all zero
+     * @param sampled whether spans of the trace are recorded
+     */
+    public SpanContext(String traceId, String spanId, boolean sampled)
+    {
+        if( !isValidId( traceId, 32 ) )
+            throw new IllegalArgumentException( "Invalid trace id: " + traceId );
+        if( !isValidId( spanId, 16 ) )
+            throw new IllegalArgumentException( "Invalid span id: " + spanId );
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /**
+     * @return context of the current thread or null if there is none
+     */
+    public static SpanContext current()
+    {
+        return CURRENT.get();
+    }
+
+    /**
+     * Parses the value of {@value #TRACEPARENT_HEADER} header
+     * @param traceparent header value, may be null
+     * @return parsed context, null if the value is absent or malformed
+     */
+    public static SpanContext fromTraceparent(String traceparent)
+    {
+        if( traceparent == null )
+            return null;
+        String value = traceparent.trim();
+        // future versions may append fields after the flags
+        if( value.length() < 55 || ( value.length() > 55 && value.charAt( 55 ) != '-' ) || value.charAt( 2 ) != '-'
+                || value.charAt( 35 ) != '-' || value.charAt( 52 ) != '-' )
+            return null;
+        String version = value.substring( 0, 2 );
+        String flags = value.substring( 53, 55 );
+        if( !isHex( version ) || "ff".equals( version ) || !isHex( flags ) || ( VERSION.equals( version ) && value.length() != 55 ) )
+            return null;
+        String traceId = value.substring( 3, 35 );
+        String spanId = value.substring( 36, 52 );
+        if( !isValidId( traceId, 32 ) || !isValidId( spanId, 16 ) )
+            return null;
+        return new SpanContext( traceId, spanId, ( Integer.parseInt( flags, 16 ) & 1 ) != 0 );
+    }
+
+    /**
+     * @return context of a new trace
+     */
+    static SpanContext newRoot(boolean sampled)
+    {
+        return new SpanContext( randomId( 2 ), randomId( 1 ), sampled );
+    }
+
+    /**
+     * @return context of a new span in the same trace
+     */
+    SpanContext newChild(boolean sampled)
+    {
+        return new SpanContext( traceId, randomId( 1 ), sampled );
+    }
+
+    public String getTraceId()
+    {
+        return traceId;
+    }
+
+    public String getSpanId()
+    {
+        return spanId;
+    }
+
+    public boolean isSampled()
+    {
+        return sampled;
+    }
+
+    public String toTraceparent()
+    {
+        return VERSION + "-" + traceId + "-" + spanId + ( sampled ? "-01" : "-00" );
+    }
+
+    /**
+     * Makes this context current for the thread until returned scope is closed
+     */
+    public Scope enter()
+    {
+        Scope scope = new Scope( CURRENT.get() );
+        CURRENT.set( this );
+        return scope;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if( this == o )
+            return true;
+        if( !( o instanceof SpanContext ) )
+            return false;
+        SpanContext other = (SpanContext)o;
+        return traceId.equals( other.traceId ) && spanId.equals( other.spanId ) && sampled == other.sampled;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( traceId, spanId, sampled );
+    }
+
+    @Override
+    public String toString()
+    {
+        return toTraceparent();
+    }
+
+    private static String randomId(int longs)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder( longs * 16 );
+        for( int i = 0; i < longs; i++ )
+        {
+            long value = random.nextLong();
+            // all-zero id is invalid
+            if( i == longs - 1 && value == 0 )
+                value = 1;
+            String hex = Long.toHexString( value );
+            for( int j = hex.length(); j < 16; j++ )
+                sb.append( '0' );
+            sb.append( hex );
+        }
+        return sb.toString();
+    }
+
+    private static boolean isValidId(String id, int length)
+    {
+        if( id == null || id.length() != length || !isHex( id ) )
+            return false;
+        for( int i = 0; i < length; i++ )
+        {
+            if( id.charAt( i ) != '0' )
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isHex(String value)
+    {
+        for( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Restores previous context of the thread when closed
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final SpanContext previous;
+
+        private Scope(SpanContext previous)
+        {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close()
+        {
+            if( previous == null )
+                CURRENT.remove();
+            else
+                CURRENT.set( previous );
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.biosoft.biostoreapi;
+
+/**
+ * Receives spans which ended. Called on the thread ending the span, so implementations must be fast and thread-safe.
+ * @see ru.biosoft.biostoreapi.impl.InMemorySpanExporter
+ * @see ru.biosoft.biostoreapi.impl.FileSpanExporter
+ */
+@FunctionalInterface
+public interface SpanExporter
+{
+    void export(Span span);
+}
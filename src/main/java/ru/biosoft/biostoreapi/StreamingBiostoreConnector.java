@@ -0,0 +1,19 @@
+package ru.biosoft.biostoreapi;
+
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * {@link BiostoreConnector} which gives access to the raw response, so large responses can be parsed incrementally
+ */
+public interface StreamingBiostoreConnector extends BiostoreConnector
+{
+    /**
+     * Sends request to biostore server
+     * @param username current user name
+     * @param action name of biostore action
+     * @param parameters action parameters
+     * @return reader of the JSON response body, must be closed by the caller to release the connection
+     */
+    Reader openResponse(String username, String action, Map<String, String> parameters);
+}
@@ -0,0 +1,313 @@
+package ru.biosoft.biostoreapi;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ru.biosoft.biostoreapi.impl.LruCache;
+
+/**
+ * Cache of impersonation tokens obtained by {@code admin$target} logins, keyed by (admin, target).
+ * Unexpired tokens are reused, tokens close to expiration are refreshed, and full login is made only if there is
+ * no token or refresh fails. Concurrent logins of the same pair are coalesced into one request.
+ * <p>
+ * Token is returned only for the password it was obtained with. All tokens of the administrator are evicted
+ * when the administrator's own token is logged out through the provider.
+ * @see DefaultConnectionProvider#setSudoTokenCache(SudoTokenCache)
+ */
+public class SudoTokenCache
+{
+    private static final Logger log = Logger.getLogger( SudoTokenCache.class.getName() );
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes( 1 );
+
+    private final LruCache<Key, Entry> tokens;
+    private final long refreshAheadMillis;
+    private final ConcurrentHashMap<Key, Login> inFlight = new ConcurrentHashMap<>();
+    private final byte[] salt = new byte[16];
+
+    /**
+     * Incremented on every eviction, so logins started before it do not put their results into cache
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+
+    public SudoTokenCache()
+    {
+        this( DEFAULT_MAX_SIZE, DEFAULT_REFRESH_AHEAD, 0, TimeUnit.SECONDS );
+    }
+
+    /**
+     * @param maxSize maximal number of cached tokens
+     * @param refreshAhead token is refreshed if it expires earlier than that
+     * @param ttl time to live of tokens without 'exp' claim, non-positive value means no expiration
+     * @param unit time unit of ttl
+     */
+    public SudoTokenCache(int maxSize, Duration refreshAhead, long ttl, TimeUnit unit)
+    {
+        this.tokens = new LruCache<>( maxSize, ttl, unit, false );
+        this.refreshAheadMillis = refreshAhead.toMillis();
+        new SecureRandom().nextBytes( salt );
+    }
+
+    /**
+     * @param username sudo user name in {@code admin$target} form
+     * @return cached, refreshed or newly obtained token
+     */
+    public JWToken getToken(DefaultConnectionProvider provider, String username, String password)
+    {
+        Key key = Key.of( username );
+        byte[] digest = digest( password );
+        Entry cached = tokens.get( key );
+        if( cached != null && cached.matches( digest ) && !needsRefresh( cached.token ) )
+        {
+            hits.increment();
+            return cached.token;
+        }
+
+        Login login = new Login( digest );
+        Login running = inFlight.putIfAbsent( key, login );
+        if( running != null )
+        {
+            if( running.matches( digest ) )
+                return await( running.result );
+            // concurrent login with another password, its result cannot be shared
+            logins.increment();
+            return provider.login( username, password );
+        }
+        try
+        {
+            long gen = generation.get();
+            JWToken token = null;
+            if( cached != null && cached.matches( digest ) && !cached.token.isExpired() )
+                token = tryRefresh( provider, cached.token );
+            if( token == null )
+            {
+                logins.increment();
+                token = provider.login( username, password );
+            }
+            if( generation.get() == gen )
+                tokens.put( key, new Entry( token, digest ) );
+            login.result.complete( token );
+            return token;
+        }
+        catch( RuntimeException | Error e )
+        {
+            login.result.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove( key, login );
+        }
+    }
+
+    private JWToken tryRefresh(DefaultConnectionProvider provider, JWToken token)
+    {
+        try
+        {
+            JWToken refreshed = provider.refreshJWToken( token );
+            refreshes.increment();
+            return refreshed;
+        }
+        catch( RuntimeException e )
+        {
+            log.log( Level.FINE, "Cannot refresh token of '" + token.getUsername() + "', logging in again", e );
+            return null;
+        }
+    }
+
+    private boolean needsRefresh(JWToken token)
+    {
+        Instant expiresAt = token.getExpiresAt();
+        return expiresAt != null && expiresAt.toEpochMilli() - refreshAheadMillis <= System.currentTimeMillis();
+    }
+
+    private static JWToken await(CompletableFuture<JWToken> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new CompletionException( e );
+        }
+        catch( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            if( cause instanceof Error )
+                throw (Error)cause;
+            throw new CompletionException( cause );
+        }
+    }
+
+    /**
+     * Called by the provider when a token is logged out
+     */
+    void loggedOut(JWToken jwToken)
+    {
+        String username = jwToken.getUsername();
+        if( username == null )
+            return;
+        if( username.indexOf( '$' ) < 0 )
+        {
+            invalidateAdmin( username );
+            return;
+        }
+        Key key = Key.of( username );
+        generation.incrementAndGet();
+        tokens.removeIf( (k, entry) -> k.equals( key ) && entry.token.equals( jwToken ) );
+    }
+
+    /**
+     * Removes all tokens obtained by the administrator
+     */
+    public void invalidateAdmin(String admin)
+    {
+        generation.incrementAndGet();
+        tokens.removeIf( (key, entry) -> key.admin.equals( admin ) );
+    }
+
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        tokens.clear();
+    }
+
+    /**
+     * @return number of cached tokens including expired ones which were not cleaned up yet
+     */
+    public int size()
+    {
+        return tokens.size();
+    }
+
+    /**
+     * @return number of requests served by a cached token
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of successful token refreshes
+     */
+    public long getRefreshCount()
+    {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return number of full logins
+     */
+    public long getLoginCount()
+    {
+        return logins.sum();
+    }
+
+    private byte[] digest(String password)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( salt );
+            return digest.digest( password == null ? new byte[0] : password.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static class Entry
+    {
+        final JWToken token;
+        final byte[] passwordDigest;
+
+        Entry(JWToken token, byte[] passwordDigest)
+        {
+            this.token = token;
+            this.passwordDigest = passwordDigest;
+        }
+
+        boolean matches(byte[] digest)
+        {
+            return MessageDigest.isEqual( passwordDigest, digest );
+        }
+    }
+
+    private static class Login
+    {
+        final CompletableFuture<JWToken> result = new CompletableFuture<>();
+        final byte[] passwordDigest;
+
+        Login(byte[] passwordDigest)
+        {
+            this.passwordDigest = passwordDigest;
+        }
+
+        boolean matches(byte[] digest)
+        {
+            return MessageDigest.isEqual( passwordDigest, digest );
+        }
+    }
+
+    private static class Key
+    {
+        final String admin;
+        final String target;
+
+        Key(String admin, String target)
+        {
+            this.admin = admin;
+            this.target = target;
+        }
+
+        static Key of(String username)
+        {
+            int pos = username.indexOf( '$' );
+            if( pos <= 0 )
+                throw new IllegalArgumentException( "Not a sudo user name: " + username );
+            return new Key( username.substring( 0, pos ), username.substring( pos + 1 ) );
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if( this == o )
+                return true;
+            if( o == null || getClass() != o.getClass() )
+                return false;
+            Key other = (Key)o;
+            return admin.equals( other.admin ) && target.equals( other.target );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( admin, target );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts spans as children of the {@link SpanContext#current() current context} and passes those which ended to the exporter.
+ * Whether a span is recorded is decided by the {@link Sampler}, spans which are not recorded cost almost nothing.
+ * @see DefaultConnectionProvider#setTracer(Tracer)
+ */
+public class Tracer
+{
+    private static final Logger log = Logger.getLogger( Tracer.class.getName() );
+
+    private final SpanExporter exporter;
+    private final Sampler sampler;
+
+    /**
+     * Creates tracer recording every span
+     */
+    public Tracer(SpanExporter exporter)
+    {
+        this( exporter, Sampler.always() );
+    }
+
+    public Tracer(SpanExporter exporter, Sampler sampler)
+    {
+        this.exporter = Objects.requireNonNull( exporter );
+        this.sampler = Objects.requireNonNull( sampler );
+    }
+
+    /**
+     * Starts a span, which must be ended with {@link Span#end()}. The span does not become current until it is {@link Span#enter() entered}.
+     */
+    public Span startSpan(String name)
+    {
+        SpanContext parent = SpanContext.current();
+        if( !sampler.isSampled( parent, name ) )
+            return new Span( null, name, parent != null ? parent : SpanContext.newRoot( false ), parent );
+        SpanContext context = parent == null ? SpanContext.newRoot( true ) : parent.newChild( true );
+        return new Span( this, name, context, parent );
+    }
+
+    void export(Span span)
+    {
+        try
+        {
+            exporter.export( span );
+        }
+        catch( RuntimeException e )
+        {
+            log.log( Level.WARNING, "Cannot export span " + span, e );
+        }
+    }
+
+    /**
+     * Decides whether a new span is recorded
+     */
+    @FunctionalInterface
+    public interface Sampler
+    {
+        /**
+         * @param parent context of the parent span, null for a new trace
+         * @param name name of the new span
+         */
+        boolean isSampled(SpanContext parent, String name);
+
+        static Sampler always()
+        {
+            return (parent, name) -> true;
+        }
+
+        static Sampler never()
+        {
+            return (parent, name) -> false;
+        }
+
+        /**
+         * Samples the given fraction of new traces. Spans with a parent follow the decision made for the parent,
+         * so traces are recorded either completely or not at all.
+         * @param ratio fraction of traces to record, from 0 to 1
+         */
+        static Sampler ratio(double ratio)
+        {
+            if( !( ratio >= 0 && ratio <= 1 ) )
+                throw new IllegalArgumentException( "Ratio must be between 0 and 1: " + ratio );
+            return (parent, name) -> parent != null ? parent.isSampled() : ThreadLocalRandom.current().nextDouble() < ratio;
+        }
+    }
+}
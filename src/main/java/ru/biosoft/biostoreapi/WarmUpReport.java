@@ -0,0 +1,125 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Per-step timings of a warm-up. Steps which failed are reported with their error, a failure of one step does not stop the others.
+ * @see DefaultConnectionProvider#warmUp(Map, boolean)
+ */
+public class WarmUpReport
+{
+    /** Resolution of the server host name */
+    public static final String STEP_RESOLVE = "resolve";
+    /** First request to the server, establishes the connection which is kept alive for reuse */
+    public static final String STEP_CONNECT = "connect";
+    /** Further requests exercising request encoding and response parsing */
+    public static final String STEP_REQUEST = "request";
+    /** Login of a service account */
+    public static final String STEP_LOGIN = "login";
+    /** Prefetch of the project list of a service account */
+    public static final String STEP_PROJECT_LIST = "projectList";
+
+    private final List<Step> steps;
+    private final Map<String, JWToken> tokens;
+
+    public WarmUpReport(List<Step> steps, Map<String, JWToken> tokens)
+    {
+        this.steps = Collections.unmodifiableList( steps );
+        this.tokens = Collections.unmodifiableMap( tokens );
+    }
+
+    /**
+     * @return steps in the order they were started, steps running in parallel are ordered by their targets
+     */
+    public List<Step> getSteps()
+    {
+        return steps;
+    }
+
+    public List<Step> getSteps(String name)
+    {
+        return steps.stream().filter( step -> step.getName().equals( name ) ).collect( Collectors.toList() );
+    }
+
+    public List<Step> getFailed()
+    {
+        return steps.stream().filter( step -> !step.isSuccess() ).collect( Collectors.toList() );
+    }
+
+    public boolean isAllSucceeded()
+    {
+        return steps.stream().allMatch( Step::isSuccess );
+    }
+
+    /**
+     * @return tokens of the service accounts which logged in successfully
+     */
+    public Map<String, JWToken> getTokens()
+    {
+        return tokens;
+    }
+
+    @Override
+    public String toString()
+    {
+        return steps.stream().map( Step::toString ).collect( Collectors.joining( ", " ) );
+    }
+
+    public static class Step
+    {
+        private final String name;
+        private final String target;
+        private final long nanos;
+        private final RuntimeException error;
+
+        /**
+         * @param name one of STEP_* constants
+         * @param target server link or user name the step was performed for, null if unknown
+         * @param nanos duration of the step
+         * @param error exception thrown by the step, null if it succeeded
+         */
+        public Step(String name, String target, long nanos, RuntimeException error)
+        {
+            this.name = name;
+            this.target = target;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getTarget()
+        {
+            return target;
+        }
+
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        public RuntimeException getError()
+        {
+            return error;
+        }
+
+        public boolean isSuccess()
+        {
+            return error == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            String result = error == null ? TimeUnit.NANOSECONDS.toMillis( nanos ) + " ms" : error.toString();
+            return name + ( target == null ? "" : " " + target ) + ": " + result;
+        }
+    }
+}
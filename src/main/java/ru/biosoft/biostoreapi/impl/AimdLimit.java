@@ -0,0 +1,60 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease: the limit grows by one after each successful request made while
+ * the limit was well utilized, and is multiplied by backoff ratio when a request is dropped or exceeds the timeout.
+ */
+public class AimdLimit implements ConcurrencyLimit
+{
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+    private double limit;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit)
+    {
+        this( initialLimit, minLimit, maxLimit, 0.9, 5, TimeUnit.SECONDS );
+    }
+
+    /**
+     * @param backoffRatio factor applied to the limit on drop, between 0.5 and 1
+     * @param timeout requests longer than this are treated as dropped
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeout, TimeUnit unit)
+    {
+        if( minLimit <= 0 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit )
+            throw new IllegalArgumentException( "Invalid limits: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit );
+        if( backoffRatio < 0.5 || backoffRatio >= 1 )
+            throw new IllegalArgumentException( "Backoff ratio must be in [0.5, 1): " + backoffRatio );
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = unit.toNanos( timeout );
+        this.limit = initialLimit;
+    }
+
+    @Override
+    public int getLimit()
+    {
+        return (int)limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped)
+    {
+        if( dropped || rttNanos > timeoutNanos )
+            limit = Math.max( minLimit, limit * backoffRatio );
+        // growing the limit which is not used would let it rise without bound while load is low
+        else if( inFlight * 2 >= limit )
+            limit = Math.min( maxLimit, limit + 1 );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "aimd(" + getLimit() + ")";
+    }
+}
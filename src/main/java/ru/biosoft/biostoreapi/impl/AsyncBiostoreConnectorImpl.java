@@ -0,0 +1,70 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+import ru.biosoft.biostoreapi.AsyncBiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.Priority;
+import ru.biosoft.biostoreapi.SpanContext;
+
+/**
+ * Runs blocking {@link BiostoreConnector} requests on caller-supplied executor.
+ * {@link Deadline#current() Current deadline}, {@link Priority#current() priority} and {@link SpanContext#current() span context}
+ * of the calling thread apply to the request.
+ */
+public class AsyncBiostoreConnectorImpl implements BiostoreConnector, AsyncBiostoreConnector
+{
+    protected final BiostoreConnector delegate;
+
+    protected final Executor executor;
+
+    public AsyncBiostoreConnectorImpl(BiostoreConnector delegate, Executor executor)
+    {
+        this.delegate = Objects.requireNonNull( delegate );
+        this.executor = Objects.requireNonNull( executor );
+    }
+
+    public BiostoreConnector getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        return delegate.askServer( username, action, parameters );
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> askServerAsync(String username, String action, Map<String, String> parameters)
+    {
+        return supplyAsync( () -> delegate.askServer( username, action, parameters ), executor );
+    }
+
+    /**
+     * Runs blocking task on the executor under deadline, priority and span context of the calling thread
+     */
+    @SuppressWarnings("try")
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor)
+    {
+        Deadline deadline = Deadline.current();
+        Priority priority = Priority.current();
+        SpanContext spanContext = SpanContext.current();
+        if( deadline == null && priority == null && spanContext == null )
+            return CompletableFuture.supplyAsync( task, executor );
+        return CompletableFuture.supplyAsync( () -> {
+            try( Deadline.Scope scope = deadline == null ? null : deadline.enter();
+                    Priority.Scope priorityScope = priority == null ? null : priority.enter();
+                    SpanContext.Scope spanScope = spanContext == null ? null : spanContext.enter() )
+            {
+                return task.get();
+            }
+        }, executor );
+    }
+}
@@ -1,42 +1,268 @@
 package ru.biosoft.biostoreapi.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.json.JSONObject;
-import ru.biosoft.biostoreapi.BiostoreConnector;
+import org.json.JSONTokener;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.ConnectorListener;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.DeadlineExceededException;
+import ru.biosoft.biostoreapi.RequestMetrics;
+import ru.biosoft.biostoreapi.RequestOutcome;
+import ru.biosoft.biostoreapi.SpanContext;
+import ru.biosoft.biostoreapi.StreamingBiostoreConnector;
+import ru.biosoft.biostoreapi.WarmUpReport;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
 
 /**
  * Utility functions to communicate with biostore server
  */
-public class BiostoreConnectorImpl implements BiostoreConnector
+public class BiostoreConnectorImpl implements StreamingBiostoreConnector
 {
-    protected Map<String, String> sessionCookies = new HashMap<>();
+    protected CookieStore cookieStore = new LruCookieStore();
+
+    /**
+     * If true, session cookies are neither sent nor parsed, authorization relies on JSON web tokens only
+     */
+    protected volatile boolean jwtOnly;
 
     protected String serverLink;
 
     protected String serverKey;
 
+    protected final HttpTransport transport;
+
+    protected volatile ConnectorListener listener;
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    protected volatile long defaultTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    protected final Map<String, Long> actionTimeouts = new ConcurrentHashMap<>();
+
+    /**
+     * Read actions, which responses do not change between calls unless data is modified
+     */
+    public static final Set<String> DEFAULT_CONDITIONAL_ACTIONS = Collections
+            .unmodifiableSet( new HashSet<>( Arrays.asList( ACTION_GET_PROJECT_LIST, ACTION_PROJECT_USERS ) ) );
+
+    public static final int DEFAULT_VALIDATOR_CACHE_SIZE = 10000;
+
+    protected volatile Set<String> conditionalActions = Collections.emptySet();
+
+    /**
+     * Validators and responses of conditional actions by (user, action, parameters)
+     */
+    protected final LruCache<RequestKey, Validated> validators = new LruCache<>( DEFAULT_VALIDATOR_CACHE_SIZE, 0, TimeUnit.SECONDS, false );
+
     public BiostoreConnectorImpl(String serverLink, String serverKey)
+    {
+        this( serverLink, serverKey, HttpTransports.createDefault() );
+    }
+
+    /**
+     * @param serverLink URL of biostore permission servlet
+     * @param serverKey name of the server registered in biostore
+     * @param transport HTTP client to deliver requests with
+     */
+    public BiostoreConnectorImpl(String serverLink, String serverKey, HttpTransport transport)
     {
         this.serverLink = serverLink;
         this.serverKey = serverKey;
+        this.transport = transport;
+    }
+
+    public CookieStore getCookieStore()
+    {
+        return cookieStore;
+    }
+
+    public void setCookieStore(CookieStore cookieStore)
+    {
+        this.cookieStore = cookieStore;
+    }
+
+    public boolean isJwtOnly()
+    {
+        return jwtOnly;
+    }
+
+    public void setJwtOnly(boolean jwtOnly)
+    {
+        this.jwtOnly = jwtOnly;
+    }
+
+    /**
+     * @param timeout connect and read timeout for actions without their own timeout
+     */
+    public void setDefaultTimeout(long timeout, TimeUnit unit)
+    {
+        this.defaultTimeoutMillis = toTimeoutMillis( timeout, unit );
+    }
+
+    /**
+     * @param action name of biostore action
+     * @param timeout connect and read timeout of the action, non-positive value resets it to default
+     */
+    public void setTimeout(String action, long timeout, TimeUnit unit)
+    {
+        if( timeout <= 0 )
+            actionTimeouts.remove( action );
+        else
+            actionTimeouts.put( action, toTimeoutMillis( timeout, unit ) );
+    }
+
+    public long getTimeoutMillis(String action)
+    {
+        Long timeout = actionTimeouts.get( action );
+        return timeout == null ? defaultTimeoutMillis : timeout;
+    }
+
+    private static long toTimeoutMillis(long timeout, TimeUnit unit)
+    {
+        if( timeout <= 0 )
+            throw new IllegalArgumentException( "Timeout must be positive: " + timeout );
+        return Math.max( 1, Math.min( Integer.MAX_VALUE, unit.toMillis( timeout ) ) );
+    }
+
+    public Set<String> getConditionalActions()
+    {
+        return conditionalActions;
     }
 
     /**
-     * Request biostore server using HTTPS protocol
+     * Enables conditional requests: ETag and Last-Modified validators of responses are remembered per
+     * (user, action, parameters) and sent back in If-None-Match and If-Modified-Since headers.
+     * When server responds with 304 status, the previous response object is returned again.
+     * The token parameter is not part of the key, so validators survive token refresh: the server checks
+     * the token of each conditional request before it answers 304.
+     * @param actions actions to send conditional requests for, e.g. {@link #DEFAULT_CONDITIONAL_ACTIONS}, empty to disable
+     */
+    public void setConditionalActions(Collection<String> actions)
+    {
+        this.conditionalActions = Collections.unmodifiableSet( new HashSet<>( actions ) );
+        validators.removeIf( (key, value) -> !conditionalActions.contains( key.action ) );
+    }
+
+    @Override
+    public boolean reusesResponses(String action)
+    {
+        return conditionalActions.contains( action );
+    }
+
+    public ConnectorListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * @param listener receives metrics of every request, null to disable
+     */
+    public void setListener(ConnectorListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public String getServerLink()
+    {
+        return serverLink;
+    }
+
+    /**
+     * Prepares the connector for the first user requests: resolves the server host, establishes the connection and
+     * sends a few more requests to load and compile classes of request encoding and response parsing.
+     * Warm-up requests are anonymous, their responses are parsed but not checked, and they are not reported to the listener.
+     * Connection stays in the keep-alive pool of the transport, so the next request does not pay for TCP and TLS handshakes.
+     * @param requests number of requests after the first one
+     * @return timings of {@link WarmUpReport#STEP_RESOLVE resolve}, {@link WarmUpReport#STEP_CONNECT connect}
+     *         and {@link WarmUpReport#STEP_REQUEST request} steps, the last covers all further requests
+     */
+    public WarmUpReport warmUp(int requests)
+    {
+        List<WarmUpReport.Step> steps = new ArrayList<>();
+        steps.add( timeStep( WarmUpReport.STEP_RESOLVE, () -> {
+            try
+            {
+                InetAddress.getAllByName( new URL( serverLink ).getHost() );
+            }
+            catch( IOException e )
+            {
+                throw new BiostoreTransportException( "Cannot resolve server of " + serverLink, e );
+            }
+        } ) );
+        WarmUpReport.Step connect = timeStep( WarmUpReport.STEP_CONNECT, this::warmUpRequest );
+        steps.add( connect );
+        // without connection further requests would fail the same way
+        if( connect.isSuccess() && requests > 0 )
+        {
+            steps.add( timeStep( WarmUpReport.STEP_REQUEST, () -> {
+                for( int i = 0; i < requests; i++ )
+                    warmUpRequest();
+            } ) );
+        }
+        return new WarmUpReport( steps, Collections.emptyMap() );
+    }
+
+    private WarmUpReport.Step timeStep(String name, Runnable step)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            step.run();
+            return new WarmUpReport.Step( name, serverLink, System.nanoTime() - start, null );
+        }
+        catch( RuntimeException e )
+        {
+            return new WarmUpReport.Step( name, serverLink, System.nanoTime() - start, e );
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void warmUpRequest()
+    {
+        Deadline deadline = Deadline.current();
+        // exchange is never completed, so the listener does not see warm-up requests
+        Exchange exchange = new Exchange( ACTION_GET_PROJECT_LIST );
+        try( HttpTransport.Response response = sendRequest( null, ACTION_GET_PROJECT_LIST, null, deadline, exchange ) )
+        {
+            new JSONObject( new JSONTokener( new InputStreamReader( exchange.body, StandardCharsets.UTF_8 ) ) );
+        }
+        catch( Exception e )
+        {
+            throw transportException( ACTION_GET_PROJECT_LIST, deadline, e );
+        }
+    }
+
+    /**
+     * Request biostore server using HTTPS protocol.
+     * Request is aborted when {@link Deadline#current() current deadline} expires.
+     * {@link SpanContext#current() Current span context} is sent in {@value SpanContext#TRACEPARENT_HEADER} header.
      * @param username current user name
      * @param action name of biostore action
      * @param parameters action parameters
@@ -45,89 +271,333 @@ public class BiostoreConnectorImpl implements BiostoreConnector
     @Override
     public JSONObject askServer(String username, String action, Map<String, String> parameters)
     {
-        //TODO: check if network configuration is necessary
-        try
+        Deadline deadline = Deadline.current();
+        Exchange exchange = new Exchange( action );
+        RequestKey key = conditionalActions.contains( action ) ? new RequestKey( username, action, parameters ) : null;
+        Validated validated = key == null ? null : validators.get( key );
+        try( HttpTransport.Response response = sendRequest( username, action, parameters, deadline, exchange,
+                validated == null ? null : validated.getConditionalHeaders() ) )
         {
-            StringBuilder urlParameters = new StringBuilder();
-            urlParameters.append( "action=" ).append( encodeURL( action ) );
-            if( serverKey != null )
+            JSONObject result;
+            if( validated != null && response.getStatusCode() == HTTP_NOT_MODIFIED )
+            {
+                result = validated.response;
+            }
+            else
             {
-                urlParameters.append( "&serverName=" ).append( encodeURL( serverKey ) );
+                // parse directly from the stream, without intermediate byte array and string copies
+                result = new JSONObject( new JSONTokener( new InputStreamReader( exchange.body, StandardCharsets.UTF_8 ) ) );
+                if( key != null )
+                    remember( key, response, result );
             }
-            if( parameters != null )
+            exchange.completed( RequestOutcome.of( result ) );
+            return result;
+        }
+        catch( Exception e )
+        {
+            exchange.completed( RequestOutcome.TRANSPORT_FAILURE );
+            throw transportException( action, deadline, e );
+        }
+    }
+
+    @Override
+    public Reader openResponse(String username, String action, Map<String, String> parameters)
+    {
+        Deadline deadline = Deadline.current();
+        Exchange exchange = new Exchange( action );
+        try
+        {
+            HttpTransport.Response response = sendRequest( username, action, parameters, deadline, exchange );
+            return new InputStreamReader( exchange.body, StandardCharsets.UTF_8 )
             {
-                for( Map.Entry<String, String> entry : parameters.entrySet() )
+                @Override
+                public void close() throws IOException
                 {
-                    urlParameters.append( "&" ).append( entry.getKey() ).append( "=" ).append( encodeURL( entry.getValue() ) );
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        response.close();
+                        // body is parsed by the caller, so the outcome is not known here
+                        exchange.completed( RequestOutcome.OTHER );
+                    }
                 }
-            }
+            };
+        }
+        catch( Exception e )
+        {
+            exchange.completed( RequestOutcome.TRANSPORT_FAILURE );
+            throw transportException( action, deadline, e );
+        }
+    }
 
-            HttpURLConnection urlc = (HttpURLConnection) new URL( serverLink ).openConnection();
-            urlc.setRequestMethod("POST");
+    private void remember(RequestKey key, HttpTransport.Response response, JSONObject result)
+    {
+        String etag = firstHeader( response, "ETag" );
+        String lastModified = firstHeader( response, "Last-Modified" );
+        if( ( etag != null || lastModified != null ) && RequestOutcome.of( result ) == RequestOutcome.OK )
+            validators.put( key, new Validated( etag, lastModified, result ) );
+        else
+            validators.remove( key );
+    }
 
-            urlc.setUseCaches( false ); // Don't look at possibly cached data
-            final int TIMEOUT_TEN_MINUTES = 10 * 60 * 1000;
-            urlc.setConnectTimeout( TIMEOUT_TEN_MINUTES );
-            urlc.setReadTimeout( TIMEOUT_TEN_MINUTES );
-            String oldCookies = username == null ? null : sessionCookies.get( username );
-            if( oldCookies != null )
-            {
-                //set cookie for session support
-                urlc.setRequestProperty( "Cookie", oldCookies );
-            }
+    private static String firstHeader(HttpTransport.Response response, String name)
+    {
+        List<String> values = response.getHeaders( name );
+        return values == null || values.isEmpty() ? null : values.get( 0 );
+    }
+
+    private static BiostoreTransportException transportException(String action, Deadline deadline, Exception e)
+    {
+        if( e instanceof DeadlineExceededException )
+            return (DeadlineExceededException)e;
+        // failure is most likely caused by the connection closed on expiry
+        if( deadline != null && deadline.isExpired() )
+            return new DeadlineExceededException( ( deadline.isCancelled() ? "Deadline was cancelled" : "Deadline exceeded" ) + " during '"
+                    + action + "' request", e );
+        return new BiostoreTransportException( "Error during connection to server", e );
+    }
+
+    /**
+     * Sends request and processes response headers
+     * @param deadline deadline of the request, may be null
+     * @return response with successful status, must be closed by the caller
+     */
+    protected HttpTransport.Response sendRequest(String username, String action, Map<String, String> parameters, Deadline deadline,
+            Exchange exchange) throws IOException
+    {
+        return sendRequest( username, action, parameters, deadline, exchange, null );
+    }
 
-            urlc.setDoOutput( true );
-            try( DataOutputStream wr = new DataOutputStream( urlc.getOutputStream() ) )
+    /**
+     * @param extraHeaders additional request headers, may be null
+     * @return response with successful or 304 status, must be closed by the caller
+     */
+    protected HttpTransport.Response sendRequest(String username, String action, Map<String, String> parameters, Deadline deadline,
+            Exchange exchange, Map<String, String> extraHeaders) throws IOException
+    {
+        int timeout = (int)getTimeoutMillis( action );
+        if( deadline != null )
+        {
+            deadline.check( action );
+            // zero means infinite timeout for the transport
+            timeout = (int)Math.max( 1, Math.min( timeout, deadline.remaining( TimeUnit.MILLISECONDS ) ) );
+        }
+
+        //TODO: check if network configuration is necessary
+        StringBuilder urlParameters = new StringBuilder();
+        urlParameters.append( "action=" ).append( encodeURL( action ) );
+        if( serverKey != null )
+        {
+            urlParameters.append( "&serverName=" ).append( encodeURL( serverKey ) );
+        }
+        if( parameters != null )
+        {
+            for( Map.Entry<String, String> entry : parameters.entrySet() )
             {
-                wr.writeBytes( urlParameters.toString() );
-                wr.flush();
+                urlParameters.append( "&" ).append( entry.getKey() ).append( "=" ).append( encodeURL( entry.getValue() ) );
             }
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if( extraHeaders != null )
+            headers.putAll( extraHeaders );
+        headers.put( "Content-Type", "application/x-www-form-urlencoded" );
+        SpanContext spanContext = SpanContext.current();
+        if( spanContext != null )
+            headers.put( SpanContext.TRACEPARENT_HEADER, spanContext.toTraceparent() );
+        boolean useCookies = username != null && !jwtOnly;
+        String oldCookies = useCookies ? cookieStore.getCookies( username ) : null;
+        if( oldCookies != null )
+        {
+            //set cookie for session support
+            headers.put( "Cookie", oldCookies );
+        }
 
-            //read cookies from server response
-            List<String> cookies = urlc.getHeaderFields().get( "Set-Cookie" );
-            if( cookies != null )
+        byte[] body = urlParameters.toString().getBytes( StandardCharsets.UTF_8 );
+        exchange.bytesSent = body.length;
+        HttpTransport.Response response = transport.post( serverLink, headers, body, timeout, deadline );
+        exchange.responded( response );
+        try
+        {
+            if( ACTION_LOGOUT.equals( action ) )
             {
-                String cookieHeader = cookies.stream().map( cookie -> cookie.split( ";" )[0] ).collect( Collectors.joining( "; " ) );
                 if( username != null )
-                    sessionCookies.put( username, cookieHeader );
+                {
+                    cookieStore.removeCookies( username );
+                    validators.removeIf( (key, value) -> username.equals( key.username ) );
+                }
+            }
+            else if( useCookies )
+            {
+                //read cookies from server response
+                List<String> cookies = response.getHeaders( "Set-Cookie" );
+                if( !cookies.isEmpty() )
+                {
+                    String cookieHeader = cookies.stream().map( cookie -> cookie.split( ";" )[0] ).collect( Collectors.joining( "; " ) );
+                    cookieStore.putCookies( username, cookieHeader );
+                }
             }
 
-            return new JSONObject( readAsString( urlc.getInputStream() ) );
+            if( response.getStatusCode() >= 400 )
+                throw new IOException( "Server returned HTTP response code: " + response.getStatusCode() + " for URL: " + serverLink );
+            exchange.body = new CountingInputStream( response.getBody() );
+            return response;
         }
-        catch( Exception e )
+        catch( IOException | RuntimeException e )
         {
-            throw new RuntimeException( "Error during connection to server", e ); //TODO: rework
+            response.close();
+            throw e;
         }
     }
 
-    private static String encodeURL(String src)
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final String ATTR_JWTOKEN = "jwtoken";
+
+    protected static class RequestKey
     {
-        try
+        final String username;
+        final String action;
+        final Map<String, String> parameters;
+
+        RequestKey(String username, String action, Map<String, String> parameters)
         {
-            return URLEncoder.encode( src, "UTF-8" );
+            this.username = username;
+            this.action = action;
+            this.parameters = parameters == null ? new HashMap<>() : new HashMap<>( parameters );
+            this.parameters.remove( ATTR_JWTOKEN );
         }
-        catch( UnsupportedEncodingException e )
+
+        @Override
+        public boolean equals(Object o)
         {
-            throw new RuntimeException( "Incorrect symbols in URL", e ); //TODO: rework
+            if( this == o )
+                return true;
+            if( o == null || getClass() != o.getClass() )
+                return false;
+            RequestKey other = (RequestKey)o;
+            return Objects.equals( username, other.username ) && action.equals( other.action ) && parameters.equals( other.parameters );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( username, action, parameters );
         }
     }
 
-    private static String readAsString(InputStream src) throws IOException
+    /**
+     * Response remembered together with its validators
+     */
+    protected static class Validated
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final int BUFFER_SIZE = 64 * 1024;
-        try( BufferedOutputStream bos = new BufferedOutputStream( baos );
-                BufferedInputStream bis = src instanceof BufferedInputStream ? (BufferedInputStream)src : new BufferedInputStream( src ) )
+        final String etag;
+        final String lastModified;
+        final JSONObject response;
+
+        Validated(String etag, String lastModified, JSONObject response)
         {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.response = response;
+        }
 
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int len;
+        Map<String, String> getConditionalHeaders()
+        {
+            Map<String, String> headers = new HashMap<>();
+            if( etag != null )
+                headers.put( "If-None-Match", etag );
+            if( lastModified != null )
+                headers.put( "If-Modified-Since", lastModified );
+            return headers;
+        }
+    }
 
-            while( ( len = bis.read( buffer ) ) != -1 )
-            {
-                bos.write( buffer, 0, len );
-            }
+    /**
+     * Measurements of a single request, reported to the listener when request completes
+     */
+    protected class Exchange
+    {
+        private final String action;
+        private final long start = System.nanoTime();
+        private long connectNanos = -1;
+        private long firstByteAt = -1;
+        private long bytesSent;
+        private CountingInputStream body;
+        private boolean reported;
+
+        protected Exchange(String action)
+        {
+            this.action = action;
+        }
+
+        void responded(HttpTransport.Response response)
+        {
+            firstByteAt = System.nanoTime();
+            connectNanos = response.getConnectNanos();
+        }
+
+        void completed(RequestOutcome outcome)
+        {
+            ConnectorListener l = listener;
+            if( l == null || reported )
+                return;
+            reported = true;
+            long end = System.nanoTime();
+            long firstByteNanos = firstByteAt < 0 ? -1 : firstByteAt - start;
+            long readNanos = firstByteAt < 0 ? -1 : end - firstByteAt;
+            l.requestCompleted( new RequestMetrics( action, outcome, connectNanos, firstByteNanos, readNanos, end - start, bytesSent,
+                    body == null ? 0 : body.count ) );
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream
+    {
+        long count;
+
+        CountingInputStream(InputStream in)
+        {
+            super( in );
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if( b >= 0 )
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read( b, off, len );
+            if( n > 0 )
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip( n );
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static String encodeURL(String src)
+    {
+        try
+        {
+            return URLEncoder.encode( src, "UTF-8" );
+        }
+        catch( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( "Incorrect symbols in URL", e ); //TODO: rework
         }
-        return baos.toString( "UTF-8" );
     }
 }
@@ -0,0 +1,199 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive failures circuit breaker.
+ * After the given number of failures in a row the circuit opens and rejects calls for the open duration,
+ * then lets a limited number of probe calls through (half-open state): the circuit closes if all of them succeed
+ * and opens again on the first failure.
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @FunctionalInterface
+    public interface StateListener
+    {
+        void stateChanged(String circuitName, State from, State to);
+    }
+
+    /**
+     * Permission to make a call, returned by {@link #tryAcquire()}.
+     * Remembers whether the call is a probe, so that calls granted before the circuit started probing
+     * do not count as probes when they complete.
+     */
+    public static final class Permit
+    {
+        private static final Permit CLOSED = new Permit( 0 );
+
+        // half-open round the probe belongs to, 0 for calls granted while circuit was closed
+        private final long round;
+
+        private Permit(long round)
+        {
+            this.round = round;
+        }
+
+        public boolean isProbe()
+        {
+            return round != 0;
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+    private final StateListener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesSucceeded;
+    private long probeRound;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit, int halfOpenProbes, StateListener listener)
+    {
+        this( name, failureThreshold, openDuration, unit, halfOpenProbes, listener, System::nanoTime );
+    }
+
+    /**
+     * @param name name reported to the listener and in exceptions
+     * @param failureThreshold number of consecutive failures opening the circuit
+     * @param openDuration time to reject calls before probing
+     * @param halfOpenProbes number of successful probes required to close the circuit
+     * @param listener receives state changes, may be null
+     * @param clock nano time source
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit, int halfOpenProbes, StateListener listener,
+            LongSupplier clock)
+    {
+        if( failureThreshold <= 0 || halfOpenProbes <= 0 )
+            throw new IllegalArgumentException( "Failure threshold and number of probes must be positive" );
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos( openDuration );
+        this.halfOpenProbes = halfOpenProbes;
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Asks permission to make a call. Every granted call must be followed by exactly one of
+     * {@link #onSuccess(Permit)}, {@link #onFailure(Permit)} or {@link #release(Permit)} with the returned permit.
+     * @return null if call must be rejected
+     */
+    public Permit tryAcquire()
+    {
+        State from;
+        Permit permit;
+        synchronized( this )
+        {
+            from = state;
+            if( state == State.CLOSED )
+                return Permit.CLOSED;
+            if( state == State.OPEN )
+            {
+                if( clock.getAsLong() - openedAt < openNanos )
+                    return null;
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probesSucceeded = 0;
+                probeRound++;
+            }
+            if( probesInFlight + probesSucceeded >= halfOpenProbes )
+                return null;
+            probesInFlight++;
+            permit = new Permit( probeRound );
+        }
+        fireStateChanged( from, State.HALF_OPEN );
+        return permit;
+    }
+
+    /**
+     * @return nanoseconds left until probes are allowed, 0 if circuit is not open
+     */
+    public synchronized long getRetryAfterNanos()
+    {
+        if( state != State.OPEN )
+            return 0;
+        return Math.max( 0, openNanos - ( clock.getAsLong() - openedAt ) );
+    }
+
+    public void onSuccess(Permit permit)
+    {
+        State from;
+        synchronized( this )
+        {
+            from = state;
+            consecutiveFailures = 0;
+            if( !isCurrentProbe( permit ) )
+                return;
+            probesInFlight--;
+            if( ++probesSucceeded < halfOpenProbes )
+                return;
+            state = State.CLOSED;
+        }
+        fireStateChanged( from, State.CLOSED );
+    }
+
+    public void onFailure(Permit permit)
+    {
+        State from;
+        synchronized( this )
+        {
+            from = state;
+            if( state == State.CLOSED && ++consecutiveFailures < failureThreshold )
+                return;
+            if( state == State.HALF_OPEN )
+            {
+                // calls started before probing say nothing about recovery
+                if( !isCurrentProbe( permit ) )
+                    return;
+                probesInFlight--;
+            }
+            openedAt = clock.getAsLong();
+            if( state == State.OPEN )
+                return;
+            state = State.OPEN;
+        }
+        fireStateChanged( from, State.OPEN );
+    }
+
+    /**
+     * Returns permission granted by {@link #tryAcquire()} when call outcome says nothing about server health
+     */
+    public synchronized void release(Permit permit)
+    {
+        if( isCurrentProbe( permit ) )
+            probesInFlight--;
+    }
+
+    private boolean isCurrentProbe(Permit permit)
+    {
+        return state == State.HALF_OPEN && permit.round == probeRound;
+    }
+
+    private void fireStateChanged(State from, State to)
+    {
+        if( listener != null && from != to )
+            listener.stateChanged( name, from, to );
+    }
+}
@@ -0,0 +1,263 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.DeadlineExceededException;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_ADD_TO_PROJECT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_CHANGE_ROLE_IN_PROJECT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_CREATE_PROJECT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGIN;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+/**
+ * Decorator which lets only one request per (user, action, parameters) be in flight:
+ * callers arriving while an identical request is running wait for it and share its result or exception.
+ * Only actions marked as coalesced are affected, by default these are the read actions and login.
+ * Actions which change data on the server are never coalesced, as two identical writes would silently run as one.
+ * A waiting caller gives up when its own {@link Deadline} expires, the shared request goes on for the others.
+ * If the shared request is aborted by the deadline of the caller which started it, waiting callers with time left repeat it.
+ * Shared JSON response must not be modified by callers.
+ */
+public class CoalescingBiostoreConnector implements BiostoreConnector
+{
+    public static final Collection<String> DEFAULT_ACTIONS = Collections
+            .unmodifiableList( Arrays.asList( ACTION_GET_PROJECT_LIST, ACTION_PROJECT_USERS, ACTION_LOGIN ) );
+
+    private static final Set<String> WRITE_ACTIONS = new HashSet<>(
+            Arrays.asList( ACTION_CREATE_PROJECT, ACTION_ADD_TO_PROJECT, ACTION_CHANGE_ROLE_IN_PROJECT, ACTION_LOGOUT ) );
+
+    private final BiostoreConnector delegate;
+    private final Set<String> coalescedActions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<RequestKey, CompletableFuture<JSONObject>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CoalescingBiostoreConnector(BiostoreConnector delegate)
+    {
+        this( delegate, DEFAULT_ACTIONS );
+    }
+
+    /**
+     * @param delegate connector to send requests through
+     * @param actions actions to coalesce, must be free of side effects
+     * @throws IllegalArgumentException if one of the actions changes data on the server
+     */
+    public CoalescingBiostoreConnector(BiostoreConnector delegate, Collection<String> actions)
+    {
+        this.delegate = Objects.requireNonNull( delegate );
+        actions.forEach( CoalescingBiostoreConnector::checkReadAction );
+        coalescedActions.addAll( actions );
+    }
+
+    /**
+     * @throws IllegalArgumentException if the action changes data on the server and coalesce is true
+     */
+    public void setCoalesced(String action, boolean coalesce)
+    {
+        if( coalesce )
+        {
+            checkReadAction( action );
+            coalescedActions.add( action );
+        }
+        else
+            coalescedActions.remove( action );
+    }
+
+    private static void checkReadAction(String action)
+    {
+        if( WRITE_ACTIONS.contains( action ) )
+            throw new IllegalArgumentException( "Action changes data on the server and cannot be coalesced: " + action );
+    }
+
+    public boolean isCoalesced(String action)
+    {
+        return coalescedActions.contains( action );
+    }
+
+    public BiostoreConnector getDelegate()
+    {
+        return delegate;
+    }
+
+    public Set<String> getCoalescedActions()
+    {
+        return new HashSet<>( coalescedActions );
+    }
+
+    /**
+     * @return number of calls which were served by a request of another caller
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    @Override
+    public boolean reusesResponses(String action)
+    {
+        return delegate.reusesResponses( action );
+    }
+
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        if( !coalescedActions.contains( action ) )
+            return delegate.askServer( username, action, parameters );
+
+        RequestKey key = new RequestKey( username, action, parameters );
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        CompletableFuture<JSONObject> existing;
+        while( ( existing = inFlight.putIfAbsent( key, future ) ) != null )
+        {
+            coalesced.incrementAndGet();
+            try
+            {
+                return await( existing, action );
+            }
+            catch( DeadlineExceededException e )
+            {
+                // shared request ran out of the budget of its caller, which says nothing about ours
+                Deadline deadline = Deadline.current();
+                if( deadline != null && deadline.isExpired() || !isDeadlineFailure( existing ) )
+                    throw e;
+                coalesced.decrementAndGet();
+                inFlight.remove( key, existing );
+            }
+        }
+        try
+        {
+            JSONObject result = delegate.askServer( username, action, parameters );
+            future.complete( result );
+            return result;
+        }
+        catch( RuntimeException | Error e )
+        {
+            future.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove( key, future );
+        }
+    }
+
+    private static boolean isDeadlineFailure(CompletableFuture<JSONObject> future)
+    {
+        try
+        {
+            future.getNow( null );
+            return false;
+        }
+        catch( CompletionException e )
+        {
+            return e.getCause() instanceof DeadlineExceededException;
+        }
+        catch( CancellationException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the request of another caller, but not longer than the deadline of the current thread
+     */
+    private static JSONObject await(CompletableFuture<JSONObject> future, String action)
+    {
+        Deadline deadline = Deadline.current();
+        if( deadline == null )
+            return await( future );
+        deadline.check( action );
+        CompletableFuture<JSONObject> waiting = new CompletableFuture<>();
+        future.whenComplete( (result, e) -> {
+            if( e == null )
+                waiting.complete( result );
+            else
+                waiting.completeExceptionally( e );
+        } );
+        Runnable unregister = deadline.whenExpired( () -> waiting.completeExceptionally( new DeadlineExceededException(
+                ( deadline.isCancelled() ? "Deadline was cancelled" : "Deadline exceeded" ) + " while waiting for '" + action
+                        + "' request of another caller" ) ) );
+        try
+        {
+            return await( waiting );
+        }
+        finally
+        {
+            unregister.run();
+        }
+    }
+
+    private static JSONObject await(CompletableFuture<JSONObject> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new BiostoreTransportException( "Interrupted while waiting for server response", e );
+        }
+        catch( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            if( cause instanceof Error )
+                throw (Error)cause;
+            throw new RuntimeException( cause );
+        }
+    }
+
+    private static class RequestKey
+    {
+        private final String username;
+        private final String action;
+        private final Map<String, String> parameters;
+        private final int hash;
+
+        RequestKey(String username, String action, Map<String, String> parameters)
+        {
+            this.username = username;
+            this.action = action;
+            this.parameters = parameters == null ? new TreeMap<>() : new TreeMap<>( parameters );
+            this.hash = Objects.hash( username, action, this.parameters );
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if( this == o )
+                return true;
+            if( o == null || getClass() != o.getClass() )
+                return false;
+            RequestKey other = (RequestKey)o;
+            return Objects.equals( username, other.username ) && action.equals( other.action ) && parameters.equals( other.parameters );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.biosoft.biostoreapi.impl;
+
+/**
+ * Algorithm deciding how many requests may be in flight at once, adjusted from observed round-trip times.
+ * Implementations are not thread-safe, {@link SchedulingBiostoreConnector} calls them under its lock.
+ */
+public interface ConcurrencyLimit
+{
+    /**
+     * @return current limit, at least 1
+     */
+    int getLimit();
+
+    /**
+     * @param rttNanos round-trip time of a completed request
+     * @param inFlight number of requests in flight when the request started, including itself
+     * @param dropped true if request failed because of timeout or transport error
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * @return limit which never changes
+     */
+    static ConcurrencyLimit fixed(int limit)
+    {
+        if( limit <= 0 )
+            throw new IllegalArgumentException( "Limit must be positive: " + limit );
+        return new ConcurrencyLimit()
+        {
+            @Override
+            public int getLimit()
+            {
+                return limit;
+            }
+
+            @Override
+            public void onSample(long rttNanos, int inFlight, boolean dropped)
+            {
+            }
+
+            @Override
+            public String toString()
+            {
+                return "fixed(" + limit + ")";
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package ru.biosoft.biostoreapi.impl;
+
+/**
+ * Storage of session cookies received from biostore server, one cookie header per user
+ */
+public interface CookieStore
+{
+    /**
+     * @return value for the Cookie request header or null if user has no session
+     */
+    String getCookies(String username);
+
+    void putCookies(String username, String cookieHeader);
+
+    void removeCookies(String username);
+}
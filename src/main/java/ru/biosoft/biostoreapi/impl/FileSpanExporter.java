@@ -0,0 +1,82 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.json.JSONObject;
+
+import ru.biosoft.biostoreapi.Span;
+import ru.biosoft.biostoreapi.SpanExporter;
+
+/**
+ * Appends spans to a local file, one JSON object per line:
+ * <pre>
+ * {"traceId":"...","spanId":"...","parentSpanId":"...","name":"getProjectList","startMillis":1700000000000,"durationMicros":1234,
+ *  "attributes":{"biostore.user":"alice"},"error":"..."}
+ * </pre>
+ * Root spans have no parentSpanId, spans which succeeded have no error.
+ */
+public class FileSpanExporter implements SpanExporter, Closeable
+{
+    private final Path file;
+
+    // guarded by this
+    private final Writer writer;
+
+    /**
+     * @param file file to append spans to, created if it does not exist
+     */
+    public FileSpanExporter(Path file) throws IOException
+    {
+        this.file = file;
+        this.writer = Files.newBufferedWriter( file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public void export(Span span)
+    {
+        JSONObject json = new JSONObject();
+        json.put( "traceId", span.getContext().getTraceId() );
+        json.put( "spanId", span.getContext().getSpanId() );
+        if( span.getParentSpanId() != null )
+            json.put( "parentSpanId", span.getParentSpanId() );
+        json.put( "name", span.getName() );
+        json.put( "startMillis", span.getStartMillis() );
+        json.put( "durationMicros", span.getDurationNanos() / 1000 );
+        json.put( "attributes", span.getAttributes() );
+        if( span.getError() != null )
+            json.put( "error", span.getError().toString() );
+        String line = json.toString();
+        synchronized( this )
+        {
+            try
+            {
+                writer.write( line );
+                writer.write( '\n' );
+                // spans are sampled, so flushing each of them is affordable and nothing is lost on crash
+                writer.flush();
+            }
+            catch( IOException e )
+            {
+                throw new UncheckedIOException( "Cannot write span to " + file, e );
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        writer.close();
+    }
+}
@@ -0,0 +1,164 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel: O(1) scheduling and cancellation of a large number of coarse-grained timeouts.
+ * Tasks are executed on the single timer thread, so they must be short and non-blocking.
+ */
+public class HashedWheelTimer implements AutoCloseable
+{
+    private static final Logger log = Logger.getLogger( HashedWheelTimer.class.getName() );
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param tickDuration duration of one tick, timeouts fire with this precision
+     * @param unit time unit of tickDuration
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     * @param threadName name of the timer thread
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, String threadName)
+    {
+        if( tickDuration <= 0 || ticksPerWheel <= 0 )
+            throw new IllegalArgumentException( "Tick duration and wheel size must be positive" );
+        this.tickNanos = unit.toNanos( tickDuration );
+        int size = Integer.highestOneBit( ticksPerWheel - 1 ) << 1;
+        size = Math.max( size, 1 );
+        this.wheel = new Queue[size];
+        for( int i = 0; i < size; i++ )
+            wheel[i] = new ArrayDeque<>();
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread( this::run, threadName );
+        worker.setDaemon( true );
+        worker.start();
+    }
+
+    /**
+     * Schedules task for a single execution after the given delay
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        if( stopped )
+            throw new IllegalStateException( "Timer is stopped" );
+        long deadline = System.nanoTime() - startTime + Math.max( 0, unit.toNanos( delay ) );
+        Timeout timeout = new Timeout( task, deadline );
+        newTimeouts.add( timeout );
+        return timeout;
+    }
+
+    @Override
+    public void close()
+    {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run()
+    {
+        long tick = 0;
+        while( !stopped )
+        {
+            long sleepNanos = tickNanos * ( tick + 1 ) - ( System.nanoTime() - startTime );
+            if( sleepNanos > 0 )
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep( sleepNanos );
+                }
+                catch( InterruptedException e )
+                {
+                    if( stopped )
+                        return;
+                }
+                continue;
+            }
+            transferNewTimeouts( tick );
+            expire( wheel[(int) ( tick & mask )] );
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts(long currentTick)
+    {
+        Timeout timeout;
+        while( ( timeout = newTimeouts.poll() ) != null )
+        {
+            if( timeout.cancelled )
+                continue;
+            long deadlineTick = Math.max( timeout.deadline / tickNanos, currentTick );
+            timeout.remainingRounds = ( deadlineTick - currentTick ) / wheel.length;
+            wheel[(int) ( deadlineTick & mask )].add( timeout );
+        }
+    }
+
+    private static void expire(Queue<Timeout> bucket)
+    {
+        for( Iterator<Timeout> it = bucket.iterator(); it.hasNext(); )
+        {
+            Timeout timeout = it.next();
+            if( timeout.cancelled )
+            {
+                it.remove();
+            }
+            else if( timeout.remainingRounds <= 0 )
+            {
+                it.remove();
+                try
+                {
+                    timeout.task.run();
+                }
+                catch( RuntimeException e )
+                {
+                    log.log( Level.WARNING, "Timer task failed", e );
+                }
+            }
+            else
+            {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    public static class Timeout
+    {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        Timeout(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents task from execution if it was not executed yet
+         */
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+}
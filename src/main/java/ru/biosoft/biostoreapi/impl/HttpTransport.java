@@ -0,0 +1,59 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import ru.biosoft.biostoreapi.Deadline;
+
+/**
+ * HTTP client used by {@link BiostoreConnectorImpl} to deliver requests to biostore server
+ * @see HttpTransports
+ */
+public interface HttpTransport
+{
+    /**
+     * Sends POST request and waits for the response headers
+     * @param url target URL
+     * @param headers request headers
+     * @param body request body
+     * @param timeoutMillis connect and read timeout in milliseconds
+     * @return server response, must be closed by the caller
+     * @throws IOException if request cannot be delivered
+     */
+    Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException;
+
+    /**
+     * Sends POST request which is aborted when deadline expires or is cancelled, including while the response body is read.
+     * Default implementation ignores the deadline.
+     * @param deadline deadline of the request, may be null
+     */
+    default Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis, Deadline deadline)
+            throws IOException
+    {
+        return post( url, headers, body, timeoutMillis );
+    }
+
+    interface Response extends Closeable
+    {
+        int getStatusCode();
+
+        /**
+         * @param name case-insensitive header name
+         * @return values of the header, empty list if header is absent
+         */
+        List<String> getHeaders(String name);
+
+        InputStream getBody() throws IOException;
+
+        /**
+         * @return time spent to establish connection in nanoseconds, -1 if transport cannot measure it
+         */
+        default long getConnectNanos()
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ru.biosoft.biostoreapi.impl;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Chooses the best {@link HttpTransport} available for the running Java version.
+ * This is the Java 8 variant, the multi-release jar contains a Java 11 variant based on java.net.http.HttpClient.
+ */
+public class HttpTransports
+{
+    private HttpTransports()
+    {
+    }
+
+    public static HttpTransport createDefault()
+    {
+        return new UrlConnectionTransport();
+    }
+
+    /**
+     * @param sslContext context for HTTPS connections, for example one trusting a local test certificate
+     */
+    public static HttpTransport create(SSLContext sslContext)
+    {
+        return new UrlConnectionTransport( sslContext.getSocketFactory() );
+    }
+}
@@ -0,0 +1,180 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.biosoft.biostoreapi.ConnectorListener;
+import ru.biosoft.biostoreapi.RequestMetrics;
+import ru.biosoft.biostoreapi.RequestOutcome;
+
+/**
+ * Lock-free in-memory {@link ConnectorListener} collecting per-action latency histograms, byte counts and outcome counters
+ */
+public class InMemoryMetricsRecorder implements ConnectorListener
+{
+    private final ConcurrentHashMap<String, ActionMetrics> actions = new ConcurrentHashMap<>();
+
+    @Override
+    public void requestCompleted(RequestMetrics metrics)
+    {
+        ActionMetrics action = actions.computeIfAbsent( metrics.getAction(), key -> new ActionMetrics() );
+        action.requestOutcomes[metrics.getOutcome().ordinal()].increment();
+        action.total.record( metrics.getTotalNanos() );
+        if( metrics.getConnectNanos() >= 0 )
+            action.connect.record( metrics.getConnectNanos() );
+        if( metrics.getFirstByteNanos() >= 0 )
+            action.firstByte.record( metrics.getFirstByteNanos() );
+        if( metrics.getReadNanos() >= 0 )
+            action.read.record( metrics.getReadNanos() );
+        action.bytesSent.add( metrics.getBytesSent() );
+        action.bytesReceived.add( metrics.getBytesReceived() );
+    }
+
+    @Override
+    public void callCompleted(String action, RequestOutcome outcome, long durationNanos)
+    {
+        ActionMetrics metrics = actions.computeIfAbsent( action, key -> new ActionMetrics() );
+        metrics.callOutcomes[outcome.ordinal()].increment();
+        metrics.calls.record( durationNanos );
+    }
+
+    /**
+     * @return snapshot of metrics for each action seen so far, sorted by action name
+     */
+    public Map<String, ActionSnapshot> getSnapshot()
+    {
+        Map<String, ActionSnapshot> result = new TreeMap<>();
+        actions.forEach( (action, metrics) -> result.put( action, metrics.snapshot() ) );
+        return result;
+    }
+
+    public void reset()
+    {
+        actions.clear();
+    }
+
+    private static class ActionMetrics
+    {
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram connect = new LatencyHistogram();
+        final LatencyHistogram firstByte = new LatencyHistogram();
+        final LatencyHistogram read = new LatencyHistogram();
+        final LatencyHistogram calls = new LatencyHistogram();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder[] requestOutcomes = newCounters();
+        final LongAdder[] callOutcomes = newCounters();
+
+        ActionSnapshot snapshot()
+        {
+            return new ActionSnapshot( total.snapshot(), connect.snapshot(), firstByte.snapshot(), read.snapshot(), calls.snapshot(),
+                    bytesSent.sum(), bytesReceived.sum(), sums( requestOutcomes ), sums( callOutcomes ) );
+        }
+
+        private static LongAdder[] newCounters()
+        {
+            LongAdder[] counters = new LongAdder[RequestOutcome.values().length];
+            for( int i = 0; i < counters.length; i++ )
+                counters[i] = new LongAdder();
+            return counters;
+        }
+
+        private static long[] sums(LongAdder[] counters)
+        {
+            long[] result = new long[counters.length];
+            for( int i = 0; i < counters.length; i++ )
+                result[i] = counters[i].sum();
+            return result;
+        }
+    }
+
+    /**
+     * Metrics of one action. Request metrics come from the connector, call metrics from the provider.
+     */
+    public static class ActionSnapshot
+    {
+        private final LatencyHistogram.Snapshot total;
+        private final LatencyHistogram.Snapshot connect;
+        private final LatencyHistogram.Snapshot firstByte;
+        private final LatencyHistogram.Snapshot read;
+        private final LatencyHistogram.Snapshot calls;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long[] requestOutcomes;
+        private final long[] callOutcomes;
+
+        ActionSnapshot(LatencyHistogram.Snapshot total, LatencyHistogram.Snapshot connect, LatencyHistogram.Snapshot firstByte,
+                LatencyHistogram.Snapshot read, LatencyHistogram.Snapshot calls, long bytesSent, long bytesReceived, long[] requestOutcomes,
+                long[] callOutcomes)
+        {
+            this.total = total;
+            this.connect = connect;
+            this.firstByte = firstByte;
+            this.read = read;
+            this.calls = calls;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.requestOutcomes = requestOutcomes;
+            this.callOutcomes = callOutcomes;
+        }
+
+        public LatencyHistogram.Snapshot getTotal()
+        {
+            return total;
+        }
+
+        public LatencyHistogram.Snapshot getConnect()
+        {
+            return connect;
+        }
+
+        public LatencyHistogram.Snapshot getFirstByte()
+        {
+            return firstByte;
+        }
+
+        public LatencyHistogram.Snapshot getRead()
+        {
+            return read;
+        }
+
+        public LatencyHistogram.Snapshot getCalls()
+        {
+            return calls;
+        }
+
+        public long getBytesSent()
+        {
+            return bytesSent;
+        }
+
+        public long getBytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        public long getRequestCount(RequestOutcome outcome)
+        {
+            return requestOutcomes[outcome.ordinal()];
+        }
+
+        public long getCallCount(RequestOutcome outcome)
+        {
+            return callOutcomes[outcome.ordinal()];
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder( "requests: " ).append( total ).append( "; calls: " ).append( calls ).append( "; outcomes:" );
+            for( RequestOutcome outcome : RequestOutcome.values() )
+            {
+                if( requestOutcomes[outcome.ordinal()] + callOutcomes[outcome.ordinal()] > 0 )
+                    sb.append( ' ' ).append( outcome ).append( '=' ).append( Math.max( requestOutcomes[outcome.ordinal()], callOutcomes[outcome.ordinal()] ) );
+            }
+            return sb.append( "; sent " ).append( bytesSent ).append( "b, received " ).append( bytesReceived ).append( 'b' ).toString();
+        }
+    }
+}
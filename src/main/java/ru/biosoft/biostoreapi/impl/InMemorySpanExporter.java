@@ -0,0 +1,63 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import ru.biosoft.biostoreapi.Span;
+import ru.biosoft.biostoreapi.SpanExporter;
+
+/**
+ * Keeps the latest exported spans in memory, mostly for tests and diagnostics
+ */
+public class InMemorySpanExporter implements SpanExporter
+{
+    public static final int DEFAULT_MAX_SPANS = 10000;
+
+    private final int maxSpans;
+
+    // guarded by this
+    private final ArrayDeque<Span> spans = new ArrayDeque<>();
+
+    public InMemorySpanExporter()
+    {
+        this( DEFAULT_MAX_SPANS );
+    }
+
+    /**
+     * @param maxSpans number of spans to keep, older ones are dropped
+     */
+    public InMemorySpanExporter(int maxSpans)
+    {
+        if( maxSpans <= 0 )
+            throw new IllegalArgumentException( "Maximal number of spans must be positive: " + maxSpans );
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    public synchronized void export(Span span)
+    {
+        if( spans.size() == maxSpans )
+            spans.removeFirst();
+        spans.addLast( span );
+    }
+
+    /**
+     * @return spans in the order they ended
+     */
+    public synchronized List<Span> getSpans()
+    {
+        return new ArrayList<>( spans );
+    }
+
+    public List<Span> getSpans(String name)
+    {
+        return getSpans().stream().filter( span -> span.getName().equals( name ) ).collect( Collectors.toList() );
+    }
+
+    public synchronized void clear()
+    {
+        spans.clear();
+    }
+}
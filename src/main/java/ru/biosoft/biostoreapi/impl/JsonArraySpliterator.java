@@ -0,0 +1,141 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ATTR_TYPE;
+
+/**
+ * Incrementally parses response of the form {..., "arrayKey": [{...}, {...}], ...}:
+ * elements of the array are parsed and mapped one at a time, so the whole response tree is never built.
+ * Other members of the response object are collected into an envelope which is checked when the object ends.
+ * @param <T> type of mapped elements
+ */
+public class JsonArraySpliterator<T> extends Spliterators.AbstractSpliterator<T>
+{
+    private enum State
+    {
+        START, MEMBERS, ARRAY, DONE
+    }
+
+    private final JSONTokener tokener;
+    private final String arrayKey;
+    private final Function<JSONObject, T> mapper;
+    private final Consumer<JSONObject> envelopeCheck;
+    private final JSONObject envelope = new JSONObject();
+
+    private State state = State.START;
+    private boolean arrayFound;
+    private boolean firstElement;
+
+    /**
+     * @param tokener source of JSON
+     * @param arrayKey name of the member containing array of objects
+     * @param mapper converts array element, null results are skipped
+     * @param envelopeCheck validates other members of the response (e.g. "type"), called before the first element if
+     *        the response type precedes the array and at the end of the object; should throw to report an error
+     */
+    public JsonArraySpliterator(JSONTokener tokener, String arrayKey, Function<JSONObject, T> mapper, Consumer<JSONObject> envelopeCheck)
+    {
+        super( Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL );
+        this.tokener = tokener;
+        this.arrayKey = arrayKey;
+        this.mapper = mapper;
+        this.envelopeCheck = envelopeCheck;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        while( true )
+        {
+            switch( state )
+            {
+                case START:
+                    if( tokener.nextClean() != '{' )
+                        throw tokener.syntaxError( "A JSONObject text must begin with '{'" );
+                    state = State.MEMBERS;
+                    break;
+                case MEMBERS:
+                    readMember();
+                    break;
+                case ARRAY:
+                    T element = readElement();
+                    if( element != null )
+                    {
+                        action.accept( element );
+                        return true;
+                    }
+                    break;
+                case DONE:
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private void readMember()
+    {
+        char c = tokener.nextClean();
+        if( c == ',' )
+            c = tokener.nextClean();
+        if( c == '}' )
+        {
+            state = State.DONE;
+            envelopeCheck.accept( envelope );
+            if( !arrayFound )
+                throw new JSONException( "JSONObject[" + JSONObject.quote( arrayKey ) + "] not found." );
+            return;
+        }
+        if( c != '"' && c != '\'' )
+            throw tokener.syntaxError( "A JSONObject member name expected" );
+        String key = tokener.nextString( c );
+        if( tokener.nextClean() != ':' )
+            throw tokener.syntaxError( "Expected a ':' after a key" );
+        if( arrayKey.equals( key ) )
+        {
+            if( tokener.nextClean() != '[' )
+                throw tokener.syntaxError( "A JSONArray text must start with '['" );
+            if( envelope.has( ATTR_TYPE ) )
+                envelopeCheck.accept( envelope );
+            arrayFound = true;
+            firstElement = true;
+            state = State.ARRAY;
+        }
+        else
+        {
+            envelope.put( key, tokener.nextValue() );
+        }
+    }
+
+    /**
+     * @return mapped element or null if element was skipped or array has ended
+     */
+    private T readElement()
+    {
+        char c = tokener.nextClean();
+        if( c == ']' )
+        {
+            state = State.MEMBERS;
+            return null;
+        }
+        if( !firstElement )
+        {
+            if( c != ',' )
+                throw tokener.syntaxError( "Expected a ',' or ']'" );
+            c = tokener.nextClean();
+        }
+        firstElement = false;
+        tokener.back();
+        Object value = tokener.nextValue();
+        if( !( value instanceof JSONObject ) )
+            return null;
+        return mapper.apply( (JSONObject)value );
+    }
+}
@@ -0,0 +1,127 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (e.g. nanoseconds) with log-linear buckets:
+ * each power of two is split into 16 sub-buckets, so percentiles have at most ~6% relative error.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = ( 64 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+    public void record(long value)
+    {
+        if( value < 0 )
+            value = 0;
+        counts.incrementAndGet( indexOf( value ) );
+        count.increment();
+        sum.add( value );
+        max.accumulate( value );
+    }
+
+    public Snapshot snapshot()
+    {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for( int i = 0; i < BUCKETS; i++ )
+        {
+            copy[i] = counts.get( i );
+            total += copy[i];
+        }
+        return new Snapshot( copy, total, sum.sum(), max.get() );
+    }
+
+    static int indexOf(long value)
+    {
+        if( value < SUB_BUCKETS )
+            return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int subBucket = (int) ( ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 ) );
+        return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value falling into the bucket
+     */
+    static long upperBoundOf(int index)
+    {
+        if( index < SUB_BUCKETS )
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = (long) ( SUB_BUCKETS + subBucket ) << shift;
+        return lower + ( 1L << shift ) - 1;
+    }
+
+    /**
+     * Immutable copy of the histogram state
+     */
+    public static class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max)
+        {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getMax()
+        {
+            return max;
+        }
+
+        public double getMean()
+        {
+            return count == 0 ? 0 : (double)sum / count;
+        }
+
+        /**
+         * @param percentile value between 0 and 100
+         * @return value not exceeded by the given percent of recorded values, 0 if histogram is empty
+         */
+        public long getPercentile(double percentile)
+        {
+            if( count == 0 )
+                return 0;
+            long rank = (long)Math.ceil( percentile / 100 * count );
+            rank = Math.max( 1, Math.min( rank, count ) );
+            long seen = 0;
+            for( int i = 0; i < counts.length; i++ )
+            {
+                seen += counts[i];
+                if( seen >= rank )
+                    return Math.min( upperBoundOf( i ), max );
+            }
+            return max;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count=" + count + ", p50=" + getPercentile( 50 ) + ", p99=" + getPercentile( 99 ) + ", p999=" + getPercentile( 99.9 )
+                    + ", max=" + max;
+        }
+    }
+}
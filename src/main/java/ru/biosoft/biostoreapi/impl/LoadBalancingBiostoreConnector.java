@@ -0,0 +1,593 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.json.JSONObject;
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.DeadlineExceededException;
+import ru.biosoft.biostoreapi.Priority;
+import ru.biosoft.biostoreapi.SpanContext;
+import ru.biosoft.biostoreapi.StreamingBiostoreConnector;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+/**
+ * Spreads requests over several mirrors of the biostore server. Each request goes to the healthy endpoint with the lowest
+ * exponentially weighted moving average of latency multiplied by the number of its requests in flight plus one.
+ * Health is checked passively: an endpoint is ejected after several consecutive transport failures, for a period
+ * doubled on each repeated ejection, and gets requests again when the period is over.
+ * <p>
+ * Read actions may be hedged: if the first endpoint has not answered within the 95th percentile of the action latency,
+ * the same request is sent to another endpoint and the first answer is taken, the other request is aborted.
+ * Read request which fails before that delay is sent to another endpoint at once.
+ * Hedging requires an executor, see {@link #setHedging(Executor, Collection)}.
+ * <p>
+ * Users with session cookies of an endpoint are pinned to it while it is healthy, and their requests are not hedged.
+ * Endpoints must not share a {@link CookieStore}.
+ */
+public class LoadBalancingBiostoreConnector implements StreamingBiostoreConnector
+{
+    public static final Collection<String> DEFAULT_HEDGED_ACTIONS = Collections
+            .unmodifiableList( Arrays.asList( ACTION_GET_PROJECT_LIST, ACTION_PROJECT_USERS ) );
+
+    public static final int DEFAULT_MAX_PINNED_USERS = 100000;
+
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final double HEDGE_PERCENTILE = 95;
+    /** Number of latency samples of an action needed before its requests are hedged */
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    /** Latency histogram of an action is started anew after this number of samples, so the delay follows recent latency */
+    private static final int HEDGE_WINDOW = 10000;
+
+    private final List<Endpoint> endpoints;
+    private final LongSupplier clock;
+    private final LruCache<String, Endpoint> pins = new LruCache<>( DEFAULT_MAX_PINNED_USERS, 0, TimeUnit.SECONDS, false );
+    private final ConcurrentHashMap<String, HedgeDelay> hedgeDelays = new ConcurrentHashMap<>();
+
+    private volatile int failureThreshold = 3;
+    private volatile long ejectNanos = TimeUnit.SECONDS.toNanos( 10 );
+    private volatile long maxEjectNanos = TimeUnit.MINUTES.toNanos( 5 );
+
+    private volatile Executor hedgeExecutor;
+    private volatile Set<String> hedgedActions = Collections.emptySet();
+    private volatile long minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos( 5 );
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public LoadBalancingBiostoreConnector(List<? extends BiostoreConnector> endpoints)
+    {
+        this( endpoints, System::nanoTime );
+    }
+
+    /**
+     * @param clock nano time source used for latency and ejection periods
+     */
+    public LoadBalancingBiostoreConnector(List<? extends BiostoreConnector> endpoints, LongSupplier clock)
+    {
+        if( endpoints.isEmpty() )
+            throw new IllegalArgumentException( "No endpoints" );
+        List<Endpoint> list = new ArrayList<>();
+        for( BiostoreConnector connector : endpoints )
+            list.add( new Endpoint( list.size(), Objects.requireNonNull( connector ) ) );
+        this.endpoints = Collections.unmodifiableList( list );
+        this.clock = clock;
+    }
+
+    /**
+     * Creates endpoints sending requests over HTTP
+     * @param serverLinks URLs of the biostore permission service on each mirror
+     * @param serverKey name of the server registered in biostore
+     */
+    public static LoadBalancingBiostoreConnector create(List<String> serverLinks, String serverKey)
+    {
+        List<BiostoreConnector> connectors = new ArrayList<>();
+        for( String serverLink : serverLinks )
+            connectors.add( new BiostoreConnectorImpl( serverLink, serverKey ) );
+        return new LoadBalancingBiostoreConnector( connectors );
+    }
+
+    /**
+     * @param failureThreshold number of consecutive transport failures ejecting the endpoint
+     * @param ejectDuration duration of the first ejection, doubled for each repeated one
+     * @param maxEjectDuration maximal duration of ejection
+     */
+    public void setHealthSettings(int failureThreshold, long ejectDuration, long maxEjectDuration, TimeUnit unit)
+    {
+        if( failureThreshold <= 0 )
+            throw new IllegalArgumentException( "Failure threshold must be positive: " + failureThreshold );
+        this.failureThreshold = failureThreshold;
+        this.ejectNanos = unit.toNanos( ejectDuration );
+        this.maxEjectNanos = unit.toNanos( maxEjectDuration );
+    }
+
+    /**
+     * @param executor executor to run requests of hedged actions on, null to disable hedging
+     * @param actions actions which may be hedged, must be read-only
+     */
+    public void setHedging(Executor executor, Collection<String> actions)
+    {
+        this.hedgeExecutor = executor;
+        this.hedgedActions = Collections.unmodifiableSet( new HashSet<>( actions ) );
+    }
+
+    /**
+     * @param delay request is never hedged earlier than that, even if the percentile is lower
+     */
+    public void setMinHedgeDelay(long delay, TimeUnit unit)
+    {
+        this.minHedgeDelayNanos = unit.toNanos( delay );
+    }
+
+    public int getEndpointCount()
+    {
+        return endpoints.size();
+    }
+
+    public BiostoreConnector getEndpoint(int index)
+    {
+        return endpoints.get( index ).connector;
+    }
+
+    /**
+     * @return smoothed latency of the endpoint, 0 if it had no successful requests
+     */
+    public long getLatencyNanos(int index)
+    {
+        return (long)endpoints.get( index ).ewmaNanos;
+    }
+
+    public boolean isHealthy(int index)
+    {
+        return endpoints.get( index ).isAvailable( clock.getAsLong() );
+    }
+
+    /**
+     * @return current delay before hedging requests of the action, -1 if there are not enough samples yet
+     */
+    public long getHedgeDelayNanos(String action)
+    {
+        HedgeDelay delay = hedgeDelays.get( action );
+        return delay == null ? -1 : delay.delayNanos;
+    }
+
+    /**
+     * @return number of hedging requests sent
+     */
+    public long getHedgeCount()
+    {
+        return hedges.sum();
+    }
+
+    /**
+     * @return number of hedging requests which answered before the original ones
+     */
+    public long getHedgeWinCount()
+    {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public boolean reusesResponses(String action)
+    {
+        for( Endpoint endpoint : endpoints )
+        {
+            if( endpoint.connector.reusesResponses( action ) )
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        Endpoint pinned = pinnedEndpoint( username );
+        Endpoint first = pinned != null ? pinned : choose( null );
+        Executor executor = hedgeExecutor;
+        long delay = getHedgeDelayNanos( action );
+        if( pinned != null || executor == null || delay < 0 || endpoints.size() < 2 || !hedgedActions.contains( action ) )
+            return call( first, username, action, parameters );
+        return hedge( executor, first, Math.max( delay, minHedgeDelayNanos ), username, action, parameters );
+    }
+
+    /**
+     * Streams response of the chosen endpoint, streamed requests are not hedged
+     */
+    @Override
+    public Reader openResponse(String username, String action, Map<String, String> parameters)
+    {
+        Endpoint pinned = pinnedEndpoint( username );
+        Endpoint endpoint = pinned != null ? pinned : choose( null );
+        if( !( endpoint.connector instanceof StreamingBiostoreConnector ) )
+            throw new UnsupportedOperationException( "Endpoint " + endpoint.index + " does not support streaming" );
+        long start = clock.getAsLong();
+        endpoint.inFlight.incrementAndGet();
+        try
+        {
+            Reader reader = ( (StreamingBiostoreConnector)endpoint.connector ).openResponse( username, action, parameters );
+            // time to the first byte, as the body is read by the caller
+            endpoint.onSuccess( clock.getAsLong() - start );
+            return reader;
+        }
+        catch( DeadlineExceededException e )
+        {
+            throw e;
+        }
+        catch( BiostoreTransportException e )
+        {
+            endpoint.onFailure( clock.getAsLong() );
+            throw e;
+        }
+        finally
+        {
+            endpoint.inFlight.decrementAndGet();
+        }
+    }
+
+    private JSONObject call(Endpoint endpoint, String username, String action, Map<String, String> parameters)
+    {
+        long start = clock.getAsLong();
+        endpoint.inFlight.incrementAndGet();
+        try
+        {
+            JSONObject response = endpoint.connector.askServer( username, action, parameters );
+            long latency = clock.getAsLong() - start;
+            endpoint.onSuccess( latency );
+            hedgeDelays.computeIfAbsent( action, key -> new HedgeDelay() ).record( latency );
+            updatePin( endpoint, username, action );
+            return response;
+        }
+        catch( DeadlineExceededException e )
+        {
+            // caller's budget or a cancelled hedge, says nothing about the endpoint
+            throw e;
+        }
+        catch( BiostoreTransportException e )
+        {
+            endpoint.onFailure( clock.getAsLong() );
+            throw e;
+        }
+        finally
+        {
+            endpoint.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the request to the first endpoint in the calling thread. If it does not answer within the delay, the timer starts
+     * the same request to another endpoint on the executor, and the first request is aborted if that one answers first.
+     * Calling thread never waits for the executor unless the hedging request is already running, so the executor may be
+     * the one calling threads belong to.
+     */
+    @SuppressWarnings("try")
+    private JSONObject hedge(Executor executor, Endpoint first, long delayNanos, String username, String action,
+            Map<String, String> parameters)
+    {
+        Deadline parent = Deadline.current();
+        Deadline primaryDeadline = parent == null ? Deadline.none() : parent.newChild();
+        Hedge hedge = new Hedge( executor, first, primaryDeadline, username, action, parameters );
+        HashedWheelTimer.Timeout timeout = HedgeTimer.INSTANCE.schedule( hedge::start, delayNanos, TimeUnit.NANOSECONDS );
+        long start = clock.getAsLong();
+        try( Deadline.Scope scope = primaryDeadline.enter() )
+        {
+            JSONObject response = call( first, username, action, parameters );
+            if( !hedge.close() )
+                hedge.abort();
+            return response;
+        }
+        catch( RuntimeException e )
+        {
+            if( !hedge.close() )
+            {
+                JSONObject response = hedge.await( e );
+                hedgeWins.increment();
+                // aborted request is at least that slow
+                first.recordLatency( clock.getAsLong() - start );
+                return response;
+            }
+            if( !( e instanceof BiostoreTransportException ) || e instanceof DeadlineExceededException )
+                throw e;
+            // failed before the hedging delay, try another endpoint at once
+            Endpoint second = choose( first );
+            if( second == null )
+                throw e;
+            hedges.increment();
+            return call( second, username, action, parameters );
+        }
+        finally
+        {
+            timeout.cancel();
+            primaryDeadline.cancel();
+        }
+    }
+
+    private Endpoint pinnedEndpoint(String username)
+    {
+        if( username == null )
+            return null;
+        Endpoint pinned = pins.get( username );
+        if( pinned == null || pinned.isAvailable( clock.getAsLong() ) )
+            return pinned;
+        // the session is lost together with the endpoint
+        pins.remove( username );
+        return null;
+    }
+
+    private void updatePin(Endpoint endpoint, String username, String action)
+    {
+        if( username == null )
+            return;
+        if( ACTION_LOGOUT.equals( action ) )
+            pins.remove( username );
+        else if( endpoint.hasSession( username ) )
+            pins.put( username, endpoint );
+    }
+
+    /**
+     * @param exclude endpoint which must not be chosen, may be null
+     * @return available endpoint with the lowest load, the one returning from ejection first if all are ejected,
+     *         null if there is no endpoint except excluded one
+     */
+    private Endpoint choose(Endpoint exclude)
+    {
+        long now = clock.getAsLong();
+        int size = endpoints.size();
+        int offset = ThreadLocalRandom.current().nextInt( size );
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        Endpoint fallback = null;
+        for( int i = 0; i < size; i++ )
+        {
+            Endpoint endpoint = endpoints.get( ( offset + i ) % size );
+            if( endpoint == exclude )
+                continue;
+            if( endpoint.isAvailable( now ) )
+            {
+                double score = endpoint.score();
+                if( best == null || score < bestScore )
+                {
+                    best = endpoint;
+                    bestScore = score;
+                }
+            }
+            else if( fallback == null || endpoint.ejectedUntil < fallback.ejectedUntil )
+                fallback = endpoint;
+        }
+        return best != null ? best : fallback;
+    }
+
+    @Override
+    public String toString()
+    {
+        long now = clock.getAsLong();
+        StringBuilder sb = new StringBuilder();
+        for( Endpoint endpoint : endpoints )
+        {
+            sb.append( sb.length() == 0 ? "" : ", " ).append( endpoint.index ).append( ": " )
+                    .append( TimeUnit.NANOSECONDS.toMicros( (long)endpoint.ewmaNanos ) ).append( " us" );
+            if( !endpoint.isAvailable( now ) )
+                sb.append( " (ejected)" );
+        }
+        return sb.toString();
+    }
+
+    private class Endpoint
+    {
+        final int index;
+        final BiostoreConnector connector;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile double ewmaNanos;
+
+        // guarded by this
+        int consecutiveFailures;
+        int ejections;
+        volatile long ejectedUntil;
+        volatile boolean ejected;
+
+        Endpoint(int index, BiostoreConnector connector)
+        {
+            this.index = index;
+            this.connector = connector;
+        }
+
+        boolean isAvailable(long now)
+        {
+            return !ejected || now - ejectedUntil >= 0;
+        }
+
+        double score()
+        {
+            // endpoints without samples score zero, so each gets tried
+            return ewmaNanos * ( inFlight.get() + 1 );
+        }
+
+        synchronized void recordLatency(long latencyNanos)
+        {
+            ewmaNanos = ewmaNanos == 0 ? latencyNanos : ewmaNanos * ( 1 - EWMA_WEIGHT ) + latencyNanos * EWMA_WEIGHT;
+        }
+
+        synchronized void onSuccess(long latencyNanos)
+        {
+            recordLatency( latencyNanos );
+            consecutiveFailures = 0;
+            ejections = 0;
+            ejected = false;
+        }
+
+        synchronized void onFailure(long now)
+        {
+            if( ++consecutiveFailures < failureThreshold || ( ejected && now - ejectedUntil < 0 ) )
+                return;
+            long duration = Math.min( maxEjectNanos, ejectNanos << Math.min( ejections, 20 ) );
+            ejections++;
+            ejectedUntil = now + duration;
+            ejected = true;
+        }
+
+        boolean hasSession(String username)
+        {
+            return connector instanceof BiostoreConnectorImpl && !( (BiostoreConnectorImpl)connector ).isJwtOnly()
+                    && ( (BiostoreConnectorImpl)connector ).getCookieStore().getCookies( username ) != null;
+        }
+    }
+
+    /**
+     * Second request of a hedged call, started by the timer unless the call is closed earlier
+     */
+    private class Hedge
+    {
+        private static final int NEW = 0;
+        private static final int STARTED = 1;
+        private static final int CLOSED = 2;
+
+        final Executor executor;
+        final Endpoint first;
+        final Deadline primaryDeadline;
+        final Deadline parent = Deadline.current();
+        final Priority priority = Priority.current();
+        final SpanContext spanContext = SpanContext.current();
+        final String username;
+        final String action;
+        final Map<String, String> parameters;
+        final AtomicInteger state = new AtomicInteger( NEW );
+        final CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        volatile Deadline deadline;
+
+        Hedge(Executor executor, Endpoint first, Deadline primaryDeadline, String username, String action, Map<String, String> parameters)
+        {
+            this.executor = executor;
+            this.first = first;
+            this.primaryDeadline = primaryDeadline;
+            this.username = username;
+            this.action = action;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Called on the timer thread
+         */
+        @SuppressWarnings("try")
+        void start()
+        {
+            if( !state.compareAndSet( NEW, STARTED ) )
+                return;
+            Endpoint second = choose( first );
+            if( second == null )
+            {
+                result.completeExceptionally( new BiostoreTransportException( "No other endpoint for '" + action + "'" ) );
+                return;
+            }
+            hedges.increment();
+            Deadline hedgeDeadline = parent == null ? Deadline.none() : parent.newChild();
+            deadline = hedgeDeadline;
+            try
+            {
+                CompletableFuture.supplyAsync( () -> {
+                    try( Deadline.Scope scope = hedgeDeadline.enter();
+                            Priority.Scope priorityScope = priority == null ? null : priority.enter();
+                            SpanContext.Scope spanScope = spanContext == null ? null : spanContext.enter() )
+                    {
+                        return call( second, username, action, parameters );
+                    }
+                }, executor ).whenComplete( (response, error) -> {
+                    if( error != null )
+                        result.completeExceptionally( error );
+                    else if( result.complete( response ) )
+                        primaryDeadline.cancel();
+                } );
+            }
+            catch( RejectedExecutionException e )
+            {
+                result.completeExceptionally( e );
+            }
+        }
+
+        /**
+         * @return true if the hedging request was not started and will not be
+         */
+        boolean close()
+        {
+            return state.compareAndSet( NEW, CLOSED );
+        }
+
+        void abort()
+        {
+            Deadline d = deadline;
+            if( d != null )
+                d.cancel();
+        }
+
+        /**
+         * @return response of the hedging request
+         * @throws RuntimeException failure of the first request if the hedging one failed too
+         */
+        JSONObject await(RuntimeException primaryFailure)
+        {
+            try
+            {
+                return result.get();
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                abort();
+                throw primaryFailure;
+            }
+            catch( ExecutionException e )
+            {
+                throw primaryFailure;
+            }
+        }
+    }
+
+    private static class HedgeTimer
+    {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer( 1, TimeUnit.MILLISECONDS, 1024, "biostore-hedge-timer" );
+    }
+
+    /**
+     * Tracks latency of an action and derives the hedging delay from it
+     */
+    private static class HedgeDelay
+    {
+        private volatile LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong samples = new AtomicLong();
+        volatile long delayNanos = -1;
+
+        void record(long latencyNanos)
+        {
+            LatencyHistogram current = histogram;
+            current.record( latencyNanos );
+            long count = samples.incrementAndGet();
+            // percentile is recalculated periodically, as a snapshot copies the whole histogram
+            if( count >= HEDGE_MIN_SAMPLES && ( count % 64 == 0 || delayNanos < 0 ) )
+                delayNanos = current.snapshot().getPercentile( HEDGE_PERCENTILE );
+            if( count >= HEDGE_WINDOW && samples.compareAndSet( count, 0 ) )
+                histogram = new LatencyHistogram();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe bounded map with least-recently-used eviction and time-to-live expiration.
+ * Expired entries are removed lazily on access or by {@link #cleanUp()}.
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V>
+{
+    private final int maxSize;
+    private final long ttlNanos;
+    private final boolean expireAfterAccess;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize maximal number of entries
+     * @param ttl time to live of an entry, non-positive value means no expiration
+     * @param unit time unit of ttl
+     * @param expireAfterAccess if true then ttl is counted from the last access (idle timeout), otherwise from the last write
+     */
+    public LruCache(int maxSize, long ttl, TimeUnit unit, boolean expireAfterAccess)
+    {
+        this( maxSize, ttl, unit, expireAfterAccess, System::nanoTime );
+    }
+
+    /**
+     * @param clock source of {@link System#nanoTime()}-like timestamps
+     */
+    public LruCache(int maxSize, long ttl, TimeUnit unit, boolean expireAfterAccess, LongSupplier clock)
+    {
+        if( maxSize <= 0 )
+            throw new IllegalArgumentException( "Cache size must be positive: " + maxSize );
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl > 0 ? unit.toNanos( ttl ) : 0;
+        this.expireAfterAccess = expireAfterAccess;
+        this.clock = clock;
+        this.map = new LinkedHashMap<K, Entry<V>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest)
+            {
+                if( size() > LruCache.this.maxSize )
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return cached value or null if there is no value or it is expired
+     */
+    public synchronized V get(K key)
+    {
+        Entry<V> entry = map.get( key );
+        if( entry == null )
+        {
+            misses++;
+            return null;
+        }
+        long now = clock.getAsLong();
+        if( entry.isExpired( now ) )
+        {
+            map.remove( key );
+            evictions++;
+            misses++;
+            return null;
+        }
+        if( expireAfterAccess && entry.ttlNanos > 0 )
+            entry.expiresAt = now + entry.ttlNanos;
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value)
+    {
+        put( key, value, ttlNanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Puts value with its own time to live, e.g. the remaining lifetime of an entry restored from a snapshot
+     * @param ttl time to live of the entry, non-positive value means no expiration
+     */
+    public synchronized void put(K key, V value, long ttl, TimeUnit unit)
+    {
+        long nanos = ttl > 0 ? unit.toNanos( ttl ) : 0;
+        map.put( key, new Entry<>( value, nanos > 0 ? clock.getAsLong() + nanos : Entry.NEVER, nanos ) );
+    }
+
+    /**
+     * Visits all entries which are not expired, from the least to the most recently used, without affecting their order
+     */
+    public synchronized void forEach(EntryVisitor<? super K, ? super V> visitor)
+    {
+        long now = clock.getAsLong();
+        for( Map.Entry<K, Entry<V>> entry : map.entrySet() )
+        {
+            Entry<V> value = entry.getValue();
+            if( !value.isExpired( now ) )
+                visitor.visit( entry.getKey(), value.value, value.expiresAt == Entry.NEVER ? Long.MAX_VALUE : value.expiresAt - now );
+        }
+    }
+
+    public interface EntryVisitor<K, V>
+    {
+        /**
+         * @param remainingNanos time left until expiration, Long.MAX_VALUE if entry never expires
+         */
+        void visit(K key, V value, long remainingNanos);
+    }
+
+    /**
+     * @return removed value or null if there was no such key
+     */
+    public synchronized V remove(K key)
+    {
+        Entry<V> entry = map.remove( key );
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes all entries matching the predicate
+     * @return number of removed entries
+     */
+    public synchronized int removeIf(BiPredicate<? super K, ? super V> predicate)
+    {
+        int removed = 0;
+        for( Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator(); it.hasNext(); )
+        {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if( predicate.test( entry.getKey(), entry.getValue().value ) )
+            {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces values of all entries with results of the function, keeping their expiration time and order
+     * @param function returns new value, the same value to keep the entry as is or null to remove it
+     * @return number of replaced or removed entries
+     */
+    public synchronized int replaceAll(BiFunction<? super K, ? super V, ? extends V> function)
+    {
+        int changed = 0;
+        for( Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator(); it.hasNext(); )
+        {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            Entry<V> old = entry.getValue();
+            V value = function.apply( entry.getKey(), old.value );
+            if( value == old.value )
+                continue;
+            if( value == null )
+                it.remove();
+            else
+                entry.setValue( new Entry<>( value, old.expiresAt, old.ttlNanos ) );
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * Removes all expired entries
+     */
+    public synchronized void cleanUp()
+    {
+        long now = clock.getAsLong();
+        for( Iterator<Entry<V>> it = map.values().iterator(); it.hasNext(); )
+        {
+            if( it.next().isExpired( now ) )
+            {
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        map.clear();
+    }
+
+    /**
+     * @return number of entries including expired ones which were not cleaned up yet
+     */
+    public synchronized int size()
+    {
+        return map.size();
+    }
+
+    public synchronized Stats getStats()
+    {
+        return new Stats( hits, misses, evictions );
+    }
+
+    private static class Entry<V>
+    {
+        /** Expiration time of entries without time to live */
+        static final long NEVER = Long.MAX_VALUE;
+
+        final V value;
+        long expiresAt;
+        /** Own time to live, 0 if entry never expires */
+        final long ttlNanos;
+
+        Entry(V value, long expiresAt, long ttlNanos)
+        {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.ttlNanos = ttlNanos;
+        }
+
+        boolean isExpired(long now)
+        {
+            // nanoTime may be negative, so the sentinel cannot take part in the subtraction
+            return expiresAt != NEVER && now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Snapshot of cache usage counters
+     */
+    public static class Stats
+    {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        public Stats(long hits, long misses, long evictions)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits()
+        {
+            return hits;
+        }
+
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        /**
+         * @return number of entries removed because of size limit or expiration
+         */
+        public long getEvictions()
+        {
+            return evictions;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+        }
+    }
+}
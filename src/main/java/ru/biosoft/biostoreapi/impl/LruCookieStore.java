@@ -0,0 +1,52 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default {@link CookieStore}: bounded number of users, sessions idle longer than the timeout are forgotten
+ */
+public class LruCookieStore implements CookieStore
+{
+    public static final int DEFAULT_MAX_USERS = 10000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 30;
+
+    private final LruCache<String, String> cookies;
+
+    public LruCookieStore()
+    {
+        this( DEFAULT_MAX_USERS, DEFAULT_IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES );
+    }
+
+    public LruCookieStore(int maxUsers, long idleTimeout, TimeUnit unit)
+    {
+        this.cookies = new LruCache<>( maxUsers, idleTimeout, unit, true );
+    }
+
+    @Override
+    public String getCookies(String username)
+    {
+        return cookies.get( username );
+    }
+
+    @Override
+    public void putCookies(String username, String cookieHeader)
+    {
+        cookies.put( username, cookieHeader );
+    }
+
+    @Override
+    public void removeCookies(String username)
+    {
+        cookies.remove( username );
+    }
+
+    public int size()
+    {
+        return cookies.size();
+    }
+
+    public LruCache.Stats getStats()
+    {
+        return cookies.getStats();
+    }
+}
@@ -0,0 +1,218 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.json.JSONObject;
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.CircuitOpenException;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.DeadlineExceededException;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN;
+
+/**
+ * Decorator which fails fast with {@link CircuitOpenException} while the server is unhealthy
+ * and retries idempotent actions with jittered exponential backoff.
+ * Only {@link BiostoreTransportException} counts as a failure: a JSON response of any type means the server is alive,
+ * and an expired {@link Deadline} is the caller's budget, not a sign of server health.
+ * Settings should be changed before the first request, as circuit breakers are created lazily with current settings.
+ */
+public class ResilientBiostoreConnector implements BiostoreConnector
+{
+    public static final Collection<String> DEFAULT_RETRIED_ACTIONS = Collections
+            .unmodifiableList( Arrays.asList( ACTION_GET_PROJECT_LIST, ACTION_PROJECT_USERS, ACTION_REFRESH_J_W_TOKEN ) );
+
+    public enum Scope
+    {
+        /** One breaker for all requests to the server */
+        PER_SERVER,
+        /** Separate breaker for each action */
+        PER_ACTION
+    }
+
+    private static final String SERVER_CIRCUIT = "server";
+
+    private final BiostoreConnector delegate;
+    private final Scope scope;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Set<String> retriedActions = ConcurrentHashMap.newKeySet();
+
+    private volatile int failureThreshold = 5;
+    private volatile long openNanos = TimeUnit.SECONDS.toNanos( 30 );
+    private volatile int halfOpenProbes = 1;
+    private volatile int maxAttempts = 3;
+    private volatile long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos( 100 );
+    private volatile long maxDelayNanos = TimeUnit.SECONDS.toNanos( 5 );
+    private volatile CircuitBreaker.StateListener stateListener;
+
+    public ResilientBiostoreConnector(BiostoreConnector delegate)
+    {
+        this( delegate, Scope.PER_SERVER );
+    }
+
+    public ResilientBiostoreConnector(BiostoreConnector delegate, Scope scope)
+    {
+        this( delegate, scope, System::nanoTime );
+    }
+
+    /**
+     * @param delegate connector to send requests through
+     * @param scope granularity of circuit breakers
+     * @param clock nano time source used by circuit breakers
+     */
+    public ResilientBiostoreConnector(BiostoreConnector delegate, Scope scope, LongSupplier clock)
+    {
+        this.delegate = Objects.requireNonNull( delegate );
+        this.scope = scope;
+        this.clock = clock;
+        retriedActions.addAll( DEFAULT_RETRIED_ACTIONS );
+    }
+
+    /**
+     * @param failureThreshold number of consecutive transport failures opening the circuit
+     * @param openDuration time to fail fast before probing the server
+     * @param halfOpenProbes number of successful probes closing the circuit
+     */
+    public void setCircuitSettings(int failureThreshold, long openDuration, TimeUnit unit, int halfOpenProbes)
+    {
+        if( failureThreshold <= 0 || halfOpenProbes <= 0 )
+            throw new IllegalArgumentException( "Failure threshold and number of probes must be positive" );
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos( openDuration );
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    /**
+     * @param maxAttempts total number of attempts for retried actions, 1 disables retries
+     * @param baseDelay delay cap before the first retry, doubled for each next one
+     * @param maxDelay maximal delay cap
+     */
+    public void setRetrySettings(int maxAttempts, long baseDelay, long maxDelay, TimeUnit unit)
+    {
+        if( maxAttempts <= 0 )
+            throw new IllegalArgumentException( "Number of attempts must be positive: " + maxAttempts );
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = unit.toNanos( baseDelay );
+        this.maxDelayNanos = unit.toNanos( maxDelay );
+    }
+
+    /**
+     * @param action action to change
+     * @param retried whether action may be retried, must be true only for idempotent actions
+     */
+    public void setRetried(String action, boolean retried)
+    {
+        if( retried )
+            retriedActions.add( action );
+        else
+            retriedActions.remove( action );
+    }
+
+    public BiostoreConnector getDelegate()
+    {
+        return delegate;
+    }
+
+    public Set<String> getRetriedActions()
+    {
+        return new HashSet<>( retriedActions );
+    }
+
+    public void setStateListener(CircuitBreaker.StateListener stateListener)
+    {
+        this.stateListener = stateListener;
+    }
+
+    /**
+     * @return breaker guarding given action
+     */
+    public CircuitBreaker getCircuitBreaker(String action)
+    {
+        String name = scope == Scope.PER_SERVER ? SERVER_CIRCUIT : action;
+        return breakers.computeIfAbsent( name, key -> new CircuitBreaker( key, failureThreshold, openNanos, TimeUnit.NANOSECONDS,
+                halfOpenProbes, ( circuit, from, to ) -> {
+                    CircuitBreaker.StateListener l = stateListener;
+                    if( l != null )
+                        l.stateChanged( circuit, from, to );
+                }, clock ) );
+    }
+
+    @Override
+    public boolean reusesResponses(String action)
+    {
+        return delegate.reusesResponses( action );
+    }
+
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        CircuitBreaker breaker = getCircuitBreaker( action );
+        int attempts = retriedActions.contains( action ) ? maxAttempts : 1;
+        for( int attempt = 1;; attempt++ )
+        {
+            CircuitBreaker.Permit permit = breaker.tryAcquire();
+            if( permit == null )
+                throw new CircuitOpenException( breaker.getName(), breaker.getRetryAfterNanos() );
+            try
+            {
+                JSONObject response = delegate.askServer( username, action, parameters );
+                breaker.onSuccess( permit );
+                return response;
+            }
+            catch( CircuitOpenException | DeadlineExceededException e )
+            {
+                breaker.release( permit );
+                throw e;
+            }
+            catch( BiostoreTransportException e )
+            {
+                breaker.onFailure( permit );
+                if( attempt >= attempts )
+                    throw e;
+                backoff( attempt, e );
+            }
+            catch( RuntimeException | Error e )
+            {
+                breaker.release( permit );
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sleeps for a random time up to the exponentially growing cap ("full jitter"),
+     * so that clients failed together do not retry together
+     */
+    private void backoff(int attempt, BiostoreTransportException failure)
+    {
+        long cap = Math.min( maxDelayNanos, baseDelayNanos << Math.min( attempt - 1, 30 ) );
+        long delay = cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong( cap + 1 );
+        Deadline deadline = Deadline.current();
+        if( deadline != null && deadline.remaining( TimeUnit.NANOSECONDS ) <= delay )
+            throw failure;
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep( delay );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed( e );
+            throw failure;
+        }
+    }
+}
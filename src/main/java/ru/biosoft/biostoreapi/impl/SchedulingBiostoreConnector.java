@@ -0,0 +1,403 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.json.JSONObject;
+import ru.biosoft.biostoreapi.AdmissionRejectedException;
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.CircuitOpenException;
+import ru.biosoft.biostoreapi.Deadline;
+import ru.biosoft.biostoreapi.DeadlineExceededException;
+import ru.biosoft.biostoreapi.Priority;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGIN;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+/**
+ * Admission control in front of another connector. Number of requests in flight is bounded by a {@link ConcurrencyLimit},
+ * which may adapt to observed round-trip times. Requests over the limit wait in bounded queues, one per {@link Priority}:
+ * a waiting request of a higher priority is always admitted first, and within a priority users take turns, so one user
+ * issuing many requests does not delay the others. Request is rejected with {@link AdmissionRejectedException} when
+ * the queue of its priority is full, and with {@link DeadlineExceededException} when the current deadline expires while it waits.
+ * <p>
+ * Priority of a request is {@link Priority#current() priority of the calling thread} if it is set, otherwise that of its action.
+ */
+public class SchedulingBiostoreConnector implements BiostoreConnector
+{
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final BiostoreConnector delegate;
+    private final ConcurrencyLimit limit;
+    private final LongSupplier clock;
+
+    private final Map<String, Priority> actionPriorities = new ConcurrentHashMap<>();
+    private volatile Priority defaultPriority = Priority.BACKGROUND;
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private final FairQueue[] queues = new FairQueue[PRIORITIES.length];
+    private final int[] capacities = new int[PRIORITIES.length];
+    private int inFlight;
+    private int queued;
+    private double smoothedRttNanos;
+
+    private final LatencyHistogram[] queueWait = new LatencyHistogram[PRIORITIES.length];
+    private final LongAdder[] admitted = new LongAdder[PRIORITIES.length];
+    private final LongAdder[] rejected = new LongAdder[PRIORITIES.length];
+
+    public SchedulingBiostoreConnector(BiostoreConnector delegate, ConcurrencyLimit limit)
+    {
+        this( delegate, limit, System::nanoTime );
+    }
+
+    /**
+     * @param clock source of {@link System#nanoTime()}-like timestamps
+     */
+    public SchedulingBiostoreConnector(BiostoreConnector delegate, ConcurrencyLimit limit, LongSupplier clock)
+    {
+        this.delegate = Objects.requireNonNull( delegate );
+        this.limit = Objects.requireNonNull( limit );
+        this.clock = clock;
+        for( int i = 0; i < PRIORITIES.length; i++ )
+        {
+            queues[i] = new FairQueue();
+            capacities[i] = DEFAULT_QUEUE_CAPACITY;
+            queueWait[i] = new LatencyHistogram();
+            admitted[i] = new LongAdder();
+            rejected[i] = new LongAdder();
+        }
+        for( String action : new String[] {ACTION_LOGIN, ACTION_LOGOUT, ACTION_GET_PROJECT_LIST, ACTION_PROJECT_USERS} )
+            actionPriorities.put( action, Priority.INTERACTIVE );
+    }
+
+    /**
+     * @param priority priority of the action used when calling thread has no priority set, null to use the default
+     */
+    public void setActionPriority(String action, Priority priority)
+    {
+        if( priority == null )
+            actionPriorities.remove( action );
+        else
+            actionPriorities.put( action, priority );
+    }
+
+    /**
+     * @param priority priority of actions without their own priority, {@link Priority#BACKGROUND} initially
+     */
+    public void setDefaultPriority(Priority priority)
+    {
+        this.defaultPriority = Objects.requireNonNull( priority );
+    }
+
+    public Priority getPriority(String action)
+    {
+        Priority priority = Priority.current();
+        if( priority != null )
+            return priority;
+        priority = actionPriorities.get( action );
+        return priority == null ? defaultPriority : priority;
+    }
+
+    /**
+     * @param capacity maximal number of requests of the priority waiting for admission, 0 to reject them when limit is reached
+     */
+    public void setQueueCapacity(Priority priority, int capacity)
+    {
+        if( capacity < 0 )
+            throw new IllegalArgumentException( "Capacity must not be negative: " + capacity );
+        synchronized( lock )
+        {
+            capacities[priority.ordinal()] = capacity;
+        }
+    }
+
+    public BiostoreConnector getDelegate()
+    {
+        return delegate;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit()
+    {
+        return limit;
+    }
+
+    public int getLimit()
+    {
+        synchronized( lock )
+        {
+            return limit.getLimit();
+        }
+    }
+
+    public int getInFlight()
+    {
+        synchronized( lock )
+        {
+            return inFlight;
+        }
+    }
+
+    public int getQueued(Priority priority)
+    {
+        synchronized( lock )
+        {
+            return queues[priority.ordinal()].size;
+        }
+    }
+
+    /**
+     * @return exponentially smoothed round-trip time of requests, 0 if there were none
+     */
+    public long getSmoothedRttNanos()
+    {
+        synchronized( lock )
+        {
+            return (long)smoothedRttNanos;
+        }
+    }
+
+    /**
+     * @return time requests of the priority spent waiting for admission, in nanoseconds, zero for requests admitted at once
+     */
+    public LatencyHistogram.Snapshot getQueueWait(Priority priority)
+    {
+        return queueWait[priority.ordinal()].snapshot();
+    }
+
+    public long getAdmittedCount(Priority priority)
+    {
+        return admitted[priority.ordinal()].sum();
+    }
+
+    public long getRejectedCount(Priority priority)
+    {
+        return rejected[priority.ordinal()].sum();
+    }
+
+    @Override
+    public boolean reusesResponses(String action)
+    {
+        return delegate.reusesResponses( action );
+    }
+
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        Priority priority = getPriority( action );
+        int started = admit( username, action, priority );
+        long start = clock.getAsLong();
+        boolean dropped = false;
+        boolean sample = true;
+        try
+        {
+            return delegate.askServer( username, action, parameters );
+        }
+        catch( CircuitOpenException | AdmissionRejectedException | DeadlineExceededException e )
+        {
+            // rejected locally or aborted because the caller's budget ran out, round-trip time says nothing about the server
+            sample = false;
+            throw e;
+        }
+        catch( BiostoreTransportException e )
+        {
+            dropped = true;
+            throw e;
+        }
+        finally
+        {
+            long rtt = clock.getAsLong() - start;
+            synchronized( lock )
+            {
+                inFlight--;
+                if( sample )
+                {
+                    limit.onSample( rtt, started, dropped );
+                    smoothedRttNanos = smoothedRttNanos == 0 ? rtt : smoothedRttNanos * 0.9 + rtt * 0.1;
+                }
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Waits until the request may be sent
+     * @return number of requests in flight including this one
+     */
+    private int admit(String username, String action, Priority priority)
+    {
+        int index = priority.ordinal();
+        Waiter waiter;
+        synchronized( lock )
+        {
+            if( queued == 0 && inFlight < limit.getLimit() )
+            {
+                admitted[index].increment();
+                queueWait[index].record( 0 );
+                return ++inFlight;
+            }
+            if( queues[index].size >= capacities[index] )
+            {
+                rejected[index].increment();
+                throw new AdmissionRejectedException( "Queue of " + priority + " requests is full, '" + action + "' rejected", priority );
+            }
+            waiter = new Waiter( username == null ? "" : username, index, clock.getAsLong() );
+            queues[index].add( waiter );
+            queued++;
+        }
+
+        Deadline deadline = Deadline.current();
+        Runnable unregister = deadline == null ? null : deadline.whenExpired( waiter.latch::countDown );
+        boolean interrupted = false;
+        try
+        {
+            waiter.latch.await();
+        }
+        catch( InterruptedException e )
+        {
+            interrupted = true;
+        }
+        finally
+        {
+            if( unregister != null )
+                unregister.run();
+        }
+
+        synchronized( lock )
+        {
+            if( waiter.admittedInFlight > 0 )
+            {
+                if( interrupted )
+                    Thread.currentThread().interrupt();
+                return waiter.admittedInFlight;
+            }
+            queues[index].remove( waiter );
+            queued--;
+            rejected[index].increment();
+        }
+        if( interrupted )
+        {
+            Thread.currentThread().interrupt();
+            throw new BiostoreTransportException( "Interrupted while waiting for admission of '" + action + "'" );
+        }
+        if( deadline != null )
+            deadline.check( action );
+        throw new DeadlineExceededException( "Deadline exceeded while waiting for admission of '" + action + "'" );
+    }
+
+    // must be called under lock
+    private void dispatch()
+    {
+        while( queued > 0 && inFlight < limit.getLimit() )
+        {
+            Waiter waiter = null;
+            for( FairQueue queue : queues )
+            {
+                waiter = queue.poll();
+                if( waiter != null )
+                    break;
+            }
+            if( waiter == null )
+                return;
+            queued--;
+            waiter.admittedInFlight = ++inFlight;
+            admitted[waiter.priority].increment();
+            queueWait[waiter.priority].record( clock.getAsLong() - waiter.enqueuedAt );
+            waiter.latch.countDown();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized( lock )
+        {
+            Map<Priority, Integer> queueSizes = new EnumMap<>( Priority.class );
+            for( Priority priority : PRIORITIES )
+                queueSizes.put( priority, queues[priority.ordinal()].size );
+            return "limit=" + limit + ", inFlight=" + inFlight + ", queued=" + queueSizes + ", rtt="
+                    + TimeUnit.NANOSECONDS.toMicros( (long)smoothedRttNanos ) + " us";
+        }
+    }
+
+    private static class Waiter
+    {
+        final String user;
+        final int priority;
+        final long enqueuedAt;
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        /** Set when admitted, guarded by lock */
+        int admittedInFlight;
+
+        Waiter(String user, int priority, long enqueuedAt)
+        {
+            this.user = user;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Queue of waiters where users take turns: each poll takes the oldest waiter of the next user in rotation
+     */
+    private static class FairQueue
+    {
+        private final Map<String, ArrayDeque<Waiter>> byUser = new HashMap<>();
+        private final ArrayDeque<String> rotation = new ArrayDeque<>();
+        int size;
+
+        void add(Waiter waiter)
+        {
+            ArrayDeque<Waiter> waiters = byUser.get( waiter.user );
+            if( waiters == null )
+            {
+                waiters = new ArrayDeque<>();
+                byUser.put( waiter.user, waiters );
+                rotation.add( waiter.user );
+            }
+            waiters.add( waiter );
+            size++;
+        }
+
+        Waiter poll()
+        {
+            String user = rotation.poll();
+            if( user == null )
+                return null;
+            ArrayDeque<Waiter> waiters = byUser.get( user );
+            Waiter waiter = waiters.poll();
+            if( waiters.isEmpty() )
+                byUser.remove( user );
+            else
+                rotation.add( user );
+            size--;
+            return waiter;
+        }
+
+        void remove(Waiter waiter)
+        {
+            ArrayDeque<Waiter> waiters = byUser.get( waiter.user );
+            if( waiters == null || !waiters.remove( waiter ) )
+                return;
+            if( waiters.isEmpty() )
+            {
+                byUser.remove( waiter.user );
+                rotation.remove( waiter.user );
+            }
+            size--;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import ru.biosoft.biostoreapi.Deadline;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}, works on any Java version
+ */
+public class UrlConnectionTransport implements HttpTransport
+{
+    private final SSLSocketFactory sslSocketFactory;
+
+    public UrlConnectionTransport()
+    {
+        this( null );
+    }
+
+    /**
+     * @param sslSocketFactory factory for HTTPS connections, null to use the default one
+     */
+    public UrlConnectionTransport(SSLSocketFactory sslSocketFactory)
+    {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    @Override
+    public Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException
+    {
+        return post( url, headers, body, timeoutMillis, null );
+    }
+
+    @Override
+    public Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis, Deadline deadline)
+            throws IOException
+    {
+        HttpURLConnection urlc = (HttpURLConnection)new URL( url ).openConnection();
+        if( sslSocketFactory != null && urlc instanceof HttpsURLConnection )
+            ( (HttpsURLConnection)urlc ).setSSLSocketFactory( sslSocketFactory );
+        urlc.setRequestMethod( "POST" );
+
+        urlc.setUseCaches( false ); // Don't look at possibly cached data
+        urlc.setConnectTimeout( timeoutMillis );
+        urlc.setReadTimeout( timeoutMillis );
+        for( Map.Entry<String, String> header : headers.entrySet() )
+            urlc.setRequestProperty( header.getKey(), header.getValue() );
+
+        urlc.setDoOutput( true );
+        // closing the socket unblocks connect, write and read calls
+        Runnable unregister = deadline == null ? null : deadline.whenExpired( urlc::disconnect );
+        try
+        {
+            long connectStart = System.nanoTime();
+            urlc.connect();
+            long connectNanos = System.nanoTime() - connectStart;
+            try( OutputStream os = urlc.getOutputStream() )
+            {
+                os.write( body );
+                os.flush();
+            }
+            return new UrlConnectionResponse( urlc, urlc.getResponseCode(), connectNanos, unregister );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            if( unregister != null )
+                unregister.run();
+            throw e;
+        }
+    }
+
+    private static class UrlConnectionResponse implements Response
+    {
+        private final HttpURLConnection urlc;
+        private final int statusCode;
+        private final long connectNanos;
+        private final Runnable unregister;
+        private InputStream body;
+
+        UrlConnectionResponse(HttpURLConnection urlc, int statusCode, long connectNanos, Runnable unregister)
+        {
+            this.urlc = urlc;
+            this.statusCode = statusCode;
+            this.connectNanos = connectNanos;
+            this.unregister = unregister;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        @Override
+        public List<String> getHeaders(String name)
+        {
+            for( Map.Entry<String, List<String>> entry : urlc.getHeaderFields().entrySet() )
+            {
+                if( name.equalsIgnoreCase( entry.getKey() ) )
+                    return entry.getValue();
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException
+        {
+            if( body == null )
+                body = urlc.getInputStream();
+            return body;
+        }
+
+        @Override
+        public long getConnectNanos()
+        {
+            return connectNanos;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if( unregister != null )
+                unregister.run();
+            // closing the stream returns keep-alive connection to the pool
+            if( body != null )
+                body.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ru.biosoft.biostoreapi.impl;
+
+/**
+ * Delay-based limit modelled on TCP Vegas. The queue building up at the server is estimated as
+ * {@code limit * (1 - minRtt / rtt)}, where minRtt is the round-trip time without load: the limit grows while the
+ * estimated queue is small and shrinks when it is large, so it settles near the server capacity before requests fail.
+ * Minimal RTT is measured again every {@code probeInterval} samples, in case server got slower or faster: the limit is halved
+ * for a moment, so the queue drains and requests show the RTT without load again; samples of requests started under the
+ * previous limit are ignored until then. Dropped requests only shrink the limit, their RTT says nothing about the server queue.
+ */
+public class VegasLimit implements ConcurrencyLimit
+{
+    private final int minLimit;
+    private final int maxLimit;
+    private final int probeInterval;
+    private double limit;
+    private long minRttNanos;
+    private double smoothedRttNanos;
+    private int samples;
+    private boolean probing;
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit)
+    {
+        this( initialLimit, minLimit, maxLimit, 1000 );
+    }
+
+    /**
+     * @param probeInterval number of samples after which the no-load RTT is measured again
+     */
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit, int probeInterval)
+    {
+        if( minLimit <= 0 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit )
+            throw new IllegalArgumentException( "Invalid limits: initial=" + initialLimit + ", min=" + minLimit + ", max=" + maxLimit );
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.probeInterval = probeInterval;
+        this.limit = initialLimit;
+    }
+
+    @Override
+    public int getLimit()
+    {
+        return (int)limit;
+    }
+
+    /**
+     * @return estimated round-trip time without load, 0 if there were no samples
+     */
+    public long getMinRttNanos()
+    {
+        return minRttNanos;
+    }
+
+    /**
+     * @return exponentially smoothed round-trip time
+     */
+    public long getSmoothedRttNanos()
+    {
+        return (long)smoothedRttNanos;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped)
+    {
+        double log = Math.max( 1, Math.log10( limit ) );
+        if( dropped )
+        {
+            limit = Math.max( minLimit, limit - log );
+            return;
+        }
+        rttNanos = Math.max( 1, rttNanos );
+        smoothedRttNanos = smoothedRttNanos == 0 ? rttNanos : smoothedRttNanos * 0.9 + rttNanos * 0.1;
+        if( probing )
+        {
+            // request still waited in the queue built up under the previous limit
+            if( inFlight > limit )
+                return;
+            probing = false;
+        }
+        if( ++samples >= probeInterval )
+        {
+            samples = 0;
+            minRttNanos = 0;
+            limit = Math.max( minLimit, limit / 2 );
+            probing = true;
+            return;
+        }
+        if( minRttNanos == 0 || rttNanos < minRttNanos )
+        {
+            minRttNanos = rttNanos;
+            return;
+        }
+
+        // limit which is not used gives no information about capacity
+        if( inFlight * 2 < limit )
+            return;
+        double queue = limit * ( 1 - (double)minRttNanos / rttNanos );
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        if( queue <= alpha )
+            limit = Math.min( maxLimit, limit + log );
+        else if( queue >= beta )
+            limit = Math.max( minLimit, limit - log );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "vegas(" + getLimit() + ", minRtt=" + minRttNanos / 1000 + " us)";
+    }
+}
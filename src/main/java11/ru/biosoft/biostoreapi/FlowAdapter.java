@@ -0,0 +1,68 @@
+package ru.biosoft.biostoreapi;
+
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+/**
+ * Exposes {@link PagedPublisher} as {@link Flow.Publisher}.
+ * This class exists only in META-INF/versions/11 of the multi-release jar.
+ */
+public class FlowAdapter
+{
+    private FlowAdapter()
+    {
+    }
+
+    public static <T> Flow.Publisher<T> toFlowPublisher(PagedPublisher<T> publisher)
+    {
+        Objects.requireNonNull( publisher );
+        return subscriber -> publisher.subscribe( new FlowSubscriber<T>( Objects.requireNonNull( subscriber ) ) );
+    }
+
+    private static class FlowSubscriber<T> implements PagedPublisher.Subscriber<T>
+    {
+        private final Flow.Subscriber<? super T> subscriber;
+
+        FlowSubscriber(Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(PagedPublisher.Subscription subscription)
+        {
+            subscriber.onSubscribe( new Flow.Subscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                    subscription.request( n );
+                }
+
+                @Override
+                public void cancel()
+                {
+                    subscription.cancel();
+                }
+            } );
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            subscriber.onNext( item );
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            subscriber.onError( throwable );
+        }
+
+        @Override
+        public void onComplete()
+        {
+            subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.biosoft.biostoreapi.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.net.ssl.SSLContext;
+
+import ru.biosoft.biostoreapi.Deadline;
+
+/**
+ * {@link HttpTransport} based on {@link HttpClient}. Prefers HTTP/2, so concurrent requests
+ * are multiplexed over a few shared connections instead of opening a connection per request.
+ */
+public class HttpClientTransport implements HttpTransport
+{
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds( 10 );
+
+    private final HttpClient client;
+
+    public HttpClientTransport()
+    {
+        this( null, DEFAULT_CONNECT_TIMEOUT );
+    }
+
+    /**
+     * @param sslContext context for HTTPS connections
+     */
+    public HttpClientTransport(SSLContext sslContext)
+    {
+        this( sslContext, DEFAULT_CONNECT_TIMEOUT );
+    }
+
+    /**
+     * @param sslContext context for HTTPS connections, null to use the default one
+     * @param connectTimeout time to establish a connection, so that unreachable server fails the request
+     * before its timeout when the latter is longer
+     */
+    public HttpClientTransport(SSLContext sslContext, Duration connectTimeout)
+    {
+        HttpClient.Builder builder = HttpClient.newBuilder().version( HttpClient.Version.HTTP_2 )
+                .followRedirects( HttpClient.Redirect.NORMAL ).connectTimeout( connectTimeout );
+        if( sslContext != null )
+            builder.sslContext( sslContext );
+        this.client = builder.build();
+    }
+
+    @Override
+    public Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException
+    {
+        return post( url, headers, body, timeoutMillis, null );
+    }
+
+    @Override
+    public Response post(String url, Map<String, String> headers, byte[] body, int timeoutMillis, Deadline deadline)
+            throws IOException
+    {
+        HttpRequest.Builder request = HttpRequest.newBuilder( URI.create( url ) ).timeout( Duration.ofMillis( timeoutMillis ) )
+                .POST( HttpRequest.BodyPublishers.ofByteArray( body ) );
+        headers.forEach( request::header );
+        CompletableFuture<HttpResponse<InputStream>> future = client.sendAsync( request.build(),
+                HttpResponse.BodyHandlers.ofInputStream() );
+        // cancels the exchange while waiting for headers, or closes the body stream if they already arrived
+        Runnable unregister = deadline == null ? () -> {
+        } : deadline.whenExpired( () -> {
+            if( !future.cancel( true ) )
+                future.thenAccept( response -> closeQuietly( response.body() ) );
+        } );
+        try
+        {
+            return new HttpClientResponse( future.get(), unregister );
+        }
+        catch( InterruptedException e )
+        {
+            unregister.run();
+            future.cancel( true );
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Request to " + url + " was interrupted" );
+        }
+        catch( CancellationException e )
+        {
+            unregister.run();
+            throw new InterruptedIOException( "Request to " + url + " was cancelled" );
+        }
+        catch( ExecutionException e )
+        {
+            unregister.run();
+            Throwable cause = e.getCause();
+            if( cause instanceof IOException )
+                throw (IOException)cause;
+            throw new IOException( cause );
+        }
+    }
+
+    private static void closeQuietly(InputStream is)
+    {
+        try
+        {
+            is.close();
+        }
+        catch( IOException e )
+        {
+            // ignore
+        }
+    }
+
+    private static class HttpClientResponse implements Response
+    {
+        private final HttpResponse<InputStream> response;
+        private final Runnable unregister;
+
+        HttpClientResponse(HttpResponse<InputStream> response, Runnable unregister)
+        {
+            this.response = response;
+            this.unregister = unregister;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return response.statusCode();
+        }
+
+        @Override
+        public List<String> getHeaders(String name)
+        {
+            return response.headers().allValues( name );
+        }
+
+        @Override
+        public InputStream getBody()
+        {
+            return response.body();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            unregister.run();
+            response.body().close();
+        }
+    }
+}
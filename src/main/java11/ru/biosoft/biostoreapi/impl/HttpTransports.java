@@ -0,0 +1,27 @@
+package ru.biosoft.biostoreapi.impl;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Chooses the best {@link HttpTransport} available for the running Java version.
+ * This is the Java 11 variant packaged into META-INF/versions/11 of the multi-release jar.
+ */
+public class HttpTransports
+{
+    private HttpTransports()
+    {
+    }
+
+    public static HttpTransport createDefault()
+    {
+        return new HttpClientTransport();
+    }
+
+    /**
+     * @param sslContext context for HTTPS connections, for example one trusting a local test certificate
+     */
+    public static HttpTransport create(SSLContext sslContext)
+    {
+        return new HttpClientTransport( sslContext );
+    }
+}
@@ -0,0 +1,358 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.LruCookieStore;
+import ru.biosoft.biostoreapi.impl.UrlConnectionTransport;
+
+public class BiostoreConnectorImplTest
+{
+    private HttpServer server;
+    private String serverLink;
+    private final List<String> requests = new ArrayList<>();
+    private final List<String> cookies = new ArrayList<>();
+    private final List<String> traceparents = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/biostore/permission", this::handle );
+        server.setExecutor( Executors.newCachedThreadPool() );
+        server.start();
+        serverLink = "http://localhost:" + server.getAddress().getPort() + "/biostore/permission";
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop( 0 );
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        String body = readBody( exchange.getRequestBody() );
+        requests.add( body );
+        if( body.contains( "slow" ) )
+        {
+            try
+            {
+                Thread.sleep( 2000 );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        cookies.add( exchange.getRequestHeaders().getFirst( "Cookie" ) );
+        traceparents.add( exchange.getRequestHeaders().getFirst( SpanContext.TRACEPARENT_HEADER ) );
+        if( body.startsWith( "action=login" ) )
+            exchange.getResponseHeaders().add( "Set-Cookie", "JSESSIONID=abc; Path=/; HttpOnly" );
+        byte[] response = "{\"type\":\"ok\"}".getBytes( StandardCharsets.UTF_8 );
+        exchange.sendResponseHeaders( 200, response.length );
+        try( OutputStream os = exchange.getResponseBody() )
+        {
+            os.write( response );
+        }
+    }
+
+    @Test
+    public void askServer()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, "test.server", new UrlConnectionTransport() );
+        Map<String, String> params = new HashMap<>();
+        params.put( "username", "user 1" );
+
+        JSONObject response = connector.askServer( "user1", "login", params );
+        assertEquals( "ok", response.getString( "type" ) );
+        assertEquals( "action=login&serverName=test.server&username=user+1", requests.get( 0 ) );
+        assertNull( cookies.get( 0 ) );
+
+        connector.askServer( "user1", "getProjectList", new HashMap<>() );
+        assertEquals( "JSESSIONID=abc", cookies.get( 1 ) );
+    }
+
+    @Test
+    public void logoutRemovesCookies()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        LruCookieStore cookieStore = new LruCookieStore( 10, 1, TimeUnit.MINUTES );
+        connector.setCookieStore( cookieStore );
+
+        connector.askServer( "user1", "login", new HashMap<>() );
+        assertEquals( "JSESSIONID=abc", cookieStore.getCookies( "user1" ) );
+        connector.askServer( "user1", "logout", new HashMap<>() );
+        assertEquals( "JSESSIONID=abc", cookies.get( 1 ) );
+        assertNull( cookieStore.getCookies( "user1" ) );
+        assertEquals( 0, cookieStore.size() );
+    }
+
+    @Test
+    public void jwtOnly()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        connector.setJwtOnly( true );
+
+        connector.askServer( "user1", "login", new HashMap<>() );
+        connector.askServer( "user1", "getProjectList", new HashMap<>() );
+        assertNull( cookies.get( 1 ) );
+        assertNull( connector.getCookieStore().getCookies( "user1" ) );
+    }
+
+    @Test
+    public void openResponse() throws IOException
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        try( Reader reader = connector.openResponse( "user1", "getProjectList", new HashMap<>() ) )
+        {
+            assertEquals( "ok", new JSONObject( new JSONTokener( reader ) ).getString( "type" ) );
+        }
+    }
+
+    @Test
+    public void metrics() throws IOException
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        List<RequestMetrics> metrics = new ArrayList<>();
+        connector.setListener( new ConnectorListener()
+        {
+            @Override
+            public void requestCompleted(RequestMetrics m)
+            {
+                metrics.add( m );
+            }
+        } );
+
+        connector.askServer( "user1", "login", new HashMap<>() );
+        try( Reader reader = connector.openResponse( "user1", "getProjectList", new HashMap<>() ) )
+        {
+            new JSONObject( new JSONTokener( reader ) );
+        }
+        server.stop( 0 );
+        try
+        {
+            connector.askServer( "user1", "logout", new HashMap<>() );
+            fail();
+        }
+        catch( RuntimeException e )
+        {
+            // expected
+        }
+
+        assertEquals( 3, metrics.size() );
+        RequestMetrics login = metrics.get( 0 );
+        assertEquals( "login", login.getAction() );
+        assertEquals( RequestOutcome.OK, login.getOutcome() );
+        assertEquals( "action=login".length(), login.getBytesSent() );
+        assertEquals( "{\"type\":\"ok\"}".length(), login.getBytesReceived() );
+        assertTrue( login.getFirstByteNanos() > 0 && login.getFirstByteNanos() <= login.getTotalNanos() );
+        assertTrue( login.getReadNanos() >= 0 );
+        assertEquals( RequestOutcome.OTHER, metrics.get( 1 ).getOutcome() );
+        assertEquals( "{\"type\":\"ok\"}".length(), metrics.get( 1 ).getBytesReceived() );
+        assertEquals( RequestOutcome.TRANSPORT_FAILURE, metrics.get( 2 ).getOutcome() );
+        assertEquals( -1, metrics.get( 2 ).getFirstByteNanos() );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void deadlineAbortsRequest()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        long start = System.nanoTime();
+        try( Deadline.Scope scope = Deadline.after( 200, TimeUnit.MILLISECONDS ).enter() )
+        {
+            connector.askServer( "user1", "slow", new HashMap<>() );
+            fail();
+        }
+        catch( DeadlineExceededException e )
+        {
+            // expected
+        }
+        assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 1500 ) );
+        assertNull( Deadline.current() );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void cancelAbortsRequest() throws Exception
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        Deadline deadline = Deadline.none();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try( Deadline.Scope scope = deadline.enter() )
+        {
+            scheduler.schedule( deadline::cancel, 100, TimeUnit.MILLISECONDS );
+            long start = System.nanoTime();
+            try
+            {
+                connector.askServer( "user1", "slow", new HashMap<>() );
+                fail();
+            }
+            catch( DeadlineExceededException e )
+            {
+                assertTrue( e.getMessage().startsWith( "Deadline was cancelled" ) );
+            }
+            assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 1500 ) );
+            // expired deadline does not let new requests through
+            try
+            {
+                connector.askServer( "user1", "login", new HashMap<>() );
+                fail();
+            }
+            catch( DeadlineExceededException e )
+            {
+                assertEquals( 1, requests.size() );
+            }
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void actionTimeout()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        connector.setTimeout( "slow", 200, TimeUnit.MILLISECONDS );
+        assertEquals( 200, connector.getTimeoutMillis( "slow" ) );
+        assertEquals( BiostoreConnectorImpl.DEFAULT_TIMEOUT_MILLIS, connector.getTimeoutMillis( "login" ) );
+        try
+        {
+            connector.askServer( "user1", "slow", new HashMap<>() );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( BiostoreTransportException.class, e.getClass() );
+            assertTrue( e.getCause() instanceof SocketTimeoutException );
+        }
+    }
+
+    @Test
+    public void cancelAsyncCall() throws Exception
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        CountDownLatch failed = new CountDownLatch( 1 );
+        connector.setListener( new ConnectorListener()
+        {
+            @Override
+            public void requestCompleted(RequestMetrics metrics)
+            {
+                if( metrics.getOutcome() == RequestOutcome.TRANSPORT_FAILURE )
+                    failed.countDown();
+            }
+        } );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            DefaultConnectionProvider provider = new DefaultConnectionProvider( connector, executor );
+            CompletableFuture<List<Project>> future = provider.getProjectListAsync( new JWToken( "user1", "slow" ) );
+            Thread.sleep( 100 );
+            assertTrue( future.cancel( true ) );
+            // connection is closed long before the server responds
+            assertTrue( failed.await( 1, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void traceparentHeader()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, null, new UrlConnectionTransport() );
+        connector.askServer( "user1", "getProjectList", new HashMap<>() );
+        assertNull( traceparents.get( 0 ) );
+
+        String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+        try( SpanContext.Scope scope = SpanContext.fromTraceparent( traceparent ).enter() )
+        {
+            connector.askServer( "user1", "getProjectList", new HashMap<>() );
+        }
+        assertEquals( traceparent, traceparents.get( 1 ) );
+    }
+
+    @Test
+    public void warmUp()
+    {
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( serverLink, "test.server", new UrlConnectionTransport() );
+        List<RequestMetrics> reported = new ArrayList<>();
+        connector.setListener( new ConnectorListener()
+        {
+            @Override
+            public void requestCompleted(RequestMetrics metrics)
+            {
+                reported.add( metrics );
+            }
+        } );
+
+        WarmUpReport report = connector.warmUp( 2 );
+        assertTrue( report.toString(), report.isAllSucceeded() );
+        assertEquals( 3, report.getSteps().size() );
+        assertEquals( WarmUpReport.STEP_RESOLVE, report.getSteps().get( 0 ).getName() );
+        assertEquals( WarmUpReport.STEP_CONNECT, report.getSteps().get( 1 ).getName() );
+        assertEquals( WarmUpReport.STEP_REQUEST, report.getSteps().get( 2 ).getName() );
+        assertEquals( serverLink, report.getSteps().get( 1 ).getTarget() );
+        assertEquals( 3, requests.size() );
+        assertEquals( "action=getProjectList&serverName=test.server", requests.get( 0 ) );
+        assertTrue( reported.isEmpty() );
+    }
+
+    @Test
+    public void warmUpUnavailableServer()
+    {
+        String link = serverLink;
+        server.stop( 0 );
+        BiostoreConnectorImpl connector = new BiostoreConnectorImpl( link, null, new UrlConnectionTransport() );
+        WarmUpReport report = connector.warmUp( 2 );
+        assertEquals( 2, report.getSteps().size() );
+        assertTrue( report.getSteps().get( 0 ).isSuccess() );
+        assertEquals( WarmUpReport.STEP_CONNECT, report.getFailed().get( 0 ).getName() );
+        assertTrue( report.getFailed().get( 0 ).getError() instanceof BiostoreTransportException );
+    }
+
+    private static String readBody(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int len;
+        while( ( len = is.read( buffer ) ) != -1 )
+            baos.write( buffer, 0, len );
+        return new String( baos.toByteArray(), StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,146 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheSnapshotTest
+{
+    private static final String PROJECT_LIST = "{\"type\":\"ok\",\"projectList\":[{\"name\":\"Demo\",\"permissions\":3},"
+            + "{\"name\":\"Другой\",\"permissions\":31}]}";
+    private static final String PROJECT_USERS = "{\"type\":\"ok\",\"projectUsers\":[{\"user\":\"u1\",\"role\":\"User\"},"
+            + "{\"user\":\"u2\",\"role\":\"Administrator\"},{\"user\":\"u3\",\"role\":\"User\"}]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final long now = System.currentTimeMillis() / 1000;
+    private final JWToken alice = new JWToken( "alice", JWTokenTest.createJWT( "alice", now, now + 3600 ) );
+    private final JWToken bob = new JWToken( "bob", JWTokenTest.createJWT( "bob", now, now + 3600 ) );
+    private final JWToken expired = new JWToken( "carol", JWTokenTest.createJWT( "carol", now - 7200, now - 3600 ) );
+
+    private BiostoreConnector connector;
+
+    @Before
+    public void setUp()
+    {
+        connector = mockConnector();
+    }
+
+    private static BiostoreConnector mockConnector()
+    {
+        BiostoreConnector connector = mock( BiostoreConnector.class );
+        when( connector.askServer( any( String.class ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( PROJECT_LIST ) );
+        when( connector.askServer( any( String.class ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( PROJECT_USERS ) );
+        return connector;
+    }
+
+    @Test
+    public void restoreAfterRestart() throws IOException
+    {
+        CachingConnectionProvider provider = new CachingConnectionProvider( connector, 1, TimeUnit.MINUTES, 100 );
+        provider.getProjectList( alice );
+        provider.getProjectUsers( alice, "Demo" );
+        provider.getProjectList( expired );
+        Path file = folder.getRoot().toPath().resolve( "cache.bin" );
+        provider.createSnapshot( Arrays.asList( bob, expired ) ).write( file );
+
+        BiostoreConnector restarted = mockConnector();
+        CachingConnectionProvider restored = new CachingConnectionProvider( restarted, 1, TimeUnit.MINUTES, 100 );
+        CacheSnapshot snapshot = CacheSnapshot.read( file );
+        assertEquals( 2, snapshot.getEntryCount() );
+        assertEquals( 2, restored.restore( snapshot ) );
+        assertEquals( Arrays.asList( bob, alice ), snapshot.getTokens() );
+        assertEquals( bob, snapshot.getToken( "bob" ) );
+        assertNull( snapshot.getToken( "carol" ) );
+
+        assertEquals( "[Demo (Info/Read), Другой (All)]", restored.getProjectList( alice ).toString() );
+        assertEquals( Arrays.asList( new ProjectUser( "u1", "User" ), new ProjectUser( "u2", "Administrator" ),
+                new ProjectUser( "u3", "User" ) ), restored.getProjectUsers( alice, "Demo" ) );
+        verify( restarted, never() ).askServer( any( String.class ), any( String.class ), anyMapOf( String.class, String.class ) );
+        try
+        {
+            restored.getProjectList( alice ).clear();
+            fail();
+        }
+        catch( UnsupportedOperationException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void entriesExpireWithToken() throws IOException
+    {
+        JWToken shortLived = new JWToken( "dave", JWTokenTest.createJWT( "dave", now, now + 1 ) );
+        CachingConnectionProvider provider = new CachingConnectionProvider( connector, 1, TimeUnit.MINUTES, 100 );
+        provider.getProjectList( shortLived );
+        CacheSnapshot snapshot = provider.createSnapshot( Collections.emptyList() );
+        Path file = folder.getRoot().toPath().resolve( "cache.bin" );
+        snapshot.write( file );
+        snapshot = CacheSnapshot.read( file );
+
+        CachingConnectionProvider restored = new CachingConnectionProvider( connector, 1, TimeUnit.MINUTES, 100 );
+        int count = restored.restore( snapshot );
+        // token may have expired already if the second boundary was crossed
+        assertTrue( count <= 1 );
+        assertEquals( 1, snapshot.getEntryCount() );
+    }
+
+    @Test
+    public void corruptedFile() throws IOException
+    {
+        CachingConnectionProvider provider = new CachingConnectionProvider( connector, 1, TimeUnit.MINUTES, 100 );
+        provider.getProjectList( alice );
+        Path file = folder.getRoot().toPath().resolve( "cache.bin" );
+        provider.createSnapshot( Collections.emptyList() ).write( file );
+        byte[] bytes = Files.readAllBytes( file );
+        bytes[20] ^= 1;
+        Files.write( file, bytes );
+        try
+        {
+            CacheSnapshot.read( file );
+            fail();
+        }
+        catch( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "corrupted" ) );
+        }
+
+        Files.write( file, Arrays.copyOf( bytes, 4 ) );
+        try
+        {
+            CacheSnapshot.read( file );
+            fail();
+        }
+        catch( IOException e )
+        {
+            assertTrue( e.getMessage().contains( "truncated" ) );
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingConnectionProviderTest
+{
+    private static final String PROJECT_LIST = "{\"type\":\"ok\",\"projectList\":[{\"name\":\"Demo\",\"permissions\":3}]}";
+    private static final String PROJECT_USERS = "{\"type\":\"ok\",\"projectUsers\":[{\"user\":\"u1\",\"role\":\"User\"}]}";
+    private static final String OK = "{\"type\":\"ok\"}";
+
+    private BiostoreConnector mock;
+    private CachingConnectionProvider test;
+    private final JWToken jwToken = new JWToken( "test", "123123" );
+
+    @Before
+    public void setUp()
+    {
+        mock = mock( BiostoreConnector.class );
+        when( mock.askServer( any( String.class ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( PROJECT_LIST ) );
+        when( mock.askServer( any( String.class ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( PROJECT_USERS ) );
+        when( mock.askServer( any( String.class ), eq( ACTION_ADD_TO_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( OK ) );
+        when( mock.askServer( any( String.class ), eq( ACTION_CREATE_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( OK ) );
+        test = new CachingConnectionProvider( mock, 1, TimeUnit.MINUTES, 100 );
+    }
+
+    @Test
+    public void projectListCached()
+    {
+        List<Project> first = test.getProjectList( jwToken );
+        List<Project> second = test.getProjectList( jwToken );
+        assertSame( first, second );
+        assertEquals( "Demo", second.get( 0 ).getProjectName() );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+
+        test.getProjectList( new JWToken( "other", "321321" ) );
+        verify( mock, times( 2 ) ).askServer( any( String.class ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+        assertEquals( 1, test.getProjectListStats().getHits() );
+        assertEquals( 2, test.getProjectListStats().getMisses() );
+    }
+
+    @Test
+    public void cacheSurvivesTokenRefresh()
+    {
+        when( mock.askServer( any( String.class ), eq( ACTION_REFRESH_J_W_TOKEN ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( "{\"type\":\"ok\",\"jwtoken\":\"456456\"}" ) );
+        when( mock.askServer( any( String.class ), eq( ACTION_LOGOUT ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( OK ) );
+        List<Project> first = test.getProjectList( jwToken );
+        JWToken refreshed = test.refreshJWToken( jwToken );
+        assertSame( first, test.getProjectList( refreshed ) );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+
+        // token which was not seen yet is checked by the server
+        JWToken unknown = new JWToken( "test", "789789" );
+        test.getProjectList( unknown );
+        verify( mock, times( 2 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+        test.getProjectList( unknown );
+        verify( mock, times( 2 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+
+        test.logout( refreshed );
+        test.getProjectList( refreshed );
+        verify( mock, times( 3 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+    }
+
+    @Test
+    public void createProjectUpdatesProjectList()
+    {
+        test.getProjectList( jwToken );
+        test.createProjectWithPermissions( jwToken, "newProject", 7 );
+        assertEquals( "[Demo (Info/Read), newProject (Info/Read/Write)]", test.getProjectList( jwToken ).toString() );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+    }
+
+    @Test
+    public void addUserUpdatesMembership()
+    {
+        test.setDefaultRole( "User" );
+        test.setRolePermissions( "User", Project.PERMISSION_READ );
+        JWToken userToken = new JWToken( "u2", "555" );
+        JWToken sudoToken = new JWToken( "admin$u2", "777" );
+        test.getProjectUsers( jwToken, "Demo" );
+        test.getProjectList( userToken );
+        test.getProjectList( sudoToken );
+
+        test.addUserToProject( jwToken, "u0", "Demo" );
+        test.addUserToProject( jwToken, "u2", "Other" );
+        test.addUserToProject( jwToken, "u1", "Demo" );
+
+        assertEquals( Arrays.asList( new ProjectUser( "u0", "User" ), new ProjectUser( "u1", "User" ) ), test.getProjectUsers( jwToken, "Demo" ) );
+        assertEquals( "[Demo (Info/Read), Other (Read)]", test.getProjectList( userToken ).toString() );
+        assertEquals( "[Demo (Info/Read), Other (Read)]", test.getProjectList( sudoToken ).toString() );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) );
+        verify( mock, times( 1 ) ).askServer( eq( "u2" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+    }
+
+    @Test
+    public void changeRoleUpdatesMembership()
+    {
+        when( mock.askServer( any( String.class ), eq( ACTION_CHANGE_ROLE_IN_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> new JSONObject( OK ) );
+        test.setCompactMembership( true );
+        test.setRolePermissions( "Moderator", 15 );
+        JWToken userToken = new JWToken( "u1", "555" );
+        test.getProjectUsers( jwToken, "Demo" );
+        test.getProjectList( userToken );
+        List<MembershipEvent> events = new ArrayList<>();
+        test.addMembershipListener( new MembershipListener()
+        {
+            @Override
+            public void roleChanged(String projectName, String user, String newRole, int permissions)
+            {
+                events.add( new MembershipEvent( projectName, user, newRole, permissions ) );
+            }
+        } );
+
+        test.changeUserRoleInProject( jwToken, "Demo", "u1", "Moderator" );
+        List<ProjectUser> users = test.getProjectUsers( jwToken, "Demo" );
+        assertTrue( users instanceof CompactProjectUserList );
+        assertEquals( Collections.singletonList( new ProjectUser( "u1", "Moderator" ) ), users );
+        assertEquals( "[Demo (Info/Read/Write/Delete)]", test.getProjectList( userToken ).toString() );
+        assertEquals( "Demo:u1:Moderator:15", events.get( 0 ).toString() );
+
+        // permissions of the role are unknown, so project list of the user is fetched again
+        test.changeUserRoleInProject( jwToken, "Demo", "u1", "Guest" );
+        assertEquals( Collections.singletonList( new ProjectUser( "u1", "Guest" ) ), test.getProjectUsers( jwToken, "Demo" ) );
+        test.getProjectList( userToken );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) );
+        verify( mock, times( 2 ) ).askServer( eq( "u1" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+        assertEquals( "Demo:u1:Guest:-1", events.get( 1 ).toString() );
+    }
+
+    private static class MembershipEvent
+    {
+        final String text;
+
+        MembershipEvent(String projectName, String user, String role, int permissions)
+        {
+            text = projectName + ":" + user + ":" + role + ":" + permissions;
+        }
+
+        @Override
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    @Test
+    public void addUserInvalidatesMembership()
+    {
+        JWToken userToken = new JWToken( "u2", "555" );
+        test.getProjectUsers( jwToken, "Demo" );
+        test.getProjectUsers( jwToken, "Other" );
+        test.getProjectList( userToken );
+
+        test.addUserToProject( jwToken, "u2", "Demo" );
+
+        test.getProjectUsers( jwToken, "Demo" );
+        test.getProjectUsers( jwToken, "Other" );
+        test.getProjectList( userToken );
+        verify( mock, times( 3 ) ).askServer( eq( "test" ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) );
+        verify( mock, times( 2 ) ).askServer( eq( "u2" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+        assertEquals( 1, test.getProjectUsersStats().getHits() );
+    }
+
+    @Test
+    public void asyncUsesCache()
+    {
+        CachingConnectionProvider async = new CachingConnectionProvider( mock, Runnable::run, 1, TimeUnit.MINUTES, 100 );
+        List<ProjectUser> first = async.getProjectUsersAsync( jwToken, "Demo" ).join();
+        assertSame( first, async.getProjectUsers( jwToken, "Demo" ) );
+        verify( mock, times( 1 ) ).askServer( eq( "test" ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) );
+    }
+}
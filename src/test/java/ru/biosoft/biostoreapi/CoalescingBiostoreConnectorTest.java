@@ -0,0 +1,256 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_ADD_TO_PROJECT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.CoalescingBiostoreConnector;
+
+public class CoalescingBiostoreConnectorTest
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private final BiostoreConnector slowConnector = (username, action, parameters) -> {
+        calls.incrementAndGet();
+        try
+        {
+            release.await( 5, TimeUnit.SECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        if( "fail".equals( parameters.get( "projectName" ) ) )
+            throw new IllegalStateException( "Server failure" );
+        return new JSONObject().put( "type", "ok" );
+    };
+
+    @Test
+    public void identicalReadsShareResult() throws Exception
+    {
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( slowConnector );
+        List<Future<JSONObject>> results = submit( connector, ACTION_PROJECT_USERS, "Demo", 8 );
+        waitForCoalesced( connector, 7 );
+        release.countDown();
+
+        JSONObject first = results.get( 0 ).get();
+        for( Future<JSONObject> result : results )
+            assertSame( first, result.get() );
+        assertEquals( 1, calls.get() );
+    }
+
+    @Test
+    public void exceptionIsShared() throws Exception
+    {
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( slowConnector );
+        List<Future<JSONObject>> results = submit( connector, ACTION_PROJECT_USERS, "fail", 4 );
+        waitForCoalesced( connector, 3 );
+        release.countDown();
+
+        for( Future<JSONObject> result : results )
+        {
+            try
+            {
+                result.get();
+                fail( "Exception expected" );
+            }
+            catch( ExecutionException e )
+            {
+                assertTrue( e.getCause() instanceof IllegalStateException );
+            }
+        }
+        assertEquals( 1, calls.get() );
+    }
+
+    @Test
+    public void writesAreNotCoalesced() throws Exception
+    {
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( slowConnector );
+        List<Future<JSONObject>> results = submit( connector, ACTION_ADD_TO_PROJECT, "Demo", 4 );
+        release.countDown();
+        for( Future<JSONObject> result : results )
+            result.get();
+        assertEquals( 4, calls.get() );
+        assertEquals( 0, connector.getCoalescedCount() );
+
+        try
+        {
+            new CoalescingBiostoreConnector( slowConnector, Arrays.asList( ACTION_PROJECT_USERS, ACTION_ADD_TO_PROJECT ) );
+            fail( "Write action accepted" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // expected
+        }
+        try
+        {
+            connector.setCoalesced( ACTION_LOGOUT, true );
+            fail( "Write action accepted" );
+        }
+        catch( IllegalArgumentException e )
+        {
+            assertFalse( connector.isCoalesced( ACTION_LOGOUT ) );
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void waiterRespectsOwnDeadline() throws Exception
+    {
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( slowConnector );
+        Future<JSONObject> leader = submit( connector, ACTION_PROJECT_USERS, "Demo", 1 ).get( 0 );
+        while( calls.get() == 0 )
+            Thread.sleep( 5 );
+        Future<JSONObject> waiter = executor.submit( () -> {
+            try( Deadline.Scope scope = Deadline.after( 100, TimeUnit.MILLISECONDS ).enter() )
+            {
+                return connector.askServer( "test", ACTION_PROJECT_USERS, params( "Demo" ) );
+            }
+        } );
+        try
+        {
+            waiter.get( 2, TimeUnit.SECONDS );
+            fail( "Deadline expected" );
+        }
+        catch( ExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof DeadlineExceededException );
+        }
+        assertEquals( 1, connector.getCoalescedCount() );
+        assertFalse( leader.isDone() );
+        release.countDown();
+        assertEquals( "ok", leader.get().getString( "type" ) );
+        assertEquals( 1, calls.get() );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void waiterOutlivesLeaderDeadline() throws Exception
+    {
+        // aborts the request when the deadline of the caller expires, like the HTTP connector does
+        BiostoreConnector abortingConnector = (username, action, parameters) -> {
+            calls.incrementAndGet();
+            Deadline deadline = Deadline.current();
+            if( deadline != null )
+            {
+                CountDownLatch expired = new CountDownLatch( 1 );
+                deadline.whenExpired( expired::countDown );
+                try
+                {
+                    expired.await( 5, TimeUnit.SECONDS );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                deadline.check( action );
+            }
+            return new JSONObject().put( "type", "ok" );
+        };
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( abortingConnector );
+        Deadline leaderDeadline = Deadline.none();
+        Future<JSONObject> leader = executor.submit( () -> {
+            try( Deadline.Scope scope = leaderDeadline.enter() )
+            {
+                return connector.askServer( "test", ACTION_PROJECT_USERS, params( "Demo" ) );
+            }
+        } );
+        while( calls.get() == 0 )
+            Thread.sleep( 5 );
+        Future<JSONObject> waiter = submit( connector, ACTION_PROJECT_USERS, "Demo", 1 ).get( 0 );
+        waitForCoalesced( connector, 1 );
+
+        leaderDeadline.cancel();
+        try
+        {
+            leader.get( 2, TimeUnit.SECONDS );
+            fail( "Deadline expected" );
+        }
+        catch( ExecutionException e )
+        {
+            assertTrue( e.getCause() instanceof DeadlineExceededException );
+        }
+        // waiter has no deadline, so it repeats the request instead of failing with the leader
+        assertEquals( "ok", waiter.get( 2, TimeUnit.SECONDS ).getString( "type" ) );
+        assertEquals( 2, calls.get() );
+        assertEquals( 0, connector.getCoalescedCount() );
+    }
+
+    @Test
+    public void interruptedWaiterGetsTransportException() throws Exception
+    {
+        CoalescingBiostoreConnector connector = new CoalescingBiostoreConnector( slowConnector );
+        Future<JSONObject> leader = submit( connector, ACTION_PROJECT_USERS, "Demo", 1 ).get( 0 );
+        while( calls.get() == 0 )
+            Thread.sleep( 5 );
+        Thread.currentThread().interrupt();
+        try
+        {
+            connector.askServer( "test", ACTION_PROJECT_USERS, params( "Demo" ) );
+            fail( "Interruption expected" );
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertTrue( Thread.interrupted() );
+        }
+        release.countDown();
+        assertEquals( "ok", leader.get().getString( "type" ) );
+    }
+
+    private List<Future<JSONObject>> submit(BiostoreConnector connector, String action, String projectName, int count)
+    {
+        List<Future<JSONObject>> results = new ArrayList<>();
+        for( int i = 0; i < count; i++ )
+        {
+            Map<String, String> params = params( projectName );
+            results.add( executor.submit( () -> connector.askServer( "test", action, params ) ) );
+        }
+        return results;
+    }
+
+    private static Map<String, String> params(String projectName)
+    {
+        Map<String, String> params = new HashMap<>();
+        params.put( "jwtoken", "123" );
+        params.put( "projectName", projectName );
+        return params;
+    }
+
+    private static void waitForCoalesced(CoalescingBiostoreConnector connector, int expected) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 5000;
+        while( connector.getCoalescedCount() < expected && System.currentTimeMillis() < end )
+            Thread.sleep( 5 );
+        assertEquals( expected, connector.getCoalescedCount() );
+    }
+}
@@ -0,0 +1,86 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class CompactProjectUserListTest
+{
+    @Test
+    public void sortedView()
+    {
+        List<ProjectUser> users = Arrays.asList( new ProjectUser( "c", "User" ), new ProjectUser( "a", "Admin" ),
+                new ProjectUser( "b", "User" ), new ProjectUser( "a", "User" ) );
+        CompactProjectUserList compact = CompactProjectUserList.of( users );
+        List<ProjectUser> expected = new ArrayList<>( users );
+        Collections.sort( expected );
+
+        assertEquals( expected, compact );
+        assertEquals( expected.hashCode(), compact.hashCode() );
+        assertEquals( 4, compact.size() );
+        assertEquals( "b", compact.getUser( 2 ) );
+        assertEquals( "User", compact.getRole( 2 ) );
+        assertEquals( Arrays.asList( "Admin", "User" ), compact.getRoles() );
+
+        assertEquals( 0, compact.indexOfUser( "a" ) );
+        assertEquals( 3, compact.indexOfUser( "c" ) );
+        assertEquals( -4, compact.indexOfUser( "bb" ) );
+        assertEquals( "Admin", compact.getRoleOf( "a" ) );
+        assertNull( compact.getRoleOf( "d" ) );
+        assertTrue( compact.containsUser( "b" ) );
+        assertFalse( compact.containsUser( "" ) );
+        assertEquals( 1, compact.indexOf( new ProjectUser( "a", "User" ) ) );
+        assertTrue( compact.contains( new ProjectUser( "c", "User" ) ) );
+        assertFalse( compact.contains( new ProjectUser( "c", "Admin" ) ) );
+        assertFalse( compact.contains( "c" ) );
+        assertSame( compact, CompactProjectUserList.of( compact ) );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly()
+    {
+        CompactProjectUserList.of( Collections.singletonList( new ProjectUser( "a", "User" ) ) ).add( new ProjectUser( "b", "User" ) );
+    }
+
+    @Test
+    public void rolesAreShared()
+    {
+        CompactProjectUserList first = CompactProjectUserList.of( Collections.singletonList( new ProjectUser( "a", new String( "User" ) ) ) );
+        CompactProjectUserList second = CompactProjectUserList.of( Collections.singletonList( new ProjectUser( "b", new String( "User" ) ) ) );
+        assertSame( first.getRole( 0 ), second.getRole( 0 ) );
+    }
+
+    @Test
+    public void providerReturnsCompactList()
+    {
+        BiostoreConnector connector = mock( BiostoreConnector.class );
+        when( connector.askServer( eq( "test" ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new JSONObject( "{\"type\":\"ok\",\"projectUsers\":[{\"user\":\"u2\",\"role\":\"User\"},"
+                        + "{\"user\":\"u1\",\"role\":\"Admin\"}]}" ) );
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        JWToken jwToken = new JWToken( "test", "123" );
+        List<ProjectUser> plain = provider.getProjectUsers( jwToken, "Demo" );
+        assertFalse( plain instanceof CompactProjectUserList );
+
+        provider.setCompactMembership( true );
+        List<ProjectUser> compact = provider.getProjectUsers( jwToken, "Demo" );
+        assertTrue( compact instanceof CompactProjectUserList );
+        assertEquals( plain, compact );
+        assertEquals( "Admin", provider.getProjectUsersCompact( jwToken, "Demo" ).getRoleOf( "u1" ) );
+    }
+}
@@ -0,0 +1,101 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class DeadlineTest
+{
+    @Test
+    @SuppressWarnings("try")
+    public void scope()
+    {
+        Deadline outer = Deadline.after( 1, TimeUnit.MINUTES );
+        Deadline inner = Deadline.none();
+        assertNull( Deadline.current() );
+        try( Deadline.Scope outerScope = outer.enter() )
+        {
+            try( Deadline.Scope innerScope = inner.enter() )
+            {
+                assertSame( inner, Deadline.current() );
+            }
+            assertSame( outer, Deadline.current() );
+        }
+        assertNull( Deadline.current() );
+        assertFalse( outer.isExpired() );
+        assertEquals( Long.MAX_VALUE, inner.remaining( TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void expiryFiresListeners() throws InterruptedException
+    {
+        Deadline deadline = Deadline.after( 50, TimeUnit.MILLISECONDS );
+        CountDownLatch fired = new CountDownLatch( 1 );
+        AtomicInteger unregistered = new AtomicInteger();
+        deadline.whenExpired( fired::countDown );
+        deadline.whenExpired( unregistered::incrementAndGet ).run();
+        assertTrue( fired.await( 2, TimeUnit.SECONDS ) );
+        assertTrue( deadline.isExpired() );
+        assertFalse( deadline.isCancelled() );
+        assertEquals( 0, deadline.remaining( TimeUnit.NANOSECONDS ) );
+        assertEquals( 0, unregistered.get() );
+
+        // late listener runs immediately
+        AtomicInteger late = new AtomicInteger();
+        deadline.whenExpired( late::incrementAndGet );
+        assertEquals( 1, late.get() );
+    }
+
+    @Test
+    public void cancelPropagatesToChildren()
+    {
+        Deadline parent = Deadline.none();
+        Deadline child = parent.newChild();
+        Deadline sibling = parent.newChild();
+        AtomicInteger childFired = new AtomicInteger();
+        child.whenExpired( childFired::incrementAndGet );
+
+        sibling.cancel();
+        assertFalse( parent.isExpired() );
+        assertFalse( child.isExpired() );
+
+        parent.cancel();
+        assertTrue( child.isCancelled() );
+        assertEquals( 1, childFired.get() );
+        child.cancel();
+        assertEquals( 1, childFired.get() );
+    }
+
+    @Test
+    public void childWithBudget() throws Exception
+    {
+        Deadline parent = Deadline.none();
+        Deadline child = parent.newChild( 50, TimeUnit.MILLISECONDS );
+        assertTrue( child.isBounded() );
+        assertFalse( parent.newChild( Long.MAX_VALUE, TimeUnit.NANOSECONDS ).isBounded() );
+        parent.cancel();
+        assertTrue( child.isCancelled() );
+
+        Deadline tight = Deadline.after( 50, TimeUnit.MILLISECONDS );
+        assertTrue( tight.newChild( 1, TimeUnit.HOURS ).remaining( TimeUnit.MILLISECONDS ) <= 50 );
+        Deadline budget = Deadline.after( 1, TimeUnit.HOURS ).newChild( 20, TimeUnit.MILLISECONDS );
+        assertTrue( budget.remaining( TimeUnit.MILLISECONDS ) <= 20 );
+        Thread.sleep( 40 );
+        assertTrue( budget.isExpired() );
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void check()
+    {
+        Deadline deadline = Deadline.after( 0, TimeUnit.SECONDS );
+        deadline.check( "login" );
+    }
+}
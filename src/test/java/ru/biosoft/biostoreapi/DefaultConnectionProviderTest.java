@@ -5,13 +5,28 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.stubbing.Answer;
 
+import ru.biosoft.biostoreapi.sim.SimulatedBiostore;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -330,6 +345,281 @@ public class DefaultConnectionProviderTest
         test.getProjectUsers( jwToken, "Demo" );
     }
 
+    @Test
+    public void projectListAsync()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+
+        String res = "{'projectList':[{'name':'Demo','permissions':3}],'type':'ok'}";
+        Map<String, String> params = Maps.builder().put( ATTR_JWTOKEN, jwToken.getTokenValue() ).build();
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_GET_PROJECT_LIST ), eq( params ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( res ) ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            List<Project> projectList = new DefaultConnectionProvider( mock, executor ).getProjectListAsync( jwToken ).join();
+            assertEquals( 1, projectList.size() );
+            assertEquals( "Demo", projectList.get( 0 ).getProjectName() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void errorProjectUsersAsync()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+
+        String res = "{'type':'error','message':'Can not get project users list'}";
+        Map<String, String> params = Maps.builder().put( ATTR_JWTOKEN, jwToken.getTokenValue() ).put( ATTR_PROJECT_NAME, "Demo" ).build();
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_PROJECT_USERS ), eq( params ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( res ) ) );
+
+        CompletableFuture<List<ProjectUser>> future = new DefaultConnectionProvider( mock, Runnable::run ).getProjectUsersAsync( jwToken, "Demo" );
+        try
+        {
+            future.join();
+            fail( "SecurityException expected" );
+        }
+        catch( CompletionException e )
+        {
+            assertTrue( e.getCause() instanceof SecurityException );
+            assertEquals( "Can not get project users list", e.getCause().getMessage() );
+        }
+    }
+
+    @Test
+    public void asyncWithoutExecutor()
+    {
+        CompletableFuture<Void> future = test.logoutAsync( new JWToken( "test", "123123" ) );
+        assertTrue( future.isCompletedExceptionally() );
+    }
+
+    @Test
+    public void addUsersToProjectBulk()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_ADD_TO_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> {
+                    max.accumulateAndGet( current.incrementAndGet(), Math::max );
+                    Thread.sleep( 10 );
+                    current.decrementAndGet();
+                    Map<?, ?> params = (Map<?, ?>)invocation.getArguments()[2];
+                    if( "bad".equals( params.get( ATTR_GROUP_USER ) ) )
+                        return new JSONObject( doubleQuotes( "{'type':'error','message':'No such user'}" ) );
+                    return new JSONObject( doubleQuotes( "{'type':'ok'}" ) );
+                } );
+
+        List<String> users = new ArrayList<>();
+        for( int i = 0; i < 20; i++ )
+            users.add( i == 7 ? "bad" : "user" + i );
+        test.setBulkParallelism( 4 );
+        BulkResult<String> result = test.addUsersToProject( jwToken, "Demo", users );
+
+        assertEquals( 20, result.getItems().size() );
+        assertEquals( 19, result.getSucceeded().size() );
+        assertEquals( "bad", result.getFailed().get( 0 ).getItem() );
+        assertEquals( "No such user", result.getFailed().get( 0 ).getError().getMessage() );
+        assertEquals( "user8", result.getItems().get( 8 ).getItem() );
+        assertTrue( max.get() <= 4 );
+    }
+
+    @Test
+    public void changeRolesBulk()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_CHANGE_ROLE_IN_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( "{'type':'ok'}" ) ) );
+
+        Map<String, String> roles = Maps.builder().put( "u1", "User" ).put( "u2", "Administrator" ).build();
+        BulkResult<String> result = new DefaultConnectionProvider( mock, Runnable::run ).changeRoles( jwToken, "Demo", roles );
+        assertTrue( result.isAllSucceeded() );
+        assertEquals( 2, result.getSucceeded().size() );
+    }
+
+    @Test
+    public void projectsWithUsers()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        mockProjects( jwToken, 10, invocation -> {
+            max.accumulateAndGet( current.incrementAndGet(), Math::max );
+            Thread.sleep( 10 );
+            current.decrementAndGet();
+            Map<?, ?> params = (Map<?, ?>)invocation.getArguments()[2];
+            if( "P3".equals( params.get( ATTR_PROJECT_NAME ) ) )
+                return new JSONObject( doubleQuotes( "{'type':'error','message':'No access'}" ) );
+            return new JSONObject( doubleQuotes( "{'type':'ok','projectUsers':[{'user':'u2','role':'User'},{'user':'u1','role':'Administrator'}]}" ) );
+        } );
+
+        test.setBulkParallelism( 4 );
+        Map<Project, List<ProjectUser>> result = test.getProjectsWithUsers( jwToken );
+
+        assertEquals( 10, result.size() );
+        List<String> names = result.keySet().stream().map( Project::getProjectName ).collect( Collectors.toList() );
+        assertEquals( "[P0, P1, P2, P3, P4, P5, P6, P7, P8, P9]", names.toString() );
+        assertNull( result.get( new Project( "P3", Project.PERMISSION_ALL ) ) );
+        assertEquals( "[u1 (Administrator), u2 (User)]", result.get( new Project( "P0", Project.PERMISSION_ALL ) ).toString() );
+        assertTrue( max.get() <= 4 );
+    }
+
+    @Test
+    public void projectsWithUsersBudget()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        mockProjects( jwToken, 10, invocation -> {
+            Thread.sleep( 30 );
+            return new JSONObject( doubleQuotes( "{'type':'ok','projectUsers':[{'user':'u1','role':'User'}]}" ) );
+        } );
+
+        test.setBulkParallelism( 2 );
+        Map<Project, List<ProjectUser>> result = test.getProjectsWithUsers( jwToken, 100, TimeUnit.MILLISECONDS );
+
+        assertEquals( 10, result.size() );
+        assertNotNull( result.get( new Project( "P0", Project.PERMISSION_ALL ) ) );
+        assertNull( result.get( new Project( "P9", Project.PERMISSION_ALL ) ) );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void projectsWithUsersCancelled() throws Exception
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        Deadline outer = Deadline.none();
+        AtomicInteger started = new AtomicInteger();
+        mockProjects( jwToken, 10, invocation -> {
+            if( started.incrementAndGet() == 1 )
+                outer.cancel();
+            Thread.sleep( 10 );
+            return new JSONObject( doubleQuotes( "{'type':'ok','projectUsers':[{'user':'u1','role':'User'}]}" ) );
+        } );
+
+        test.setBulkParallelism( 2 );
+        Map<Project, List<ProjectUser>> result;
+        try( Deadline.Scope scope = outer.enter() )
+        {
+            result = test.getProjectsWithUsers( jwToken );
+        }
+        // requests in flight are aborted, the rest are not started
+        assertEquals( 10, result.size() );
+        assertNull( result.get( new Project( "P9", Project.PERMISSION_ALL ) ) );
+        assertTrue( started.get() <= 2 );
+    }
+
+    @Test
+    public void warmUp()
+    {
+        SimulatedBiostore biostore = new SimulatedBiostore();
+        biostore.addUser( "svc1", "secret1" );
+        biostore.addUser( "svc2", "secret2" );
+        biostore.createProject( "Demo", "svc1" );
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( biostore );
+        Map<String, String> accounts = new HashMap<>();
+        accounts.put( "svc2", "secret2" );
+        accounts.put( "svc1", "secret1" );
+        accounts.put( "svc3", "wrong" );
+
+        WarmUpReport report = provider.warmUp( accounts, true );
+        List<String> steps = report.getSteps().stream().map( step -> step.getName() + " " + step.getTarget() ).collect( Collectors.toList() );
+        assertEquals( "[connect null, login svc1, projectList svc1, login svc2, projectList svc2, login svc3]", steps.toString() );
+        assertEquals( 1, report.getFailed().size() );
+        assertTrue( report.getFailed().get( 0 ).getError() instanceof SecurityException );
+        assertEquals( 2, report.getTokens().size() );
+        assertEquals( "svc1", report.getTokens().get( "svc1" ).getUsername() );
+        assertEquals( 1, provider.getProjectList( report.getTokens().get( "svc1" ) ).size() );
+    }
+
+    private void mockProjects(JWToken jwToken, int count, Answer<JSONObject> projectUsers)
+    {
+        StringBuilder list = new StringBuilder();
+        for( int i = 0; i < count; i++ )
+            list.append( i == 0 ? "" : "," ).append( "{'name':'P" ).append( i ).append( "','permissions':31}" );
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( "{'type':'ok','projectList':[" + list + "]}" ) ) );
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_PROJECT_USERS ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( projectUsers );
+    }
+
+    @Test
+    public void streamProjectUsers()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        StreamingBiostoreConnector streaming = mock( StreamingBiostoreConnector.class );
+        String res = "{'type':'ok','projectUsers':[{'role':'User','user':'testUser'},{'role':'Administrator','user':'projectAdmin'}]}";
+        Map<String, String> params = Maps.builder().put( ATTR_JWTOKEN, jwToken.getTokenValue() ).put( ATTR_PROJECT_NAME, "Demo" ).build();
+        when( streaming.openResponse( eq( jwToken.getUsername() ), eq( ACTION_PROJECT_USERS ), eq( params ) ) )
+                .thenReturn( new StringReader( doubleQuotes( res ) ) );
+
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( streaming );
+        List<String> calls = new ArrayList<>();
+        provider.setListener( new ConnectorListener()
+        {
+            @Override
+            public void callCompleted(String action, RequestOutcome outcome, long durationNanos)
+            {
+                calls.add( action + ":" + outcome );
+            }
+        } );
+        try( Stream<ProjectUser> users = provider.streamProjectUsers( jwToken, "Demo" ) )
+        {
+            List<ProjectUser> list = users.collect( Collectors.toList() );
+            assertEquals( 2, list.size() );
+            checkProjectUser( list.get( 0 ), "testUser", "User" );
+            checkProjectUser( list.get( 1 ), "projectAdmin", "Administrator" );
+            // reported when the stream is closed
+            assertTrue( calls.isEmpty() );
+        }
+        assertEquals( Collections.singletonList( ACTION_PROJECT_USERS + ":OK" ), calls );
+
+        when( streaming.openResponse( eq( jwToken.getUsername() ), eq( ACTION_PROJECT_USERS ), eq( params ) ) )
+                .thenThrow( new BiostoreTransportException( "Connection refused" ) );
+        try
+        {
+            provider.streamProjectUsers( jwToken, "Demo" );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( ACTION_PROJECT_USERS + ":TRANSPORT_FAILURE", calls.get( 1 ) );
+        }
+    }
+
+    @Test
+    public void streamProjectListFallback()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        String res = "{'projectList':[{'name':'Demo','permissions':3}],'type':'ok'}";
+        Map<String, String> params = Maps.builder().put( ATTR_JWTOKEN, jwToken.getTokenValue() ).build();
+        when( mock.askServer( eq( jwToken.getUsername() ), eq( ACTION_GET_PROJECT_LIST ), eq( params ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( res ) ) );
+
+        try( Stream<Project> projects = test.streamProjectList( jwToken ) )
+        {
+            assertEquals( "Demo", projects.findFirst().get().getProjectName() );
+        }
+    }
+
+    @Test
+    public void errorStreamProjectList()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        StreamingBiostoreConnector streaming = mock( StreamingBiostoreConnector.class );
+        String res = constructErrorResponse( "Can not get project list" );
+        when( streaming.openResponse( eq( jwToken.getUsername() ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new StringReader( doubleQuotes( res ) ) );
+
+        try( Stream<Project> projects = new DefaultConnectionProvider( streaming ).streamProjectList( jwToken ) )
+        {
+            projects.count();
+        }
+    }
+
     private String constructErrorResponse(String errorMessage)
     {
         return constructMessageResponse( errorMessage, TYPE_ERROR );
@@ -377,4 +667,36 @@ public class DefaultConnectionProviderTest
             return map;
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void listener()
+    {
+        JWToken jwToken = new JWToken( "test", "123123" );
+        when( mock.askServer( eq( "test" ), eq( ACTION_LOGOUT ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new JSONObject( doubleQuotes( "{'type':'ok'}" ) ) );
+        when( mock.askServer( eq( "test" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenThrow( new RuntimeException( "Error during connection to server" ) );
+        List<String> calls = new ArrayList<>();
+        test.setListener( new ConnectorListener()
+        {
+            @Override
+            public void callCompleted(String action, RequestOutcome outcome, long durationNanos)
+            {
+                assertTrue( durationNanos >= 0 );
+                calls.add( action + ":" + outcome );
+            }
+        } );
+
+        test.logout( jwToken );
+        try
+        {
+            test.getProjectList( jwToken );
+            fail();
+        }
+        catch( RuntimeException e )
+        {
+            // expected
+        }
+        assertEquals( "[logout:OK, getProjectList:TRANSPORT_FAILURE]", calls.toString() );
+    }
+}
@@ -0,0 +1,213 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.HttpTransport;
+
+/**
+ * Tests java.net.http based transport, which is compiled into META-INF/versions/11 only when building on Java 11 or later
+ */
+public class HttpClientTransportTest
+{
+    private static Class<? extends HttpTransport> transportClass;
+
+    private HttpServer server;
+    private String serverLink;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> cookies = new CopyOnWriteArrayList<>();
+
+    @BeforeClass
+    public static void loadTransport()
+    {
+        try
+        {
+            transportClass = Class.forName( "ru.biosoft.biostoreapi.impl.HttpClientTransport" ).asSubclass( HttpTransport.class );
+        }
+        catch( ClassNotFoundException e )
+        {
+            Assume.assumeNoException( "Java 11 classes are not built", e );
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/biostore/permission", this::handle );
+        server.setExecutor( Executors.newCachedThreadPool() );
+        server.start();
+        serverLink = "http://localhost:" + server.getAddress().getPort() + "/biostore/permission";
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop( 0 );
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try( InputStream is = exchange.getRequestBody() )
+        {
+            byte[] buffer = new byte[1024];
+            for( int read; ( read = is.read( buffer ) ) > 0; )
+                baos.write( buffer, 0, read );
+        }
+        String body = new String( baos.toByteArray(), StandardCharsets.UTF_8 );
+        requests.add( body );
+        cookies.add( String.valueOf( exchange.getRequestHeaders().getFirst( "Cookie" ) ) );
+        if( body.contains( "slow" ) )
+        {
+            try
+            {
+                Thread.sleep( 2000 );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if( body.startsWith( "action=login" ) )
+            exchange.getResponseHeaders().add( "Set-Cookie", "JSESSIONID=abc; Path=/; HttpOnly" );
+        byte[] response = "{\"type\":\"ok\"}".getBytes( StandardCharsets.UTF_8 );
+        exchange.sendResponseHeaders( 200, response.length );
+        try( OutputStream os = exchange.getResponseBody() )
+        {
+            os.write( response );
+        }
+    }
+
+    private BiostoreConnectorImpl createConnector(String link) throws ReflectiveOperationException
+    {
+        return new BiostoreConnectorImpl( link, "test.server", transportClass.getConstructor().newInstance() );
+    }
+
+    @Test
+    public void askServer() throws Exception
+    {
+        BiostoreConnectorImpl connector = createConnector( serverLink );
+        Map<String, String> params = new HashMap<>();
+        params.put( "username", "user 1" );
+
+        JSONObject response = connector.askServer( "user1", "login", params );
+        assertEquals( "ok", response.getString( "type" ) );
+        assertEquals( "action=login&serverName=test.server&username=user+1", requests.get( 0 ) );
+        assertEquals( "null", cookies.get( 0 ) );
+
+        connector.askServer( "user1", "getProjectList", new HashMap<>() );
+        assertEquals( "JSESSIONID=abc", cookies.get( 1 ) );
+    }
+
+    @Test
+    public void actionTimeout() throws Exception
+    {
+        BiostoreConnectorImpl connector = createConnector( serverLink );
+        connector.setTimeout( "slow", 200, TimeUnit.MILLISECONDS );
+        long start = System.nanoTime();
+        try
+        {
+            connector.askServer( "user1", "slow", Collections.emptyMap() );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( BiostoreTransportException.class, e.getClass() );
+            assertTrue( e.getCause() instanceof IOException );
+        }
+        assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 1500 ) );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void deadlineAbortsRequest() throws Exception
+    {
+        BiostoreConnectorImpl connector = createConnector( serverLink );
+        long start = System.nanoTime();
+        try( Deadline.Scope scope = Deadline.after( 200, TimeUnit.MILLISECONDS ).enter() )
+        {
+            connector.askServer( "user1", "slow", Collections.emptyMap() );
+            fail();
+        }
+        catch( DeadlineExceededException e )
+        {
+            // expected
+        }
+        assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 1500 ) );
+        assertNull( Deadline.current() );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void cancelAbortsRequest() throws Exception
+    {
+        BiostoreConnectorImpl connector = createConnector( serverLink );
+        Deadline deadline = Deadline.none();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try( Deadline.Scope scope = deadline.enter() )
+        {
+            scheduler.schedule( deadline::cancel, 100, TimeUnit.MILLISECONDS );
+            long start = System.nanoTime();
+            try
+            {
+                connector.askServer( "user1", "slow", Collections.emptyMap() );
+                fail();
+            }
+            catch( DeadlineExceededException e )
+            {
+                assertTrue( e.getMessage().startsWith( "Deadline was cancelled" ) );
+            }
+            assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 1500 ) );
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void unavailableServer() throws Exception
+    {
+        String link = serverLink;
+        server.stop( 0 );
+        BiostoreConnectorImpl connector = createConnector( link );
+        try
+        {
+            connector.askServer( "user1", "login", Collections.emptyMap() );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( BiostoreTransportException.class, e.getClass() );
+        }
+    }
+}
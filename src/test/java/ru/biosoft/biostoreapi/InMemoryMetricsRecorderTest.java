@@ -0,0 +1,64 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.InMemoryMetricsRecorder;
+import ru.biosoft.biostoreapi.impl.LatencyHistogram;
+
+public class InMemoryMetricsRecorderTest
+{
+    @Test
+    public void histogramPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for( long i = 1; i <= 10000; i++ )
+            histogram.record( i * 1000 );
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals( 10000, snapshot.getCount() );
+        assertEquals( 10_000_000, snapshot.getMax() );
+        assertEquals( 5_000_500, snapshot.getMean(), 1 );
+        assertWithin( 5_000_000, snapshot.getPercentile( 50 ) );
+        assertWithin( 9_900_000, snapshot.getPercentile( 99 ) );
+        assertWithin( 9_990_000, snapshot.getPercentile( 99.9 ) );
+        assertEquals( 10_000_000, snapshot.getPercentile( 100 ) );
+        assertEquals( 0, new LatencyHistogram().snapshot().getPercentile( 50 ) );
+    }
+
+    @Test
+    public void recordPerAction()
+    {
+        InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+        recorder.requestCompleted( new RequestMetrics( "login", RequestOutcome.OK, 100, 200, 50, 250, 30, 40 ) );
+        recorder.requestCompleted( new RequestMetrics( "login", RequestOutcome.NEED_LOGIN, -1, 100, 20, 120, 30, 20 ) );
+        recorder.requestCompleted( new RequestMetrics( "logout", RequestOutcome.TRANSPORT_FAILURE, -1, -1, -1, 1000, 10, 0 ) );
+        recorder.callCompleted( "login", RequestOutcome.OK, 300 );
+
+        Map<String, InMemoryMetricsRecorder.ActionSnapshot> snapshot = recorder.getSnapshot();
+        assertEquals( 2, snapshot.size() );
+        InMemoryMetricsRecorder.ActionSnapshot login = snapshot.get( "login" );
+        assertEquals( 2, login.getTotal().getCount() );
+        assertEquals( 1, login.getConnect().getCount() );
+        assertEquals( 60, login.getBytesSent() );
+        assertEquals( 60, login.getBytesReceived() );
+        assertEquals( 1, login.getRequestCount( RequestOutcome.OK ) );
+        assertEquals( 1, login.getRequestCount( RequestOutcome.NEED_LOGIN ) );
+        assertEquals( 1, login.getCallCount( RequestOutcome.OK ) );
+        assertEquals( 1, login.getCalls().getCount() );
+        InMemoryMetricsRecorder.ActionSnapshot logout = snapshot.get( "logout" );
+        assertEquals( 1, logout.getRequestCount( RequestOutcome.TRANSPORT_FAILURE ) );
+        assertEquals( 0, logout.getFirstByte().getCount() );
+
+        recorder.reset();
+        assertTrue( recorder.getSnapshot().isEmpty() );
+    }
+
+    private static void assertWithin(long expected, long actual)
+    {
+        assertTrue( "Expected ~" + expected + " but was " + actual, Math.abs( actual - expected ) <= expected / 16 );
+    }
+}
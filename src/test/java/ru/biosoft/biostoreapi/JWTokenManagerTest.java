@@ -0,0 +1,117 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JWTokenManagerTest
+{
+    private BiostoreConnector mock;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        mock = mock( BiostoreConnector.class );
+        executor = Executors.newFixedThreadPool( 8 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void refreshBeforeExpiration() throws InterruptedException
+    {
+        long now = Instant.now().getEpochSecond();
+        when( mock.askServer( eq( "u1" ), eq( ACTION_REFRESH_J_W_TOKEN ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( okResponse( JWTokenTest.createJWT( "u1", now, now + 3600 ) ) );
+
+        CountDownLatch refreshed = new CountDownLatch( 1 );
+        try( JWTokenManager manager = new JWTokenManager( new DefaultConnectionProvider( mock ), executor, Duration.ofSeconds( 59 ), 4, 10,
+                TimeUnit.MILLISECONDS ) )
+        {
+            JWToken initial = new JWToken( "u1", JWTokenTest.createJWT( "u1", now, now + 60 ) );
+            JWTokenManager.ManagedToken managed = manager.register( initial, token -> refreshed.countDown() );
+            assertTrue( refreshed.await( 5, TimeUnit.SECONDS ) );
+            assertNotEquals( initial, managed.getToken() );
+            assertEquals( Instant.ofEpochSecond( now + 3600 ), managed.getToken().getExpiresAt() );
+        }
+    }
+
+    @Test
+    public void concurrencyLimit() throws InterruptedException
+    {
+        long now = Instant.now().getEpochSecond();
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        when( mock.askServer( any( String.class ), eq( ACTION_REFRESH_J_W_TOKEN ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> {
+                    max.accumulateAndGet( current.incrementAndGet(), Math::max );
+                    Thread.sleep( 20 );
+                    current.decrementAndGet();
+                    return okResponse( JWTokenTest.createJWT( "u", now, now + 3600 ) );
+                } );
+
+        int count = 20;
+        CountDownLatch refreshed = new CountDownLatch( count );
+        try( JWTokenManager manager = new JWTokenManager( new DefaultConnectionProvider( mock ), executor, Duration.ofSeconds( 59 ), 2, 10,
+                TimeUnit.MILLISECONDS ) )
+        {
+            List<JWTokenManager.ManagedToken> tokens = new ArrayList<>();
+            for( int i = 0; i < count; i++ )
+                tokens.add( manager.register( new JWToken( "u" + i, JWTokenTest.createJWT( "u" + i, now, now + 60 ) ),
+                        token -> refreshed.countDown() ) );
+            assertTrue( refreshed.await( 10, TimeUnit.SECONDS ) );
+            assertTrue( max.get() <= 2 );
+        }
+    }
+
+    @Test
+    public void closedTokenIsNotRefreshed() throws InterruptedException
+    {
+        long now = Instant.now().getEpochSecond();
+        AtomicInteger calls = new AtomicInteger();
+        when( mock.askServer( any( String.class ), eq( ACTION_REFRESH_J_W_TOKEN ), anyMapOf( String.class, String.class ) ) )
+                .thenAnswer( invocation -> {
+                    calls.incrementAndGet();
+                    return okResponse( JWTokenTest.createJWT( "u1", now, now + 3600 ) );
+                } );
+        try( JWTokenManager manager = new JWTokenManager( new DefaultConnectionProvider( mock ), executor, Duration.ofSeconds( 59 ), 2, 10,
+                TimeUnit.MILLISECONDS ) )
+        {
+            JWTokenManager.ManagedToken managed = manager.register( new JWToken( "u1", JWTokenTest.createJWT( "u1", now, now + 61 ) ) );
+            managed.close();
+            Thread.sleep( 2500 );
+            assertEquals( 0, calls.get() );
+        }
+    }
+
+    private static JSONObject okResponse(String token)
+    {
+        return new JSONObject().put( "type", "ok" ).put( "jwtoken", token );
+    }
+}
@@ -1,8 +1,15 @@
 package ru.biosoft.biostoreapi;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.json.JSONObject;
 import org.junit.Test;
 
 public class JWTokenTest
@@ -38,4 +45,36 @@ public class JWTokenTest
         assertFalse( jwt1.equals( new Object() ) );
         assertFalse( jwt1.equals( null ) );
     }
+
+    @Test
+    public void claims()
+    {
+        JWToken jwt = new JWToken( "u1", createJWT( "u1", 1500000000L, 1500003600L ) );
+        assertEquals( "u1", jwt.getSubject() );
+        assertEquals( Instant.ofEpochSecond( 1500000000L ), jwt.getIssuedAt() );
+        assertEquals( Instant.ofEpochSecond( 1500003600L ), jwt.getExpiresAt() );
+        assertTrue( jwt.isExpired() );
+
+        JWToken fresh = new JWToken( "u1", createJWT( "u1", Instant.now().getEpochSecond(), Instant.now().getEpochSecond() + 60 ) );
+        assertFalse( fresh.isExpired() );
+    }
+
+    @Test
+    public void claimsOfOpaqueToken()
+    {
+        JWToken jwt = new JWToken( "u1", "123123" );
+        assertNull( jwt.getSubject() );
+        assertNull( jwt.getExpiresAt() );
+        assertFalse( jwt.isExpired() );
+        assertNull( new JWToken( "u1", "a.%%%.b" ).getExpiresAt() );
+        assertNull( new JWToken( "u1", null ).getExpiresAt() );
+    }
+
+    static String createJWT(String subject, long issuedAt, long expiresAt)
+    {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        JSONObject claims = new JSONObject().put( "sub", subject ).put( "iat", issuedAt ).put( "exp", expiresAt );
+        return encoder.encodeToString( "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes( StandardCharsets.UTF_8 ) ) + "."
+                + encoder.encodeToString( claims.toString().getBytes( StandardCharsets.UTF_8 ) ) + ".signature";
+    }
 }
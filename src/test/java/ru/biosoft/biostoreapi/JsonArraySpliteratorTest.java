@@ -0,0 +1,73 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import ru.biosoft.biostoreapi.impl.JsonArraySpliterator;
+
+public class JsonArraySpliteratorTest
+{
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void typeBeforeArray()
+    {
+        List<Project> projects = parse( "{'type':'ok','projectList':[{'name':'A','permissions':1}, {'name':''}, {'name':'B'}]}" );
+        assertEquals( 2, projects.size() );
+        assertEquals( "A", projects.get( 0 ).getProjectName() );
+        assertEquals( 1, projects.get( 0 ).getPermissions() );
+        assertEquals( "B", projects.get( 1 ).getProjectName() );
+    }
+
+    @Test
+    public void typeAfterArray()
+    {
+        List<Project> projects = parse( "{'projectList':[{'name':'A','permissions':3}],'extra':{'a':[1,2]},'type':'ok'}" );
+        assertEquals( 1, projects.size() );
+    }
+
+    @Test
+    public void emptyArray()
+    {
+        assertEquals( 0, parse( "{ 'type' : 'ok' , 'projectList' : [ ] }" ).size() );
+    }
+
+    @Test
+    public void errorResponse()
+    {
+        thrown.expect( SecurityException.class );
+        thrown.expectMessage( "Access denied" );
+        parse( "{'type':'error','message':'Access denied'}" );
+    }
+
+    @Test
+    public void missingArray()
+    {
+        thrown.expect( JSONException.class );
+        parse( "{'type':'ok'}" );
+    }
+
+    private static List<Project> parse(String json)
+    {
+        JsonArraySpliterator<Project> spliterator = new JsonArraySpliterator<>( new JSONTokener( json.replace( '\'', '"' ) ),
+                "projectList", Project::createFromJSON, JsonArraySpliteratorTest::check );
+        return StreamSupport.stream( spliterator, false ).collect( Collectors.toList() );
+    }
+
+    private static void check(JSONObject envelope)
+    {
+        if( !"ok".equals( envelope.optString( "type" ) ) )
+            throw new SecurityException( envelope.optString( "message" ) );
+    }
+}
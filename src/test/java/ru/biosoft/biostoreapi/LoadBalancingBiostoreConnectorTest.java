@@ -0,0 +1,258 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGIN;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_LOGOUT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.LoadBalancingBiostoreConnector;
+
+public class LoadBalancingBiostoreConnectorTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void prefersFasterEndpoint()
+    {
+        TestEndpoint fast = new TestEndpoint( 1 );
+        TestEndpoint slow = new TestEndpoint( 20 );
+        // class loading must not make the first sample of an endpoint slow
+        fast.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        fast.calls.set( 0 );
+        LoadBalancingBiostoreConnector connector = new LoadBalancingBiostoreConnector( Arrays.asList( fast, slow ) );
+        for( int i = 0; i < 50; i++ )
+            connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+
+        assertTrue( slow.calls.get() >= 1 );
+        assertTrue( fast.calls.get() + " of 50", fast.calls.get() >= 45 );
+        assertTrue( connector.getLatencyNanos( 0 ) < connector.getLatencyNanos( 1 ) );
+    }
+
+    @Test
+    public void ejectsFailingEndpoint()
+    {
+        AtomicLong now = new AtomicLong();
+        TestEndpoint broken = new TestEndpoint( 0 );
+        broken.failing = true;
+        TestEndpoint healthy = new TestEndpoint( 0 );
+        // healthy endpoint takes 1 ms of the fake clock
+        BiostoreConnector timed = (username, action, parameters) -> {
+            now.addAndGet( TimeUnit.MILLISECONDS.toNanos( 1 ) );
+            return healthy.askServer( username, action, parameters );
+        };
+        LoadBalancingBiostoreConnector connector = new LoadBalancingBiostoreConnector( Arrays.asList( broken, timed ), now::get );
+        connector.setHealthSettings( 3, 10, 60, TimeUnit.SECONDS );
+
+        int failures = 0;
+        for( int i = 0; i < 20; i++ )
+        {
+            try
+            {
+                connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+            }
+            catch( BiostoreTransportException e )
+            {
+                failures++;
+            }
+        }
+        // endpoint without latency samples is preferred until it is ejected
+        assertEquals( 3, failures );
+        assertEquals( 3, broken.calls.get() );
+        assertFalse( connector.isHealthy( 0 ) );
+
+        // single probe after ejection period, then ejected for twice as long
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 10 ) );
+        assertTrue( connector.isHealthy( 0 ) );
+        for( int i = 0; i < 5; i++ )
+        {
+            try
+            {
+                connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+            }
+            catch( BiostoreTransportException e )
+            {
+                failures++;
+            }
+        }
+        assertEquals( 4, broken.calls.get() );
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 10 ) );
+        assertFalse( connector.isHealthy( 0 ) );
+
+        broken.failing = false;
+        now.addAndGet( TimeUnit.SECONDS.toNanos( 10 ) );
+        connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        assertEquals( 5, broken.calls.get() );
+        assertTrue( connector.isHealthy( 0 ) );
+    }
+
+    @Test
+    public void slowRequestIsHedged()
+    {
+        TestEndpoint first = new TestEndpoint( 1 );
+        TestEndpoint second = new TestEndpoint( 10 );
+        LoadBalancingBiostoreConnector connector = new LoadBalancingBiostoreConnector( Arrays.asList( first, second ) );
+        connector.setHedging( executor, LoadBalancingBiostoreConnector.DEFAULT_HEDGED_ACTIONS );
+        connector.setMinHedgeDelay( 1, TimeUnit.MILLISECONDS );
+        for( int i = 0; i < 40; i++ )
+            connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        assertTrue( connector.getHedgeDelayNanos( ACTION_PROJECT_USERS ) > 0 );
+        assertTrue( connector.getLatencyNanos( 0 ) < connector.getLatencyNanos( 1 ) );
+
+        // warm-up calls slower than p95 may also be hedged
+        long hedges = connector.getHedgeCount();
+        long wins = connector.getHedgeWinCount();
+        first.delayMillis = 5000;
+        long start = System.nanoTime();
+        JSONObject response = connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 1 ) );
+        assertEquals( "ok", response.getString( "type" ) );
+        assertEquals( hedges + 1, connector.getHedgeCount() );
+        assertEquals( wins + 1, connector.getHedgeWinCount() );
+        // slow request was aborted and did not count as a failure
+        assertTrue( first.aborted.get() );
+        assertTrue( connector.isHealthy( 0 ) );
+    }
+
+    @Test
+    public void failedReadIsSentElsewhere()
+    {
+        TestEndpoint first = new TestEndpoint( 0 );
+        TestEndpoint second = new TestEndpoint( 0 );
+        LoadBalancingBiostoreConnector connector = new LoadBalancingBiostoreConnector( Arrays.asList( first, second ) );
+        connector.setHedging( executor, LoadBalancingBiostoreConnector.DEFAULT_HEDGED_ACTIONS );
+        for( int i = 0; i < 40; i++ )
+            connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+
+        first.failing = true;
+        second.failing = true;
+        try
+        {
+            connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+            fail( "Both endpoints fail" );
+        }
+        catch( BiostoreTransportException e )
+        {
+            // expected
+        }
+        second.failing = false;
+        first.failing = false;
+        int before = first.calls.get() + second.calls.get();
+        first.failing = true;
+        for( int i = 0; i < 10; i++ )
+            assertEquals( "ok", connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() ).getString( "type" ) );
+        assertTrue( first.calls.get() + second.calls.get() - before >= 10 );
+    }
+
+    @Test
+    public void sessionIsPinned()
+    {
+        CookieEndpoint a = new CookieEndpoint();
+        CookieEndpoint b = new CookieEndpoint();
+        LoadBalancingBiostoreConnector connector = new LoadBalancingBiostoreConnector( Arrays.asList( a, b ) );
+        connector.askServer( "alice", ACTION_LOGIN, Collections.emptyMap() );
+        CookieEndpoint owner = a.calls.get() == 1 ? a : b;
+        CookieEndpoint other = owner == a ? b : a;
+
+        for( int i = 0; i < 20; i++ )
+            connector.askServer( "alice", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        assertEquals( 21, owner.calls.get() );
+        assertEquals( 0, other.calls.get() );
+        // requests of other users are balanced
+        for( int i = 0; i < 20; i++ )
+            connector.askServer( "bob", ACTION_PROJECT_USERS, Collections.emptyMap() );
+        assertTrue( other.calls.get() > 0 );
+
+        int ownerCalls = owner.calls.get();
+        connector.askServer( "alice", ACTION_LOGOUT, Collections.emptyMap() );
+        assertEquals( ownerCalls + 1, owner.calls.get() );
+    }
+
+    private static class TestEndpoint implements BiostoreConnector
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean aborted = new AtomicBoolean();
+        volatile long delayMillis;
+        volatile boolean failing;
+
+        TestEndpoint(long delayMillis)
+        {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public JSONObject askServer(String username, String action, Map<String, String> parameters)
+        {
+            calls.incrementAndGet();
+            if( failing )
+                throw new BiostoreTransportException( "Connection refused" );
+            CountDownLatch latch = new CountDownLatch( 1 );
+            Deadline deadline = Deadline.current();
+            Runnable unregister = deadline == null ? null : deadline.whenExpired( latch::countDown );
+            try
+            {
+                latch.await( delayMillis, TimeUnit.MILLISECONDS );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                if( unregister != null )
+                    unregister.run();
+            }
+            if( deadline != null && deadline.isExpired() )
+            {
+                aborted.set( true );
+                throw new DeadlineExceededException( "Request aborted" );
+            }
+            return new JSONObject().put( "type", "ok" );
+        }
+    }
+
+    private static class CookieEndpoint extends BiostoreConnectorImpl
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+        CookieEndpoint()
+        {
+            super( "http://localhost:1/permission", "test" );
+        }
+
+        @Override
+        public JSONObject askServer(String username, String action, Map<String, String> parameters)
+        {
+            calls.incrementAndGet();
+            if( ACTION_LOGIN.equals( action ) )
+                cookieStore.putCookies( username, "JSESSIONID=" + System.identityHashCode( this ) );
+            else if( ACTION_LOGOUT.equals( action ) )
+                cookieStore.removeCookies( username );
+            return new JSONObject().put( "type", "ok" );
+        }
+    }
+}
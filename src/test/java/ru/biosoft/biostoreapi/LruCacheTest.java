@@ -0,0 +1,102 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.LruCache;
+
+public class LruCacheTest
+{
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void evictLeastRecentlyUsed()
+    {
+        LruCache<String, String> cache = new LruCache<>( 2, 0, TimeUnit.SECONDS, false, now::get );
+        cache.put( "a", "1" );
+        cache.put( "b", "2" );
+        assertEquals( "1", cache.get( "a" ) );
+        cache.put( "c", "3" );
+
+        assertNull( cache.get( "b" ) );
+        assertEquals( "1", cache.get( "a" ) );
+        assertEquals( "3", cache.get( "c" ) );
+        assertEquals( 2, cache.size() );
+
+        LruCache.Stats stats = cache.getStats();
+        assertEquals( 3, stats.getHits() );
+        assertEquals( 1, stats.getMisses() );
+        assertEquals( 1, stats.getEvictions() );
+    }
+
+    @Test
+    public void expireAfterWrite()
+    {
+        LruCache<String, String> cache = new LruCache<>( 10, 10, TimeUnit.NANOSECONDS, false, now::get );
+        cache.put( "a", "1" );
+        now.set( 5 );
+        assertEquals( "1", cache.get( "a" ) );
+        now.set( 10 );
+        assertNull( cache.get( "a" ) );
+        assertEquals( 0, cache.size() );
+        assertEquals( 1, cache.getStats().getEvictions() );
+    }
+
+    @Test
+    public void expireAfterAccess()
+    {
+        LruCache<String, String> cache = new LruCache<>( 10, 10, TimeUnit.NANOSECONDS, true, now::get );
+        cache.put( "a", "1" );
+        cache.put( "b", "2" );
+        now.set( 8 );
+        assertEquals( "1", cache.get( "a" ) );
+        now.set( 15 );
+        assertEquals( "1", cache.get( "a" ) );
+        cache.cleanUp();
+        assertEquals( 1, cache.size() );
+        assertNull( cache.get( "b" ) );
+    }
+
+    @Test
+    public void removeIf()
+    {
+        LruCache<String, String> cache = new LruCache<>( 10, 0, TimeUnit.SECONDS, false, now::get );
+        cache.put( "a1", "1" );
+        cache.put( "a2", "2" );
+        cache.put( "b1", "3" );
+        assertEquals( 2, cache.removeIf( (key, value) -> key.startsWith( "a" ) ) );
+        assertEquals( "3", cache.remove( "b1" ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void noExpirationWithNegativeClock()
+    {
+        now.set( -1_000_000 );
+        LruCache<String, String> cache = new LruCache<>( 10, 0, TimeUnit.SECONDS, true, now::get );
+        cache.put( "a", "1" );
+        assertEquals( "1", cache.get( "a" ) );
+        cache.cleanUp();
+        assertEquals( 1, cache.size() );
+    }
+
+    @Test
+    public void accessKeepsOwnTtl()
+    {
+        LruCache<String, String> cache = new LruCache<>( 10, 100, TimeUnit.NANOSECONDS, true, now::get );
+        cache.put( "a", "1", 10, TimeUnit.NANOSECONDS );
+        cache.put( "b", "2", 0, TimeUnit.NANOSECONDS );
+        now.set( 8 );
+        assertEquals( "1", cache.get( "a" ) );
+        assertEquals( "2", cache.get( "b" ) );
+        now.set( 19 );
+        assertNull( cache.get( "a" ) );
+        now.set( 1000 );
+        assertEquals( "2", cache.get( "b" ) );
+    }
+}
@@ -0,0 +1,217 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.sim.SimulatedBiostore;
+
+public class PagedPublisherTest
+{
+    private SimulatedBiostore biostore;
+    private final AtomicInteger pageRequests = new AtomicInteger();
+    private final List<String> limits = Collections.synchronizedList( new ArrayList<>() );
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    private final BiostoreConnector countingConnector = (username, action, parameters) -> {
+        if( parameters.containsKey( DefaultConnectionProvider.ATTR_LIMIT ) )
+        {
+            pageRequests.incrementAndGet();
+            limits.add( parameters.get( DefaultConnectionProvider.ATTR_OFFSET ) + "+" + parameters.get( DefaultConnectionProvider.ATTR_LIMIT ) );
+        }
+        return biostore.askServer( username, action, parameters );
+    };
+
+    @Before
+    public void setUp()
+    {
+        biostore = new SimulatedBiostore();
+        biostore.addUser( "alice", "secret" );
+        biostore.createProject( "Demo", "alice" );
+        for( int i = 0; i < 24; i++ )
+            biostore.setMember( "Demo", String.format( "user%02d", i ), SimulatedBiostore.ROLE_USER );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void membersArePagedOnDemand()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( countingConnector );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        TestSubscriber<ProjectUser> subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( alice, "Demo", 10, 1 ).subscribe( subscriber );
+        assertEquals( 0, pageRequests.get() );
+
+        subscriber.subscription.request( 5 );
+        assertEquals( 5, subscriber.items.size() );
+        assertEquals( "alice", subscriber.items.get( 0 ).getUser() );
+        // first page and one page ahead
+        assertEquals( 2, pageRequests.get() );
+
+        subscriber.subscription.request( 20 );
+        assertEquals( 25, subscriber.items.size() );
+        assertTrue( subscriber.completed );
+        assertNull( subscriber.error );
+        assertEquals( 3, pageRequests.get() );
+        assertEquals( "[0+10, 10+10, 20+10]", limits.toString() );
+        for( int i = 1; i < 25; i++ )
+            assertEquals( String.format( "user%02d", i - 1 ), subscriber.items.get( i ).getUser() );
+    }
+
+    @Test
+    public void cancelStopsFetching()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( countingConnector );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        TestSubscriber<ProjectUser> subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( alice, "Demo", 5, 1 ).subscribe( subscriber );
+        subscriber.subscription.request( 3 );
+        subscriber.subscription.cancel();
+        subscriber.subscription.request( 100 );
+        assertEquals( 3, subscriber.items.size() );
+        assertEquals( 2, pageRequests.get() );
+        assertFalse( subscriber.completed );
+    }
+
+    @Test
+    public void projectListWithPrefetch() throws Exception
+    {
+        for( int i = 0; i < 100; i++ )
+            biostore.createProject( String.format( "Project_%03d", i ), "alice" );
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( countingConnector, executor );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        TestSubscriber<Project> subscriber = new TestSubscriber<>();
+        provider.publishProjectList( alice, 7, 3 ).subscribe( subscriber );
+        subscriber.subscription.request( Long.MAX_VALUE );
+        assertTrue( subscriber.done.await( 5, TimeUnit.SECONDS ) );
+
+        assertNull( subscriber.error );
+        assertEquals( 101, subscriber.items.size() );
+        assertEquals( "Demo", subscriber.items.get( 0 ).getProjectName() );
+        assertEquals( "Project_099", subscriber.items.get( 100 ).getProjectName() );
+        assertEquals( 15, pageRequests.get() );
+    }
+
+    @Test
+    public void serverWithoutPaging()
+    {
+        BiostoreConnector connector = (username, action, parameters) -> {
+            pageRequests.incrementAndGet();
+            JSONArray users = new JSONArray();
+            for( int i = 0; i < 25; i++ )
+                users.put( new JSONObject().put( "user", "user" + i ).put( "role", "User" ) );
+            return new JSONObject().put( "type", "ok" ).put( "projectUsers", users );
+        };
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        TestSubscriber<ProjectUser> subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( new JWToken( "alice", "token" ), "Demo", 10, 4 ).subscribe( subscriber );
+        subscriber.subscription.request( Long.MAX_VALUE );
+        assertEquals( 25, subscriber.items.size() );
+        assertTrue( subscriber.completed );
+        assertEquals( 1, pageRequests.get() );
+    }
+
+    @Test
+    public void serverWithoutTotal()
+    {
+        BiostoreConnector connector = (username, action, parameters) -> {
+            pageRequests.incrementAndGet();
+            int offset = Integer.parseInt( parameters.get( DefaultConnectionProvider.ATTR_OFFSET ) );
+            int limit = Integer.parseInt( parameters.get( DefaultConnectionProvider.ATTR_LIMIT ) );
+            JSONArray users = new JSONArray();
+            for( int i = offset; i < Math.min( 25, offset + limit ); i++ )
+                users.put( new JSONObject().put( "user", String.format( "user%02d", i ) ).put( "role", "User" ) );
+            return new JSONObject().put( "type", "ok" ).put( "projectUsers", users );
+        };
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        TestSubscriber<ProjectUser> subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( new JWToken( "alice", "token" ), "Demo", 5, 1 ).subscribe( subscriber );
+        subscriber.subscription.request( Long.MAX_VALUE );
+        assertNull( subscriber.error );
+        assertTrue( subscriber.completed );
+        assertEquals( 25, subscriber.items.size() );
+        // full pages do not tell where the list ends, so the empty page after them is requested too
+        assertEquals( 6, pageRequests.get() );
+
+        pageRequests.set( 0 );
+        subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( new JWToken( "alice", "token" ), "Demo", 10, 1 ).subscribe( subscriber );
+        subscriber.subscription.request( Long.MAX_VALUE );
+        assertTrue( subscriber.completed );
+        assertEquals( 25, subscriber.items.size() );
+        assertEquals( 3, pageRequests.get() );
+    }
+
+    @Test
+    public void errors()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( countingConnector );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        TestSubscriber<ProjectUser> subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( alice, "Unknown", 10, 1 ).subscribe( subscriber );
+        subscriber.subscription.request( 1 );
+        assertTrue( subscriber.error instanceof SecurityException );
+        assertTrue( subscriber.items.isEmpty() );
+
+        subscriber = new TestSubscriber<>();
+        provider.publishProjectUsers( alice, "Demo", 10, 1 ).subscribe( subscriber );
+        subscriber.subscription.request( 0 );
+        assertTrue( subscriber.error instanceof IllegalArgumentException );
+    }
+
+    private static class TestSubscriber<T> implements PagedPublisher.Subscriber<T>
+    {
+        final List<T> items = Collections.synchronizedList( new ArrayList<>() );
+        final CountDownLatch done = new CountDownLatch( 1 );
+        volatile PagedPublisher.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(PagedPublisher.Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            items.add( item );
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PermissionIndexTest
+{
+    @Test
+    public void permissions()
+    {
+        PermissionIndex index = new PermissionIndex();
+        index.update( "user1", Arrays.asList( new Project( "data/Collaboration/p1", Project.PERMISSION_ALL ),
+                new Project( "data/Collaboration/p2", Project.PERMISSION_INFO | Project.PERMISSION_READ ) ) );
+        index.update( "user2", Collections.singletonList( new Project( "data/Collaboration/p2", Project.PERMISSION_READ ) ) );
+
+        assertTrue( index.hasPermission( "user1", "data/Collaboration/p1", Project.PERMISSION_WRITE ) );
+        assertTrue( index.hasPermission( "user1", "data/Collaboration/p2", Project.PERMISSION_READ ) );
+        assertFalse( index.hasPermission( "user1", "data/Collaboration/p2", Project.PERMISSION_READ | Project.PERMISSION_WRITE ) );
+        assertFalse( index.hasPermission( "user2", "data/Collaboration/p1", Project.PERMISSION_INFO ) );
+        assertFalse( index.hasPermission( "user3", "data/Collaboration/p1", Project.PERMISSION_INFO ) );
+        assertFalse( index.hasPermission( "user1", "data/Collaboration/unknown", Project.PERMISSION_INFO ) );
+        assertEquals( Project.PERMISSION_READ, index.getPermissions( "user2", index.getProjectId( "data/Collaboration/p2" ) ) );
+        assertEquals( 2, index.getProjectCount() );
+        assertEquals( 2, index.getUserCount() );
+
+        // snapshot is replaced as a whole
+        index.update( "user1", Collections.singletonList( new Project( "data/Collaboration/p3", Project.PERMISSION_READ ) ) );
+        assertFalse( index.hasPermission( "user1", "data/Collaboration/p1", Project.PERMISSION_INFO ) );
+        assertTrue( index.hasPermission( "user1", "data/Collaboration/p3", Project.PERMISSION_READ ) );
+
+        index.removeUser( "user1" );
+        assertFalse( index.containsUser( "user1" ) );
+        assertEquals( 0, index.getPermissions( "user1", "data/Collaboration/p3" ) );
+    }
+
+    @Test
+    public void sparseAndDenseSnapshots()
+    {
+        PermissionIndex index = new PermissionIndex();
+        List<Project> all = new ArrayList<>();
+        for( int i = 0; i < 1000; i++ )
+            all.add( new Project( "project" + i, i % 32 ) );
+        index.update( "admin", all );
+        List<Project> few = new ArrayList<>();
+        for( int i = 0; i < 1000; i += 97 )
+            few.add( new Project( "project" + i, Project.PERMISSION_READ ) );
+        index.update( "user", few );
+
+        for( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i % 32, index.getPermissions( "admin", "project" + i ) );
+            assertEquals( i % 97 == 0 ? Project.PERMISSION_READ : 0, index.getPermissions( "user", "project" + i ) );
+        }
+        // dense array for the admin, small hash table for the user
+        long footprint = index.getSnapshotsFootprint();
+        assertTrue( String.valueOf( footprint ), footprint < 1000 + 300 );
+    }
+
+    @Test
+    public void refresh()
+    {
+        BiostoreConnector connector = mock( BiostoreConnector.class );
+        when( connector.askServer( eq( "user1" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenReturn( new JSONObject( "{\"type\":\"ok\",\"projectList\":[{\"name\":\"p1\",\"permissions\":7}]}" ) );
+        PermissionIndex index = new PermissionIndex();
+        index.refresh( new DefaultConnectionProvider( connector ), new JWToken( "user1", "token" ) );
+        assertTrue( index.hasPermission( "user1", "p1", Project.PERMISSION_WRITE ) );
+        assertFalse( index.hasPermission( "user1", "p1", Project.PERMISSION_DELETE ) );
+    }
+
+    @Test
+    public void membershipEvents()
+    {
+        PermissionIndex index = new PermissionIndex();
+        List<Project> many = new ArrayList<>();
+        for( int i = 0; i < 100; i++ )
+            many.add( new Project( "p" + i, Project.PERMISSION_READ ) );
+        index.update( "dense", many );
+        index.update( "sparse", Collections.singletonList( new Project( "p50", Project.PERMISSION_ALL ) ) );
+
+        index.projectCreated( "new", "sparse", Project.PERMISSION_ALL );
+        index.projectCreated( "other", "unknown", Project.PERMISSION_ALL );
+        assertEquals( Project.PERMISSION_ALL, index.getPermissions( "sparse", "new" ) );
+        assertEquals( Project.PERMISSION_ALL, index.getPermissions( "sparse", "p50" ) );
+        assertFalse( index.containsUser( "unknown" ) );
+
+        index.userAdded( "new", "dense", "User", Project.PERMISSION_READ | Project.PERMISSION_WRITE );
+        index.userAdded( "p1", "dense", "User", Project.PERMISSION_WRITE );
+        assertEquals( Project.PERMISSION_READ | Project.PERMISSION_WRITE, index.getPermissions( "dense", "new" ) );
+        assertEquals( "existing member keeps the role", Project.PERMISSION_READ, index.getPermissions( "dense", "p1" ) );
+        assertEquals( Project.PERMISSION_READ, index.getPermissions( "dense", "p99" ) );
+
+        index.roleChanged( "p1", "dense", "Moderator", Project.PERMISSION_ALL & ~Project.PERMISSION_ADMIN );
+        assertEquals( Project.PERMISSION_ALL & ~Project.PERMISSION_ADMIN, index.getPermissions( "dense", "p1" ) );
+        index.setPermissions( "dense", "p2", 0 );
+        assertEquals( 0, index.getPermissions( "dense", "p2" ) );
+
+        index.roleChanged( "p50", "sparse", "Custom", MembershipListener.UNKNOWN_PERMISSIONS );
+        assertFalse( index.containsUser( "sparse" ) );
+    }
+}
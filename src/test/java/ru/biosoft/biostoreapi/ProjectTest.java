@@ -1,6 +1,7 @@
 package ru.biosoft.biostoreapi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import org.json.JSONObject;
@@ -60,6 +61,16 @@ public class ProjectTest
         assertEquals( "Read/Write/Delete", p.getPermissionsStr() );
     }
 
+    @Test
+    public void equality()
+    {
+        Project p = new Project( "Demo", Project.PERMISSION_ALL );
+        assertEquals( p, initProject( "Demo", Project.PERMISSION_ALL ) );
+        assertEquals( p.hashCode(), initProject( "Demo", Project.PERMISSION_ALL ).hashCode() );
+        assertNotEquals( p, new Project( "Demo", Project.PERMISSION_READ ) );
+        assertNotEquals( p, new Project( "Other", Project.PERMISSION_ALL ) );
+    }
+
     private void checkCreating(String name, Integer permissions)
     {
         Project p = initProject( name, permissions );
@@ -0,0 +1,165 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_ADD_TO_PROJECT;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_GET_PROJECT_LIST;
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.ACTION_PROJECT_USERS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.CircuitBreaker;
+import ru.biosoft.biostoreapi.impl.ResilientBiostoreConnector;
+
+public class ResilientBiostoreConnectorTest
+{
+    private static final JSONObject OK = new JSONObject( "{\"type\":\"ok\"}" );
+
+    private BiostoreConnector mock;
+    private final AtomicLong time = new AtomicLong();
+    private final List<String> transitions = new ArrayList<>();
+
+    @Before
+    public void setUp()
+    {
+        mock = mock( BiostoreConnector.class );
+    }
+
+    private ResilientBiostoreConnector create(ResilientBiostoreConnector.Scope scope)
+    {
+        ResilientBiostoreConnector connector = new ResilientBiostoreConnector( mock, scope, time::get );
+        connector.setCircuitSettings( 2, 10, TimeUnit.SECONDS, 1 );
+        connector.setRetrySettings( 3, 1, 2, TimeUnit.MILLISECONDS );
+        connector.setStateListener( (circuit, from, to) -> transitions.add( circuit + ":" + from + "->" + to ) );
+        return connector;
+    }
+
+    @Test
+    public void retryReadActions()
+    {
+        ResilientBiostoreConnector connector = create( ResilientBiostoreConnector.Scope.PER_ACTION );
+        connector.setCircuitSettings( 5, 10, TimeUnit.SECONDS, 1 );
+        when( mock.askServer( eq( "user" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) ) )
+                .thenThrow( new BiostoreTransportException( "fail" ) ).thenThrow( new BiostoreTransportException( "fail" ) )
+                .thenReturn( OK );
+
+        assertSame( OK, connector.askServer( "user", ACTION_GET_PROJECT_LIST, new HashMap<>() ) );
+        verify( mock, times( 3 ) ).askServer( eq( "user" ), eq( ACTION_GET_PROJECT_LIST ), anyMapOf( String.class, String.class ) );
+        assertEquals( CircuitBreaker.State.CLOSED, connector.getCircuitBreaker( ACTION_GET_PROJECT_LIST ).getState() );
+    }
+
+    @Test
+    public void noRetryForWrites()
+    {
+        ResilientBiostoreConnector connector = create( ResilientBiostoreConnector.Scope.PER_ACTION );
+        when( mock.askServer( eq( "user" ), eq( ACTION_ADD_TO_PROJECT ), anyMapOf( String.class, String.class ) ) )
+                .thenThrow( new BiostoreTransportException( "fail" ) );
+        try
+        {
+            connector.askServer( "user", ACTION_ADD_TO_PROJECT, new HashMap<>() );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( "fail", e.getMessage() );
+        }
+        verify( mock, times( 1 ) ).askServer( anyString(), anyString(), anyMapOf( String.class, String.class ) );
+    }
+
+    @Test
+    public void circuitOpensAndCloses()
+    {
+        ResilientBiostoreConnector connector = create( ResilientBiostoreConnector.Scope.PER_SERVER );
+        connector.setRetrySettings( 1, 0, 0, TimeUnit.MILLISECONDS );
+        when( mock.askServer( anyString(), anyString(), anyMapOf( String.class, String.class ) ) )
+                .thenThrow( new BiostoreTransportException( "fail" ) ).thenThrow( new BiostoreTransportException( "fail" ) )
+                .thenThrow( new BiostoreTransportException( "fail" ) ).thenReturn( OK );
+
+        for( int i = 0; i < 2; i++ )
+            assertFails( connector, ACTION_GET_PROJECT_LIST, BiostoreTransportException.class );
+        // open circuit is shared between actions and does not reach the server
+        assertFails( connector, ACTION_PROJECT_USERS, CircuitOpenException.class );
+        verify( mock, times( 2 ) ).askServer( anyString(), anyString(), anyMapOf( String.class, String.class ) );
+
+        // failed probe opens the circuit again
+        time.addAndGet( TimeUnit.SECONDS.toNanos( 10 ) );
+        assertFails( connector, ACTION_PROJECT_USERS, BiostoreTransportException.class );
+        assertFails( connector, ACTION_PROJECT_USERS, CircuitOpenException.class );
+
+        time.addAndGet( TimeUnit.SECONDS.toNanos( 10 ) );
+        assertSame( OK, connector.askServer( "user", ACTION_PROJECT_USERS, new HashMap<>() ) );
+        assertSame( OK, connector.askServer( "user", ACTION_PROJECT_USERS, new HashMap<>() ) );
+        assertEquals( "[server:CLOSED->OPEN, server:OPEN->HALF_OPEN, server:HALF_OPEN->OPEN, server:OPEN->HALF_OPEN, "
+                + "server:HALF_OPEN->CLOSED]", transitions.toString() );
+    }
+
+    @Test
+    public void serverErrorIsNotFailure()
+    {
+        ResilientBiostoreConnector connector = create( ResilientBiostoreConnector.Scope.PER_ACTION );
+        JSONObject error = new JSONObject( "{\"type\":\"error\",\"message\":\"no access\"}" );
+        when( mock.askServer( anyString(), anyString(), anyMapOf( String.class, String.class ) ) ).thenReturn( error );
+        for( int i = 0; i < 5; i++ )
+            assertSame( error, connector.askServer( "user", ACTION_GET_PROJECT_LIST, new HashMap<>() ) );
+        verify( mock, times( 5 ) ).askServer( anyString(), anyString(), anyMapOf( String.class, String.class ) );
+        assertEquals( CircuitBreaker.State.CLOSED, connector.getCircuitBreaker( ACTION_GET_PROJECT_LIST ).getState() );
+    }
+
+    @Test
+    public void lateCallIsNotProbe()
+    {
+        CircuitBreaker breaker = new CircuitBreaker( "test", 1, 10, TimeUnit.SECONDS, 1, null, time::get );
+        CircuitBreaker.Permit slow = breaker.tryAcquire();
+        CircuitBreaker.Permit failed = breaker.tryAcquire();
+        assertFalse( slow.isProbe() );
+        breaker.onFailure( failed );
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState() );
+        assertNull( breaker.tryAcquire() );
+
+        time.addAndGet( TimeUnit.SECONDS.toNanos( 11 ) );
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertTrue( probe.isProbe() );
+        assertEquals( CircuitBreaker.State.HALF_OPEN, breaker.getState() );
+        // call granted while closed completes during probing: it neither frees the probe slot nor closes the circuit
+        breaker.onSuccess( slow );
+        breaker.onFailure( slow );
+        breaker.release( slow );
+        assertEquals( CircuitBreaker.State.HALF_OPEN, breaker.getState() );
+        assertNull( breaker.tryAcquire() );
+
+        breaker.onSuccess( probe );
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState() );
+    }
+
+    private static void assertFails(BiostoreConnector connector, String action, Class<? extends Exception> expected)
+    {
+        try
+        {
+            connector.askServer( "user", action, new HashMap<>() );
+            fail();
+        }
+        catch( BiostoreTransportException e )
+        {
+            assertEquals( expected, e.getClass() );
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.AimdLimit;
+import ru.biosoft.biostoreapi.impl.ConcurrencyLimit;
+import ru.biosoft.biostoreapi.impl.SchedulingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.VegasLimit;
+
+public class SchedulingBiostoreConnectorTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch( 1 );
+    private final List<String> calls = Collections.synchronizedList( new ArrayList<>() );
+
+    private final BiostoreConnector blockingConnector = (username, action, parameters) -> {
+        calls.add( username + ":" + action );
+        if( action.equals( "hold" ) )
+        {
+            try
+            {
+                release.await( 5, TimeUnit.SECONDS );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new JSONObject().put( "type", "ok" );
+    };
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void higherPriorityIsAdmittedFirst() throws Exception
+    {
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( blockingConnector, ConcurrencyLimit.fixed( 1 ) );
+        List<Future<?>> results = new ArrayList<>();
+        results.add( submit( connector, "u", "hold", null ) );
+        waitFor( () -> connector.getInFlight() == 1 );
+        results.add( submit( connector, "u", "bulk", Priority.BULK ) );
+        waitFor( () -> connector.getQueued( Priority.BULK ) == 1 );
+        results.add( submit( connector, "u", "background", Priority.BACKGROUND ) );
+        waitFor( () -> connector.getQueued( Priority.BACKGROUND ) == 1 );
+        results.add( submit( connector, "u", "interactive", Priority.INTERACTIVE ) );
+        waitFor( () -> connector.getQueued( Priority.INTERACTIVE ) == 1 );
+
+        release.countDown();
+        for( Future<?> result : results )
+            result.get( 5, TimeUnit.SECONDS );
+        assertEquals( Arrays.asList( "u:hold", "u:interactive", "u:background", "u:bulk" ), calls );
+        assertEquals( 1, connector.getQueueWait( Priority.INTERACTIVE ).getCount() );
+        assertTrue( connector.getQueueWait( Priority.BULK ).getMax() > 0 );
+        assertEquals( 2, connector.getAdmittedCount( Priority.BACKGROUND ) );
+        assertEquals( 0, connector.getInFlight() );
+    }
+
+    @Test
+    public void usersTakeTurns() throws Exception
+    {
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( blockingConnector, ConcurrencyLimit.fixed( 1 ) );
+        List<Future<?>> results = new ArrayList<>();
+        results.add( submit( connector, "u", "hold", null ) );
+        waitFor( () -> connector.getInFlight() == 1 );
+        String[][] requests = { {"alice", "a1"}, {"alice", "a2"}, {"alice", "a3"}, {"bob", "b1"}};
+        for( int i = 0; i < requests.length; i++ )
+        {
+            int queued = i + 1;
+            results.add( submit( connector, requests[i][0], requests[i][1], null ) );
+            waitFor( () -> connector.getQueued( Priority.BACKGROUND ) == queued );
+        }
+
+        release.countDown();
+        for( Future<?> result : results )
+            result.get( 5, TimeUnit.SECONDS );
+        assertEquals( Arrays.asList( "u:hold", "alice:a1", "bob:b1", "alice:a2", "alice:a3" ), calls );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void rejectsWhenQueueIsFull() throws Exception
+    {
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( blockingConnector, ConcurrencyLimit.fixed( 1 ) );
+        connector.setQueueCapacity( Priority.BULK, 0 );
+        Future<?> hold = submit( connector, "u", "hold", null );
+        waitFor( () -> connector.getInFlight() == 1 );
+        try( Priority.Scope scope = Priority.BULK.enter() )
+        {
+            connector.askServer( "u", "bulk", Collections.emptyMap() );
+            fail( "Request must be rejected" );
+        }
+        catch( AdmissionRejectedException e )
+        {
+            assertEquals( Priority.BULK, e.getPriority() );
+        }
+        assertEquals( 1, connector.getRejectedCount( Priority.BULK ) );
+        release.countDown();
+        hold.get( 5, TimeUnit.SECONDS );
+        assertEquals( Arrays.asList( "u:hold" ), calls );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void deadlineExpiresWhileQueued() throws Exception
+    {
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( blockingConnector, ConcurrencyLimit.fixed( 1 ) );
+        Future<?> hold = submit( connector, "u", "hold", null );
+        waitFor( () -> connector.getInFlight() == 1 );
+        try( Deadline.Scope scope = Deadline.after( 50, TimeUnit.MILLISECONDS ).enter() )
+        {
+            connector.askServer( "u", "late", Collections.emptyMap() );
+            fail( "Deadline must expire" );
+        }
+        catch( DeadlineExceededException e )
+        {
+            // expected
+        }
+        assertEquals( 0, connector.getQueued( Priority.BACKGROUND ) );
+        assertEquals( 1, connector.getRejectedCount( Priority.BACKGROUND ) );
+        release.countDown();
+        hold.get( 5, TimeUnit.SECONDS );
+        assertEquals( Arrays.asList( "u:hold" ), calls );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void actionPriorities()
+    {
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( blockingConnector, ConcurrencyLimit.fixed( 1 ) );
+        assertEquals( Priority.INTERACTIVE, connector.getPriority( DefaultConnectionProvider.ACTION_GET_PROJECT_LIST ) );
+        assertEquals( Priority.BACKGROUND, connector.getPriority( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+        connector.setActionPriority( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN, Priority.BULK );
+        assertEquals( Priority.BULK, connector.getPriority( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+        try( Priority.Scope scope = Priority.INTERACTIVE.enter() )
+        {
+            assertEquals( Priority.INTERACTIVE, connector.getPriority( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+        }
+        assertEquals( Priority.BULK, connector.getPriority( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+    }
+
+    @Test
+    public void deadlineIsNotDrop()
+    {
+        List<Boolean> samples = new ArrayList<>();
+        ConcurrencyLimit recording = new ConcurrencyLimit()
+        {
+            @Override
+            public int getLimit()
+            {
+                return 1;
+            }
+
+            @Override
+            public void onSample(long rttNanos, int inFlight, boolean dropped)
+            {
+                samples.add( dropped );
+            }
+        };
+        SchedulingBiostoreConnector connector = new SchedulingBiostoreConnector( (username, action, parameters) -> {
+            if( action.equals( "late" ) )
+                throw new DeadlineExceededException( "Deadline exceeded" );
+            throw new BiostoreTransportException( "Connection refused" );
+        }, recording );
+        for( String action : Arrays.asList( "late", "fail" ) )
+        {
+            try
+            {
+                connector.askServer( "u", action, Collections.emptyMap() );
+                fail();
+            }
+            catch( BiostoreTransportException e )
+            {
+                // expected
+            }
+        }
+        // caller's budget running out says nothing about server capacity
+        assertEquals( Arrays.asList( true ), samples );
+        assertEquals( 0, connector.getInFlight() );
+    }
+
+    @Test
+    public void aimdBacksOffOnDrop()
+    {
+        AimdLimit limit = new AimdLimit( 10, 1, 20, 0.5, 1, TimeUnit.SECONDS );
+        limit.onSample( 1000, 2, false );
+        assertEquals( 10, limit.getLimit() );
+        limit.onSample( 1000, 10, false );
+        assertEquals( 11, limit.getLimit() );
+        limit.onSample( 1000, 10, true );
+        assertEquals( 5, limit.getLimit() );
+        limit.onSample( TimeUnit.SECONDS.toNanos( 2 ), 5, false );
+        assertEquals( 2, limit.getLimit() );
+        for( int i = 0; i < 100; i++ )
+            limit.onSample( 1000, limit.getLimit(), false );
+        assertEquals( 20, limit.getLimit() );
+    }
+
+    @Test
+    public void vegasSettlesNearCapacity()
+    {
+        // server processes 50 requests at once, the rest wait, so RTT grows in proportion to the excess
+        int capacity = 50;
+        long baseRtt = TimeUnit.MILLISECONDS.toNanos( 10 );
+        VegasLimit limit = new VegasLimit( 5, 1, 1000 );
+        for( int i = 0; i < 2500; i++ )
+        {
+            int inFlight = limit.getLimit();
+            long rtt = baseRtt * Math.max( capacity, inFlight ) / capacity;
+            limit.onSample( rtt, inFlight, false );
+        }
+        assertEquals( baseRtt, limit.getMinRttNanos() );
+        assertTrue( limit.toString(), limit.getLimit() >= capacity && limit.getLimit() <= capacity + 20 );
+
+        // server became twice slower under the same load
+        for( int i = 0; i < 2300; i++ )
+        {
+            int inFlight = limit.getLimit();
+            long rtt = baseRtt * Math.max( capacity / 2, inFlight ) / ( capacity / 2 );
+            limit.onSample( rtt, inFlight, false );
+        }
+        assertTrue( limit.toString(), limit.getLimit() >= capacity / 2 && limit.getLimit() <= capacity / 2 + 20 );
+    }
+
+    @Test
+    public void vegasIgnoresRttOfDrops()
+    {
+        long baseRtt = TimeUnit.MILLISECONDS.toNanos( 10 );
+        VegasLimit limit = new VegasLimit( 20, 1, 1000 );
+        // connection refused comes back much faster than any response
+        limit.onSample( TimeUnit.MILLISECONDS.toNanos( 1 ), 20, true );
+        assertEquals( 0, limit.getMinRttNanos() );
+        assertEquals( 18, limit.getLimit() );
+        for( int i = 0; i < 100; i++ )
+            limit.onSample( baseRtt, limit.getLimit(), false );
+        assertEquals( baseRtt, limit.getMinRttNanos() );
+        assertTrue( limit.toString(), limit.getLimit() > 18 );
+    }
+
+    @Test
+    public void vegasProbeWaitsForQueueToDrain()
+    {
+        long baseRtt = TimeUnit.MILLISECONDS.toNanos( 10 );
+        VegasLimit limit = new VegasLimit( 40, 1, 1000, 5 );
+        for( int i = 0; i < 5; i++ )
+            limit.onSample( baseRtt, 40, false );
+        assertEquals( 0, limit.getMinRttNanos() );
+        assertEquals( 22, limit.getLimit() );
+        // started under the previous limit, so it waited in the queue
+        limit.onSample( baseRtt * 3, 44, false );
+        assertEquals( 0, limit.getMinRttNanos() );
+        limit.onSample( baseRtt, 22, false );
+        assertEquals( baseRtt, limit.getMinRttNanos() );
+    }
+
+    @SuppressWarnings("try")
+    private Future<?> submit(BiostoreConnector connector, String username, String action, Priority priority)
+    {
+        return executor.submit( () -> {
+            try( Priority.Scope scope = priority == null ? null : priority.enter() )
+            {
+                return connector.askServer( username, action, Collections.emptyMap() );
+            }
+        } );
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos( 5 );
+        while( !condition.getAsBoolean() )
+        {
+            if( System.nanoTime() > end )
+                fail( "Condition was not met in time" );
+            Thread.sleep( 1 );
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.CoalescingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.ConcurrencyLimit;
+import ru.biosoft.biostoreapi.impl.ResilientBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.SchedulingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.UrlConnectionTransport;
+import ru.biosoft.biostoreapi.sim.BiostoreHttpServer;
+import ru.biosoft.biostoreapi.sim.LoadGenerator;
+import ru.biosoft.biostoreapi.sim.SimulatedBiostore;
+
+public class SimulatedBiostoreTest
+{
+    private SimulatedBiostore biostore;
+
+    @Before
+    public void setUp()
+    {
+        biostore = new SimulatedBiostore();
+        biostore.addUser( "alice", "secret" );
+        biostore.addUser( "bob", "secret" );
+        biostore.addUser( "admin", "secret" );
+        biostore.setAdmin( "admin", true );
+    }
+
+    @Test
+    public void projectLifecycle()
+    {
+        checkLifecycle( new DefaultConnectionProvider( biostore ) );
+    }
+
+    @Test
+    public void projectLifecycleOverHttp() throws Exception
+    {
+        try( BiostoreHttpServer server = new BiostoreHttpServer( biostore ) )
+        {
+            checkLifecycle( new DefaultConnectionProvider(
+                    new BiostoreConnectorImpl( server.getServerLink(), "test.server", new UrlConnectionTransport() ) ) );
+        }
+    }
+
+    private void checkLifecycle(DefaultConnectionProvider provider)
+    {
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        assertEquals( "alice", alice.getSubject() );
+        assertTrue( alice.getExpiresAt().isAfter( alice.getIssuedAt() ) );
+        provider.createProjectWithPermissions( alice, "Demo", Project.PERMISSION_ALL );
+        provider.addUserToProject( alice, "bob", "Demo" );
+        assertEquals( Arrays.asList( new ProjectUser( "alice", "Administrator" ), new ProjectUser( "bob", "User" ) ),
+                provider.getProjectUsers( alice, "Demo" ) );
+        provider.changeUserRoleInProject( alice, "Demo", "bob", SimulatedBiostore.ROLE_MODERATOR );
+
+        JWToken bob = provider.getJWToken( "bob", "secret" );
+        List<Project> projects = provider.getProjectList( bob );
+        assertEquals( 1, projects.size() );
+        assertEquals( "Demo", projects.get( 0 ).getProjectName() );
+        assertEquals( Project.PERMISSION_ALL & ~Project.PERMISSION_ADMIN, projects.get( 0 ).getPermissions() );
+        // moderator cannot manage members
+        assertFails( () -> provider.addUserToProject( bob, "admin", "Demo" ) );
+        assertFails( () -> provider.createProjectWithPermissions( bob, "Demo", Project.PERMISSION_ALL ) );
+
+        JWToken refreshed = provider.refreshJWToken( bob );
+        provider.logout( bob );
+        assertFails( () -> provider.getProjectList( bob ) );
+        assertEquals( 1, provider.getProjectList( refreshed ).size() );
+
+        JWToken sudo = provider.getJWToken( "admin$alice", "secret" );
+        assertEquals( "alice", sudo.getSubject() );
+        assertFails( () -> provider.getJWToken( "bob$alice", "secret" ) );
+        assertFails( () -> provider.getJWToken( "alice", "wrong" ) );
+    }
+
+    @Test
+    public void conditionalRequests() throws Exception
+    {
+        biostore.createProject( "Demo", "alice" );
+        biostore.setMember( "Demo", "bob", SimulatedBiostore.ROLE_USER );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try( BiostoreHttpServer server = new BiostoreHttpServer( biostore ) )
+        {
+            BiostoreConnectorImpl connector = new BiostoreConnectorImpl( server.getServerLink(), null, new UrlConnectionTransport() );
+            connector.setConditionalActions( BiostoreConnectorImpl.DEFAULT_CONDITIONAL_ACTIONS );
+            DefaultConnectionProvider provider = new DefaultConnectionProvider( connector, executor );
+            JWToken alice = provider.getJWToken( "alice", "secret" );
+
+            List<Project> projects = provider.getProjectList( alice );
+            assertSame( projects, provider.getProjectList( alice ) );
+            assertSame( projects, provider.getProjectListAsync( alice ).get() );
+            List<ProjectUser> users = provider.getProjectUsers( alice, "Demo" );
+            assertSame( users, provider.getProjectUsers( alice, "Demo" ) );
+            assertEquals( 3, server.getNotModifiedCount() );
+            try
+            {
+                projects.clear();
+                fail();
+            }
+            catch( UnsupportedOperationException e )
+            {
+                // expected
+            }
+
+            provider.createProjectWithPermissions( alice, "Other", Project.PERMISSION_ALL );
+            List<Project> changed = provider.getProjectList( alice );
+            assertEquals( 2, changed.size() );
+            assertNotSame( projects, changed );
+            provider.changeUserRoleInProject( alice, "Demo", "bob", SimulatedBiostore.ROLE_MODERATOR );
+            assertEquals( new ProjectUser( "bob", SimulatedBiostore.ROLE_MODERATOR ), provider.getProjectUsers( alice, "Demo" ).get( 1 ) );
+
+            // validators survive token refresh, the server still checks the new token
+            JWToken refreshed = provider.refreshJWToken( alice );
+            assertEquals( 2, provider.getProjectList( refreshed ).size() );
+            assertEquals( 4, server.getNotModifiedCount() );
+
+            // another user has its own validators
+            JWToken bob = provider.getJWToken( "bob", "secret" );
+            provider.getProjectList( bob );
+            assertEquals( 4, server.getNotModifiedCount() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failureInjection() throws Exception
+    {
+        biostore.setFailureRate( DefaultConnectionProvider.ACTION_GET_PROJECT_LIST, 1 );
+        biostore.setLatency( null, 20, 0, TimeUnit.MILLISECONDS );
+        try( BiostoreHttpServer server = new BiostoreHttpServer( biostore ) )
+        {
+            BiostoreConnectorImpl connector = new BiostoreConnectorImpl( server.getServerLink(), null, new UrlConnectionTransport() );
+            DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+            long start = System.nanoTime();
+            JWToken token = provider.getJWToken( "alice", "secret" );
+            assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 20 ) );
+            try
+            {
+                provider.getProjectList( token );
+                fail();
+            }
+            catch( BiostoreTransportException e )
+            {
+                assertTrue( e.getCause().getMessage().contains( "503" ) );
+            }
+        }
+    }
+
+    @Test
+    public void loadGenerator() throws Exception
+    {
+        Map<String, String> credentials = new HashMap<>();
+        for( int i = 0; i < 10; i++ )
+        {
+            biostore.addUser( "user" + i, "pw" );
+            credentials.put( "user" + i, "pw" );
+            biostore.createProject( "Project_" + i, "user" + i );
+            biostore.setMember( "Project_" + i, "user" + ( ( i + 1 ) % 10 ), SimulatedBiostore.ROLE_USER );
+        }
+        LoadGenerator generator = new LoadGenerator( new DefaultConnectionProvider( biostore ), credentials );
+        Map<String, Integer> mix = new HashMap<>();
+        mix.put( DefaultConnectionProvider.ACTION_GET_PROJECT_LIST, 5 );
+        mix.put( DefaultConnectionProvider.ACTION_PROJECT_USERS, 3 );
+        mix.put( DefaultConnectionProvider.ACTION_CHANGE_ROLE_IN_PROJECT, 1 );
+        mix.put( DefaultConnectionProvider.ACTION_LOGOUT, 1 );
+        generator.setMix( mix );
+        generator.setThreads( 2 );
+        LoadGenerator.Report report = generator.run( 200, TimeUnit.MILLISECONDS );
+
+        assertTrue( report.getTotalCount() > 0 );
+        assertEquals( 0, report.getTotalErrors() );
+        assertTrue( report.getThroughput() > 0 );
+        LoadGenerator.ActionReport projectList = report.getActions().get( DefaultConnectionProvider.ACTION_GET_PROJECT_LIST );
+        assertNotNull( projectList );
+        assertTrue( projectList.getLatency().getPercentile( 99 ) > 0 );
+        assertTrue( report.toString().contains( "p999" ) );
+    }
+
+    @Test
+    public void warmUpThroughDecorators() throws Exception
+    {
+        try( BiostoreHttpServer server = new BiostoreHttpServer( biostore ) )
+        {
+            BiostoreConnectorImpl connector = new BiostoreConnectorImpl( server.getServerLink(), "test.server", new UrlConnectionTransport() );
+            DefaultConnectionProvider provider = new DefaultConnectionProvider( new SchedulingBiostoreConnector(
+                    new CoalescingBiostoreConnector( new ResilientBiostoreConnector( connector ) ), ConcurrencyLimit.fixed( 4 ) ) );
+            WarmUpReport report = provider.warmUp();
+            assertTrue( report.toString(), report.isAllSucceeded() );
+            assertEquals( WarmUpReport.STEP_RESOLVE, report.getSteps().get( 0 ).getName() );
+            assertEquals( server.getServerLink(), report.getSteps().get( 1 ).getTarget() );
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedAction()
+    {
+        new LoadGenerator( new DefaultConnectionProvider( biostore ), Collections.singletonMap( "alice", "secret" ) )
+                .setMix( Collections.singletonMap( "deleteEverything", 1 ) );
+    }
+
+    private static void assertFails(Runnable call)
+    {
+        try
+        {
+            call.run();
+            fail();
+        }
+        catch( SecurityException e )
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.biosoft.biostoreapi.sim.SimulatedBiostore;
+
+public class SudoTokenCacheTest
+{
+    private SimulatedBiostore biostore;
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private DefaultConnectionProvider provider;
+
+    @Before
+    public void setUp()
+    {
+        biostore = new SimulatedBiostore();
+        biostore.addUser( "admin", "secret" );
+        biostore.setAdmin( "admin", true );
+        biostore.addUser( "alice", "pw" );
+        biostore.addUser( "bob", "pw" );
+        provider = new DefaultConnectionProvider( (username, action, parameters) -> {
+            requests.computeIfAbsent( action, k -> new AtomicInteger() ).incrementAndGet();
+            return biostore.askServer( username, action, parameters );
+        } );
+    }
+
+    private int requests(String action)
+    {
+        AtomicInteger count = requests.get( action );
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    public void reuseToken()
+    {
+        SudoTokenCache cache = new SudoTokenCache();
+        provider.setSudoTokenCache( cache );
+        JWToken first = provider.getJWToken( "admin$alice", "secret" );
+        assertEquals( "alice", first.getSubject() );
+        assertSame( first, provider.getJWToken( "admin$alice", "secret" ) );
+        JWToken bob = provider.getJWToken( "admin$bob", "secret" );
+        assertEquals( "bob", bob.getSubject() );
+        assertEquals( 2, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 2, cache.size() );
+
+        // regular logins are not cached
+        provider.getJWToken( "alice", "pw" );
+        provider.getJWToken( "alice", "pw" );
+        assertEquals( 4, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+    }
+
+    @Test
+    public void wrongPassword()
+    {
+        provider.setSudoTokenCache( new SudoTokenCache() );
+        provider.getJWToken( "admin$alice", "secret" );
+        try
+        {
+            provider.getJWToken( "admin$alice", "wrong" );
+            fail();
+        }
+        catch( SecurityException e )
+        {
+            // expected
+        }
+        assertEquals( 2, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+    }
+
+    @Test
+    public void refreshBeforeLogin()
+    {
+        biostore.setTokenLifetime( 1, TimeUnit.HOURS );
+        SudoTokenCache cache = new SudoTokenCache( 100, Duration.ofHours( 2 ), 0, TimeUnit.SECONDS );
+        provider.setSudoTokenCache( cache );
+        JWToken first = provider.getJWToken( "admin$alice", "secret" );
+        JWToken second = provider.getJWToken( "admin$alice", "secret" );
+        assertNotSame( first, second );
+        assertEquals( "admin$alice", second.getUsername() );
+        assertEquals( 1, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+        assertEquals( 1, requests( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+        assertEquals( 1, cache.getRefreshCount() );
+
+        // token revoked on server: refresh fails, full login follows
+        provider.setSudoTokenCache( null );
+        provider.logout( second );
+        provider.setSudoTokenCache( cache );
+        provider.getJWToken( "admin$alice", "secret" );
+        assertEquals( 2, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+        assertEquals( 2, requests( DefaultConnectionProvider.ACTION_REFRESH_J_W_TOKEN ) );
+    }
+
+    @Test
+    public void evictOnAdminLogout()
+    {
+        SudoTokenCache cache = new SudoTokenCache();
+        provider.setSudoTokenCache( cache );
+        JWToken alice = provider.getJWToken( "admin$alice", "secret" );
+        provider.getJWToken( "admin$bob", "secret" );
+        provider.logout( alice );
+        assertEquals( 1, cache.size() );
+
+        JWToken admin = provider.getJWToken( "admin", "secret" );
+        provider.logout( admin );
+        assertEquals( 0, cache.size() );
+        provider.getJWToken( "admin$bob", "secret" );
+        assertEquals( 4, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+    }
+
+    @Test
+    public void memoryBound()
+    {
+        for( int i = 0; i < 10; i++ )
+            biostore.addUser( "user" + i, "pw" );
+        SudoTokenCache cache = new SudoTokenCache( 3, SudoTokenCache.DEFAULT_REFRESH_AHEAD, 0, TimeUnit.SECONDS );
+        provider.setSudoTokenCache( cache );
+        for( int i = 0; i < 10; i++ )
+            provider.getJWToken( "admin$user" + i, "secret" );
+        assertEquals( 3, cache.size() );
+    }
+
+    @Test
+    public void coalesceConcurrentLogins() throws Exception
+    {
+        biostore.setLatency( DefaultConnectionProvider.ACTION_LOGIN, 100, 0, TimeUnit.MILLISECONDS );
+        provider.setSudoTokenCache( new SudoTokenCache() );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<JWToken>> results = new ArrayList<>();
+            for( int i = 0; i < 8; i++ )
+                results.add( executor.submit( () -> provider.getJWToken( "admin$alice", "secret" ) ) );
+            JWToken token = results.get( 0 ).get();
+            for( Future<JWToken> result : results )
+                assertSame( token, result.get() );
+            assertEquals( 1, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncLoginUsesCache() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            DefaultConnectionProvider asyncProvider = new DefaultConnectionProvider( (username, action, parameters) -> {
+                requests.computeIfAbsent( action, k -> new AtomicInteger() ).incrementAndGet();
+                return biostore.askServer( username, action, parameters );
+            }, executor );
+            SudoTokenCache cache = new SudoTokenCache();
+            asyncProvider.setSudoTokenCache( cache );
+            JWToken token = asyncProvider.getJWToken( "admin$alice", "secret" );
+            assertSame( token, asyncProvider.getJWTokenAsync( "admin$alice", "secret" ).get() );
+            assertEquals( 1, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+            assertEquals( 1, cache.getHitCount() );
+
+            JWToken bob = asyncProvider.getJWTokenAsync( "admin$bob", "secret" ).get();
+            assertSame( bob, asyncProvider.getJWToken( "admin$bob", "secret" ) );
+            assertEquals( 2, requests( DefaultConnectionProvider.ACTION_LOGIN ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ru.biosoft.biostoreapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ru.biosoft.biostoreapi.impl.FileSpanExporter;
+import ru.biosoft.biostoreapi.impl.InMemorySpanExporter;
+import ru.biosoft.biostoreapi.sim.SimulatedBiostore;
+
+public class TracingTest
+{
+    private static final String PARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimulatedBiostore biostore;
+    private final List<SpanContext> sentContexts = Collections.synchronizedList( new ArrayList<>() );
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter();
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    // records the context which would be sent in traceparent header
+    private final BiostoreConnector connector = (username, action, parameters) -> {
+        sentContexts.add( SpanContext.current() );
+        return biostore.askServer( username, action, parameters );
+    };
+
+    @Before
+    public void setUp()
+    {
+        biostore = new SimulatedBiostore();
+        biostore.addUser( "alice", "secret" );
+        biostore.createProject( "Demo", "alice" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void traceparent()
+    {
+        SpanContext context = SpanContext.fromTraceparent( PARENT );
+        assertEquals( "4bf92f3577b34da6a3ce929d0e0e4736", context.getTraceId() );
+        assertEquals( "00f067aa0ba902b7", context.getSpanId() );
+        assertTrue( context.isSampled() );
+        assertEquals( PARENT, context.toTraceparent() );
+        assertFalse( SpanContext.fromTraceparent( PARENT.replace( "-01", "-00" ) ).isSampled() );
+        // later versions may add fields
+        assertEquals( context, SpanContext.fromTraceparent( "01" + PARENT.substring( 2 ) + "-extra" ) );
+
+        assertNull( SpanContext.fromTraceparent( null ) );
+        assertNull( SpanContext.fromTraceparent( "00-00000000000000000000000000000000-00f067aa0ba902b7-01" ) );
+        assertNull( SpanContext.fromTraceparent( "00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01" ) );
+        assertNull( SpanContext.fromTraceparent( PARENT.toUpperCase() ) );
+        assertNull( SpanContext.fromTraceparent( "ff" + PARENT.substring( 2 ) ) );
+        assertNull( SpanContext.fromTraceparent( PARENT + "-extra" ) );
+        assertNull( SpanContext.fromTraceparent( PARENT.substring( 1 ) ) );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void methodAndCallSpans()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        provider.setTracer( new Tracer( exporter ) );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        exporter.clear();
+        sentContexts.clear();
+
+        SpanContext parent = SpanContext.fromTraceparent( PARENT );
+        try( SpanContext.Scope scope = parent.enter() )
+        {
+            assertEquals( 1, provider.getProjectList( alice ).size() );
+        }
+        assertNull( SpanContext.current() );
+
+        List<Span> spans = exporter.getSpans();
+        assertEquals( 2, spans.size() );
+        Span call = spans.get( 0 );
+        Span method = spans.get( 1 );
+        assertEquals( "askServer getProjectList", call.getName() );
+        assertEquals( "getProjectList", method.getName() );
+        assertEquals( parent.getTraceId(), method.getContext().getTraceId() );
+        assertEquals( parent.getTraceId(), call.getContext().getTraceId() );
+        assertEquals( parent.getSpanId(), method.getParentSpanId() );
+        assertEquals( method.getContext().getSpanId(), call.getParentSpanId() );
+        assertEquals( "alice", method.getAttribute( Span.ATTR_USER ) );
+        assertEquals( "getProjectList", call.getAttribute( Span.ATTR_ACTION ) );
+        assertEquals( "OK", call.getAttribute( Span.ATTR_OUTCOME ) );
+        assertTrue( method.getDurationNanos() >= call.getDurationNanos() );
+        // request carries the context of the call span
+        assertEquals( Arrays.asList( call.getContext() ), sentContexts );
+    }
+
+    @Test
+    public void errors()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        provider.setTracer( new Tracer( exporter ) );
+        try
+        {
+            provider.getJWToken( "alice", "wrong" );
+            fail( "Wrong password" );
+        }
+        catch( SecurityException e )
+        {
+            Span call = exporter.getSpans( "askServer login" ).get( 0 );
+            assertEquals( "ERROR", call.getAttribute( Span.ATTR_OUTCOME ) );
+            assertNull( call.getError() );
+            assertEquals( e, exporter.getSpans( "getJWToken" ).get( 0 ).getError() );
+            assertNull( exporter.getSpans( "getJWToken" ).get( 0 ).getParentSpanId() );
+        }
+
+        BiostoreTransportException failure = new BiostoreTransportException( "Connection refused" );
+        provider = new DefaultConnectionProvider( (username, action, parameters) -> {
+            throw failure;
+        } );
+        provider.setTracer( new Tracer( exporter ) );
+        exporter.clear();
+        try
+        {
+            provider.getProjectList( new JWToken( "alice", "token" ) );
+            fail( "Transport failure" );
+        }
+        catch( BiostoreTransportException e )
+        {
+            Span call = exporter.getSpans( "askServer getProjectList" ).get( 0 );
+            assertEquals( "TRANSPORT_FAILURE", call.getAttribute( Span.ATTR_OUTCOME ) );
+            assertEquals( failure, call.getError() );
+        }
+    }
+
+    @Test
+    public void asyncAndBulk() throws Exception
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector, executor );
+        provider.setTracer( new Tracer( exporter ) );
+        JWToken alice = provider.getJWTokenAsync( "alice", "secret" ).get();
+        Span method = awaitSpan( "getJWTokenAsync" );
+        Span call = awaitSpan( "askServer login" );
+        assertEquals( method.getContext().getSpanId(), call.getParentSpanId() );
+        // request runs on the executor thread with the context of the call
+        assertEquals( call.getContext(), sentContexts.get( 0 ) );
+
+        exporter.clear();
+        sentContexts.clear();
+        for( int i = 0; i < 5; i++ )
+            biostore.addUser( "user" + i, "secret" );
+        assertTrue( provider.addUsersToProject( alice, "Demo", Arrays.asList( "user0", "user1", "user2", "user3", "user4" ) )
+                .isAllSucceeded() );
+        Span bulk = exporter.getSpans( "addUsersToProject" ).get( 0 );
+        List<Span> adds = exporter.getSpans( "addUserToProject" );
+        assertEquals( 5, adds.size() );
+        for( Span add : adds )
+            assertEquals( bulk.getContext().getSpanId(), add.getParentSpanId() );
+        assertEquals( 11, exporter.getSpans().size() );
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void sampling()
+    {
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        provider.setTracer( new Tracer( exporter, Tracer.Sampler.never() ) );
+        JWToken alice = provider.getJWToken( "alice", "secret" );
+        provider.getProjectList( alice );
+        assertTrue( exporter.getSpans().isEmpty() );
+        // the decision not to sample is sent to the server
+        assertEquals( 2, sentContexts.size() );
+        assertFalse( sentContexts.get( 0 ).isSampled() );
+
+        // unsampled parent is followed and propagated as is
+        provider.setTracer( new Tracer( exporter, Tracer.Sampler.ratio( 1 ) ) );
+        sentContexts.clear();
+        SpanContext parent = SpanContext.fromTraceparent( PARENT.replace( "-01", "-00" ) );
+        try( SpanContext.Scope scope = parent.enter() )
+        {
+            provider.getProjectList( alice );
+        }
+        assertTrue( exporter.getSpans().isEmpty() );
+        assertEquals( parent, sentContexts.get( 0 ) );
+
+        provider.setTracer( new Tracer( exporter, Tracer.Sampler.ratio( 0 ) ) );
+        try( SpanContext.Scope scope = SpanContext.fromTraceparent( PARENT ).enter() )
+        {
+            provider.getProjectList( alice );
+        }
+        assertEquals( 2, exporter.getSpans().size() );
+
+        // without tracer nothing is propagated
+        provider.setTracer( null );
+        sentContexts.clear();
+        provider.getProjectList( alice );
+        assertNull( sentContexts.get( 0 ) );
+    }
+
+    @Test
+    public void fileExporter() throws Exception
+    {
+        Path file = folder.getRoot().toPath().resolve( "spans.jsonl" );
+        DefaultConnectionProvider provider = new DefaultConnectionProvider( connector );
+        try( FileSpanExporter fileExporter = new FileSpanExporter( file ) )
+        {
+            provider.setTracer( new Tracer( fileExporter ) );
+            provider.getJWToken( "alice", "secret" );
+        }
+
+        List<JSONObject> lines = Files.readAllLines( file, StandardCharsets.UTF_8 ).stream().map( JSONObject::new )
+                .collect( Collectors.toList() );
+        assertEquals( 2, lines.size() );
+        JSONObject call = lines.get( 0 );
+        JSONObject method = lines.get( 1 );
+        assertEquals( "askServer login", call.getString( "name" ) );
+        assertEquals( method.getString( "spanId" ), call.getString( "parentSpanId" ) );
+        assertEquals( method.getString( "traceId" ), call.getString( "traceId" ) );
+        assertFalse( method.has( "parentSpanId" ) );
+        Map<String, Object> attributes = call.getJSONObject( "attributes" ).toMap();
+        assertEquals( "login", attributes.get( Span.ATTR_ACTION ) );
+        assertEquals( "OK", attributes.get( Span.ATTR_OUTCOME ) );
+        assertTrue( call.getLong( "durationMicros" ) >= 0 );
+    }
+
+    /**
+     * Spans of asynchronous calls may end after the caller sees the result
+     */
+    private Span awaitSpan(String name) throws InterruptedException
+    {
+        for( int i = 0; i < 100 && exporter.getSpans( name ).isEmpty(); i++ )
+            Thread.sleep( 10 );
+        return exporter.getSpans( name ).get( 0 );
+    }
+}
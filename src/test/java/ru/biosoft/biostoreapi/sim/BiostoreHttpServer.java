@@ -0,0 +1,197 @@
+package ru.biosoft.biostoreapi.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.DefaultConnectionProvider;
+
+/**
+ * HTTP front end serving any {@link BiostoreConnector}, usually {@link SimulatedBiostore}, with the protocol of biostore
+ * permission servlet, so that {@link ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl} can talk to it.
+ * {@link BiostoreTransportException} of the backend is returned as HTTP 503.
+ * Successful responses carry ETag validator and conditional requests with matching If-None-Match get 304.
+ * Run with -Dsun.net.httpserver.nodelay=true, otherwise every response waits for delayed ACK.
+ */
+public class BiostoreHttpServer implements AutoCloseable
+{
+    private static final Logger log = Logger.getLogger( BiostoreHttpServer.class.getName() );
+
+    public static final String PATH = "/biostore/permission";
+
+    private final BiostoreConnector backend;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Starts server on a free local port
+     */
+    public BiostoreHttpServer(BiostoreConnector backend) throws IOException
+    {
+        this( backend, new InetSocketAddress( "localhost", 0 ) );
+    }
+
+    public BiostoreHttpServer(BiostoreConnector backend, InetSocketAddress address) throws IOException
+    {
+        this.backend = Objects.requireNonNull( backend );
+        this.executor = Executors.newCachedThreadPool( r -> {
+            Thread thread = new Thread( r, "biostore-http-server" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        this.server = HttpServer.create( address, 1024 );
+        server.createContext( PATH, this::handle );
+        server.setExecutor( executor );
+        server.start();
+    }
+
+    /**
+     * @return URL to pass to {@link ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl}
+     */
+    public String getServerLink()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * @return number of requests answered with 304 Not Modified
+     */
+    public long getNotModifiedCount()
+    {
+        return notModified.get();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if( !"POST".equals( exchange.getRequestMethod() ) )
+            {
+                send( exchange, 405, "Only POST is supported" );
+                return;
+            }
+            Map<String, String> parameters = parseForm( readBody( exchange.getRequestBody() ) );
+            String action = parameters.remove( "action" );
+            parameters.remove( "serverName" );
+            if( action == null )
+            {
+                send( exchange, 400, "Action is not specified" );
+                return;
+            }
+            JSONObject response;
+            try
+            {
+                response = backend.askServer( null, action, parameters );
+            }
+            catch( BiostoreTransportException e )
+            {
+                send( exchange, 503, e.getMessage() );
+                return;
+            }
+            String body = response.toString();
+            if( DefaultConnectionProvider.TYPE_OK.equals( response.optString( DefaultConnectionProvider.ATTR_TYPE ) ) )
+            {
+                String etag = etag( body );
+                exchange.getResponseHeaders().add( "ETag", etag );
+                if( etag.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) )
+                {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders( 304, -1 );
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().add( "Content-Type", "application/json; charset=UTF-8" );
+            send( exchange, 200, body );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            log.log( Level.FINE, "Cannot process request", e );
+            throw e;
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.sendResponseHeaders( status, bytes.length );
+        try( OutputStream os = exchange.getResponseBody() )
+        {
+            os.write( bytes );
+        }
+    }
+
+    /**
+     * Successful responses get an ETag computed from the body, so unchanged data is confirmed with 304
+     */
+    private static String etag(String body)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( body.getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder sb = new StringBuilder( "\"" );
+            for( int i = 0; i < 16; i++ )
+                sb.append( String.format( "%02x", digest[i] ) );
+            return sb.append( '"' ).toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static String readBody(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while( ( len = is.read( buffer ) ) != -1 )
+            baos.write( buffer, 0, len );
+        return new String( baos.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+    private static Map<String, String> parseForm(String body) throws UnsupportedEncodingException
+    {
+        Map<String, String> result = new HashMap<>();
+        for( String pair : body.split( "&" ) )
+        {
+            int pos = pair.indexOf( '=' );
+            if( pos > 0 )
+                result.put( pair.substring( 0, pos ), URLDecoder.decode( pair.substring( pos + 1 ), "UTF-8" ) );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,491 @@
+package ru.biosoft.biostoreapi.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.DefaultConnectionProvider;
+import ru.biosoft.biostoreapi.JWToken;
+import ru.biosoft.biostoreapi.Project;
+import ru.biosoft.biostoreapi.ProjectUser;
+import ru.biosoft.biostoreapi.impl.AimdLimit;
+import ru.biosoft.biostoreapi.impl.BiostoreConnectorImpl;
+import ru.biosoft.biostoreapi.impl.ConcurrencyLimit;
+import ru.biosoft.biostoreapi.impl.LatencyHistogram;
+import ru.biosoft.biostoreapi.impl.SchedulingBiostoreConnector;
+import ru.biosoft.biostoreapi.impl.VegasLimit;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.*;
+
+/**
+ * Replays a weighted mix of biostore actions from several threads and reports throughput and latency percentiles per action.
+ * In closed-loop mode each thread sends the next request as soon as the previous one completes.
+ * With a target rate requests are scheduled at fixed intervals and latency is measured from the scheduled time,
+ * so that a stalled server is not hidden by the generator slowing down (coordinated omission).
+ */
+public class LoadGenerator
+{
+    private final DefaultConnectionProvider provider;
+    private final List<String> users;
+    private final Map<String, String> passwords;
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    private int threads = 8;
+    private double rate;
+
+    private AtomicReferenceArray<JWToken> tokens;
+    private List<List<String>> memberProjects;
+    private List<List<String>> adminProjects;
+    /** Members of the projects administered by the users, other than the administrator, to change roles of */
+    private Map<String, List<String>> projectMembers;
+    private final AtomicLong createdProjects = new AtomicLong();
+
+    /**
+     * @param provider provider to send requests through
+     * @param credentials passwords of users to act as
+     */
+    public LoadGenerator(DefaultConnectionProvider provider, Map<String, String> credentials)
+    {
+        if( credentials.isEmpty() )
+            throw new IllegalArgumentException( "At least one user is required" );
+        this.provider = provider;
+        this.passwords = new HashMap<>( credentials );
+        this.users = new ArrayList<>( credentials.keySet() );
+        mix.put( ACTION_GET_PROJECT_LIST, 60 );
+        mix.put( ACTION_PROJECT_USERS, 25 );
+        mix.put( ACTION_REFRESH_J_W_TOKEN, 5 );
+        mix.put( ACTION_ADD_TO_PROJECT, 5 );
+        mix.put( ACTION_CHANGE_ROLE_IN_PROJECT, 5 );
+    }
+
+    /**
+     * @param weights relative frequency of actions, any of DefaultConnectionProvider.ACTION_* names;
+     * logout is followed by an unmeasured login to keep the session
+     */
+    public void setMix(Map<String, Integer> weights)
+    {
+        for( String action : weights.keySet() )
+        {
+            if( !isSupported( action ) )
+                throw new IllegalArgumentException( "Unsupported action: " + action );
+        }
+        mix.clear();
+        mix.putAll( weights );
+    }
+
+    public void setThreads(int threads)
+    {
+        if( threads <= 0 )
+            throw new IllegalArgumentException( "Number of threads must be positive: " + threads );
+        this.threads = threads;
+    }
+
+    /**
+     * @param rate target number of requests per second for all threads together, 0 for closed loop
+     */
+    public void setRate(double rate)
+    {
+        this.rate = rate;
+    }
+
+    /**
+     * Logs all users in, discovers their projects and runs the load
+     */
+    public Report run(long duration, TimeUnit unit) throws InterruptedException
+    {
+        prepare();
+        String[] actions = mix.keySet().toArray( new String[0] );
+        int[] cumulative = new int[actions.length];
+        int total = 0;
+        for( int i = 0; i < actions.length; i++ )
+            cumulative[i] = total += mix.get( actions[i] );
+        if( total <= 0 )
+            throw new IllegalStateException( "Action mix is empty" );
+
+        Map<String, ActionStats> stats = new ConcurrentHashMap<>();
+        for( String action : actions )
+            stats.put( action, new ActionStats() );
+        long durationNanos = unit.toNanos( duration );
+        long intervalNanos = rate > 0 ? (long) ( TimeUnit.SECONDS.toNanos( 1 ) * threads / rate ) : 0;
+        CountDownLatch done = new CountDownLatch( threads );
+        long start = System.nanoTime();
+        for( int t = 0; t < threads; t++ )
+        {
+            int threadIndex = t;
+            Thread thread = new Thread( () -> {
+                try
+                {
+                    runThread( threadIndex, start, durationNanos, intervalNanos, actions, cumulative, stats );
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }, "load-generator-" + t );
+            thread.setDaemon( true );
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        Map<String, ActionReport> result = new LinkedHashMap<>();
+        for( String action : actions )
+            result.put( action, stats.get( action ).report() );
+        return new Report( result, elapsed );
+    }
+
+    private void prepare()
+    {
+        tokens = new AtomicReferenceArray<>( users.size() );
+        memberProjects = new ArrayList<>();
+        adminProjects = new ArrayList<>();
+        projectMembers = new HashMap<>();
+        for( int i = 0; i < users.size(); i++ )
+        {
+            JWToken token = provider.getJWToken( users.get( i ), passwords.get( users.get( i ) ) );
+            tokens.set( i, token );
+            List<String> member = new ArrayList<>();
+            List<String> admin = new ArrayList<>();
+            for( Project project : provider.getProjectList( token ) )
+            {
+                member.add( project.getProjectName() );
+                if( ( project.getPermissions() & Project.PERMISSION_ADMIN ) != 0 )
+                {
+                    admin.add( project.getProjectName() );
+                    if( mix.containsKey( ACTION_CHANGE_ROLE_IN_PROJECT ) )
+                    {
+                        String self = users.get( i );
+                        projectMembers.put( project.getProjectName(), provider.getProjectUsers( token, project.getProjectName() ).stream()
+                                .map( ProjectUser::getUser ).filter( user -> !user.equals( self ) ).collect( Collectors.toList() ) );
+                    }
+                }
+            }
+            memberProjects.add( member );
+            adminProjects.add( admin );
+        }
+    }
+
+    private void runThread(int threadIndex, long start, long durationNanos, long intervalNanos, String[] actions, int[] cumulative,
+            Map<String, ActionStats> stats)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // spread scheduled starts of the threads over the interval
+        long scheduled = start + ( intervalNanos == 0 ? 0 : intervalNanos * threadIndex / threads );
+        while( true )
+        {
+            long now = System.nanoTime();
+            if( now - start >= durationNanos )
+                return;
+            if( intervalNanos > 0 )
+            {
+                long wait = scheduled - now;
+                if( wait > 0 )
+                {
+                    try
+                    {
+                        TimeUnit.NANOSECONDS.sleep( wait );
+                    }
+                    catch( InterruptedException e )
+                    {
+                        return;
+                    }
+                }
+            }
+            int pick = random.nextInt( cumulative[cumulative.length - 1] );
+            int a = 0;
+            while( cumulative[a] <= pick )
+                a++;
+            String action = actions[a];
+            long requestStart = intervalNanos > 0 ? scheduled : System.nanoTime();
+            boolean ok;
+            try
+            {
+                ok = execute( action, random.nextInt( users.size() ), threadIndex, random );
+            }
+            catch( RuntimeException e )
+            {
+                ok = false;
+            }
+            stats.get( action ).record( System.nanoTime() - requestStart, ok );
+            scheduled += intervalNanos;
+        }
+    }
+
+    /**
+     * @return false if action could not be executed for the chosen user
+     */
+    private boolean execute(String action, int userIndex, int threadIndex, Random random)
+    {
+        JWToken token = tokens.get( userIndex );
+        switch( action )
+        {
+            case ACTION_LOGIN:
+                tokens.set( userIndex, provider.getJWToken( users.get( userIndex ), passwords.get( users.get( userIndex ) ) ) );
+                return true;
+            case ACTION_LOGOUT:
+                // shared token may be in use by other threads, so a separate session is closed
+                provider.logout( provider.getJWToken( users.get( userIndex ), passwords.get( users.get( userIndex ) ) ) );
+                return true;
+            case ACTION_REFRESH_J_W_TOKEN:
+                tokens.set( userIndex, provider.refreshJWToken( token ) );
+                return true;
+            case ACTION_GET_PROJECT_LIST:
+                provider.getProjectList( token );
+                return true;
+            case ACTION_PROJECT_USERS:
+            {
+                String project = pick( memberProjects.get( userIndex ), random );
+                if( project == null )
+                    return false;
+                provider.getProjectUsers( token, project );
+                return true;
+            }
+            case ACTION_ADD_TO_PROJECT:
+            {
+                String project = pick( adminProjects.get( userIndex ), random );
+                if( project == null )
+                    return false;
+                provider.addUserToProject( token, pick( users, random ), project );
+                return true;
+            }
+            case ACTION_CHANGE_ROLE_IN_PROJECT:
+            {
+                String project = pick( adminProjects.get( userIndex ), random );
+                String member = project == null ? null : pick( projectMembers.get( project ), random );
+                if( member == null )
+                    return false;
+                provider.changeUserRoleInProject( token, project, member,
+                        random.nextBoolean() ? SimulatedBiostore.ROLE_USER : SimulatedBiostore.ROLE_MODERATOR );
+                return true;
+            }
+            case ACTION_CREATE_PROJECT:
+                provider.createProjectWithPermissions( token, "load-" + threadIndex + "-" + createdProjects.incrementAndGet(),
+                        Project.PERMISSION_ALL );
+                return true;
+            default:
+                throw new IllegalArgumentException( "Unsupported action: " + action );
+        }
+    }
+
+    private static String pick(List<String> list, Random random)
+    {
+        return list == null || list.isEmpty() ? null : list.get( random.nextInt( list.size() ) );
+    }
+
+    private static boolean isSupported(String action)
+    {
+        switch( action )
+        {
+            case ACTION_LOGIN:
+            case ACTION_LOGOUT:
+            case ACTION_REFRESH_J_W_TOKEN:
+            case ACTION_GET_PROJECT_LIST:
+            case ACTION_PROJECT_USERS:
+            case ACTION_ADD_TO_PROJECT:
+            case ACTION_CHANGE_ROLE_IN_PROJECT:
+            case ACTION_CREATE_PROJECT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static class ActionStats
+    {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos, boolean ok)
+        {
+            latency.record( nanos );
+            if( !ok )
+                errors.increment();
+        }
+
+        ActionReport report()
+        {
+            return new ActionReport( latency.snapshot(), errors.sum() );
+        }
+    }
+
+    public static class ActionReport
+    {
+        private final LatencyHistogram.Snapshot latency;
+        private final long errors;
+
+        ActionReport(LatencyHistogram.Snapshot latency, long errors)
+        {
+            this.latency = latency;
+            this.errors = errors;
+        }
+
+        public long getCount()
+        {
+            return latency.getCount();
+        }
+
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return latency histogram in nanoseconds
+         */
+        public LatencyHistogram.Snapshot getLatency()
+        {
+            return latency;
+        }
+    }
+
+    public static class Report
+    {
+        private final Map<String, ActionReport> actions;
+        private final long elapsedNanos;
+
+        Report(Map<String, ActionReport> actions, long elapsedNanos)
+        {
+            this.actions = actions;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Map<String, ActionReport> getActions()
+        {
+            return Collections.unmodifiableMap( actions );
+        }
+
+        public long getTotalCount()
+        {
+            return actions.values().stream().mapToLong( ActionReport::getCount ).sum();
+        }
+
+        public long getTotalErrors()
+        {
+            return actions.values().stream().mapToLong( ActionReport::getErrors ).sum();
+        }
+
+        /**
+         * @return completed requests per second
+         */
+        public double getThroughput()
+        {
+            return getTotalCount() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append( String.format( "%-22s %10s %8s %10s %10s %10s %10s%n", "action", "count", "errors", "p50, ms", "p99, ms", "p999, ms",
+                    "max, ms" ) );
+            actions.forEach( (action, report) -> {
+                LatencyHistogram.Snapshot l = report.getLatency();
+                sb.append( String.format( "%-22s %10d %8d %10.3f %10.3f %10.3f %10.3f%n", action, report.getCount(), report.getErrors(),
+                        l.getPercentile( 50 ) / 1e6, l.getPercentile( 99 ) / 1e6, l.getPercentile( 99.9 ) / 1e6, l.getMax() / 1e6 ) );
+            } );
+            sb.append( String.format( "total %d requests, %d errors, %.1f requests/s%n", getTotalCount(), getTotalErrors(),
+                    getThroughput() ) );
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Runs load against a simulated biostore served over HTTP on a local port. Options and defaults:
+     * --threads=8 --duration=10 (seconds) --rate=0 (requests/s, 0 for closed loop) --users=100 --projects=1000 --members=20
+     * --latency=0 --latency-mean=0 (ms, fixed and exponential parts) --failure-rate=0 --capacity=0 (0 for unlimited) --http=true
+     * --limit=none (client concurrency limit: none, fixed:N, aimd or vegas)
+     * --mix=getProjectList=60,projectUsers=25,refreshJWToken=5,addToProject=5,changeRoleInProject=5
+     * <p>
+     * Simulator is kept out of the library jar and published in the test jar (classifier "tests"), run it from the source tree:
+     * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ru.biosoft.biostoreapi.sim.LoadGenerator
+     * -Dsun.net.httpserver.nodelay=true -Dexec.args="--threads=16"
+     * <p>
+     * or from the jars, which need only org.json besides themselves:
+     * java -Dsun.net.httpserver.nodelay=true -cp biostore-api.jar:biostore-api-tests.jar:json.jar
+     * ru.biosoft.biostoreapi.sim.LoadGenerator --threads=16
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options = new HashMap<>();
+        for( String arg : args )
+        {
+            int pos = arg.indexOf( '=' );
+            if( !arg.startsWith( "--" ) || pos < 0 )
+                throw new IllegalArgumentException( "Options must be specified as --name=value: " + arg );
+            options.put( arg.substring( 2, pos ), arg.substring( pos + 1 ) );
+        }
+        int userCount = Integer.parseInt( options.getOrDefault( "users", "100" ) );
+        int projectCount = Integer.parseInt( options.getOrDefault( "projects", "1000" ) );
+        int memberCount = Integer.parseInt( options.getOrDefault( "members", "20" ) );
+
+        SimulatedBiostore biostore = new SimulatedBiostore();
+        Map<String, String> credentials = new LinkedHashMap<>();
+        for( int i = 0; i < userCount; i++ )
+        {
+            biostore.addUser( "user" + i, "password" + i );
+            credentials.put( "user" + i, "password" + i );
+        }
+        Random random = new Random( 0 );
+        for( int p = 0; p < projectCount; p++ )
+        {
+            String project = "data/Collaboration/Project_" + p;
+            biostore.createProject( project, "user" + ( p % userCount ) );
+            for( int m = 1; m < memberCount; m++ )
+                biostore.setMember( project, "user" + random.nextInt( userCount ), SimulatedBiostore.ROLE_USER );
+        }
+        biostore.setLatency( null, Long.parseLong( options.getOrDefault( "latency", "0" ) ),
+                Long.parseLong( options.getOrDefault( "latency-mean", "0" ) ), TimeUnit.MILLISECONDS );
+        biostore.setFailureRate( null, Double.parseDouble( options.getOrDefault( "failure-rate", "0" ) ) );
+        biostore.setCapacity( Integer.parseInt( options.getOrDefault( "capacity", "0" ) ) );
+
+        boolean http = Boolean.parseBoolean( options.getOrDefault( "http", "true" ) );
+        try( BiostoreHttpServer server = http ? new BiostoreHttpServer( biostore ) : null )
+        {
+            BiostoreConnector connector = http ? new BiostoreConnectorImpl( server.getServerLink(), "load.test" ) : biostore;
+            ConcurrencyLimit limit = parseLimit( options.getOrDefault( "limit", "none" ) );
+            SchedulingBiostoreConnector scheduler = limit == null ? null : new SchedulingBiostoreConnector( connector, limit );
+            DefaultConnectionProvider provider = new DefaultConnectionProvider( scheduler == null ? connector : scheduler );
+            LoadGenerator generator = new LoadGenerator( provider, credentials );
+            generator.setThreads( Integer.parseInt( options.getOrDefault( "threads", "8" ) ) );
+            generator.setRate( Double.parseDouble( options.getOrDefault( "rate", "0" ) ) );
+            if( options.containsKey( "mix" ) )
+            {
+                Map<String, Integer> mix = new LinkedHashMap<>();
+                for( String entry : options.get( "mix" ).split( "," ) )
+                {
+                    String[] fields = entry.split( "=" );
+                    mix.put( fields[0], Integer.parseInt( fields[1] ) );
+                }
+                generator.setMix( mix );
+            }
+            Report report = generator.run( Long.parseLong( options.getOrDefault( "duration", "10" ) ), TimeUnit.SECONDS );
+            System.out.print( report );
+            if( scheduler != null )
+                System.out.println( "scheduler: " + scheduler );
+        }
+    }
+
+    private static ConcurrencyLimit parseLimit(String spec)
+    {
+        if( spec.equals( "none" ) )
+            return null;
+        if( spec.equals( "aimd" ) )
+            return new AimdLimit( 10, 1, 1000 );
+        if( spec.equals( "vegas" ) )
+            return new VegasLimit( 10, 1, 1000 );
+        if( spec.startsWith( "fixed:" ) )
+            return ConcurrencyLimit.fixed( Integer.parseInt( spec.substring( "fixed:".length() ) ) );
+        throw new IllegalArgumentException( "Unknown limit: " + spec );
+    }
+}
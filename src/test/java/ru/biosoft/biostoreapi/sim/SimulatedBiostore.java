@@ -0,0 +1,535 @@
+package ru.biosoft.biostoreapi.sim;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ru.biosoft.biostoreapi.BiostoreConnector;
+import ru.biosoft.biostoreapi.BiostoreTransportException;
+import ru.biosoft.biostoreapi.Project;
+
+import static ru.biosoft.biostoreapi.DefaultConnectionProvider.*;
+
+/**
+ * In-memory biostore with real state of users, projects, members, roles and JSON web tokens, for tests and capacity planning.
+ * Implements every action of {@link ru.biosoft.biostoreapi.DefaultConnectionProvider}; requests are authorized by the token
+ * parameter only, so it can also be served over HTTP by {@link BiostoreHttpServer}.
+ * Latency and transport failures can be injected per action.
+ * <p>
+ * Lists of projects and members support paging with 'offset' and 'limit' parameters; paged responses contain the total size of the list.
+ */
+public class SimulatedBiostore implements BiostoreConnector
+{
+    public static final String ROLE_ADMINISTRATOR = "Administrator";
+    public static final String ROLE_MODERATOR = "Moderator";
+    public static final String ROLE_USER = "User";
+
+    private static final String ANY_ACTION = "*";
+
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+    private final Set<String> admins = ConcurrentHashMap.newKeySet();
+    private final Map<String, SimProject> projects = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userProjects = new ConcurrentHashMap<>();
+    private final Map<String, Integer> rolePermissions = new ConcurrentHashMap<>();
+    private final Map<String, TokenInfo> tokens = new ConcurrentHashMap<>();
+    private final Map<String, ActionProfile> profiles = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile long tokenLifetimeMillis = TimeUnit.HOURS.toMillis( 1 );
+    private volatile Semaphore capacity;
+
+    public SimulatedBiostore()
+    {
+        rolePermissions.put( ROLE_ADMINISTRATOR, Project.PERMISSION_ALL );
+        rolePermissions.put( ROLE_MODERATOR, Project.PERMISSION_ALL & ~Project.PERMISSION_ADMIN );
+        rolePermissions.put( ROLE_USER, Project.PERMISSION_INFO | Project.PERMISSION_READ | Project.PERMISSION_WRITE );
+    }
+
+    public void addUser(String username, String password)
+    {
+        passwords.put( username, password );
+    }
+
+    /**
+     * @param admin whether user may log in on behalf of other users ("admin$user" login)
+     */
+    public void setAdmin(String username, boolean admin)
+    {
+        if( admin )
+            admins.add( username );
+        else
+            admins.remove( username );
+    }
+
+    /**
+     * @param permissions Project.PERMISSION_* bitmask granted to members with the role
+     */
+    public void setRolePermissions(String role, int permissions)
+    {
+        rolePermissions.put( role, permissions );
+    }
+
+    public void setTokenLifetime(long lifetime, TimeUnit unit)
+    {
+        this.tokenLifetimeMillis = unit.toMillis( lifetime );
+    }
+
+    /**
+     * Creates project directly, without authorization
+     * @return false if project already exists
+     */
+    public boolean createProject(String projectName, String owner)
+    {
+        return createProject( projectName, owner, Project.PERMISSION_ALL );
+    }
+
+    /**
+     * Adds member or changes their role directly, without authorization
+     * @return false if project does not exist
+     */
+    public boolean setMember(String projectName, String user, String role)
+    {
+        SimProject project = projects.get( projectName );
+        if( project == null )
+            return false;
+        synchronized( project )
+        {
+            project.members.put( user, new Member( role, permissionsOf( role ) ) );
+            userProjects.computeIfAbsent( user, key -> ConcurrentHashMap.newKeySet() ).add( projectName );
+        }
+        return true;
+    }
+
+    /**
+     * @return role of the user in the project, null if user is not a member
+     */
+    public String getRole(String projectName, String user)
+    {
+        SimProject project = projects.get( projectName );
+        Member member = project == null ? null : project.members.get( user );
+        return member == null ? null : member.role;
+    }
+
+    public int getProjectCount()
+    {
+        return projects.size();
+    }
+
+    public int getActiveTokenCount()
+    {
+        return tokens.size();
+    }
+
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    /**
+     * Adds latency to the action: fixed part plus exponentially distributed part with the given mean,
+     * which gives the long tail typical for real servers
+     * @param action action name, null for all actions without their own setting
+     */
+    public void setLatency(String action, long fixed, long exponentialMean, TimeUnit unit)
+    {
+        profiles.compute( action == null ? ANY_ACTION : action, (key, profile) -> new ActionProfile( unit.toNanos( fixed ),
+                unit.toNanos( exponentialMean ), profile == null ? 0 : profile.failureRate ) );
+    }
+
+    /**
+     * @param action action name, null for all actions without their own setting
+     * @param failureRate probability of {@link BiostoreTransportException}, server returns HTTP 503 in this case
+     */
+    public void setFailureRate(String action, double failureRate)
+    {
+        profiles.compute( action == null ? ANY_ACTION : action, (key, profile) -> new ActionProfile(
+                profile == null ? 0 : profile.fixedNanos, profile == null ? 0 : profile.meanNanos, failureRate ) );
+    }
+
+    /**
+     * Limits the number of requests processed at once, other requests wait in arrival order, so latency grows with load
+     * as it does on a saturated server
+     * @param maxConcurrent maximal number of requests processed at once, 0 for no limit
+     */
+    public void setCapacity(int maxConcurrent)
+    {
+        this.capacity = maxConcurrent > 0 ? new Semaphore( maxConcurrent, true ) : null;
+    }
+
+    /**
+     * Username argument is ignored, as requests are authorized by token or credentials in parameters
+     */
+    @Override
+    public JSONObject askServer(String username, String action, Map<String, String> parameters)
+    {
+        requests.incrementAndGet();
+        Semaphore permits = capacity;
+        if( permits == null )
+            return process( action, parameters );
+        try
+        {
+            permits.acquire();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new BiostoreTransportException( "Interrupted while waiting for simulated '" + action + "' request" );
+        }
+        try
+        {
+            return process( action, parameters );
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private JSONObject process(String action, Map<String, String> parameters)
+    {
+        if( parameters == null )
+            parameters = Collections.emptyMap();
+        ActionProfile profile = profiles.get( action );
+        if( profile == null )
+            profile = profiles.get( ANY_ACTION );
+        if( profile != null )
+            profile.apply( action );
+
+        switch( action )
+        {
+            case ACTION_LOGIN:
+                return login( parameters );
+            case ACTION_LOGOUT:
+                return logout( parameters );
+            case ACTION_REFRESH_J_W_TOKEN:
+                return refresh( parameters );
+            case ACTION_GET_PROJECT_LIST:
+                return projectList( parameters );
+            case ACTION_CREATE_PROJECT:
+                return createProject( parameters );
+            case ACTION_ADD_TO_PROJECT:
+                return addToProject( parameters );
+            case ACTION_CHANGE_ROLE_IN_PROJECT:
+                return changeRole( parameters );
+            case ACTION_PROJECT_USERS:
+                return projectUsers( parameters );
+            default:
+                return error( "Unknown action: " + action );
+        }
+    }
+
+    private JSONObject login(Map<String, String> parameters)
+    {
+        String username = parameters.get( ATTR_USERNAME );
+        String password = passwords.get( username == null ? "" : username );
+        if( password == null || !password.equals( parameters.get( ATTR_PASSWORD ) ) )
+            return error( "Incorrect user name or password" );
+        String subject = username;
+        String sudo = parameters.get( ATTR_SUDO );
+        if( sudo != null )
+        {
+            if( !admins.contains( username ) )
+                return error( "User '" + username + "' is not allowed to log in as another user" );
+            if( !passwords.containsKey( sudo ) )
+                return error( "Unknown user: " + sudo );
+            subject = sudo;
+        }
+        return ok().put( ATTR_JWTOKEN, issueToken( subject ) );
+    }
+
+    private JSONObject logout(Map<String, String> parameters)
+    {
+        String token = parameters.get( ATTR_JWTOKEN );
+        if( token != null )
+            tokens.remove( token );
+        return ok();
+    }
+
+    private JSONObject refresh(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        return ok().put( ATTR_JWTOKEN, issueToken( user ) );
+    }
+
+    private JSONObject projectList(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        List<JSONObject> list = new ArrayList<>();
+        for( String projectName : new TreeSet<>( userProjects.getOrDefault( user, Collections.emptySet() ) ) )
+        {
+            SimProject project = projects.get( projectName );
+            Member member = project == null ? null : project.members.get( user );
+            if( member != null )
+                list.add( new JSONObject().put( "name", projectName ).put( "permissions", member.permissions ) );
+        }
+        return page( ok(), "projectList", list, parameters );
+    }
+
+    private JSONObject createProject(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        String projectName = parameters.get( ATTR_PROJECT_NAME );
+        if( projectName == null || projectName.isEmpty() )
+            return error( "Project name is not specified" );
+        int permission;
+        try
+        {
+            permission = Integer.parseInt( parameters.getOrDefault( ATTR_PERMISSION, String.valueOf( Project.PERMISSION_ALL ) ) );
+        }
+        catch( NumberFormatException e )
+        {
+            return error( "Invalid permission: " + parameters.get( ATTR_PERMISSION ) );
+        }
+        if( !createProject( projectName, user, permission ) )
+            return error( "Project '" + projectName + "' already exists" );
+        return ok();
+    }
+
+    private boolean createProject(String projectName, String owner, int ownerPermissions)
+    {
+        SimProject project = new SimProject();
+        project.members.put( owner, new Member( ROLE_ADMINISTRATOR, ownerPermissions ) );
+        if( projects.putIfAbsent( projectName, project ) != null )
+            return false;
+        userProjects.computeIfAbsent( owner, key -> ConcurrentHashMap.newKeySet() ).add( projectName );
+        return true;
+    }
+
+    private JSONObject addToProject(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        String projectName = parameters.get( ATTR_PROJECT_NAME );
+        String userToAdd = parameters.get( ATTR_GROUP_USER );
+        SimProject project = projects.get( projectName == null ? "" : projectName );
+        if( project == null )
+            return error( "Project '" + projectName + "' not found" );
+        if( !hasPermission( project, user, Project.PERMISSION_ADMIN ) )
+            return error( "User '" + user + "' is not allowed to manage project '" + projectName + "'" );
+        if( userToAdd == null || !passwords.containsKey( userToAdd ) )
+            return error( "Unknown user: " + userToAdd );
+        synchronized( project )
+        {
+            if( !project.members.containsKey( userToAdd ) )
+                setMember( projectName, userToAdd, ROLE_USER );
+        }
+        return ok();
+    }
+
+    private JSONObject changeRole(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        String projectName = parameters.get( ATTR_PROJECT_NAME );
+        String userToChange = parameters.get( ATTR_GROUP_USER );
+        String role = parameters.get( ATTR_GROUP_ROLE );
+        SimProject project = projects.get( projectName == null ? "" : projectName );
+        if( project == null )
+            return error( "Project '" + projectName + "' not found" );
+        if( !hasPermission( project, user, Project.PERMISSION_ADMIN ) )
+            return error( "User '" + user + "' is not allowed to manage project '" + projectName + "'" );
+        if( role == null || !rolePermissions.containsKey( role ) )
+            return error( "Unknown role: " + role );
+        synchronized( project )
+        {
+            if( userToChange == null || !project.members.containsKey( userToChange ) )
+                return error( "User '" + userToChange + "' is not a member of project '" + projectName + "'" );
+            setMember( projectName, userToChange, role );
+        }
+        return ok();
+    }
+
+    private JSONObject projectUsers(Map<String, String> parameters)
+    {
+        String user = authorize( parameters );
+        if( user == null )
+            return unauthorized();
+        String projectName = parameters.get( ATTR_PROJECT_NAME );
+        SimProject project = projects.get( projectName == null ? "" : projectName );
+        if( project == null )
+            return error( "Project '" + projectName + "' not found" );
+        if( !hasPermission( project, user, Project.PERMISSION_INFO ) )
+            return error( "User '" + user + "' has no access to project '" + projectName + "'" );
+        List<JSONObject> list = new ArrayList<>();
+        new TreeMap<>( project.members ).forEach( (member, info) -> list.add( new JSONObject().put( ATTR_GROUP_USER, member )
+                .put( ATTR_GROUP_ROLE, info.role ) ) );
+        return page( ok(), "projectUsers", list, parameters );
+    }
+
+    /**
+     * Puts the part of the list selected by 'offset' and 'limit' parameters and total size of the list, or the whole list
+     * if the parameters are absent
+     */
+    private static JSONObject page(JSONObject response, String arrayName, List<JSONObject> list, Map<String, String> parameters)
+    {
+        String limitParameter = parameters.get( ATTR_LIMIT );
+        if( limitParameter == null )
+            return response.put( arrayName, new JSONArray( list ) );
+        int offset;
+        int limit;
+        try
+        {
+            offset = Integer.parseInt( parameters.getOrDefault( ATTR_OFFSET, "0" ) );
+            limit = Integer.parseInt( limitParameter );
+        }
+        catch( NumberFormatException e )
+        {
+            return error( "Invalid paging parameters: " + e.getMessage() );
+        }
+        if( offset < 0 || limit <= 0 )
+            return error( "Invalid paging parameters: offset=" + offset + ", limit=" + limit );
+        int from = Math.min( offset, list.size() );
+        int to = (int)Math.min( (long)from + limit, list.size() );
+        return response.put( arrayName, new JSONArray( list.subList( from, to ) ) ).put( ATTR_TOTAL, list.size() );
+    }
+
+    private static boolean hasPermission(SimProject project, String user, int permission)
+    {
+        Member member = project.members.get( user );
+        return member != null && ( member.permissions & permission ) == permission;
+    }
+
+    private int permissionsOf(String role)
+    {
+        return rolePermissions.getOrDefault( role, Project.PERMISSION_INFO | Project.PERMISSION_READ );
+    }
+
+    /**
+     * @return token owner, null if token is absent, unknown or expired
+     */
+    private String authorize(Map<String, String> parameters)
+    {
+        String token = parameters.get( ATTR_JWTOKEN );
+        TokenInfo info = token == null ? null : tokens.get( token );
+        if( info == null )
+            return null;
+        if( info.expiresAt <= System.currentTimeMillis() )
+        {
+            tokens.remove( token );
+            return null;
+        }
+        return info.user;
+    }
+
+    private String issueToken(String user)
+    {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + tokenLifetimeMillis;
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString( "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes( StandardCharsets.UTF_8 ) );
+        String payload = encoder.encodeToString( new JSONObject().put( "sub", user ).put( "iat", now / 1000 )
+                .put( "exp", expiresAt / 1000 ).toString().getBytes( StandardCharsets.UTF_8 ) );
+        byte[] signature = new byte[32];
+        random.nextBytes( signature );
+        String token = header + "." + payload + "." + encoder.encodeToString( signature );
+        tokens.put( token, new TokenInfo( user, expiresAt ) );
+        // drop expired tokens from time to time, so that abandoned sessions do not accumulate
+        if( ( requests.get() & 0xFFF ) == 0 )
+            tokens.values().removeIf( t -> t.expiresAt <= now );
+        return token;
+    }
+
+    private static JSONObject ok()
+    {
+        return new JSONObject().put( ATTR_TYPE, TYPE_OK );
+    }
+
+    private static JSONObject error(String message)
+    {
+        return new JSONObject().put( ATTR_TYPE, TYPE_ERROR ).put( ATTR_MESSAGE, message );
+    }
+
+    private static JSONObject unauthorized()
+    {
+        return new JSONObject().put( ATTR_TYPE, TYPE_NEED_LOGIN ).put( ATTR_MESSAGE, "Token is invalid or expired" );
+    }
+
+    private static class SimProject
+    {
+        final Map<String, Member> members = new ConcurrentHashMap<>();
+    }
+
+    private static class Member
+    {
+        final String role;
+        final int permissions;
+
+        Member(String role, int permissions)
+        {
+            this.role = role;
+            this.permissions = permissions;
+        }
+    }
+
+    private static class TokenInfo
+    {
+        final String user;
+        final long expiresAt;
+
+        TokenInfo(String user, long expiresAt)
+        {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class ActionProfile
+    {
+        final long fixedNanos;
+        final long meanNanos;
+        final double failureRate;
+
+        ActionProfile(long fixedNanos, long meanNanos, double failureRate)
+        {
+            this.fixedNanos = fixedNanos;
+            this.meanNanos = meanNanos;
+            this.failureRate = failureRate;
+        }
+
+        void apply(String action)
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = fixedNanos;
+            if( meanNanos > 0 )
+                delay += (long) ( -Math.log( 1 - random.nextDouble() ) * meanNanos );
+            if( delay > 0 )
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep( delay );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new BiostoreTransportException( "Interrupted during simulated '" + action + "' request" );
+                }
+            }
+            if( failureRate > 0 && random.nextDouble() < failureRate )
+                throw new BiostoreTransportException( "Simulated failure of '" + action + "' request" );
+        }
+    }
+}